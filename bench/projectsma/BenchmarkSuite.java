@@ -0,0 +1,526 @@
+package projectsma;
+
+import jade.content.lang.Codec.CodecException;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.FIPAManagementVocabulary;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.AgentContainer;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * BenchmarkSuite - Mesures de référence de la messagerie et de l'annuaire
+ *
+ * Lance une plateforme JADE dans la JVM (conteneur principal), puis exécute
+ * les mesures demandées. Comme avec JMH, chaque mesure fait d'abord des
+ * itérations de préchauffage (JIT), puis des itérations mesurées, et affiche
+ * la moyenne, l'écart-type et les percentiles de latence.
+ *
+ * Mesures disponibles:
+ * - oneway:    SenderAgent -> ReceiverAgent (ReceiverBehaviour), débit en msg/s
+ * - roundtrip: SenderAgent2 -> ReceiverBehaviour2, latence aller-retour
+ * - register:  enregistrement de ProjectAgents au DF, en reg/s
+ * - search:    recherche d'un type par le SearchAgent avec 100, 1000 et
+ *              10000 agents enregistrés (DF interrogé, puis cache local)
+ *
+ * Le journal des agents (Log) est limité aux erreurs pendant les mesures:
+ * seules les lignes [BENCH] apparaissent.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.BenchmarkSuite                  (tout)
+ *   java -cp "bin;lib/*" projectsma.BenchmarkSuite roundtrip search  (une partie)
+ *   java -cp "bin;lib/*" projectsma.BenchmarkSuite -wi 3 -i 10 -df indexed
+ *
+ * Options:
+ *   -wi N        itérations de préchauffage (défaut 2)
+ *   -i N         itérations mesurées (défaut 5)
+ *   -df indexed  utiliser un IndexedDFAgent au lieu du DF de la plateforme
+ */
+public class BenchmarkSuite {
+
+    // ==================== Paramètres ====================
+
+    private static final int ONE_WAY_MESSAGES = 10000;
+    private static final int ROUND_TRIPS = 2000;
+    private static final int REGISTRATIONS = 200;
+    private static final int SEARCHES = 500;
+    private static final int[] DIRECTORY_SIZES = { 100, 1000, 10000 };
+
+    /** Nombre d'agents offrant le type recherché, quelle que soit la taille de l'annuaire */
+    private static final int SEARCH_TARGETS = 10;
+
+    /** Type recherché par le SearchAgent */
+    private static final String SEARCH_TYPE = "construction";
+
+    private static final long REPLY_TIMEOUT = 10000;
+
+    private static int warmupIterations = 2;
+    private static int iterations = 5;
+
+    /** Sortie réservée aux résultats (System.out est coupé pendant les mesures) */
+    private static final PrintStream console = System.out;
+    private static final PrintStream silent = new PrintStream(new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private static AgentContainer main;
+    private static Agent driver;
+
+
+    // ==================== Point d'entrée ====================
+
+    public static void main(String[] args) throws Exception {
+        List<String> selected = new ArrayList<String>();
+        boolean indexed = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("-wi".equals(args[i])) {
+                warmupIterations = Integer.parseInt(args[++i]);
+            } else if ("-i".equals(args[i])) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("-df".equals(args[i])) {
+                indexed = "indexed".equals(args[++i]);
+            } else {
+                selected.add(args[i]);
+            }
+        }
+        if (selected.isEmpty()) {
+            selected.addAll(Arrays.asList("oneway", "roundtrip", "register", "search"));
+        }
+
+        // ---- Plateforme ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.LOCAL_PORT, "1299");
+        profile.setParameter("nomtp", "true");
+        if (indexed) {
+            profile.setParameter(Directory.DF_PROPERTY, "idf");
+        }
+        main = rt.createMainContainer(profile);
+        if (indexed) {
+            main.createNewAgent("idf", IndexedDFAgent.class.getName(), null).start();
+        }
+
+        // Agent qui exécute les mesures dans son propre thread
+        driver = new Agent();
+        main.acceptNewAgent("bench-driver", driver).start();
+
+        console.println("[BENCH] " + warmupIterations + " warmup + " + iterations +
+                        " measured iterations, directory: " + (indexed ? "IndexedDFAgent" : "JADE DF"));
+        // Journal des agents: seulement les erreurs pendant les mesures
+        Log.Level level = Log.getLevel();
+        Log.setLevel(Log.Level.ERROR);
+        System.setOut(silent);
+        try {
+            for (String name : selected) {
+                if ("oneway".equals(name)) {
+                    oneWay();
+                } else if ("roundtrip".equals(name)) {
+                    roundTrip();
+                } else if ("register".equals(name)) {
+                    register();
+                } else if ("search".equals(name)) {
+                    search();
+                } else {
+                    console.println("[ERREUR] Unknown benchmark: " + name);
+                }
+            }
+        } finally {
+            System.setOut(console);
+            Log.setLevel(level);
+        }
+
+        main.kill();
+        System.exit(0);
+    }
+
+
+    // ==================== oneway ====================
+
+    /**
+     * oneWay() - Débit SenderAgent -> ReceiverAgent
+     *
+     * Le récepteur est configuré comme ReceiverAgent (un ReceiverBehaviour).
+     * Un CONFIRM envoyé après les INFORM marque la fin de l'itération:
+     * il est traité par le même comportement, donc après tous les INFORM.
+     */
+    private static void oneWay() throws Exception {
+        final CountDownLatch[] drained = new CountDownLatch[1];
+        main.acceptNewAgent("Receiver", new Agent() {
+            protected void setup() {
+                ReceiverBehaviour behaviour = new ReceiverBehaviour(this);
+                behaviour.on(ACLMessage.CONFIRM, new MessageDispatcher.Handler() {
+                    public void handle(ACLMessage msg) {
+                        drained[0].countDown();
+                    }
+                });
+                addBehaviour(behaviour);
+            }
+        }).start();
+
+        Statistics stats = new Statistics();
+        for (int it = 0; it < warmupIterations + iterations; it++) {
+            drained[0] = new CountDownLatch(1);
+            long start = System.nanoTime();
+            inDriver(new Task() {
+                public void run(Agent agent) {
+                    // Même message que SenderAgent
+                    ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                    msg.addReceiver(new AID("Receiver", AID.ISLOCALNAME));
+                    msg.setContent("Hello! How are you?");
+                    for (int i = 0; i < ONE_WAY_MESSAGES; i++) {
+                        agent.send(msg);
+                    }
+                    ACLMessage end = new ACLMessage(ACLMessage.CONFIRM);
+                    end.addReceiver(new AID("Receiver", AID.ISLOCALNAME));
+                    agent.send(end);
+                }
+            });
+            drained[0].await();
+            if (it >= warmupIterations) {
+                stats.add(ONE_WAY_MESSAGES * 1e9 / (System.nanoTime() - start));
+            }
+        }
+        main.getAgent("Receiver").kill();
+
+        console.println("[BENCH] oneway    " + stats.format("msg/s") +
+                        " (" + ONE_WAY_MESSAGES + " msgs/iteration)");
+    }
+
+
+    // ==================== roundtrip ====================
+
+    /**
+     * roundTrip() - Latence aller-retour SenderAgent2 -> ReceiverBehaviour2
+     *
+     * Un seul message en cours à la fois (comme SenderAgent2 par défaut),
+     * avec le même contenu binaire (Greeting) que SenderAgent2,
+     * envoyé via le ReplyCorrelator: la latence mesurée est celle d'une
+     * conversation isolée.
+     */
+    private static void roundTrip() throws Exception {
+        main.acceptNewAgent("Receiver2", new Agent() {
+            protected void setup() {
+                addBehaviour(new ReceiverBehaviour2(this));
+            }
+        }).start();
+
+        Greeting.register();
+        final ReplyCorrelator correlator = new ReplyCorrelator(driver);
+        driver.addBehaviour(correlator);
+
+        final LatencyRecorder latencies = new LatencyRecorder(ROUND_TRIPS * iterations);
+        Statistics stats = new Statistics();
+        for (int it = 0; it < warmupIterations + iterations; it++) {
+            final boolean measured = it >= warmupIterations;
+            final CountDownLatch finished = new CountDownLatch(1);
+            long start = System.nanoTime();
+            inDriver(new Task() {
+                public void run(Agent agent) {
+                    sendNext(correlator, latencies, measured, ROUND_TRIPS, finished);
+                }
+            });
+            finished.await();
+            if (measured) {
+                stats.add(ROUND_TRIPS * 1e9 / (System.nanoTime() - start));
+            }
+        }
+        inDriver(new Task() {
+            public void run(Agent agent) {
+                agent.removeBehaviour(correlator);
+            }
+        });
+        main.getAgent("Receiver2").kill();
+
+        console.println("[BENCH] roundtrip " + stats.format("round-trips/s"));
+        console.println("[BENCH] roundtrip latency: " + latencies.summary());
+    }
+
+    /**
+     * sendNext() - Envoie un message, et le suivant à l'arrivée de la réponse
+     */
+    private static void sendNext(final ReplyCorrelator correlator, final LatencyRecorder latencies,
+                                 final boolean measured, final int remaining,
+                                 final CountDownLatch finished) {
+        if (remaining == 0) {
+            finished.countDown();
+            return;
+        }
+        // Même message que SenderAgent2 (Greeting binaire, ContentCodecs)
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(new AID("Receiver2", AID.ISLOCALNAME));
+        try {
+            ContentCodecs.fillContent(msg, Greeting.ONTOLOGY,
+                                      new Greeting(remaining, "Hello! How are you?"));
+        } catch (CodecException e) {
+            console.println("[ERREUR] roundtrip: " + e.getMessage());
+            finished.countDown();
+            return;
+        }
+
+        final long sent = System.nanoTime();
+        correlator.request(msg, REPLY_TIMEOUT, new ReplyCorrelator.ReplyHandler() {
+            public void onReply(ACLMessage reply) {
+                if (measured) {
+                    latencies.record(System.nanoTime() - sent);
+                }
+                sendNext(correlator, latencies, measured, remaining - 1, finished);
+            }
+
+            public void onTimeout(ACLMessage request) {
+                console.println("[ERREUR] roundtrip: no reply within " + REPLY_TIMEOUT + " ms");
+                finished.countDown();
+            }
+        });
+    }
+
+
+    // ==================== register ====================
+
+    /**
+     * register() - Débit d'enregistrement des ProjectAgents
+     *
+     * Chaque itération crée REGISTRATIONS ProjectAgents avec un type de
+     * service propre à l'itération, et s'arrête quand le DF a notifié tous
+     * les enregistrements (abonnement, comme RegistrationBenchmark: une
+     * recherche au DF de JADE ne retourne jamais plus de 100 résultats).
+     */
+    private static void register() throws Exception {
+        final ServiceDirectoryCache probe = new ServiceDirectoryCache();
+        Statistics stats = new Statistics();
+        for (int it = 0; it < warmupIterations + iterations; it++) {
+            final String type = "bench-register-" + it;
+            inDriver(new Task() {
+                public void run(Agent agent) {
+                    agent.addBehaviour(probe.subscribe(agent, type));
+                }
+            });
+
+            long start = System.nanoTime();
+            for (int i = 0; i < REGISTRATIONS; i++) {
+                main.createNewAgent(type + "-" + i, ProjectAgent.class.getName(),
+                                    new Object[] { type }).start();
+            }
+            while (probe.count(type) < REGISTRATIONS) {
+                Thread.sleep(1);
+            }
+            if (it >= warmupIterations) {
+                stats.add(REGISTRATIONS * 1e9 / (System.nanoTime() - start));
+            }
+
+            // Libérer les threads des agents (takeDown() les désenregistre)
+            for (int i = 0; i < REGISTRATIONS; i++) {
+                main.getAgent(type + "-" + i).kill();
+            }
+        }
+
+        console.println("[BENCH] register  " + stats.format("reg/s") +
+                        " (" + REGISTRATIONS + " agents/iteration)");
+    }
+
+
+    // ==================== search ====================
+
+    /**
+     * search() - Latence de recherche du SearchAgent selon la taille de l'annuaire
+     *
+     * L'annuaire est rempli par le driver (enregistrements pour le compte
+     * d'agents fictifs, envoyés sans attendre les réponses une à une).
+     * Seuls SEARCH_TARGETS agents offrent le type recherché: le nombre de
+     * résultats reste le même, seule la taille de l'annuaire varie.
+     *
+     * Deux chemins sont mesurés:
+     * - df:    Directory.search(), ce que fait findProviders() sans cache
+     * - cache: SearchAgent.findProviders(), servi par le cache tenu à jour
+     *          par l'abonnement au DF
+     */
+    private static void search() throws Exception {
+        final SearchAgent searcher = new SearchAgent();
+        main.acceptNewAgent("bench-searcher", searcher).start();
+
+        int registered = 0;
+        for (int size : DIRECTORY_SIZES) {
+            fill(registered, size);
+            registered = size;
+
+            final LatencyRecorder df = new LatencyRecorder(SEARCHES * iterations);
+            final LatencyRecorder cache = new LatencyRecorder(SEARCHES * iterations);
+            for (int it = 0; it < warmupIterations + iterations; it++) {
+                final boolean measured = it >= warmupIterations;
+                inAgent(searcher, new Task() {
+                    public void run(Agent agent) throws Exception {
+                        DFAgentDescription template = new DFAgentDescription();
+                        ServiceDescription sd = new ServiceDescription();
+                        sd.setType(SEARCH_TYPE);
+                        template.addServices(sd);
+
+                        for (int i = 0; i < SEARCHES; i++) {
+                            long t0 = System.nanoTime();
+                            int found = Directory.search(agent, template, null).length;
+                            long t1 = System.nanoTime();
+                            found += searcher.findProviders(SEARCH_TYPE).size();
+                            long t2 = System.nanoTime();
+                            if (found != 2 * SEARCH_TARGETS) {
+                                throw new IllegalStateException("Expected " + SEARCH_TARGETS +
+                                                                " providers, got " + found / 2);
+                            }
+                            if (measured) {
+                                df.record(t1 - t0);
+                                cache.record(t2 - t1);
+                            }
+                        }
+                    }
+                });
+            }
+
+            console.println("[BENCH] search " + size + " agents, df:    " + df.summary());
+            console.println("[BENCH] search " + size + " agents, cache: " + cache.summary());
+        }
+        main.getAgent("bench-searcher").kill();
+    }
+
+    /**
+     * fill() - Enregistre les agents fictifs d'indice from à to-1
+     *
+     * Les SEARCH_TARGETS premiers offrent SEARCH_TYPE, les autres
+     * un type parmi 50 types de remplissage.
+     */
+    private static void fill(final int from, final int to) throws Exception {
+        inDriver(new Task() {
+            public void run(Agent agent) throws Exception {
+                AID df = Directory.dfFor(agent, null);
+                MessageTemplate mt = MessageTemplate.MatchConversationId("bench-fill");
+                int inFlight = 0;
+                for (int i = from; i < to; i++) {
+                    DFAgentDescription dfd = new DFAgentDescription();
+                    dfd.setName(new AID("bench-provider-" + i, AID.ISLOCALNAME));
+                    ServiceDescription sd = new ServiceDescription();
+                    sd.setType(i < SEARCH_TARGETS ? SEARCH_TYPE : "bench-filler-" + (i % 50));
+                    sd.setName("bench-service-" + i);
+                    dfd.addServices(sd);
+
+                    ACLMessage request = DFService.createRequestMessage(
+                        agent, df, FIPAManagementVocabulary.REGISTER, dfd, null);
+                    request.setConversationId("bench-fill");
+                    agent.send(request);
+                    inFlight++;
+
+                    // Au plus 500 requêtes en attente, pour ne pas saturer la file du DF
+                    while (inFlight >= 500) {
+                        inFlight -= awaitResult(agent, mt);
+                    }
+                }
+                while (inFlight > 0) {
+                    inFlight -= awaitResult(agent, mt);
+                }
+            }
+        });
+    }
+
+    /**
+     * awaitResult() - Attend la réponse finale du DF à une requête
+     *
+     * @return 1 pour une réponse finale, 0 pour un AGREE (le résultat suit)
+     */
+    private static int awaitResult(Agent agent, MessageTemplate mt) {
+        ACLMessage reply = agent.blockingReceive(mt, REPLY_TIMEOUT);
+        if (reply == null) {
+            throw new IllegalStateException("Directory did not answer within " + REPLY_TIMEOUT + " ms");
+        }
+        if (reply.getPerformative() == ACLMessage.AGREE) {
+            return 0;
+        }
+        if (reply.getPerformative() != ACLMessage.INFORM) {
+            throw new IllegalStateException("Registration refused: " + reply.getContent());
+        }
+        return 1;
+    }
+
+    // ==================== Exécution dans un agent ====================
+
+    /**
+     * Task - Code exécuté dans le thread d'un agent
+     */
+    private interface Task {
+        void run(Agent agent) throws Exception;
+    }
+
+    private static void inDriver(Task task) throws Exception {
+        inAgent(driver, task);
+    }
+
+    /**
+     * inAgent() - Exécute une tâche dans le thread de l'agent et attend la fin
+     *
+     * Les appels comme Directory.search() ou blockingReceive() doivent être
+     * faits depuis le thread de l'agent.
+     */
+    private static void inAgent(Agent agent, final Task task) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Exception[] failure = new Exception[1];
+        agent.addBehaviour(new OneShotBehaviour(agent) {
+            public void action() {
+                try {
+                    task.run(myAgent);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+                done.countDown();
+            }
+        });
+        done.await();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+
+    // ==================== Statistiques ====================
+
+    /**
+     * Statistics - Moyenne et écart-type des itérations mesurées
+     */
+    private static class Statistics {
+        private final List<Double> samples = new ArrayList<Double>();
+
+        void add(double value) {
+            samples.add(Double.valueOf(value));
+        }
+
+        String format(String unit) {
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = 0;
+            for (Double s : samples) {
+                sum += s.doubleValue();
+                min = Math.min(min, s.doubleValue());
+                max = Math.max(max, s.doubleValue());
+            }
+            double mean = sum / samples.size();
+            double variance = 0;
+            for (Double s : samples) {
+                variance += (s.doubleValue() - mean) * (s.doubleValue() - mean);
+            }
+            double stddev = samples.size() > 1 ? Math.sqrt(variance / (samples.size() - 1)) : 0;
+            return String.format("%.0f +/- %.0f %s (min %.0f, max %.0f, %d iterations)",
+                                 mean, stddev, unit, min, max, samples.size());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentContainer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CoalesceBenchmark - Regroupement et fusion des INFORM répétés (OutboundQueue)
+ *
+ * Un émetteur (conteneur principal) envoie N pings d'état à un récepteur
+ * (MessageDispatcher, autre conteneur de la JVM), par rafales de B messages
+ * identiques; le contenu change d'une rafale à l'autre. Trois variantes:
+ * - "direct": send() pour chaque message
+ * - "batched": OutboundQueue sans fusion (une enveloppe par lot)
+ * - "merged": OutboundQueue avec fusion des copies identiques
+ *
+ * Pour chaque variante: durée jusqu'à ce que le récepteur ait vu les N
+ * pings (copies fusionnées comprises), débit, messages transportés entre
+ * les conteneurs, appels des traitements et temps CPU du thread récepteur.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.CoalesceBenchmark 20000 10 5
+ *   (pings par tour, taille des rafales, nombre de tours)
+ */
+public class CoalesceBenchmark {
+
+    /** Micro-fenêtre de l'OutboundQueue (ms) */
+    private static final long WINDOW = 5;
+
+    private static final String[] VARIANTS = { "direct", "batched", "merged" };
+
+    // Mesures du récepteur, lues par le thread principal
+    private static volatile long receiverCpu;
+    private static volatile long handled;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int burst = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        AgentContainer main = rt.createMainContainer(mainProfile);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.MAIN_PORT, "1299");
+        profile.setParameter(Profile.CONTAINER_NAME, "Coalesce-1");
+        AgentContainer remote = rt.createAgentContainer(profile);
+        Log.setLevel(Log.Level.WARN);
+
+        // Le premier tour de chaque variante sert de préchauffage (JIT)
+        for (int round = 0; round < rounds; round++) {
+            for (String variant : VARIANTS) {
+                run(main, remote, variant, round, messages, burst, round == 0);
+            }
+        }
+
+        Log.flush();
+        System.exit(0);
+    }
+
+    private static void run(AgentContainer main, AgentContainer remote, final String variant, int round,
+                            final int messages, final int burst, boolean warmup) throws Exception {
+        final String receiverName = "receiver-" + variant + "-" + round;
+        final CountDownLatch finished = new CountDownLatch(1);
+        final long[] start = new long[1];
+        final long[] elapsed = new long[1];
+
+        // ---- Récepteur: compte les pings, copies fusionnées comprises ----
+        remote.acceptNewAgent(receiverName, new Agent() {
+            protected void setup() {
+                MessageDispatcher dispatcher = new MessageDispatcher(this);
+                dispatcher.on(ACLMessage.INFORM, new MessageDispatcher.Handler() {
+                    private int seen = 0;
+                    private int calls = 0;
+                    private long firstCpu;
+
+                    public void handle(ACLMessage msg) {
+                        if (calls++ == 0) {
+                            firstCpu = threadCpu();
+                        }
+                        seen += OutboundQueue.copies(msg);
+                        if (seen == messages) {
+                            elapsed[0] = System.nanoTime() - start[0];
+                            receiverCpu = threadCpu() - firstCpu;
+                            handled = calls;
+                            finished.countDown();
+                        }
+                    }
+                });
+                addBehaviour(dispatcher);
+            }
+        }).start();
+        Thread.sleep(200);
+
+        // ---- Émetteur: rafales de pings identiques ----
+        final Agent sender = new Agent() {
+            protected void setup() {
+                OutboundQueue outbound = null;
+                if (!"direct".equals(variant)) {
+                    outbound = new OutboundQueue(this, WINDOW);
+                    outbound.setMergeDuplicates("merged".equals(variant));
+                    addBehaviour(outbound);
+                }
+                LongAdder messagesOut = Metrics.of(this).counter("messages.out");
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.addReceiver(new AID(receiverName, AID.ISLOCALNAME));
+                start[0] = System.nanoTime();
+                for (int i = 0; i < messages; i++) {
+                    msg.setContent("status " + (i / burst));
+                    if (outbound != null) {
+                        outbound.send(msg);
+                    } else {
+                        send(msg);
+                        messagesOut.increment();
+                    }
+                }
+            }
+        };
+        main.acceptNewAgent("sender-" + variant + "-" + round, sender).start();
+
+        finished.await();
+        long transported = Metrics.of(sender).counter("messages.out").sum();
+        sender.doDelete();
+        remote.getAgent(receiverName).kill();
+
+        if (!warmup) {
+            long millis = Math.max(1, elapsed[0] / 1000000);
+            String cpu = receiverCpu < 0 ? "n/a" : String.valueOf(receiverCpu / 1000000);
+            System.out.println("[BENCH] " + variant + ": " + messages + " pings in " + millis + " ms (" +
+                               (messages * 1000L / millis) + " pings/s), " + transported +
+                               " messages transported, " + handled + " handler calls, " + cpu +
+                               " ms receiver CPU");
+        }
+    }
+
+    /**
+     * threadCpu() - Temps CPU du thread courant (ns), -1 si non mesurable
+     */
+    private static long threadCpu() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : -1;
+    }
+}
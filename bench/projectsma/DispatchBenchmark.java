@@ -0,0 +1,196 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.AgentContainer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * DispatchBenchmark - Débit et allocations du récepteur
+ *
+ * Compare deux récepteurs qui répondent à chaque INFORM:
+ * - "one-by-one": un message par appel de action(), createReply() à chaque fois
+ *   (l'ancien ReceiverCyclicBehaviour, sans les affichages)
+ * - "dispatcher": MessageDispatcher (file vidée par lots, réponse réutilisée)
+ *
+ * Un émetteur envoie N messages d'un coup puis compte les réponses.
+ * Pour chaque variante, on affiche le débit (messages/seconde) et le nombre
+ * d'octets alloués par message dans le thread du récepteur.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.DispatchBenchmark 20000 5
+ *   (messages par tour, nombre de tours)
+ */
+public class DispatchBenchmark {
+
+    private static final String CONTENT = "Hello! How are you?";
+    private static final String REPLY = "Thank you for your message!";
+
+    // Mesures du récepteur, lues par le thread principal
+    private static volatile long receiverAllocated;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.LOCAL_PORT, "1299");
+        profile.setParameter("nomtp", "true");
+        AgentContainer main = rt.createMainContainer(profile);
+
+        // Le premier tour de chaque variante sert de préchauffage (JIT)
+        for (int round = 0; round < rounds; round++) {
+            run(main, "one-by-one", round, messages, round == 0);
+            run(main, "dispatcher", round, messages, round == 0);
+        }
+
+        main.kill();
+        System.exit(0);
+    }
+
+    private static void run(AgentContainer container, final String variant, int round,
+                            final int messages, boolean warmup) throws Exception {
+        final String receiverName = "receiver-" + variant + "-" + round;
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        // ---- Récepteur ----
+        container.acceptNewAgent(receiverName, new Agent() {
+            protected void setup() {
+                if ("dispatcher".equals(variant)) {
+                    final MessageDispatcher dispatcher = new MessageDispatcher(this);
+                    dispatcher.on(ACLMessage.INFORM, new MessageDispatcher.Handler() {
+                        private final AllocationProbe probe = new AllocationProbe(messages);
+
+                        public void handle(ACLMessage msg) {
+                            probe.tick();
+                            dispatcher.reply(msg, ACLMessage.INFORM, REPLY);
+                        }
+                    });
+                    addBehaviour(dispatcher);
+                } else {
+                    addBehaviour(new OneByOneReceiver(messages));
+                }
+            }
+        }).start();
+
+        // ---- Émetteur ----
+        final long[] elapsed = new long[1];
+        container.acceptNewAgent("sender-" + variant + "-" + round, new Agent() {
+            protected void setup() {
+                final long start = System.nanoTime();
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.addReceiver(new AID(receiverName, AID.ISLOCALNAME));
+                msg.setContent(CONTENT);
+                for (int i = 0; i < messages; i++) {
+                    msg.setReplyWith("m" + i);
+                    send(msg);
+                }
+
+                addBehaviour(new CyclicBehaviour(this) {
+                    private int replies = 0;
+
+                    public void action() {
+                        while (receive() != null) {
+                            replies++;
+                        }
+                        if (replies >= messages) {
+                            elapsed[0] = System.nanoTime() - start;
+                            finished.countDown();
+                            myAgent.doDelete();
+                        } else {
+                            block();
+                        }
+                    }
+                });
+            }
+        }).start();
+
+        finished.await();
+        container.getAgent(receiverName).kill();
+
+        if (!warmup) {
+            long millis = Math.max(1, elapsed[0] / 1000000);
+            String allocation = receiverAllocated < 0 ? "n/a"
+                              : String.valueOf(receiverAllocated / messages);
+            System.out.println("[BENCH] " + variant + ": " + messages + " messages in " +
+                             millis + " ms (" + (messages * 1000L / millis) + " msg/s, " +
+                             allocation + " bytes allocated/msg in receiver)");
+        }
+    }
+
+
+    // ==================== Récepteurs ====================
+
+    /**
+     * OneByOneReceiver - Ancienne boucle de réception (un message par réveil)
+     */
+    private static class OneByOneReceiver extends CyclicBehaviour {
+
+        private static final MessageTemplate mt =
+            MessageTemplate.MatchPerformative(ACLMessage.INFORM);
+
+        private final AllocationProbe probe;
+
+        OneByOneReceiver(int messages) {
+            this.probe = new AllocationProbe(messages);
+        }
+
+        public void action() {
+            ACLMessage msg = myAgent.receive(mt);
+            if (msg != null) {
+                probe.tick();
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.INFORM);
+                reply.setContent(REPLY);
+                myAgent.send(reply);
+            } else {
+                block();
+            }
+        }
+    }
+
+    /**
+     * AllocationProbe - Octets alloués par le thread courant entre
+     * le premier et le dernier message
+     *
+     * Utilise l'extension HotSpot de ThreadMXBean; "n/a" si absente.
+     */
+    private static class AllocationProbe {
+        private final int expected;
+        private int seen = 0;
+        private long first;
+
+        AllocationProbe(int expected) {
+            this.expected = expected;
+        }
+
+        void tick() {
+            seen++;
+            if (seen == 1) {
+                first = allocatedBytes();
+            } else if (seen == expected) {
+                long last = allocatedBytes();
+                receiverAllocated = first < 0 ? -1 : last - first;
+            }
+        }
+
+        private static long allocatedBytes() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentContainer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * GatherBenchmark - Latence d'une interrogation de N fournisseurs (ScatterGather)
+ *
+ * Lance dans la JVM une plateforme avec N ProjectAgents dont la durée de
+ * traitement a une longue traîne: 2 ms en général, 100 ms une fois sur 20.
+ * Un agent pose R questions à tous, l'une après l'autre, selon trois règles:
+ * - attendre toutes les réponses
+ * - s'arrêter aux k premières réponses utiles (firstK)
+ * - s'arrêter quand la moitié a répondu (quorum 0.5)
+ * On compare p50/p99 de la latence d'une question, et le travail évité
+ * chez les fournisseurs grâce aux CANCEL (requêtes pas encore commencées).
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.GatherBenchmark 20 200 3
+ *   (fournisseurs, questions par règle, k)
+ */
+public class GatherBenchmark {
+
+    /** Durée de traitement habituelle et dans la traîne (ms) */
+    private static final long FAST_WORK = 2;
+    private static final long SLOW_WORK = 100;
+
+    /** Une requête sur SLOW_EVERY tombe dans la traîne */
+    private static final int SLOW_EVERY = 20;
+
+    /** Délai de chaque question (ms) */
+    private static final long GATHER_TIMEOUT = 5000;
+
+    private static final List<ProjectAgent> providers = new ArrayList<ProjectAgent>();
+
+    /** Requêtes annulées chez les fournisseurs, déjà comptées pour les règles précédentes */
+    private static long cancelledBefore = 0;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int k = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        // ---- Plateforme et fournisseurs à longue traîne ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.LOCAL_PORT, "1299");
+        profile.setParameter("nomtp", "true");
+        AgentContainer main = rt.createMainContainer(profile);
+        Log.setLevel(Log.Level.WARN);
+
+        final List<AID> aids = new ArrayList<AID>();
+        for (int i = 0; i < count; i++) {
+            ProjectAgent provider = new ProjectAgent() {
+                private final Random random = new Random();
+
+                protected String perform(String service, String content) throws Exception {
+                    Thread.sleep(random.nextInt(SLOW_EVERY) == 0 ? SLOW_WORK : FAST_WORK);
+                    return service + " done by " + getLocalName();
+                }
+            };
+            provider.setArguments(new Object[] { "construction" });
+            providers.add(provider);
+            main.acceptNewAgent("gather-p" + i, provider).start();
+            aids.add(new AID("gather-p" + i, AID.ISLOCALNAME));
+        }
+        Thread.sleep(1000);
+
+        // ---- Trois règles, R questions chacune ----
+        final CountDownLatch done = new CountDownLatch(1);
+        main.acceptNewAgent("gather-driver", new Agent() {
+            protected void setup() {
+                final ReplyCorrelator correlator = new ReplyCorrelator(this);
+                addBehaviour(correlator);
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
+                        final List<ScatterGather<Integer>> rules = new ArrayList<ScatterGather<Integer>>();
+                        rules.add(counter(correlator));
+                        rules.add(counter(correlator).firstK(k));
+                        rules.add(counter(correlator).quorum(0.5));
+                        final String[] names = { "wait for all", "first " + k, "quorum 0.5" };
+                        ask(aids, rules, names, 0, 0, rounds, new LatencyRecorder(rounds), done);
+                    }
+                });
+            }
+        }).start();
+        done.await();
+
+        Log.flush();
+        System.exit(0);
+    }
+
+    /**
+     * counter() - Agrégat le plus simple: le nombre de réponses utiles
+     */
+    private static ScatterGather<Integer> counter(ReplyCorrelator correlator) {
+        return new ScatterGather<Integer>(correlator, Integer.valueOf(0), new ScatterGather.Reducer<Integer>() {
+            public Integer reduce(Integer count, ACLMessage reply) {
+                return Integer.valueOf(count.intValue() + 1);
+            }
+        }).timeout(GATHER_TIMEOUT).setSendCancel(true);
+    }
+
+    /**
+     * ask() - Pose la question suivante (dans le thread de l'agent)
+     */
+    private static void ask(final List<AID> aids, final List<ScatterGather<Integer>> rules, final String[] names,
+                            final int rule, final int round, final int rounds,
+                            final LatencyRecorder latencies, final CountDownLatch done) {
+        if (round == rounds) {
+            long cancelled = cancelled();
+            Log.warn("[BENCH] " + names[rule] + ": " + latencies.summary() + ", " +
+                     (cancelled - cancelledBefore) + " provider requests cancelled before they ran");
+            cancelledBefore = cancelled;
+            if (rule + 1 == rules.size()) {
+                done.countDown();
+            } else {
+                ask(aids, rules, names, rule + 1, 0, rounds, new LatencyRecorder(rounds), done);
+            }
+            return;
+        }
+        ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+        msg.setOntology("construction");
+        msg.setContent("question " + round);
+        final long start = System.nanoTime();
+        rules.get(rule).start(msg, aids, new ScatterGather.Listener<Integer>() {
+            public void onComplete(ScatterGather.Result<Integer> result) {
+                latencies.record(System.nanoTime() - start);
+                ask(aids, rules, names, rule, round + 1, rounds, latencies, done);
+            }
+        });
+    }
+
+    private static long cancelled() {
+        long sum = 0;
+        for (ProjectAgent provider : providers) {
+            sum += Metrics.of(provider).counter("requests.cancelled").sum();
+        }
+        return sum;
+    }
+}
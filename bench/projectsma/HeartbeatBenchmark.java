@@ -0,0 +1,146 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.wrapper.ContainerController;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
+
+/**
+ * HeartbeatBenchmark - Exactitude de l'annuaire avec des agents bloqués
+ *
+ * Lance dans la JVM un conteneur principal (IndexedDFAgent) et K conteneurs,
+ * crée N LeasedProjectAgents avec -projectsma.heartbeat P, puis suspend un agent
+ * sur S (agents bloqués: ils ne se désenregistrent pas). On mesure:
+ * - le nombre de messages de battements reçus par l'annuaire par période
+ *   (un par conteneur, contre N renouvellements DFService.modify())
+ * - l'exactitude de l'annuaire (agents vivants / résultats) au fil du temps,
+ *   et le délai jusqu'au retrait de tous les agents suspendus
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.HeartbeatBenchmark 4 10000 1000 10
+ *   (conteneurs, agents, période en ms, un agent suspendu sur S)
+ */
+public class HeartbeatBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int containerCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int agents = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long period = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        int every = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        // ---- Plateforme: conteneur principal (idf) et K conteneurs ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        mainProfile.setParameter(Directory.DF_PROPERTY, "idf");
+        mainProfile.setParameter(Heartbeats.HEARTBEAT_PROPERTY, String.valueOf(period));
+        ContainerController main = rt.createMainContainer(mainProfile);
+        main.createNewAgent("idf", IndexedDFAgent.class.getName(), null).start();
+
+        ContainerController[] containers = new ContainerController[containerCount];
+        for (int i = 0; i < containerCount; i++) {
+            Profile p = new ProfileImpl();
+            p.setParameter(Profile.MAIN_PORT, "1299");
+            p.setParameter(Profile.CONTAINER_NAME, "Beat-" + i);
+            p.setParameter(Directory.DF_PROPERTY, "idf");
+            p.setParameter(Heartbeats.HEARTBEAT_PROPERTY, String.valueOf(period));
+            containers[i] = rt.createAgentContainer(p);
+        }
+
+        // ---- N fournisseurs, enregistrés avec un bail de 3 périodes ----
+        AgentSpawner spawner = new AgentSpawner(containers);
+        Log.setLevel(Log.Level.ERROR);
+        int created = spawner.spawn("p", LeasedProjectAgent.class.getName(), agents, new AgentSpawner.Arguments() {
+            public Object[] of(int index) {
+                return new Object[] { "type-" + (index % 40) };
+            }
+        });
+        while (count(main) < created) {
+            Thread.sleep(200);
+        }
+
+        // ---- Messages reçus par l'annuaire pendant 5 périodes ----
+        // Après 2 périodes: les derniers agents créés battent tous
+        Thread.sleep(2 * period);
+        long batches = attribute("idf", "heartbeat.batches");
+        long renewed = attribute("idf", "heartbeat.renewed");
+        Thread.sleep(5 * period);
+        batches = attribute("idf", "heartbeat.batches") - batches;
+        renewed = attribute("idf", "heartbeat.renewed") - renewed;
+        Log.setLevel(Log.Level.INFO);
+        Log.info("[BENCH] " + created + " agents on " + containerCount + " containers, heartbeat every " +
+               period + " ms: " + batches / 5 + " messages/period to the directory (" +
+               renewed / 5 + " leases renewed/period)");
+
+        // ---- Agents bloqués: combien de temps restent-ils dans l'annuaire? ----
+        int suspended = spawner.suspend(every);
+        int alive = created - suspended;
+        long start = System.currentTimeMillis();
+        Log.info("[BENCH] " + suspended + " agents suspended");
+        int found;
+        while ((found = count(main)) > alive) {
+            Log.info("[BENCH] t+" + (System.currentTimeMillis() - start) + " ms: " + found +
+                   " in directory, accuracy " + String.format("%.1f", 100.0 * alive / found) + "%");
+            Thread.sleep(period / 2);
+        }
+        Log.info("[BENCH] all suspended agents evicted " + (System.currentTimeMillis() - start) +
+               " ms after suspension (lease " + Heartbeats.LEASE_PERIODS * period + " ms), " +
+               found + " left, accuracy " + String.format("%.1f", 100.0 * alive / Math.max(1, found)) + "%");
+
+        Log.flush();
+        System.exit(0);
+    }
+
+    private static int probes = 0;
+
+    /**
+     * count() - Nombre de descriptions dans l'annuaire (recherche par pages)
+     */
+    private static int count(ContainerController main) throws Exception {
+        final AtomicInteger count = new AtomicInteger(-1);
+        final Object lock = new Object();
+        main.acceptNewAgent("beat-counter-" + (probes++), new Agent() {
+            protected void setup() {
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
+                        int n = 0;
+                        try {
+                            n = Directory.searchPages(myAgent, new DFAgentDescription(), 1000,
+                                                      new Directory.ResultHandler() {
+                                public boolean onResult(DFAgentDescription dfd) {
+                                    return true;
+                                }
+                            });
+                        } catch (Exception e) {
+                            Log.error("directory count failed - " + e.getMessage());
+                        }
+                        synchronized (lock) {
+                            count.set(n);
+                            lock.notifyAll();
+                        }
+                        myAgent.doDelete();
+                    }
+                });
+            }
+        }).start();
+        synchronized (lock) {
+            while (count.get() < 0) {
+                lock.wait();
+            }
+        }
+        return count.get();
+    }
+
+    private static long attribute(String agent, String name) throws Exception {
+        ObjectName objectName = new ObjectName(Metrics.JMX_DOMAIN + ":type=Agent,name=" + ObjectName.quote(agent));
+        return ((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, name)).longValue();
+    }
+}
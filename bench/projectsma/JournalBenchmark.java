@@ -0,0 +1,95 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import java.io.File;
+import java.util.Date;
+
+/**
+ * JournalBenchmark - Coût de la sauvegarde de l'annuaire et durée du rechargement
+ *
+ * Sans plateforme JADE: un IndexedDirectory avec son DirectoryJournal.
+ * 1. N enregistrements, sauvegardés dans le journal
+ * 2. Rechargement depuis le journal seul (redémarrage après un arrêt brutal)
+ * 3. Compaction (écriture de l'instantané)
+ * 4. Rechargement depuis l'instantané
+ * Un enregistrement sur dix a un bail très court: il est retiré au rechargement.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.JournalBenchmark 50000 40
+ *   (enregistrements, types de service)
+ */
+public class JournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int types = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        File dir = File.createTempFile("journal", "");
+        dir.delete();
+
+        // ---- 1. Enregistrements sauvegardés ----
+        IndexedDirectory directory = new IndexedDirectory(0);
+        DirectoryJournal journal = new DirectoryJournal(dir, "idf");
+        journal.load(directory);
+        directory.setJournal(journal);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < agents; i++) {
+            directory.register(description(i, types));
+        }
+        report("register + journal", agents, start);
+        journal.close();
+        Thread.sleep(10);   // les baux courts expirent
+
+        // ---- 2. Rechargement depuis le journal ----
+        directory = new IndexedDirectory(0);
+        journal = new DirectoryJournal(dir, "idf");
+        start = System.nanoTime();
+        journal.load(directory);
+        directory.setJournal(journal);
+        int expired = directory.expire(System.currentTimeMillis()).size();
+        report("reload from journal", directory.size(), start);
+        Log.info("[BENCH] " + expired + " expired leases removed at reload");
+
+        // ---- 3. Compaction ----
+        start = System.nanoTime();
+        directory.compact();
+        report("compaction", directory.size(), start);
+        journal.close();
+
+        // ---- 4. Rechargement depuis l'instantané ----
+        directory = new IndexedDirectory(0);
+        journal = new DirectoryJournal(dir, "idf");
+        start = System.nanoTime();
+        journal.load(directory);
+        report("reload from snapshot", directory.size(), start);
+        journal.close();
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        Log.flush();
+    }
+
+    private static DFAgentDescription description(int i, int types) {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(new AID("agent" + i + "@bench", AID.ISGUID));
+        if (i % 10 == 0) {
+            dfd.setLeaseTime(new Date(System.currentTimeMillis() + 1));
+        }
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("type-" + (i % types));
+        sd.setName("service-" + i);
+        dfd.addServices(sd);
+        return dfd;
+    }
+
+    private static void report(String step, int count, long start) {
+        long micros = (System.nanoTime() - start) / 1000;
+        Log.info("[BENCH] " + step + ": " + count + " descriptions in " + micros / 1000 + " ms (" +
+               (count > 0 ? micros * 1000 / count : 0) + " ns each)");
+    }
+}
@@ -0,0 +1,123 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * QueryBenchmark - Top-k et intervalles: index de valeurs contre tri chez le client
+ *
+ * Sans plateforme JADE: un IndexedDirectory de N fournisseurs avec des
+ * propriétés typées (prix, delai, region). Pour chaque requête on compare:
+ * - l'index de valeurs (IndexedDirectory.query(), ce que fait IndexedDFAgent)
+ * - la recherche par le gabarit seul, puis filtre et tri des résultats,
+ *   comme le client doit le faire sans index (DF de JADE)
+ * Les deux doivent donner les mêmes résultats (dans le même ordre si un tri
+ * est demandé). Chaque mesure est précédée d'une passe de chauffe.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.QueryBenchmark 50000 40 100
+ *   (fournisseurs, types de service, requêtes par mesure)
+ */
+public class QueryBenchmark {
+
+    private static final String[] REGIONS = { "nord", "sud", "est", "ouest" };
+
+    /** Les requêtes par l'index sont répétées plus souvent (bien plus rapides) */
+    private static final int INDEX_REPEAT = 100;
+
+    public static void main(String[] args) throws Exception {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int types = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        // ---- N fournisseurs, prix de 1 à 1000 ----
+        IndexedDirectory directory = new IndexedDirectory(0);
+        Random random = new Random(42);
+        for (int i = 0; i < agents; i++) {
+            directory.register(description(i, types, random));
+        }
+        Log.info("[BENCH] " + agents + " providers, " + types + " types (" + agents / types + " per type)");
+
+        // ---- Requêtes ----
+        measure(directory, new ServiceQuery("type-0").orderBy("prix").limit(5), queries);
+        measure(directory, new ServiceQuery("type-0").orderBy("delai", true).limit(10), queries);
+        measure(directory, new ServiceQuery("type-0").range("prix", 100, 150), queries);
+        measure(directory, new ServiceQuery("type-0").equal("region", "nord").atMost("prix", 200)
+                .orderBy("prix").limit(5), queries);
+        measure(directory, new ServiceQuery(null).range("prix", 500, 501).orderBy("prix"), queries);
+
+        Log.flush();
+    }
+
+    private static void measure(IndexedDirectory directory, ServiceQuery query, int queries)
+            throws Exception {
+        DFAgentDescription template = query.template();
+        int limit = query.constraints().getMaxResults().intValue();
+        ServiceQuery decoded = ServiceQuery.of(query.constraints());
+
+        // Deux passes: la première chauffe le JIT, seule la seconde est mesurée
+        List<DFAgentDescription> indexed = null;
+        List<DFAgentDescription> sorted = null;
+        long indexedNanos = 0;
+        long sortedNanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // ---- Index de valeurs ----
+            long start = System.nanoTime();
+            for (int q = 0; q < queries * INDEX_REPEAT; q++) {
+                indexed = directory.query(template, decoded, limit);
+            }
+            indexedNanos = (System.nanoTime() - start) / (queries * INDEX_REPEAT);
+
+            // ---- Gabarit seul, filtre et tri chez le client ----
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                sorted = new ArrayList<DFAgentDescription>();
+                for (DFAgentDescription dfd : directory.search(template, -1)) {
+                    if (query.accepts(dfd, query.getType())) {
+                        sorted.add(dfd);
+                    }
+                }
+                query.sort(sorted, query.getType());
+                if (limit >= 0 && sorted.size() > limit) {
+                    sorted = sorted.subList(0, limit);
+                }
+            }
+            sortedNanos = (System.nanoTime() - start) / queries;
+        }
+
+        // Sans tri demandé, l'ordre n'est pas imposé: mêmes résultats suffit
+        boolean same = query.getOrderBy() != null ? names(indexed).equals(names(sorted))
+            : new TreeSet<String>(names(indexed)).equals(new TreeSet<String>(names(sorted)));
+        Log.info("[BENCH] " + query + ": " + indexed.size() + " results, index " + String.format("%.1f", indexedNanos / 1000.0) +
+               " µs, fetch-all + sort " + sortedNanos / 1000 + " µs (x" +
+               String.format("%.1f", (double) sortedNanos / Math.max(1, indexedNanos)) + ")" +
+               (same ? "" : " [RESULTS DIFFER]"));
+    }
+
+    private static List<String> names(List<DFAgentDescription> results) {
+        List<String> names = new ArrayList<String>(results.size());
+        for (DFAgentDescription dfd : results) {
+            names.add(dfd.getName().getName());
+        }
+        return names;
+    }
+
+    private static DFAgentDescription description(int i, int types, Random random) {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(new AID("agent" + i + "@bench", AID.ISGUID));
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("type-" + (i % types));
+        sd.setName("service-" + i);
+        sd.addProperties(new Property("prix", Long.valueOf(1 + random.nextInt(1000))));
+        sd.addProperties(new Property("delai", Double.valueOf(random.nextInt(300) / 10.0)));
+        sd.addProperties(new Property("region", REGIONS[random.nextInt(REGIONS.length)]));
+        dfd.addServices(sd);
+        return dfd;
+    }
+}
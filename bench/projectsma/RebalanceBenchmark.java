@@ -0,0 +1,266 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.ContainerController;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+
+/**
+ * RebalanceBenchmark - Migration des fournisseurs d'un conteneur surchargé
+ *
+ * Lance dans la JVM un conteneur principal (RebalancerAgent, client) et K
+ * conteneurs, avec -projectsma.rebalance P. Les N fournisseurs sont tous
+ * créés dans le premier conteneur; le fournisseur i reçoit (i+1) x RATE
+ * requêtes par seconde. On suit pendant D secondes:
+ * - la charge de chaque conteneur (somme des débits de ses fournisseurs)
+ *   et le déséquilibre (conteneur le plus chargé / moyenne)
+ * - les migrations (RebalancerAgent) et leur durée
+ * - les requêtes sans réponse: aucune ne doit se perdre pendant une
+ *   migration (file d'attente transférée dans l'instantané)
+ * - à la fin, le conteneur annoncé par le DF pour chaque fournisseur
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.RebalanceBenchmark 3 12 1000 20
+ *   (conteneurs, fournisseurs, période en ms, durée en s)
+ */
+public class RebalanceBenchmark {
+
+    /** Débit de requêtes du fournisseur i: (i+1) x RATE par seconde */
+    private static final int RATE = 4;
+
+    /** Durée simulée d'une requête (ms) */
+    private static final long WORK = 2;
+
+    /** Délai d'une requête (ms): au-delà, elle est comptée perdue */
+    private static final long TIMEOUT = 10000;
+
+    private static final AtomicLong sent = new AtomicLong();
+    private static final AtomicLong replied = new AtomicLong();
+    private static final AtomicLong lost = new AtomicLong();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        int containerCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        final int providers = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        long period = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        int duration = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        // ---- Plateforme: conteneur principal (rebalancer) et K conteneurs ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        mainProfile.setParameter(Rebalancer.REBALANCE_PROPERTY, String.valueOf(period));
+        ContainerController main = rt.createMainContainer(mainProfile);
+        Log.setLevel(Log.Level.WARN);
+        main.createNewAgent(Rebalancer.AGENT_NAME, RebalancerAgent.class.getName(), null).start();
+
+        String[] names = new String[containerCount];
+        ContainerController first = null;
+        for (int i = 0; i < containerCount; i++) {
+            names[i] = "Load-" + i;
+            Profile p = new ProfileImpl();
+            p.setParameter(Profile.MAIN_PORT, "1299");
+            p.setParameter(Profile.CONTAINER_NAME, names[i]);
+            p.setParameter(Rebalancer.REBALANCE_PROPERTY, String.valueOf(period));
+            p.setParameter(ProjectAgent.WORK_PROPERTY, String.valueOf(WORK));
+            ContainerController container = rt.createAgentContainer(p);
+            if (i == 0) {
+                first = container;
+            }
+        }
+
+        // ---- N fournisseurs, tous dans le premier conteneur ----
+        for (int i = 0; i < providers; i++) {
+            first.createNewAgent("p" + i, MobileProjectAgent.class.getName(), new Object[] { "construction" }).start();
+        }
+        Thread.sleep(1000);
+
+        // ---- Client: (i+1) x RATE requêtes par seconde vers le fournisseur i ----
+        main.acceptNewAgent("rebalance-client", new Agent() {
+            protected void setup() {
+                final ReplyCorrelator correlator = new ReplyCorrelator(this);
+                addBehaviour(correlator);
+                final long start = System.currentTimeMillis();
+                final long[] done = new long[providers];
+                addBehaviour(new TickerBehaviour(this, 10) {
+                    protected void onTick() {
+                        if (!running) {
+                            return;
+                        }
+                        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+                        for (int i = 0; i < providers; i++) {
+                            long due = (long) (seconds * (i + 1) * RATE);
+                            for (; done[i] < due; done[i]++) {
+                                ask(correlator, i);
+                            }
+                        }
+                    }
+                });
+            }
+        }).start();
+
+        // ---- Charge par conteneur, chaque seconde ----
+        Log.setLevel(Log.Level.INFO);
+        Log.info("[BENCH] " + providers + " providers on " + names[0] + ", " + RATE * providers * (providers + 1) / 2 +
+                 " requests/s, rebalancing every " + period + " ms over " + containerCount + " containers");
+        double firstImbalance = imbalance(names);
+        for (int s = 1; s <= duration; s++) {
+            Thread.sleep(1000);
+            Log.info("[BENCH] t+" + s + "s: " + loads(names) + ", imbalance " +
+                     String.format("%.2f", imbalance(names)) + ", " + inFlight.get() + " requests in flight");
+        }
+
+        // ---- Fin: plus de requêtes, attendre les réponses ----
+        running = false;
+        while (inFlight.get() > 0) {
+            Thread.sleep(100);
+        }
+        Log.info("[BENCH] imbalance " + String.format("%.2f", firstImbalance) + " -> " +
+                 String.format("%.2f", imbalance(names)) + " after " + attribute("rebalance.moves") + " moves (" +
+                 attribute("rebalance.refused") + " refused)");
+        Log.info("[BENCH] " + sent.get() + " requests sent, " + replied.get() + " replies, " + lost.get() +
+                 " lost");
+        Log.info("[BENCH] DF location up to date for " + located(main, names) + "/" + providers + " providers");
+
+        Log.flush();
+        System.exit(0);
+    }
+
+    /**
+     * ask() - Une requête au fournisseur i (thread du client)
+     */
+    private static void ask(ReplyCorrelator correlator, int i) {
+        ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+        msg.addReceiver(new AID("p" + i, AID.ISLOCALNAME));
+        msg.setOntology("construction");
+        msg.setContent("request");
+        sent.incrementAndGet();
+        inFlight.incrementAndGet();
+        correlator.request(msg, TIMEOUT, new ReplyCorrelator.ReplyHandler() {
+            public void onReply(ACLMessage reply) {
+                replied.incrementAndGet();
+                inFlight.decrementAndGet();
+            }
+
+            public void onTimeout(ACLMessage request) {
+                lost.incrementAndGet();
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * load() - Charge prévue d'un conteneur: débits de ses fournisseurs (requêtes/s)
+     */
+    private static int load(String container) {
+        int load = 0;
+        for (Agent agent : Rebalancer.members(container).keySet()) {
+            load += (Integer.parseInt(agent.getLocalName().substring(1)) + 1) * RATE;
+        }
+        return load;
+    }
+
+    private static String loads(String[] names) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[i]).append(' ').append(Rebalancer.members(names[i]).size())
+              .append(" agents ").append(load(names[i])).append("/s");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * imbalance() - Charge du conteneur le plus chargé / charge moyenne (1 = équilibré)
+     */
+    private static double imbalance(String[] names) {
+        int max = 0;
+        int total = 0;
+        for (int i = 0; i < names.length; i++) {
+            int load = load(names[i]);
+            max = Math.max(max, load);
+            total += load;
+        }
+        return total == 0 ? 0 : (double) max * names.length / total;
+    }
+
+    /**
+     * located() - Fournisseurs dont la description au DF donne le conteneur actuel
+     */
+    private static int located(ContainerController main, final String[] names) throws Exception {
+        final AtomicInteger located = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        main.acceptNewAgent("rebalance-locator", new Agent() {
+            protected void setup() {
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
+                        try {
+                            DFAgentDescription template = new DFAgentDescription();
+                            ServiceDescription sd = new ServiceDescription();
+                            sd.setType("construction");
+                            template.addServices(sd);
+                            for (DFAgentDescription dfd : DFService.search(myAgent, template)) {
+                                if (isAt(dfd)) {
+                                    located.incrementAndGet();
+                                }
+                            }
+                        } catch (Exception e) {
+                            Log.error("DF search failed - " + e.getMessage());
+                        }
+                        done.countDown();
+                        myAgent.doDelete();
+                    }
+                });
+            }
+        }).start();
+        done.await();
+        return located.get();
+    }
+
+    private static boolean isAt(DFAgentDescription dfd) {
+        String local = dfd.getName().getLocalName();
+        Iterator<?> services = dfd.getAllServices();
+        while (services.hasNext()) {
+            Iterator<?> properties = ((ServiceDescription) services.next()).getAllProperties();
+            while (properties.hasNext()) {
+                Property p = (Property) properties.next();
+                if (!Rebalancer.CONTAINER.equals(p.getName())) {
+                    continue;
+                }
+                for (Map.Entry<Agent, Long> e : Rebalancer.members(String.valueOf(p.getValue())).entrySet()) {
+                    if (e.getKey().getLocalName().equals(local)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long attribute(String name) throws Exception {
+        ObjectName objectName = new ObjectName(Metrics.JMX_DOMAIN + ":type=Agent,name=" +
+                                               ObjectName.quote(Rebalancer.AGENT_NAME));
+        return ((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, name)).longValue();
+    }
+}
@@ -0,0 +1,218 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.wrapper.AgentContainer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RegistrationBenchmark - Enregistrement de N agents au DF, en rafale ou étalé
+ *
+ * Lance une plateforme JADE dans la JVM et compare:
+ * - AVANT: N ProjectAgents qui s'enregistrent tous dès leur création
+ * - APRÈS: N ProjectAgents avec -projectsma.stagger (délai tiré du nom)
+ *
+ * puis, avec un IndexedDFAgent ("idf"):
+ * - indexed: N ProjectAgents, une requête FIPA-SL chacun
+ * - batched: un seul agent enregistre N descriptions par
+ *   Directory.registerBatch() (REGISTER_BATCH_SIZE par requête)
+ *
+ * Le temps mesuré va de la création du premier agent jusqu'à ce que le DF
+ * ait notifié les N enregistrements (vu par un agent abonné). L'étalement
+ * allonge ce temps d'au plus la fenêtre; ce qu'il change, c'est l'attente
+ * de chaque agent sur DFService.register() (métrique df.register): sans
+ * rafale, le DF ne fait plus la queue.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.RegistrationBenchmark 1000 5000
+ *   (nombre d'agents, fenêtre d'étalement en ms)
+ */
+public class RegistrationBenchmark {
+
+    private static final String DIRECT_SERVICE = "bench-direct";
+    private static final String STAGGERED_SERVICE = "bench-staggered";
+    private static final String INDEXED_SERVICE = "bench-indexed";
+    private static final String BATCHED_SERVICE = "bench-batched";
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        String stagger = args.length > 1 ? args[1] : "5000";
+        long timeout = 120000;
+
+        // ---- Plateforme: un conteneur principal (DF) ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        AgentContainer main = rt.createMainContainer(mainProfile);
+        main.createNewAgent("idf", IndexedDFAgent.class.getName(), null).start();
+
+        // ---- Deux conteneurs identiques, sauf la propriété d'étalement ----
+        // Les deux mesures font ainsi les mêmes échanges entre conteneurs
+        Profile directProfile = new ProfileImpl();
+        directProfile.setParameter(Profile.MAIN_PORT, "1299");
+        directProfile.setParameter(Profile.CONTAINER_NAME, "Direct-Container");
+        AgentContainer direct = rt.createAgentContainer(directProfile);
+
+        Profile staggeredProfile = new ProfileImpl();
+        staggeredProfile.setParameter(Profile.MAIN_PORT, "1299");
+        staggeredProfile.setParameter(Profile.CONTAINER_NAME, "Staggered-Container");
+        staggeredProfile.setParameter(ProjectAgent.STAGGER_PROPERTY, stagger);
+        AgentContainer staggered = rt.createAgentContainer(staggeredProfile);
+
+        // ---- Un conteneur dont les agents utilisent l'IndexedDFAgent ----
+        Profile indexedProfile = new ProfileImpl();
+        indexedProfile.setParameter(Profile.MAIN_PORT, "1299");
+        indexedProfile.setParameter(Profile.CONTAINER_NAME, "Indexed-Container");
+        indexedProfile.setParameter(Directory.DF_PROPERTY, "idf");
+        AgentContainer indexed = rt.createAgentContainer(indexedProfile);
+        Log.setLevel(Log.Level.WARN);
+
+        // ---- Sonde: compte les enregistrements grâce à l'abonnement au DF ----
+        final ServiceDirectoryCache probeCache = new ServiceDirectoryCache();
+        Agent probe = new Agent() {
+            protected void setup() {
+                addBehaviour(probeCache.subscribe(this, DIRECT_SERVICE));
+                addBehaviour(probeCache.subscribe(this, STAGGERED_SERVICE));
+            }
+        };
+        main.acceptNewAgent("probe", probe).start();
+
+        // Même sonde pour l'IndexedDFAgent (Directory.dfFor() d'après le conteneur)
+        final ServiceDirectoryCache indexedCache = new ServiceDirectoryCache();
+        Agent indexedProbe = new Agent() {
+            protected void setup() {
+                addBehaviour(indexedCache.subscribe(this, INDEXED_SERVICE));
+                addBehaviour(indexedCache.subscribe(this, BATCHED_SERVICE));
+            }
+        };
+        indexed.acceptNewAgent("indexed-probe", indexedProbe).start();
+        Thread.sleep(1000);
+
+        System.out.println("[BENCH] " + n + " registrations");
+
+        // ---- AVANT: tous ensemble ----
+        run(direct, "direct", DIRECT_SERVICE, n, probeCache, timeout);
+
+        // ---- APRÈS: étalés sur la fenêtre ----
+        run(staggered, "staggered", STAGGERED_SERVICE, n, probeCache, timeout);
+
+        // ---- IndexedDFAgent: une requête par agent, puis par lots ----
+        run(indexed, "indexed", INDEXED_SERVICE, n, indexedCache, timeout);
+        batched(indexed, n, indexedCache, timeout);
+
+        Log.flush();
+        main.kill();
+        System.exit(0);
+    }
+
+    /**
+     * run() - Crée n ProjectAgents, attend que le DF les ait tous enregistrés
+     * et affiche le temps total et l'attente de chaque agent sur le DF
+     */
+    private static void run(AgentContainer container, String prefix, String service, int n,
+                            ServiceDirectoryCache probeCache, long timeout) throws Exception {
+        Agent[] agents = new Agent[n];
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            agents[i] = new ProjectAgent();
+            agents[i].setArguments(new Object[] { service });
+            container.acceptNewAgent(prefix + i, agents[i]).start();
+        }
+
+        while (probeCache.count(service) < n) {
+            if (System.currentTimeMillis() - start > timeout) {
+                System.err.println("[ERREUR] " + prefix + ": only " + probeCache.count(service) +
+                                 "/" + n + " registrations after " + timeout + " ms");
+                break;
+            }
+            Thread.sleep(5);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        // Une seule mesure df.register par agent
+        LatencyHistogram register = new LatencyHistogram();
+        for (Agent agent : agents) {
+            LatencyHistogram own = Metrics.of(agent).histogram("df.register");
+            if (own.count() > 0) {
+                register.record(own.max());
+            }
+        }
+        System.out.println("[BENCH] " + prefix + ": " + elapsed + " ms (" + rate(n, elapsed) +
+                           " reg/s), df.register " + register.summary());
+    }
+
+    /**
+     * batched() - Un agent enregistre n descriptions par Directory.registerBatch()
+     *
+     * Les descriptions sont celles de ProjectAgents (un service, même nom
+     * que le type); le temps va de l'envoi du premier lot jusqu'à la
+     * notification du dernier enregistrement, comme pour run().
+     */
+    private static void batched(AgentContainer container, final int n,
+                                ServiceDirectoryCache probeCache, long timeout) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] outcome = new int[2];
+        final Agent registrar = new Agent();
+        container.acceptNewAgent("registrar", registrar).start();
+
+        final long start = System.currentTimeMillis();
+        registrar.addBehaviour(new OneShotBehaviour(registrar) {
+            public void action() {
+                ReplyCorrelator correlator = new ReplyCorrelator(registrar);
+                registrar.addBehaviour(correlator);
+
+                List<DFAgentDescription> dfds = new ArrayList<DFAgentDescription>(n);
+                for (int i = 0; i < n; i++) {
+                    ServiceDescription sd = new ServiceDescription();
+                    sd.setType(BATCHED_SERVICE);
+                    sd.setName(BATCHED_SERVICE);
+                    DFAgentDescription dfd = new DFAgentDescription();
+                    dfd.setName(new AID("batched" + i, AID.ISLOCALNAME));
+                    dfd.addServices(sd);
+                    dfds.add(dfd);
+                }
+                Directory.registerBatch(correlator, dfds, new Directory.BatchListener() {
+                    public void onDone(int registered, List<String> rejected) {
+                        outcome[0] = registered;
+                        outcome[1] = rejected.size();
+                        done.countDown();
+                    }
+                });
+            }
+        });
+
+        if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+            System.err.println("[ERREUR] batched: no answer after " + timeout + " ms");
+        }
+        long answered = System.currentTimeMillis() - start;
+        while (probeCache.count(BATCHED_SERVICE) < outcome[0]) {
+            if (System.currentTimeMillis() - start > timeout) {
+                System.err.println("[ERREUR] batched: only " + probeCache.count(BATCHED_SERVICE) +
+                                 "/" + outcome[0] + " registrations after " + timeout + " ms");
+                break;
+            }
+            Thread.sleep(5);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("[BENCH] batched: " + elapsed + " ms (" + rate(n, elapsed) + " reg/s), " +
+                           outcome[0] + " registered, " + outcome[1] + " rejected, " +
+                           "all batches answered after " + answered + " ms (" +
+                           (n + Directory.REGISTER_BATCH_SIZE - 1) / Directory.REGISTER_BATCH_SIZE +
+                           " requests)");
+    }
+
+    private static long rate(int n, long elapsed) {
+        return n * 1000L / Math.max(1, elapsed);
+    }
+}
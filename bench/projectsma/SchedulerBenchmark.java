@@ -0,0 +1,195 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.AgentController;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SchedulerBenchmark - Latence d'une réponse urgente sous charge mixte
+ *
+ * Un serveur est occupé en permanence par:
+ * - B tâches de fond, chacune faite d'étapes de S µs de calcul
+ * - un flot de messages "bulk" (INFORM), chacun coûtant S/2 µs
+ * et doit répondre à des pings (REQUEST) envoyés toutes les 5 ms.
+ * On mesure le temps d'aller-retour des pings (percentiles) et le
+ * travail de fond effectué, pour deux serveurs:
+ * 1. jade: un CyclicBehaviour par tâche de fond + un MessageDispatcher
+ *    (ordonnancement à tour de rôle de JADE)
+ * 2. priority: un PriorityScheduler (pings HIGH, bulk LOW, tâches de fond)
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.SchedulerBenchmark 8 1000 1000
+ *   (tâches de fond, durée d'une étape en µs, pings)
+ */
+public class SchedulerBenchmark {
+
+    /** Intervalle entre deux pings (ms) */
+    private static final long PING_INTERVAL = 5;
+
+    /** Messages bulk envoyés par ping */
+    private static final int BULK_PER_PING = 4;
+
+    private static final MessageTemplate PING = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
+    private static final MessageTemplate BULK = MessageTemplate.MatchPerformative(ACLMessage.INFORM);
+
+    // Travail effectué par le serveur pendant la mesure
+    private static final AtomicLong steps = new AtomicLong();
+    private static final AtomicLong bulk = new AtomicLong();
+    private static volatile boolean running;
+
+    public static void main(String[] args) throws Exception {
+        final int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final long stepMicros = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        final int pings = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile profile = new ProfileImpl();
+        profile.setParameter(Profile.LOCAL_PORT, "1299");
+        profile.setParameter("nomtp", "true");
+        AgentContainer main = rt.createMainContainer(profile);
+        Log.setLevel(Log.Level.WARN);
+
+        Log.warn("[BENCH] " + tasks + " background tasks of " + stepMicros + " us steps, " +
+                 BULK_PER_PING + " bulk messages and 1 ping every " + PING_INTERVAL + " ms, " +
+                 pings + " pings");
+
+        // ---- 1. Ordonnancement à tour de rôle de JADE ----
+        run(main, "jade", pings, new Agent() {
+            protected void setup() {
+                for (int i = 0; i < tasks; i++) {
+                    addBehaviour(new CyclicBehaviour(this) {
+                        public void action() {
+                            spin(stepMicros);
+                            steps.incrementAndGet();
+                        }
+                    });
+                }
+                final MessageDispatcher dispatcher = new MessageDispatcher(this);
+                dispatcher.on(ACLMessage.REQUEST, new MessageDispatcher.Handler() {
+                    public void handle(ACLMessage msg) {
+                        dispatcher.reply(msg, ACLMessage.INFORM, "pong");
+                    }
+                });
+                dispatcher.on(ACLMessage.INFORM, new MessageDispatcher.Handler() {
+                    public void handle(ACLMessage msg) {
+                        spin(stepMicros / 2);
+                        bulk.incrementAndGet();
+                    }
+                });
+                addBehaviour(dispatcher);
+            }
+        });
+
+        // ---- 2. PriorityScheduler ----
+        run(main, "priority", pings, new Agent() {
+            protected void setup() {
+                final PriorityScheduler scheduler = new PriorityScheduler(this);
+                scheduler.on("ping", PriorityScheduler.HIGH, PING, new MessageDispatcher.Handler() {
+                    public void handle(ACLMessage msg) {
+                        ACLMessage reply = msg.createReply();
+                        reply.setPerformative(ACLMessage.INFORM);
+                        reply.setContent("pong");
+                        send(reply);
+                    }
+                });
+                scheduler.on("bulk", PriorityScheduler.LOW, BULK, new MessageDispatcher.Handler() {
+                    public void handle(ACLMessage msg) {
+                        spin(stepMicros / 2);
+                        bulk.incrementAndGet();
+                    }
+                });
+                for (int i = 0; i < tasks; i++) {
+                    scheduler.background(new PriorityScheduler.Task() {
+                        public boolean step() {
+                            spin(stepMicros);
+                            steps.incrementAndGet();
+                            return running;
+                        }
+                    });
+                }
+                addBehaviour(scheduler);
+            }
+        });
+
+        Log.flush();
+        System.exit(0);
+    }
+
+    private static void run(AgentContainer main, String name, final int pings, Agent server)
+            throws Exception {
+        steps.set(0);
+        bulk.set(0);
+        running = true;
+        AgentController serverAgent = main.acceptNewAgent("server-" + name, server);
+        serverAgent.start();
+        final AID serverAid = new AID("server-" + name, AID.ISLOCALNAME);
+        final LatencyRecorder latencies = new LatencyRecorder(pings);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // Le client envoie le flot bulk et les pings, puis attend chaque réponse
+        main.acceptNewAgent("client-" + name, new Agent() {
+            protected void setup() {
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
+                        ACLMessage load = new ACLMessage(ACLMessage.INFORM);
+                        load.addReceiver(serverAid);
+                        load.setContent("bulk");
+                        ACLMessage ping = new ACLMessage(ACLMessage.REQUEST);
+                        ping.addReceiver(serverAid);
+                        ping.setContent("ping");
+                        // Le premier dixième sert de préchauffage (JIT)
+                        int warmup = pings / 10;
+                        for (int i = 0; i < warmup + pings; i++) {
+                            for (int j = 0; j < BULK_PER_PING; j++) {
+                                myAgent.send(load);
+                            }
+                            long start = System.nanoTime();
+                            myAgent.send(ping);
+                            myAgent.blockingReceive(MessageTemplate.MatchPerformative(ACLMessage.INFORM));
+                            if (i >= warmup) {
+                                latencies.record(System.nanoTime() - start);
+                            }
+                            try {
+                                Thread.sleep(PING_INTERVAL);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+        }).start();
+
+        long start = System.nanoTime();
+        done.await();
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        running = false;
+        Log.warn("[BENCH] " + name + ": ping round-trip " + latencies.summary());
+        Log.warn("[BENCH] " + name + ": " + steps.get() * 1000 / millis + " background steps/s, " +
+                 bulk.get() * 1000 / millis + " bulk messages/s");
+        serverAgent.kill();
+        main.getAgent("client-" + name).kill();
+    }
+
+    /**
+     * spin() - Calcul simulé (attente active, sans céder le processeur)
+     */
+    private static void spin(long micros) {
+        long end = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < end) {
+            // occupé
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.WakerBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.wrapper.AgentContainer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ShardedDirectoryBenchmark - Débit de découverte avec un annuaire fédéré
+ *
+ * Lance dans la JVM un conteneur principal et K conteneurs, avec un
+ * IndexedDFAgent par conteneur (df-0 ... df-K-1) et la propriété
+ * "projectsma.shards" sur tous les conteneurs. Ensuite:
+ * 1. N ProjectAgents s'enregistrent, répartis sur T types de service
+ * 2. Un chercheur par conteneur fait des recherches par type (annuaire responsable)
+ * 3. Une recherche joker (sans type, non bloquante) vérifie la fusion des résultats
+ *
+ * Comparer K=1 et K>1 donne le gain de la fédération.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.ShardedDirectoryBenchmark 4 2000 40 2000
+ *   (conteneurs, agents, types, recherches par chercheur)
+ */
+public class ShardedDirectoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int containers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int agents = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int types = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        final int searches = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+        // ---- Noms des annuaires, identiques sur tous les conteneurs ----
+        StringBuilder shards = new StringBuilder();
+        for (int i = 0; i < containers; i++) {
+            if (i > 0) {
+                shards.append(',');
+            }
+            shards.append("df-").append(i);
+        }
+
+        // ---- Plateforme ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        AgentContainer main = rt.createMainContainer(mainProfile);
+
+        AgentContainer[] peers = new AgentContainer[containers];
+        for (int i = 0; i < containers; i++) {
+            Profile p = new ProfileImpl();
+            p.setParameter(Profile.MAIN_PORT, "1299");
+            p.setParameter(Profile.CONTAINER_NAME, "Shard-" + i);
+            p.setParameter(Directory.SHARDS_PROPERTY, shards.toString());
+            peers[i] = rt.createAgentContainer(p);
+            peers[i].createNewAgent("df-" + i, IndexedDFAgent.class.getName(), null).start();
+        }
+        Thread.sleep(1000);
+
+        // ---- 1. Enregistrements ----
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < agents; i++) {
+            peers[i % containers].createNewAgent("p" + i, ProjectAgent.class.getName(),
+                                                 new Object[] { "type-" + (i % types) }).start();
+        }
+        final CountDownLatch registered = new CountDownLatch(1);
+        final int expected = agents;
+        peers[0].acceptNewAgent("counter", new Agent() {
+            private ReplyCorrelator correlator;
+
+            protected void setup() {
+                correlator = new ReplyCorrelator(this);
+                addBehaviour(correlator);
+                count();
+            }
+
+            /**
+             * count() - Recherche joker: interroge tous les annuaires et fusionne,
+             * recommence 50 ms plus tard tant que tous ne sont pas enregistrés
+             */
+            private void count() {
+                SearchConstraints all = new SearchConstraints();
+                all.setMaxResults(Long.valueOf(-1));
+                Directory.search(correlator, new DFAgentDescription(), all, new Directory.SearchListener() {
+                    public void onResult(DFAgentDescription[] result) {
+                        if (result.length >= expected) {
+                            registered.countDown();
+                        } else {
+                            retry();
+                        }
+                    }
+
+                    public void onFailure(String reason) {
+                        retry();
+                    }
+                });
+            }
+
+            private void retry() {
+                addBehaviour(new WakerBehaviour(this, 50) {
+                    protected void onWake() {
+                        count();
+                    }
+                });
+            }
+        }).start();
+        registered.await();
+        long registration = System.currentTimeMillis() - start;
+
+        // ---- 2. Recherches par type, un chercheur par conteneur ----
+        final CountDownLatch done = new CountDownLatch(containers);
+        final AtomicLong found = new AtomicLong();
+        start = System.currentTimeMillis();
+        for (int i = 0; i < containers; i++) {
+            final long seed = i;
+            peers[i].acceptNewAgent("searcher" + i, new Agent() {
+                protected void setup() {
+                    addBehaviour(new OneShotBehaviour(this) {
+                        public void action() {
+                            Random random = new Random(seed);
+                            SearchConstraints all = new SearchConstraints();
+                            all.setMaxResults(Long.valueOf(-1));
+                            try {
+                                for (int n = 0; n < searches; n++) {
+                                    DFAgentDescription template = new DFAgentDescription();
+                                    ServiceDescription sd = new ServiceDescription();
+                                    sd.setType("type-" + random.nextInt(types));
+                                    template.addServices(sd);
+                                    found.addAndGet(Directory.search(myAgent, template, all).length);
+                                }
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                            done.countDown();
+                        }
+                    });
+                }
+            }).start();
+        }
+        done.await();
+        long searchTime = Math.max(1, System.currentTimeMillis() - start);
+        long total = (long) containers * searches;
+
+        System.out.println("[BENCH] " + containers + " shard(s), " + agents + " agents, " + types + " types");
+        System.out.println("[BENCH] registration + wildcard check: " + registration + " ms");
+        System.out.println("[BENCH] " + total + " typed searches in " + searchTime + " ms (" +
+                         (total * 1000 / searchTime) + " searches/s, " +
+                         (found.get() / total) + " results/search)");
+
+        main.kill();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,153 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentContainer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TopicBenchmark - Diffusion: un envoi par destinataire ou un sujet (Topics)
+ *
+ * Lance dans la JVM un conteneur principal (avec un IndexedDFAgent) et K
+ * conteneurs de S abonnés chacun. Un éditeur, dans le conteneur principal,
+ * envoie M messages de P octets à tous les abonnés:
+ * 1. direct: un message avec K x S destinataires (comme SenderAgent)
+ * 2. topic: Topics.publish(), une copie par conteneur puis remise locale
+ * On mesure la durée jusqu'à la dernière réception.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.TopicBenchmark 4 100 200 1024
+ *   (conteneurs, abonnés par conteneur, messages, octets par message)
+ */
+public class TopicBenchmark {
+
+    private static final String TOPIC = "bench";
+
+    /** Réceptions attendues pour la mesure en cours */
+    private static volatile CountDownLatch received;
+
+    public static void main(String[] args) throws Exception {
+        int containers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int perContainer = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        final int messages = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int bytes = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+
+        char[] payload = new char[bytes];
+        Arrays.fill(payload, 'x');
+        final String content = new String(payload);
+        final int subscribers = containers * perContainer;
+
+        // ---- Plateforme ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        mainProfile.setParameter(Directory.DF_PROPERTY, "idf");
+        AgentContainer main = rt.createMainContainer(mainProfile);
+        main.createNewAgent("idf", IndexedDFAgent.class.getName(), null).start();
+
+        // ---- Abonnés ----
+        Log.setLevel(Log.Level.WARN);
+        final AtomicLong subscribed = new AtomicLong();
+        for (int c = 0; c < containers; c++) {
+            Profile p = new ProfileImpl();
+            p.setParameter(Profile.MAIN_PORT, "1299");
+            p.setParameter(Profile.CONTAINER_NAME, "Topic-" + c);
+            p.setParameter(Directory.DF_PROPERTY, "idf");
+            AgentContainer container = rt.createAgentContainer(p);
+            for (int i = 0; i < perContainer; i++) {
+                container.acceptNewAgent("s" + c + "-" + i, new Agent() {
+                    protected void setup() {
+                        Topics.subscribe(this, TOPIC);
+                        subscribed.incrementAndGet();
+                        addBehaviour(new CyclicBehaviour(this) {
+                            public void action() {
+                                ACLMessage msg = myAgent.receive();
+                                if (msg == null) {
+                                    block();
+                                    return;
+                                }
+                                received.countDown();
+                            }
+                        });
+                    }
+                }).start();
+            }
+        }
+        while (subscribed.get() < subscribers) {
+            Thread.sleep(50);
+        }
+        // Les relais doivent se connaître (notifications de l'annuaire)
+        Thread.sleep(2000);
+
+        Log.setLevel(Log.Level.INFO);
+        Log.info("[BENCH] " + subscribers + " subscribers on " + containers + " containers, " +
+               messages + " messages of " + bytes + " bytes");
+
+        // ---- 1. Un message avec tous les abonnés comme destinataires ----
+        final AID[] all = new AID[subscribers];
+        for (int c = 0, n = 0; c < containers; c++) {
+            for (int i = 0; i < perContainer; i++) {
+                all[n++] = new AID("s" + c + "-" + i, AID.ISLOCALNAME);
+            }
+        }
+        run(main, "direct", messages, subscribers, new Publish() {
+            public void publish(Agent agent) {
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                for (AID aid : all) {
+                    msg.addReceiver(aid);
+                }
+                msg.setContent(content);
+                agent.send(msg);
+            }
+        });
+
+        // ---- 2. Topics.publish() ----
+        run(main, "topic", messages, subscribers, new Publish() {
+            public void publish(Agent agent) {
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.setContent(content);
+                Topics.publish(agent, TOPIC, msg);
+            }
+        });
+
+        Log.flush();
+        System.exit(0);
+    }
+
+    private interface Publish {
+        void publish(Agent agent);
+    }
+
+    private static int runs = 0;
+
+    private static void run(AgentContainer main, String name, final int messages, int subscribers,
+                            final Publish publish) throws Exception {
+        received = new CountDownLatch(messages * subscribers);
+        long start = System.nanoTime();
+        main.acceptNewAgent("publisher-" + (runs++), new Agent() {
+            protected void setup() {
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
+                        for (int i = 0; i < messages; i++) {
+                            publish.publish(myAgent);
+                        }
+                    }
+                });
+            }
+        }).start();
+        received.await();
+        long millis = (System.nanoTime() - start) / 1000000;
+        Log.info("[BENCH] " + name + ": " + (long) messages * subscribers + " deliveries in " + millis + " ms (" +
+               (millis > 0 ? (long) messages * subscribers * 1000 / millis : 0) + " deliveries/s)");
+    }
+}
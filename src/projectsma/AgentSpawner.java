@@ -0,0 +1,368 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.wrapper.AgentController;
+import jade.wrapper.ContainerController;
+import jade.wrapper.StaleProxyException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * AgentSpawner - Création et arrêt d'un grand nombre d'agents
+ *
+ * Au lieu de lister chaque agent sur la ligne de commande de jade.Boot,
+ * les agents sont créés par programme (ContainerController.createNewAgent):
+ * - les agents sont répartis entre les conteneurs (agent i -> conteneur i % K)
+ * - chaque conteneur est rempli par son propre thread
+ * - spawn() et killAll() mesurent le débit, la mémoire (tas) par agent
+ *   et le nombre de threads de la JVM (voir report())
+ *
+ * Chaque agent JADE a son thread: pour 100 000 agents, réduire la pile
+ * (ex: -Xss256k) et étaler les enregistrements au DF (-projectsma.stagger,
+ * voir ProjectAgent) pour éviter une rafale au démarrage.
+ *
+ * Utilisation dans du code:
+ *   AgentSpawner spawner = new AgentSpawner(containers);
+ *   spawner.spawn("p", ProjectAgent.class.getName(), 10000, new AgentSpawner.Arguments() {
+ *       public Object[] of(int index) {
+ *           return new Object[] { "type-" + (index % 40) };
+ *       }
+ *   });
+ *   Log.info(spawner.report());
+ *   ...
+ *   spawner.killAll();
+ *
+ * En ligne de commande (plateforme et IndexedDFAgent lancés dans la JVM):
+ *   java -Xss256k -cp "bin;lib/*" projectsma.AgentSpawner 4 10000 ProjectAgent 40 5000
+ *   (conteneurs, agents, classe ProjectAgent|ReceiverAgent, types de service, étalement en ms)
+ */
+public class AgentSpawner {
+
+    /**
+     * Arguments - Paramètres de l'agent numéro index (null = aucun)
+     */
+    public interface Arguments {
+        Object[] of(int index);
+    }
+
+    private final ContainerController[] containers;
+
+    /** Agents créés, par conteneur (chaque liste n'est modifiée que par son thread) */
+    private final List<List<AgentController>> spawned = new ArrayList<List<AgentController>>();
+
+    private final ExecutorService threads;
+
+    /** Bilan du dernier spawn() ou killAll() */
+    private String report = "";
+
+    public AgentSpawner(ContainerController[] containers) {
+        this.containers = containers;
+        for (int i = 0; i < containers.length; i++) {
+            spawned.add(new ArrayList<AgentController>());
+        }
+        threads = Executors.newFixedThreadPool(containers.length);
+    }
+
+    /**
+     * count() - Nombre d'agents créés et pas encore arrêtés
+     */
+    public synchronized int count() {
+        int count = 0;
+        for (List<AgentController> agents : spawned) {
+            count += agents.size();
+        }
+        return count;
+    }
+
+    /**
+     * report() - Bilan du dernier spawn() ou killAll()
+     *
+     * Ex: "[OK] spawned 10000 ProjectAgent on 4 containers in 5100 ms (1960 agents/s, ...)"
+     */
+    public synchronized String report() {
+        return report;
+    }
+
+
+    // ==================== Création ====================
+
+    /**
+     * spawn() - Crée et démarre count agents nommés prefix0, prefix1...
+     *
+     * Retourne quand tous les agents sont démarrés (leur setup() peut
+     * être encore en cours). Un agent qui ne peut pas être créé est
+     * signalé et ignoré.
+     *
+     * @param arguments Paramètres de chaque agent (null = aucun)
+     * @return Le nombre d'agents créés
+     */
+    public synchronized int spawn(final String prefix, final String className, final int count,
+                                  final Arguments arguments) throws InterruptedException {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int c = 0; c < containers.length; c++) {
+            final int first = c;
+            results.add(threads.submit(new Callable<Integer>() {
+                public Integer call() {
+                    ContainerController container = containers[first];
+                    List<AgentController> agents = spawned.get(first);
+                    int created = 0;
+                    for (int i = first; i < count; i += containers.length) {
+                        try {
+                            AgentController agent = container.createNewAgent(prefix + i, className,
+                                arguments != null ? arguments.of(i) : null);
+                            agent.start();
+                            agents.add(agent);
+                            created++;
+                        } catch (StaleProxyException e) {
+                            Log.error("cannot spawn " + prefix + i + " - " + e.getMessage());
+                        }
+                    }
+                    return created;
+                }
+            }));
+        }
+        int created = sum(results);
+
+        long nanos = System.nanoTime() - start;
+        long heap = usedHeap() - heapBefore;
+        report = "[OK] spawned " + created + " " + simpleName(className) + " on " + containers.length +
+                 " containers in " + nanos / 1000000 + " ms (" + rate(created, nanos) + " agents/s, " +
+                 (created > 0 ? heap / created : 0) + " heap bytes/agent, " + threadCount() + " threads)";
+        return created;
+    }
+
+
+    // ==================== Pannes simulées ====================
+
+    /**
+     * suspend() - Suspend un agent créé sur "every", répartis sur les conteneurs
+     *
+     * Un agent suspendu ne s'exécute plus mais ne se désenregistre pas:
+     * c'est un agent bloqué, ou perdu avec son conteneur, vu de l'annuaire.
+     *
+     * @return Le nombre d'agents suspendus
+     */
+    public synchronized int suspend(int every) {
+        int suspended = 0;
+        int index = 0;
+        for (List<AgentController> agents : spawned) {
+            for (AgentController agent : agents) {
+                if (index++ % every == 0) {
+                    try {
+                        agent.suspend();
+                        suspended++;
+                    } catch (StaleProxyException e) {
+                        // Agent déjà arrêté
+                    }
+                }
+            }
+        }
+        return suspended;
+    }
+
+
+    // ==================== Arrêt ====================
+
+    /**
+     * killAll() - Arrête tous les agents créés (takeDown() est appelé)
+     *
+     * @return Le nombre d'agents arrêtés
+     */
+    public synchronized int killAll() throws InterruptedException {
+        long start = System.nanoTime();
+
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int c = 0; c < containers.length; c++) {
+            final List<AgentController> agents = spawned.get(c);
+            results.add(threads.submit(new Callable<Integer>() {
+                public Integer call() {
+                    int killed = 0;
+                    for (AgentController agent : agents) {
+                        try {
+                            agent.kill();
+                            killed++;
+                        } catch (StaleProxyException e) {
+                            // Déjà arrêté (ex: enregistrement refusé, doDelete())
+                        }
+                    }
+                    agents.clear();
+                    return killed;
+                }
+            }));
+        }
+        int killed = sum(results);
+
+        long nanos = System.nanoTime() - start;
+        report = "[OK] killed " + killed + " agents in " + nanos / 1000000 + " ms (" +
+                 rate(killed, nanos) + " agents/s)";
+        return killed;
+    }
+
+    /**
+     * shutdown() - Libère les threads du spawner (les agents ne sont pas arrêtés)
+     */
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+
+    // ==================== Mesures ====================
+
+    private static int sum(List<Future<Integer>> results) throws InterruptedException {
+        int total = 0;
+        for (Future<Integer> result : results) {
+            try {
+                total += result.get().intValue();
+            } catch (ExecutionException e) {
+                Log.error("spawner thread failed - " + e.getCause());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Tas occupé après un GC: approximation, suffisante pour un ordre de grandeur par agent
+     */
+    private static long usedHeap() {
+        java.lang.Runtime jvm = java.lang.Runtime.getRuntime();
+        System.gc();
+        return jvm.totalMemory() - jvm.freeMemory();
+    }
+
+    private static int threadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    private static long rate(int count, long nanos) {
+        return nanos > 0 ? count * 1000000000L / nanos : 0;
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+
+    // ==================== Ligne de commande ====================
+
+    public static void main(String[] args) throws Exception {
+        int containerCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int agents = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        String kind = args.length > 2 ? args[2] : "ProjectAgent";
+        final int types = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+        String stagger = args.length > 4 ? args[4] : "0";
+        boolean project = "ProjectAgent".equals(kind);
+
+        // ---- Plateforme: conteneur principal (idf) et K conteneurs ----
+        Runtime rt = Runtime.instance();
+        rt.setCloseVM(true);
+        Profile mainProfile = new ProfileImpl();
+        mainProfile.setParameter(Profile.LOCAL_PORT, "1299");
+        mainProfile.setParameter("nomtp", "true");
+        mainProfile.setParameter(Directory.DF_PROPERTY, "idf");
+        ContainerController main = rt.createMainContainer(mainProfile);
+        main.createNewAgent("idf", IndexedDFAgent.class.getName(), null).start();
+
+        ContainerController[] containers = new ContainerController[containerCount];
+        for (int i = 0; i < containerCount; i++) {
+            Profile p = new ProfileImpl();
+            p.setParameter(Profile.MAIN_PORT, "1299");
+            p.setParameter(Profile.CONTAINER_NAME, "Spawn-" + i);
+            p.setParameter(Directory.DF_PROPERTY, "idf");
+            p.setParameter(ProjectAgent.STAGGER_PROPERTY, stagger);
+            containers[i] = rt.createAgentContainer(p);
+        }
+
+        // Journal des agents: seulement les erreurs pendant la création
+        AgentSpawner spawner = new AgentSpawner(containers);
+        long start = System.currentTimeMillis();
+        Log.Level level = Log.getLevel();
+        Log.setLevel(Log.Level.ERROR);
+        int created;
+        String spawnReport;
+        try {
+            created = spawner.spawn(project ? "p" : "r",
+                                    "projectsma." + kind, agents, project ? new Arguments() {
+                                        public Object[] of(int index) {
+                                            return new Object[] { "type-" + (index % types) };
+                                        }
+                                    } : null);
+            spawnReport = spawner.report();
+
+            // ---- Attendre que tous les ProjectAgents soient dans l'annuaire ----
+            if (project) {
+                awaitDirectorySize(main, created);
+            }
+        } finally {
+            Log.setLevel(level);
+        }
+        Log.info(spawnReport);
+        if (project) {
+            Log.info("[OK] " + created + " agents registered with idf " +
+                   (System.currentTimeMillis() - start) + " ms after the first spawn");
+        }
+
+        // ---- Arrêt (les ProjectAgents se désenregistrent dans takeDown()) ----
+        Log.setLevel(Log.Level.ERROR);
+        String killReport;
+        start = System.currentTimeMillis();
+        try {
+            spawner.killAll();
+            killReport = spawner.report();
+            if (project) {
+                awaitDirectorySize(main, 0);
+            }
+        } finally {
+            Log.setLevel(level);
+        }
+        Log.info(killReport);
+        if (project) {
+            Log.info("[OK] directory empty " + (System.currentTimeMillis() - start) + " ms after the first kill");
+        }
+        spawner.shutdown();
+        Log.flush();
+        System.exit(0);
+    }
+
+    /**
+     * Attend que l'annuaire contienne expected descriptions (recherche joker)
+     */
+    private static void awaitDirectorySize(ContainerController main, final int expected) throws Exception {
+        final CountDownLatch registered = new CountDownLatch(1);
+        main.acceptNewAgent("spawn-counter-" + expected, new Agent() {
+            protected void setup() {
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
+                        SearchConstraints all = new SearchConstraints();
+                        all.setMaxResults(Long.valueOf(-1));
+                        try {
+                            while (Directory.search(myAgent, new DFAgentDescription(), all).length != expected) {
+                                Thread.sleep(100);
+                            }
+                        } catch (Exception e) {
+                            Log.error("registration count failed - " + e.getMessage());
+                        }
+                        registered.countDown();
+                        myAgent.doDelete();
+                    }
+                });
+            }
+        }).start();
+        registered.await();
+    }
+}
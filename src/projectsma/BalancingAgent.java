@@ -0,0 +1,205 @@
+package projectsma;
+
+import jade.core.behaviours.WakerBehaviour;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * BalancingAgent - SearchAgent qui envoie ensuite des requêtes aux fournisseurs trouvés
+ *
+ * Une fois la recherche terminée (voir SearchAgent), l'agent envoie N
+ * requêtes, réparties entre tous les fournisseurs par un ProviderBalancer
+ * (round-robin, least-outstanding ou latency). Un fournisseur qui ne
+ * répond plus est retiré pendant un moment.
+ *
+ * Comme SenderAgent2, les envois sont limités par une CreditWindow: au
+ * plus window() requêtes sans réponse, la suite part à chaque réponse.
+ * Un REFUSE "mailbox full" réduit la fenêtre et la requête est renvoyée
+ * après le délai conseillé.
+ *
+ * Utilisation:
+ *   boss:projectsma.BalancingAgent(3,1.0,5000,300,least-outstanding)
+ *   = attendre 3 fournisseurs (au plus 5 s), puis envoyer 300 requêtes
+ *     (les 3 premiers paramètres sont ceux du SearchAgent)
+ *
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class BalancingAgent extends SearchAgent {
+
+    // ==================== Constantes ====================
+
+    /**
+     * Délai maximal d'attente de la réponse d'un fournisseur (ms)
+     */
+    private static final long REQUEST_TIMEOUT = 5000;
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Répartit les requêtes entre tous les fournisseurs trouvés
+     */
+    private ProviderBalancer balancer;
+    private ReplyCorrelator correlator;
+
+    /**
+     * Requêtes en attente de réponse autorisées (contrôle de flux)
+     */
+    private final CreditWindow window = new CreditWindow();
+
+    // Compteurs des requêtes envoyées aux fournisseurs
+    private int requests = 0;
+    private int remaining = 0;
+    private int sent = 0;
+    private int replies = 0;
+    private int failures = 0;
+    private long requestsStart;
+
+    /**
+     * Un réveil est déjà prévu pour reprendre les envois après un refus
+     */
+    private boolean resumeScheduled = false;
+
+
+    // ==================== Méthode setup() ====================
+
+    /**
+     * setup() - Recherche (SearchAgent), puis prépare l'envoi des requêtes
+     *
+     * Paramètres: les 3 du SearchAgent, puis le nombre de requêtes et la stratégie
+     */
+    protected void setup() {
+        super.setup();
+
+        Object[] args = getArguments();
+        ProviderBalancer.Strategy strategy = ProviderBalancer.Strategy.ROUND_ROBIN;
+        try {
+            if (args != null && args.length > 3) {
+                requests = Integer.parseInt((String) args[3]);
+            }
+            if (args != null && args.length > 4) {
+                strategy = ProviderBalancer.Strategy.parse((String) args[4]);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.warn("Paramètres invalides, utilisation des valeurs par défaut");
+        }
+
+        balancer = new ProviderBalancer(strategy);
+        correlator = new ReplyCorrelator(this);
+        addBehaviour(correlator);
+    }
+
+    protected void onProvidersFound() {
+        if (requests > 0) {
+            sendRequests();
+        }
+    }
+
+
+    // ==================== Méthode sendRequests() ====================
+
+    /**
+     * sendRequests() - Commence l'envoi des requêtes
+     *
+     * Seules window() requêtes partent tout de suite; les suivantes partent
+     * à l'arrivée des réponses (sendAllowed()).
+     */
+    private void sendRequests() {
+        requestsStart = System.currentTimeMillis();
+        remaining = requests;
+        sendAllowed();
+    }
+
+    /**
+     * sendAllowed() - Envoie autant de requêtes que la fenêtre le permet
+     *
+     * Chaque requête est un REQUEST dont l'ontologie est le type de service.
+     * Le ProviderBalancer choisit le destinataire de chacune; la liste des
+     * fournisseurs est relue dans le cache (tenu à jour par l'abonnement),
+     * ce qui prend en compte les agents arrivés ou partis entre-temps.
+     */
+    private void sendAllowed() {
+        while (remaining > 0 && window.canSend()) {
+            try {
+                balancer.update(findProviders(TARGET_SERVICE));
+            } catch (FIPAException e) {
+                Log.error(getLocalName() + " cannot list providers - " + e.getMessage());
+                return;
+            }
+
+            ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+            msg.setOntology(TARGET_SERVICE);
+            msg.setContent("task " + sent);
+
+            String id = balancer.request(correlator, msg, REQUEST_TIMEOUT, new ReplyCorrelator.ReplyHandler() {
+                public void onReply(ACLMessage reply) {
+                    // Refus de contrôle de flux: ralentir et renvoyer plus tard
+                    if (CreditWindow.isBackpressure(reply)) {
+                        remaining++;
+                        resumeLater(window.onRefused(reply));
+                        return;
+                    }
+                    if (reply.getPerformative() == ACLMessage.INFORM) {
+                        window.onAccepted();
+                        replies++;
+                    } else {
+                        window.onLost();
+                        failures++;
+                    }
+                    checkRequestsCompleted();
+                    sendAllowed();
+                }
+
+                public void onTimeout(ACLMessage request) {
+                    window.onLost();
+                    failures++;
+                    checkRequestsCompleted();
+                    sendAllowed();
+                }
+            });
+
+            if (id == null) {
+                Log.error(getLocalName() + " no provider available for '" +
+                        TARGET_SERVICE + "', " + remaining + " request(s) not sent");
+                requests -= remaining;
+                remaining = 0;
+                checkRequestsCompleted();
+                return;
+            }
+            window.onSent();
+            remaining--;
+            sent++;
+        }
+    }
+
+    /**
+     * resumeLater() - Reprend les envois après le délai conseillé par le fournisseur
+     */
+    private void resumeLater(long delay) {
+        if (resumeScheduled) {
+            return;
+        }
+        resumeScheduled = true;
+        addBehaviour(new WakerBehaviour(this, Math.max(1, delay)) {
+            protected void onWake() {
+                resumeScheduled = false;
+                sendAllowed();
+            }
+        });
+    }
+
+    /**
+     * checkRequestsCompleted() - Affiche la répartition quand toutes les requêtes sont terminées
+     */
+    private void checkRequestsCompleted() {
+        if (replies + failures == requests) {
+            Log.info("[OK] " + getLocalName() + ": " + replies + " replies, " +
+                   failures + " failures in " +
+                   (System.currentTimeMillis() - requestsStart) + " ms - " +
+                   balancer.summary());
+        }
+    }
+
+}
+// Fin de la classe BalancingAgent
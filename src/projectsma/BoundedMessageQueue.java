@@ -0,0 +1,431 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.MessageQueue;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * BoundedMessageQueue - File de messages bornée d'un agent
+ *
+ * Par défaut, la file JADE d'un agent grandit sans limite: un afflux de
+ * messages plus rapide que leur traitement finit par épuiser la mémoire.
+ * Cette file est limitée à maxSize messages; au-delà, selon la politique:
+ * - DROP:   le nouveau message est ignoré
+ * - REJECT: le nouveau message est ignoré et l'émetteur reçoit un REFUSE
+ *           avec une indication de débit (voir FlowControlBehaviour)
+ * - SPILL:  le message est écrit sur disque, et relu quand la file se vide
+ *           (l'ordre d'arrivée est conservé)
+ *
+ * Les réponses (in-reply-to renseigné) sont toujours acceptées: l'agent
+ * les a demandées, les perdre bloquerait ses propres conversations.
+ *
+ * JADE appelle addLast() dans le thread de l'émetteur et receive() dans
+ * celui de l'agent, en se synchronisant sur cet objet: les méthodes
+ * synchronized utilisent le même verrou.
+ *
+ * Activation (l'agent redéfinit createMessageQueue(), voir ReceiverAgent):
+ *   java jade.Boot -projectsma.mailbox 1000 -projectsma.overflow reject ...
+ */
+public class BoundedMessageQueue implements MessageQueue {
+
+    // ==================== Configuration ====================
+
+    /** Propriété de la plateforme: taille maximale de la file (absente = file JADE normale) */
+    public static final String MAILBOX_PROPERTY = "projectsma.mailbox";
+
+    /** Propriété de la plateforme: drop, reject (défaut) ou spill */
+    public static final String OVERFLOW_PROPERTY = "projectsma.overflow";
+
+    /** Paramètre du REFUSE: délai conseillé avant de renvoyer (ms) */
+    public static final String RETRY_AFTER = "retry-after";
+
+    /** Paramètre du REFUSE: places libres dans la file au moment du refus */
+    public static final String CREDITS = "credits";
+
+    public enum Policy {
+        DROP, REJECT, SPILL
+    }
+
+    /**
+     * create() - Crée la file bornée d'après les propriétés de la plateforme
+     *
+     * Une valeur invalide (taille non numérique, politique inconnue) est
+     * signalée et l'agent garde la file JADE normale: il démarre quand même.
+     *
+     * @return La file, ou null si MAILBOX_PROPERTY n'est pas définie ou invalide
+     */
+    public static BoundedMessageQueue create(Agent agent) {
+        String size = agent.getProperty(MAILBOX_PROPERTY, null);
+        if (size == null) {
+            return null;
+        }
+        int maxSize;
+        try {
+            maxSize = Integer.parseInt(size.trim());
+        } catch (NumberFormatException e) {
+            Log.error(agent.getLocalName() + " ignores -" + MAILBOX_PROPERTY + " " + size +
+                      ": not a number, mailbox not bounded");
+            return null;
+        }
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        String overflow = agent.getProperty(OVERFLOW_PROPERTY, "reject").trim();
+        Policy policy;
+        try {
+            policy = Policy.valueOf(overflow.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.error(agent.getLocalName() + " ignores -" + OVERFLOW_PROPERTY + " " + overflow +
+                      ": expected drop, reject or spill, mailbox not bounded");
+            return null;
+        }
+        return new BoundedMessageQueue(agent.getLocalName(), maxSize, policy);
+    }
+
+
+    // ==================== Attributs ====================
+
+    private final String owner;
+    private int maxSize;
+    private final Policy policy;
+
+    private final LinkedList<ACLMessage> list = new LinkedList<ACLMessage>();
+
+    /** Messages rejetés, en attente de leur REFUSE (envoyé par le thread de l'agent) */
+    private final List<ACLMessage> refused = new ArrayList<ACLMessage>();
+
+    /** Débordement sur disque (politique SPILL), créé au premier besoin */
+    private SpillFile spill;
+
+    // Métriques
+    private long accepted;
+    private long dropped;
+    private long rejected;
+    private long spilled;
+    private int highWater;
+
+    // Temps de traitement moyen d'un message (ns), mesuré entre deux retraits
+    // quand la file n'était pas vide: les périodes d'inactivité ne comptent pas
+    private long lastRemoval;
+    private boolean busy;
+    private double serviceTime;
+
+
+    // ==================== Constructeur ====================
+
+    /**
+     * @param owner Nom de l'agent (pour les messages et le fichier de débordement)
+     * @param maxSize Nombre maximal de messages en mémoire
+     * @param policy Politique de débordement
+     */
+    public BoundedMessageQueue(String owner, int maxSize, Policy policy) {
+        this.owner = owner;
+        this.maxSize = maxSize;
+        this.policy = policy;
+    }
+
+
+    // ==================== Ajout (thread de l'émetteur) ====================
+
+    public synchronized void addLast(ACLMessage msg) {
+        if (msg.getInReplyTo() != null) {
+            enqueue(msg);
+        } else if (spill != null && !spill.isEmpty()) {
+            // Des messages attendent déjà sur disque: passer après eux
+            toSpill(msg);
+        } else if (list.size() < maxSize) {
+            enqueue(msg);
+        } else {
+            overflow(msg);
+        }
+        highWater = Math.max(highWater, list.size());
+    }
+
+    private void enqueue(ACLMessage msg) {
+        list.addLast(msg);
+        accepted++;
+        if (!busy) {
+            // La file était vide: le traitement de ce message commence maintenant
+            busy = true;
+            lastRemoval = System.nanoTime();
+        }
+    }
+
+    /**
+     * Utilisé par JADE pour remettre un message en tête (putBack)
+     */
+    public synchronized void addFirst(ACLMessage msg) {
+        list.addFirst(msg);
+    }
+
+    private void overflow(ACLMessage msg) {
+        switch (policy) {
+            case DROP:
+                dropped++;
+                break;
+            case REJECT:
+                rejected++;
+                // La liste des refus est bornée elle aussi
+                if (refused.size() < maxSize) {
+                    refused.add(msg);
+                }
+                break;
+            default:
+                toSpill(msg);
+                break;
+        }
+    }
+
+    private void toSpill(ACLMessage msg) {
+        try {
+            if (spill == null) {
+                spill = new SpillFile(owner);
+            }
+            spill.write(msg);
+            spilled++;
+        } catch (IOException e) {
+            Log.error(owner + " cannot spill message to disk, dropped - " + e.getMessage());
+            dropped++;
+        }
+    }
+
+
+    // ==================== Retrait (thread de l'agent) ====================
+
+    public synchronized ACLMessage receive(MessageTemplate template) {
+        refill();
+        Iterator<ACLMessage> it = list.iterator();
+        while (it.hasNext()) {
+            ACLMessage msg = it.next();
+            if (template == null || template.match(msg)) {
+                it.remove();
+                removed(1);
+                return msg;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<ACLMessage> receive(MessageTemplate template, int max) {
+        refill();
+        List<ACLMessage> result = new ArrayList<ACLMessage>();
+        Iterator<ACLMessage> it = list.iterator();
+        while (it.hasNext() && result.size() < max) {
+            ACLMessage msg = it.next();
+            if (template == null || template.match(msg)) {
+                it.remove();
+                result.add(msg);
+            }
+        }
+        removed(result.size());
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * refill() - Relit les messages écrits sur disque quand la file s'est vidée de moitié
+     */
+    private void refill() {
+        if (spill == null || spill.isEmpty() || list.size() > maxSize / 2) {
+            return;
+        }
+        try {
+            while (list.size() < maxSize && !spill.isEmpty()) {
+                list.addLast(spill.read());
+                accepted++;
+            }
+        } catch (IOException e) {
+            Log.error(owner + " cannot read spilled messages - " + e.getMessage());
+            dropped += spill.count;
+            spill.clear();
+        }
+    }
+
+    private void removed(int count) {
+        if (count == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (busy) {
+            double sample = (double) (now - lastRemoval) / count;
+            serviceTime = serviceTime == 0 ? sample : serviceTime + 0.1 * (sample - serviceTime);
+        }
+        lastRemoval = now;
+        busy = !list.isEmpty();
+    }
+
+
+    // ==================== Refus et indications de débit ====================
+
+    /**
+     * takeRefused() - Retire les messages à refuser (appelé dans le thread de l'agent)
+     */
+    public synchronized List<ACLMessage> takeRefused() {
+        if (refused.isEmpty()) {
+            return null;
+        }
+        List<ACLMessage> result = new ArrayList<ACLMessage>(refused);
+        refused.clear();
+        return result;
+    }
+
+    /**
+     * retryAfter() - Délai conseillé aux émetteurs (ms)
+     *
+     * Temps nécessaire pour vider la moitié de la file, au rythme de
+     * traitement mesuré.
+     */
+    public synchronized long retryAfter() {
+        long millis = (long) (list.size() / 2 * serviceTime / 1000000);
+        return Math.max(1, Math.min(5000, millis));
+    }
+
+    /**
+     * credits() - Places libres quand l'émetteur reprendra, après retryAfter()
+     */
+    public synchronized int credits() {
+        return Math.max(1, maxSize - (list.size() + 1) / 2);
+    }
+
+
+    // ==================== MessageQueue ====================
+
+    public synchronized boolean isEmpty() {
+        return list.isEmpty() && (spill == null || spill.isEmpty());
+    }
+
+    /**
+     * setMaxSize() - Appelé par JADE avec la taille de Agent.setQueueSize()
+     *
+     * 0 (valeur par défaut de JADE, "sans limite") ne remplace pas la borne configurée.
+     */
+    public synchronized void setMaxSize(int newSize) {
+        if (newSize > 0) {
+            maxSize = newSize;
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return list.size();
+    }
+
+    public synchronized void copyTo(jade.util.leap.List messages) {
+        for (ACLMessage msg : list) {
+            messages.add(msg);
+        }
+    }
+
+
+    // ==================== Métriques ====================
+
+    /**
+     * stats() - Résumé: profondeur, pic, acceptés, ignorés, refusés, débordés
+     */
+    public synchronized String stats() {
+        return "depth " + list.size() + "/" + maxSize + " (peak " + highWater + ")" +
+               (spill != null ? ", on disk " + spill.count : "") +
+               ", accepted " + accepted + ", dropped " + dropped +
+               ", rejected " + rejected + ", spilled " + spilled +
+               ", " + (serviceTime == 0 ? "-" : String.valueOf((long) (serviceTime / 1000))) + " us/msg";
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getSpilled() {
+        return spilled;
+    }
+
+    public synchronized int getHighWater() {
+        return highWater;
+    }
+
+
+    // ==================== Débordement sur disque ====================
+
+    /**
+     * SpillFile - File FIFO de messages sérialisés dans un fichier temporaire
+     *
+     * Chaque message est écrit comme [taille][octets]. Quand tout a été
+     * relu, le fichier est vidé.
+     */
+    private static class SpillFile {
+        private final RandomAccessFile file;
+        private long readPosition = 0;
+        private long writePosition = 0;
+        int count = 0;
+
+        SpillFile(String owner) throws IOException {
+            File f = File.createTempFile("mailbox-" + owner + "-", ".spill");
+            f.deleteOnExit();
+            file = new RandomAccessFile(f, "rw");
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        void write(ACLMessage msg) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(msg);
+            out.close();
+
+            file.seek(writePosition);
+            file.writeInt(bytes.size());
+            file.write(bytes.toByteArray());
+            writePosition = file.getFilePointer();
+            count++;
+        }
+
+        ACLMessage read() throws IOException {
+            file.seek(readPosition);
+            byte[] bytes = new byte[file.readInt()];
+            file.readFully(bytes);
+            readPosition = file.getFilePointer();
+            count--;
+            if (count == 0) {
+                clear();
+            }
+
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (ACLMessage) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        void clear() {
+            count = 0;
+            readPosition = 0;
+            writePosition = 0;
+            try {
+                file.setLength(0);
+            } catch (IOException e) {
+                // Le fichier sera réécrit depuis le début de toute façon
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.ControllerException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * CaptureReplay - Rejoue une capture (voir MessageCapture) contre de vrais agents
+ *
+ * Pour éprouver hors production un traitement (ReceiverCyclicBehaviour,
+ * MessageDispatcher...) avec la forme réelle du trafic: rafales, mélange
+ * d'émetteurs, tailles de contenu.
+ *
+ * 1. Lit les ARRIVE de la capture
+ * 2. Crée un agent de la classe donnée par récepteur capturé (même nom local)
+ * 3. Crée un agent de rejeu par émetteur (même nom local, suffixe "-replay"
+ *    si le nom est pris, ex: df), qui renvoie ses messages aux dates
+ *    d'origine divisées par la vitesse (0 = au plus vite)
+ * Les messages envoyés par un récepteur capturé (réponses, relais) ne sont
+ * pas rejoués: l'agent rejoué les produit lui-même.
+ *
+ * Avec un répertoire de sortie, la plateforme de rejeu capture elle aussi
+ * (-projectsma.capture): une fois le trafic écoulé, le résumé par flux
+ * donne l'attente dans la file de chaque récepteur sous ce trafic.
+ *
+ * Utilisation:
+ *   java -cp "bin;lib/*" projectsma.CaptureReplay data/messages-1234.capture 10 projectsma.ReceiverAgent replay
+ *   (capture, vitesse, classe des récepteurs, répertoire de sortie facultatif, arguments des récepteurs...)
+ */
+public class CaptureReplay {
+
+    /** Suffixe d'un agent de rejeu dont le nom est déjà pris */
+    private static final String REPLAY_SUFFIX = "-replay";
+
+    /** Délai sans nouvel enregistrement après lequel le trafic est considéré écoulé (ms) */
+    private static final long QUIET_PERIOD = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            Log.error("usage: CaptureReplay <file.capture> [speed] [receiver class] [output directory] [receiver arguments...]");
+            Log.flush();
+            System.exit(1);
+        }
+        File capture = new File(args[0]);
+        final double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        String receiverClass = args.length > 2 ? args[2] : ReceiverAgent.class.getName();
+        String output = args.length > 3 ? args[3] : null;
+        Object[] receiverArgs = args.length > 4 ? Arrays.copyOfRange(args, 4, args.length) : null;
+
+        // ---- Étape 1: Lire la capture, messages rangés par émetteur ----
+        final List<MessageCapture.Record> arrivals = new ArrayList<MessageCapture.Record>();
+        MessageCapture.read(capture, new MessageCapture.Handler() {
+            public void onRecord(MessageCapture.Record record) {
+                if (record.type == MessageCapture.ARRIVE) {
+                    arrivals.add(record);
+                }
+            }
+        });
+        Set<String> receivers = new LinkedHashSet<String>();
+        for (MessageCapture.Record record : arrivals) {
+            receivers.add(record.receiver);
+        }
+        Map<String, List<MessageCapture.Record>> bySender = new LinkedHashMap<String, List<MessageCapture.Record>>();
+        int skipped = 0;
+        long first = -1;
+        long last = 0;
+        for (MessageCapture.Record record : arrivals) {
+            AID sender = record.message.getSender();
+            String name = sender == null ? "unknown" : sender.getLocalName();
+            if (receivers.contains(name)) {
+                skipped++;
+                continue;
+            }
+            List<MessageCapture.Record> records = bySender.get(name);
+            if (records == null) {
+                records = new ArrayList<MessageCapture.Record>();
+                bySender.put(name, records);
+            }
+            records.add(record);
+            if (first < 0) {
+                first = record.micros;
+            }
+            last = record.micros;
+        }
+        if (first < 0) {
+            Log.error("nothing to replay in " + capture);
+            Log.flush();
+            System.exit(1);
+        }
+        final long origin = first;
+        Log.info("[BENCH] replaying " + (arrivals.size() - skipped) + " messages from " + bySender.size() +
+                 " senders to " + receivers.size() + " " + receiverClass + " (" + skipped +
+                 " sent by captured receivers skipped), speed " + (speed > 0 ? speed + "x" : "max"));
+
+        // Journal des agents: seulement les avertissements pendant le rejeu
+        List<String> report = new ArrayList<String>();
+        Log.Level level = Log.getLevel();
+        Log.setLevel(Log.Level.WARN);
+        try {
+            // ---- Étape 2: Plateforme et récepteurs ----
+            Runtime rt = Runtime.instance();
+            rt.setCloseVM(true);
+            Profile profile = new ProfileImpl();
+            profile.setParameter(Profile.LOCAL_PORT, "1299");
+            profile.setParameter("nomtp", "true");
+            if (output != null) {
+                profile.setParameter(MessageCapture.CAPTURE_PROPERTY, output);
+            }
+            AgentContainer main = rt.createMainContainer(profile);
+            for (String receiver : receivers) {
+                main.createNewAgent(receiver, receiverClass, receiverArgs).start();
+            }
+
+            // ---- Étape 3: Un agent de rejeu par émetteur, départ commun ----
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(bySender.size());
+            final long[] startedAt = new long[1];
+            final LatencyRecorder lag = new LatencyRecorder(arrivals.size());
+            for (Map.Entry<String, List<MessageCapture.Record>> e : bySender.entrySet()) {
+                final List<MessageCapture.Record> records = e.getValue();
+                String name = e.getKey();
+                if (exists(main, name)) {
+                    // Agent de la plateforme (df, ams) ou d'un autre conteneur
+                    name += REPLAY_SUFFIX;
+                }
+                main.acceptNewAgent(name, new Agent() {
+                    protected void setup() {
+                        addBehaviour(new OneShotBehaviour(this) {
+                            public void action() {
+                                try {
+                                    start.await();
+                                    for (MessageCapture.Record record : records) {
+                                        long due = startedAt[0] + (speed > 0 ? (long) ((record.micros - origin) * 1000 / speed) : 0);
+                                        long wait = due - System.nanoTime();
+                                        if (wait > 1000000) {
+                                            Thread.sleep(wait / 1000000);
+                                        }
+                                        ACLMessage msg = record.message;
+                                        msg.setSender(myAgent.getAID());
+                                        msg.addReceiver(new AID(record.receiver, AID.ISLOCALNAME));
+                                        myAgent.send(msg);
+                                        synchronized (lag) {
+                                            lag.record(Math.max(0, System.nanoTime() - due));
+                                        }
+                                    }
+                                } catch (InterruptedException ie) {
+                                    return;
+                                } finally {
+                                    done.countDown();
+                                }
+                            }
+                        });
+                    }
+                }).start();
+            }
+
+            startedAt[0] = System.nanoTime();
+            start.countDown();
+            done.await();
+            long millis = Math.max(1, (System.nanoTime() - startedAt[0]) / 1000000);
+            int sent = lag.count();
+            report.add("[BENCH] replayed " + sent + " messages in " + millis + " ms (captured over " +
+                       (last - first) / 1000 + " ms), " + sent * 1000L / millis + " msg/s");
+            report.add("[BENCH] lag behind the captured schedule: " + lag.summary());
+
+            // ---- Étape 4: Attente dans les files des récepteurs, sous ce trafic ----
+            if (output != null) {
+                MessageCapture replay = MessageCapture.open(new File(output));
+                long records = -1;
+                while (replay.getRecords() != records) {
+                    records = replay.getRecords();
+                    Thread.sleep(QUIET_PERIOD);
+                }
+                replay.flush();
+                report.add("[BENCH] replay capture " + replay.getPath() + ": " + replay.stats());
+                for (String line : MessageCapture.summary(replay.getPath())) {
+                    report.add("[BENCH] " + line);
+                }
+            }
+        } finally {
+            Log.setLevel(level);
+        }
+
+        for (String line : report) {
+            Log.info(line);
+        }
+        Log.flush();
+        System.exit(0);
+    }
+
+    private static boolean exists(AgentContainer container, String name) {
+        try {
+            container.getAgent(name);
+            return true;
+        } catch (ControllerException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package projectsma;
+
+import jade.content.lang.Codec.CodecException;
+import jade.lang.acl.ACLMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ContentCodecs - Registre des codecs binaires de contenu
+ *
+ * Au lieu de texte (setContent) ou de sérialisation Java (setContentObject),
+ * le contenu est un objet typé encodé en binaire compact et placé dans le
+ * message avec setByteSequenceContent(). Les champs language et ontology
+ * du message indiquent quel codec l'a produit:
+ *
+ *   language = "projectsma-binary", ontology = (choisie par l'émetteur)
+ *
+ * Décodage à la demande: recevoir un message, le filtrer ou le distribuer
+ * (MessageTemplate, MessageDispatcher) n'utilise que ces champs. Le contenu
+ * n'est décodé que si un traitement appelle extractContent().
+ *
+ * Utilisation:
+ *   ContentCodecs.register("mon-ontologie", new MonCodec());           // une fois
+ *   ContentCodecs.fillContent(msg, "mon-ontologie", objet);            // émetteur
+ *   MonObjet objet = (MonObjet) ContentCodecs.extractContent(msg);     // récepteur
+ */
+public class ContentCodecs {
+
+    /** Langage des messages dont le contenu est encodé par ce registre */
+    public static final String LANGUAGE = "projectsma-binary";
+
+    /** Codecs enregistrés: "langage/ontologie" -> codec */
+    private static final Map<String, PayloadCodec<?>> codecs =
+        new ConcurrentHashMap<String, PayloadCodec<?>>();
+
+    private ContentCodecs() {
+    }
+
+
+    // ==================== Enregistrement ====================
+
+    /**
+     * register() - Associe un codec à une ontologie (langage LANGUAGE)
+     */
+    public static void register(String ontology, PayloadCodec<?> codec) {
+        register(LANGUAGE, ontology, codec);
+    }
+
+    /**
+     * register() - Associe un codec à un couple langage/ontologie
+     */
+    public static void register(String language, String ontology, PayloadCodec<?> codec) {
+        codecs.put(key(language, ontology), codec);
+    }
+
+    /**
+     * isEncoded() - Indique si un codec est enregistré pour ce message
+     */
+    public static boolean isEncoded(ACLMessage msg) {
+        return codecs.containsKey(key(msg.getLanguage(), msg.getOntology()));
+    }
+
+
+    // ==================== Encodage / décodage ====================
+
+    /**
+     * fillContent() - Encode l'objet dans le message
+     *
+     * Renseigne aussi language (LANGUAGE) et ontology.
+     *
+     * @throws CodecException Si aucun codec ne correspond ou si l'objet n'est pas du bon type
+     */
+    @SuppressWarnings("unchecked")
+    public static void fillContent(ACLMessage msg, String ontology, Object payload) throws CodecException {
+        PayloadCodec<Object> codec = (PayloadCodec<Object>) codecFor(LANGUAGE, ontology);
+        if (!codec.getType().isInstance(payload)) {
+            throw new CodecException("Codec for " + ontology + " expects " +
+                                     codec.getType().getName() + ", got " +
+                                     (payload == null ? "null" : payload.getClass().getName()));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            codec.encode(payload, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new CodecException("Cannot encode " + ontology + " content", e);
+        }
+        msg.setLanguage(LANGUAGE);
+        msg.setOntology(ontology);
+        msg.setByteSequenceContent(bytes.toByteArray());
+    }
+
+    /**
+     * extractContent() - Décode le contenu du message
+     *
+     * Le codec est choisi d'après les champs language et ontology du message.
+     *
+     * @throws CodecException Si aucun codec ne correspond ou si le contenu est illisible
+     */
+    public static Object extractContent(ACLMessage msg) throws CodecException {
+        PayloadCodec<?> codec = codecFor(msg.getLanguage(), msg.getOntology());
+        byte[] content = msg.getByteSequenceContent();
+        if (content == null) {
+            throw new CodecException("Message has no content");
+        }
+        try {
+            return codec.decode(new DataInputStream(new ByteArrayInputStream(content)));
+        } catch (IOException e) {
+            throw new CodecException("Cannot decode " + msg.getOntology() + " content", e);
+        } catch (RuntimeException e) {
+            // Contenu forgé ou tronqué que le codec n'a pas su refuser proprement
+            throw new CodecException("Cannot decode " + msg.getOntology() + " content", e);
+        }
+    }
+
+
+    // ==================== Outils pour les codecs ====================
+
+    /**
+     * writeSize() - Écrit un entier positif sur 1 octet s'il est < 128 (jusqu'à 5 sinon)
+     */
+    public static void writeSize(DataOutput out, int size) throws IOException {
+        while ((size & ~0x7f) != 0) {
+            out.writeByte((size & 0x7f) | 0x80);
+            size >>>= 7;
+        }
+        out.writeByte(size);
+    }
+
+    /**
+     * readSize() - Relit un entier écrit par writeSize()
+     *
+     * @throws IOException "Malformed size" si la valeur dépasse Integer.MAX_VALUE
+     *                     ou occupe plus de 5 octets
+     */
+    public static int readSize(DataInput in) throws IOException {
+        // Accumulé sur un long: 5 octets de 7 bits débordent d'un int
+        long size = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            size |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Malformed size");
+                }
+                return (int) size;
+            }
+        }
+        throw new IOException("Malformed size");
+    }
+
+    /**
+     * writeString() - Écrit une chaîne qui peut être null (taille + UTF-8)
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeSize(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeSize(out, utf8.length + 1);
+        out.write(utf8);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int size = readSize(in);
+        if (size == 0) {
+            return null;
+        }
+        // Ne pas allouer plus que ce qui reste à lire (taille forgée)
+        if (in instanceof InputStream && size - 1 > ((InputStream) in).available()) {
+            throw new IOException("Malformed size");
+        }
+        byte[] utf8 = new byte[size - 1];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    private static PayloadCodec<?> codecFor(String language, String ontology) throws CodecException {
+        PayloadCodec<?> codec = codecs.get(key(language, ontology));
+        if (codec == null) {
+            throw new CodecException("No codec for language " + language + ", ontology " + ontology);
+        }
+        return codec;
+    }
+
+    private static String key(String language, String ontology) {
+        return language + "/" + ontology;
+    }
+}
@@ -0,0 +1,105 @@
+package projectsma;
+
+import jade.core.AID;
+
+/**
+ * ContractNetAgent - SearchAgent qui attribue ensuite des tâches par appels d'offres
+ *
+ * Une fois la recherche terminée (voir SearchAgent), l'agent soumet N
+ * tâches à un TaskAllocator: elles sont regroupées en tours, un seul CFP
+ * par fournisseur et par tour, et chacune est attribuée au fournisseur le
+ * moins cher compte tenu de sa charge. Les fournisseurs doivent répondre
+ * aux CFP: voir ContractorAgent.
+ *
+ * Utilisation:
+ *   boss:projectsma.ContractNetAgent(3,1.0,5000,2000)
+ *   = attendre 3 fournisseurs (au plus 5 s), puis attribuer 2000 tâches
+ *     (les 3 premiers paramètres sont ceux du SearchAgent)
+ *
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class ContractNetAgent extends SearchAgent {
+
+    // ==================== Attributs ====================
+
+    /**
+     * Attribution par appels d'offres
+     */
+    private TaskAllocator allocator;
+
+    /** Nombre de tâches à attribuer */
+    private int tasks = 0;
+
+    private int completed = 0;
+    private int failed = 0;
+
+
+    // ==================== Méthode setup() ====================
+
+    /**
+     * setup() - Recherche (SearchAgent), puis prépare l'attribution
+     *
+     * Paramètres: les 3 du SearchAgent, puis le nombre de tâches
+     */
+    protected void setup() {
+        super.setup();
+
+        Object[] args = getArguments();
+        try {
+            if (args != null && args.length > 3) {
+                tasks = Integer.parseInt((String) args[3]);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.warn("Paramètres invalides, utilisation des valeurs par défaut");
+        }
+
+        ReplyCorrelator correlator = new ReplyCorrelator(this);
+        addBehaviour(correlator);
+        allocator = new TaskAllocator(this, correlator, TARGET_SERVICE);
+    }
+
+    protected void onProvidersFound() {
+        if (tasks > 0) {
+            allocateTasks();
+        }
+    }
+
+
+    // ==================== Méthode allocateTasks() ====================
+
+    /**
+     * allocateTasks() - Attribue les tâches par appels d'offres
+     *
+     * Toutes les tâches sont soumises d'un coup: le TaskAllocator les
+     * regroupe en tours (un CFP par fournisseur et par tour) et les
+     * attribue au fournisseur le moins cher compte tenu de sa charge.
+     */
+    private void allocateTasks() {
+        allocator.setProviders(findProviderIds());
+        allocator.setListener(new TaskAllocator.Listener() {
+            public void onCompleted(String taskId, AID provider, String result) {
+                completed++;
+                checkTasksCompleted();
+            }
+
+            public void onFailed(String taskId, String reason) {
+                failed++;
+                Log.debug(getLocalName() + " task " + taskId + " failed - " + reason);
+                checkTasksCompleted();
+            }
+        });
+        for (int i = 0; i < tasks; i++) {
+            allocator.submit("t" + i, "task " + i);
+        }
+        addBehaviour(allocator);
+    }
+
+    private void checkTasksCompleted() {
+        if (allocator.pending() == 0) {
+            Log.info("[OK] " + getLocalName() + ": " + allocator.summary());
+        }
+    }
+
+}
+// Fin de la classe ContractNetAgent
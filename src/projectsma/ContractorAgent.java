@@ -0,0 +1,38 @@
+package projectsma;
+
+/**
+ * ContractorAgent - ProjectAgent qui répond aussi aux appels d'offres
+ * 
+ * En plus des requêtes, l'agent répond aux appels d'offres par lots (CFP,
+ * voir TaskAllocator et TaskBidder), avec "projectsma.work" comme coût
+ * par tâche. Les tâches attribuées sont exécutées comme les requêtes,
+ * par perform() dans le WorkerPool.
+ * 
+ * Utilisation:
+ *   agent1:projectsma.ContractorAgent(construction)
+ *   (mêmes paramètres que le ProjectAgent; voir ContractNetAgent)
+ * 
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class ContractorAgent extends ProjectAgent {
+    
+    // ==================== Méthode addHandlers() ====================
+    
+    /**
+     * addHandlers() - Appels d'offres (Contract-Net): même exécution, par lots
+     */
+    protected void addHandlers(MessageDispatcher dispatcher) {
+        TaskBidder bidder = new TaskBidder(this, dispatcher, bridge, workers, Math.max(1, work),
+                                           new TaskBidder.Performer() {
+            public String perform(String service, String description) throws Exception {
+                return ContractorAgent.this.perform(service, description);
+            }
+        });
+        for (int i = 0; i < services.length; i++) {
+            bidder.serve(services[i]);
+        }
+    }
+    
+}
+// Fin de la classe ContractorAgent
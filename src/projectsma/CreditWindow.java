@@ -0,0 +1,125 @@
+package projectsma;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * CreditWindow - Côté émetteur: limite les messages en attente de réponse
+ *
+ * Un émetteur qui envoie tout d'un coup remplit la file du récepteur.
+ * Avec cette fenêtre, il n'a jamais plus de window() messages sans réponse:
+ * - chaque réponse acceptée agrandit la fenêtre d'un message
+ * - un REFUSE de contrôle de flux (voir FlowControlBehaviour) la divise
+ *   par deux (sans dépasser les crédits annoncés) et suspend les envois
+ *   pendant le délai conseillé, une seule fois par rafale de refus;
+ *   le message refusé est à renvoyer
+ *
+ * À utiliser depuis le thread de l'agent (non synchronisé).
+ *
+ * Utilisation:
+ *   while (window.canSend() && ...) { send(...); window.onSent(); }
+ *   à la réponse: window.onAccepted() ou, si isBackpressure(reply), window.onRefused(reply)
+ */
+public class CreditWindow {
+
+    public static final int DEFAULT_INITIAL = 16;
+    public static final int DEFAULT_MAX = 1024;
+
+    /** Délai appliqué si le REFUSE n'en indique pas (ms) */
+    private static final long DEFAULT_RETRY_AFTER = 100;
+
+    private final int max;
+    private int window;
+    private int inFlight = 0;
+    private long pausedUntil = 0;
+    private long refusals = 0;
+
+    public CreditWindow() {
+        this(DEFAULT_INITIAL, DEFAULT_MAX);
+    }
+
+    /**
+     * @param initial Taille initiale de la fenêtre
+     * @param max Taille maximale de la fenêtre
+     */
+    public CreditWindow(int initial, int max) {
+        this.window = initial;
+        this.max = max;
+    }
+
+    /**
+     * isBackpressure() - Ce message est-il un refus de contrôle de flux?
+     */
+    public static boolean isBackpressure(ACLMessage msg) {
+        return msg.getPerformative() == ACLMessage.REFUSE &&
+               msg.getUserDefinedParameter(BoundedMessageQueue.RETRY_AFTER) != null;
+    }
+
+    /**
+     * canSend() - Peut-on envoyer un message maintenant?
+     */
+    public boolean canSend() {
+        return inFlight < window && System.currentTimeMillis() >= pausedUntil;
+    }
+
+    public void onSent() {
+        inFlight++;
+    }
+
+    /**
+     * onAccepted() - Réponse normale: la fenêtre grandit d'un message
+     */
+    public void onAccepted() {
+        inFlight = Math.max(0, inFlight - 1);
+        window = Math.min(max, window + 1);
+    }
+
+    /**
+     * onLost() - Pas de réponse: la place est libérée, la fenêtre ne change pas
+     */
+    public void onLost() {
+        inFlight = Math.max(0, inFlight - 1);
+    }
+
+    /**
+     * onRefused() - Refus de contrôle de flux: réduit la fenêtre et suspend les envois
+     *
+     * @return Le délai avant de reprendre les envois (ms)
+     */
+    public long onRefused(ACLMessage refuse) {
+        inFlight = Math.max(0, inFlight - 1);
+        refusals++;
+
+        // Les refus qui arrivent pendant la pause viennent de la même rafale:
+        // la fenêtre n'est réduite qu'une fois
+        if (System.currentTimeMillis() < pausedUntil) {
+            return pausedUntil - System.currentTimeMillis();
+        }
+
+        int credits = window / 2;
+        String announced = refuse.getUserDefinedParameter(BoundedMessageQueue.CREDITS);
+        if (announced != null) {
+            credits = Math.min(credits, Integer.parseInt(announced));
+        }
+        window = Math.max(1, credits);
+
+        long retryAfter = DEFAULT_RETRY_AFTER;
+        String hint = refuse.getUserDefinedParameter(BoundedMessageQueue.RETRY_AFTER);
+        if (hint != null) {
+            retryAfter = Long.parseLong(hint);
+        }
+        pausedUntil = System.currentTimeMillis() + retryAfter;
+        return retryAfter;
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    public long refusals() {
+        return refusals;
+    }
+}
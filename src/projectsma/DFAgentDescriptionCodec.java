@@ -0,0 +1,191 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * DFAgentDescriptionCodec - Encodage binaire d'une DFAgentDescription
+ *
+ * Écrit seulement les champs utiles (nom et adresses de l'agent, bail,
+ * services avec leurs propriétés), là où setContentObject() écrit aussi
+ * les noms de classes et les listes internes de JADE.
+ *
+ * Les valeurs de propriétés String, Integer, Long, Double et Boolean
+ * gardent leur type; les autres sont transmises sous forme de texte.
+ */
+public class DFAgentDescriptionCodec implements PayloadCodec<DFAgentDescription> {
+
+    // Types des valeurs de propriété
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int BOOLEAN = 5;
+
+    public Class<DFAgentDescription> getType() {
+        return DFAgentDescription.class;
+    }
+
+
+    // ==================== Encodage ====================
+
+    public void encode(DFAgentDescription dfd, DataOutput out) throws IOException {
+        writeAID(out, dfd.getName());
+        out.writeLong(dfd.getLeaseTime() == null ? -1 : dfd.getLeaseTime().getTime());
+        writeStrings(out, dfd.getAllProtocols());
+        writeStrings(out, dfd.getAllOntologies());
+        writeStrings(out, dfd.getAllLanguages());
+
+        List<ServiceDescription> services = toList(dfd.getAllServices());
+        ContentCodecs.writeSize(out, services.size());
+        for (ServiceDescription sd : services) {
+            ContentCodecs.writeString(out, sd.getName());
+            ContentCodecs.writeString(out, sd.getType());
+            ContentCodecs.writeString(out, sd.getOwnership());
+            writeStrings(out, sd.getAllProtocols());
+            writeStrings(out, sd.getAllOntologies());
+            writeStrings(out, sd.getAllLanguages());
+
+            List<Property> properties = toList(sd.getAllProperties());
+            ContentCodecs.writeSize(out, properties.size());
+            for (Property p : properties) {
+                ContentCodecs.writeString(out, p.getName());
+                writeValue(out, p.getValue());
+            }
+        }
+    }
+
+    private static void writeAID(DataOutput out, AID aid) throws IOException {
+        if (aid == null) {
+            ContentCodecs.writeString(out, null);
+            return;
+        }
+        ContentCodecs.writeString(out, aid.getName());
+        writeStrings(out, aid.getAllAddresses());
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean) value).booleanValue());
+        } else {
+            out.writeByte(STRING);
+            ContentCodecs.writeString(out, value.toString());
+        }
+    }
+
+    private static void writeStrings(DataOutput out, jade.util.leap.Iterator it) throws IOException {
+        List<String> values = toList(it);
+        ContentCodecs.writeSize(out, values.size());
+        for (String value : values) {
+            ContentCodecs.writeString(out, value);
+        }
+    }
+
+
+    // ==================== Décodage ====================
+
+    public DFAgentDescription decode(DataInput in) throws IOException {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(readAID(in));
+        long lease = in.readLong();
+        if (lease >= 0) {
+            dfd.setLeaseTime(new Date(lease));
+        }
+        for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+            dfd.addProtocols(ContentCodecs.readString(in));
+        }
+        for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+            dfd.addOntologies(ContentCodecs.readString(in));
+        }
+        for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+            dfd.addLanguages(ContentCodecs.readString(in));
+        }
+
+        for (int s = ContentCodecs.readSize(in); s > 0; s--) {
+            ServiceDescription sd = new ServiceDescription();
+            sd.setName(ContentCodecs.readString(in));
+            sd.setType(ContentCodecs.readString(in));
+            sd.setOwnership(ContentCodecs.readString(in));
+            for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+                sd.addProtocols(ContentCodecs.readString(in));
+            }
+            for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+                sd.addOntologies(ContentCodecs.readString(in));
+            }
+            for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+                sd.addLanguages(ContentCodecs.readString(in));
+            }
+            for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+                String name = ContentCodecs.readString(in);
+                sd.addProperties(new Property(name, readValue(in)));
+            }
+            dfd.addServices(sd);
+        }
+        return dfd;
+    }
+
+    private static AID readAID(DataInput in) throws IOException {
+        String name = ContentCodecs.readString(in);
+        if (name == null) {
+            return null;
+        }
+        AID aid = new AID(name, AID.ISGUID);
+        for (int i = ContentCodecs.readSize(in); i > 0; i--) {
+            aid.addAddresses(ContentCodecs.readString(in));
+        }
+        return aid;
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return ContentCodecs.readString(in);
+            case INTEGER:
+                return Integer.valueOf(in.readInt());
+            case LONG:
+                return Long.valueOf(in.readLong());
+            case DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case BOOLEAN:
+                return Boolean.valueOf(in.readBoolean());
+            default:
+                throw new IOException("Unknown property value type " + type);
+        }
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> toList(jade.util.leap.Iterator it) {
+        List<T> list = new ArrayList<T>();
+        while (it.hasNext()) {
+            list.add((T) it.next());
+        }
+        return list;
+    }
+}
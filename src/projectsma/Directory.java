@@ -0,0 +1,685 @@
+package projectsma;
+
+import jade.content.lang.Codec.CodecException;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.SimpleBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.FIPAManagementVocabulary;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Directory - Choix de l'annuaire (DF) à contacter
+ *
+ * Par défaut, les agents utilisent le DF de la plateforme (getDefaultDF()).
+ * Si la propriété "projectsma.df" est définie, ils utilisent à la place
+ * l'agent annuaire indiqué (par exemple un IndexedDFAgent):
+ *
+ *   java jade.Boot -projectsma.df idf -agents "idf:projectsma.IndexedDFAgent;..."
+ *
+ * Annuaire fédéré: si la propriété "projectsma.shards" liste plusieurs annuaires
+ * (en général un IndexedDFAgent par conteneur), chaque type de service appartient
+ * à un seul d'entre eux, choisi par hachage du type:
+ * - enregistrement et recherche par type vont directement au bon annuaire
+ * - une recherche sans type (joker) est envoyée à tous, et les résultats fusionnés;
+ *   depuis un comportement, préférer la variante non bloquante
+ *   search(correlator, ...), qui passe par le ReplyCorrelator de l'agent
+ *
+ *   java jade.Boot -projectsma.shards df-0,df-1 -agents "df-0:projectsma.IndexedDFAgent;..."
+ *   java jade.Boot -container -projectsma.shards df-0,df-1 -agents "df-1:projectsma.IndexedDFAgent;..."
+ *
+ * Recherche par pages (searchPages()): les résultats arrivent page par page,
+ * sans attendre ni garder en mémoire la liste complète.
+ *
+ * Enregistrement par lots (registerBatch()): plusieurs descriptions dans une
+ * seule requête binaire par annuaire, au lieu d'une requête FIPA-SL par agent.
+ * Seul IndexedDFAgent le comprend.
+ *
+ * Tous les agents du projet passent par cette classe pour trouver l'annuaire,
+ * ce qui permet de changer d'annuaire sans modifier leur code.
+ */
+public class Directory {
+
+    /**
+     * Propriété de la plateforme donnant le nom local de l'annuaire
+     */
+    public static final String DF_PROPERTY = "projectsma.df";
+
+    /**
+     * Propriété de la plateforme donnant les noms des annuaires fédérés
+     * (séparés par des virgules, dans le même ordre sur tous les conteneurs)
+     */
+    public static final String SHARDS_PROPERTY = "projectsma.shards";
+
+    /**
+     * Préfixe du curseur d'une recherche par pages, placé dans le search-id
+     * des SearchConstraints (suivi du nom du dernier agent reçu).
+     * Seul IndexedDFAgent le comprend.
+     */
+    public static final String CURSOR_PREFIX = "projectsma-after:";
+
+    /**
+     * Propriété de JADE: nombre maximal de résultats du DF de la plateforme
+     * (100 par défaut), appliqué même quand maxResults vaut -1
+     */
+    public static final String JADE_DF_MAX_RESULTS = "jade_domain_df_maxresult";
+
+    private static final int JADE_DF_DEFAULT_MAX_RESULTS = 100;
+
+    /** Délai maximal d'une recherche envoyée à tous les annuaires (ms) */
+    private static final long FAN_OUT_TIMEOUT = 10000;
+
+    /**
+     * Ontologie des requêtes d'enregistrement par lots (contenu binaire,
+     * RegistrationBatchCodec)
+     */
+    public static final String REGISTER_BATCH_ONTOLOGY = "projectsma-register-batch";
+
+    /** Nombre maximal de descriptions par requête d'enregistrement */
+    public static final int REGISTER_BATCH_SIZE = 256;
+
+    /** Délai maximal de réponse à une requête d'enregistrement par lot (ms) */
+    private static final long REGISTER_BATCH_TIMEOUT = 30000;
+
+    static {
+        ContentCodecs.register(REGISTER_BATCH_ONTOLOGY, new RegistrationBatchCodec());
+    }
+
+    private static long fanOutCounter = 0;
+
+    /**
+     * SearchListener - Reçoit le résultat d'une recherche non bloquante (thread de l'agent)
+     */
+    public interface SearchListener {
+        void onResult(DFAgentDescription[] result);
+
+        /** Aucun annuaire n'a répondu */
+        void onFailure(String reason);
+    }
+
+    /**
+     * ResultHandler - Reçoit les résultats d'une recherche par pages, un par un
+     */
+    public interface ResultHandler {
+        /**
+         * @return false pour arrêter la recherche (pas de page suivante)
+         */
+        boolean onResult(DFAgentDescription dfd);
+    }
+
+    /**
+     * BatchListener - Reçoit le bilan d'un enregistrement par lots (thread de l'agent)
+     */
+    public interface BatchListener {
+        /**
+         * @param registered Nombre d'agents enregistrés
+         * @param rejected Noms des agents non enregistrés (déjà enregistrés,
+         *                 annuaire sans réponse ou qui ne comprend pas les lots)
+         */
+        void onDone(int registered, List<String> rejected);
+    }
+
+    private Directory() {
+    }
+
+
+    // ==================== Choix de l'annuaire ====================
+
+    /**
+     * dfFor() - Retourne l'annuaire responsable d'un type de service
+     *
+     * @param agent L'agent qui veut contacter l'annuaire
+     * @param serviceType Le type de service concerné (null = premier annuaire)
+     * @return L'AID de l'annuaire
+     */
+    public static AID dfFor(Agent agent, String serviceType) {
+        AID[] shards = shards(agent);
+        if (shards.length == 1 || serviceType == null) {
+            return shards[0];
+        }
+        return shards[(serviceType.hashCode() & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * shards() - Retourne tous les annuaires (un seul hors fédération)
+     */
+    public static AID[] shards(Agent agent) {
+        String names = agent.getProperty(SHARDS_PROPERTY, null);
+        if (names != null && names.trim().length() > 0) {
+            String[] parts = names.split(",");
+            AID[] shards = new AID[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                shards[i] = new AID(parts[i].trim(), AID.ISLOCALNAME);
+            }
+            return shards;
+        }
+
+        String name = agent.getProperty(DF_PROPERTY, null);
+        if (name == null) {
+            return new AID[] { agent.getDefaultDF() };
+        }
+        return new AID[] { new AID(name, AID.ISLOCALNAME) };
+    }
+
+    /**
+     * partition() - Découpe une description par annuaire responsable
+     *
+     * Un agent qui offre des services de types différents est enregistré
+     * dans chaque annuaire concerné, avec seulement les services de cet annuaire.
+     *
+     * @return annuaire -> description à y enregistrer
+     */
+    public static Map<AID, DFAgentDescription> partition(Agent agent, DFAgentDescription dfd) {
+        Map<AID, DFAgentDescription> parts = new LinkedHashMap<AID, DFAgentDescription>();
+        Iterator it = dfd.getAllServices();
+        if (!it.hasNext()) {
+            parts.put(dfFor(agent, null), dfd);
+            return parts;
+        }
+
+        while (it.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) it.next();
+            AID df = dfFor(agent, sd.getType());
+            DFAgentDescription part = parts.get(df);
+            if (part == null) {
+                part = new DFAgentDescription();
+                part.setName(dfd.getName());
+                part.setLeaseTime(dfd.getLeaseTime());
+                parts.put(df, part);
+            }
+            part.addServices(sd);
+        }
+        return parts;
+    }
+
+
+    // ==================== Enregistrement par lots ====================
+
+    /**
+     * registerBatch() - Enregistre plusieurs descriptions, par lots de REGISTER_BATCH_SIZE
+     *
+     * Chaque description est découpée par annuaire responsable (partition()),
+     * puis chaque annuaire reçoit ses descriptions dans des requêtes de
+     * REGISTER_BATCH_SIZE au plus. Toutes les requêtes partent avant la
+     * première réponse, par le ReplyCorrelator: le thread de l'agent n'attend pas.
+     *
+     * Sert à un agent qui enregistre tout un groupe d'agents (créés par lui,
+     * ou hébergés dans son conteneur); l'annuaire ne vérifie pas que les
+     * agents décrits existent.
+     *
+     * À appeler depuis le thread de l'agent.
+     *
+     * @param correlator Le ReplyCorrelator de l'agent (déjà ajouté à ses comportements)
+     * @param listener Reçoit le bilan quand toutes les requêtes ont une réponse
+     */
+    public static void registerBatch(ReplyCorrelator correlator, List<DFAgentDescription> dfds,
+                                     final BatchListener listener) {
+        final Agent agent = correlator.getAgent();
+        final int total = dfds.size();
+
+        // ---- Étape 1: Découper par annuaire ----
+        Map<AID, List<DFAgentDescription>> byShard = new LinkedHashMap<AID, List<DFAgentDescription>>();
+        for (DFAgentDescription dfd : dfds) {
+            for (Map.Entry<AID, DFAgentDescription> part : partition(agent, dfd).entrySet()) {
+                List<DFAgentDescription> list = byShard.get(part.getKey());
+                if (list == null) {
+                    list = new ArrayList<DFAgentDescription>();
+                    byShard.put(part.getKey(), list);
+                }
+                list.add(part.getValue());
+            }
+        }
+
+        // ---- Étape 2: Une requête par lot, toutes envoyées avant la première réponse ----
+        final BatchTally tally = new BatchTally(agent, total, listener);
+        for (Map.Entry<AID, List<DFAgentDescription>> shard : byShard.entrySet()) {
+            List<DFAgentDescription> list = shard.getValue();
+            for (int from = 0; from < list.size(); from += REGISTER_BATCH_SIZE) {
+                final List<DFAgentDescription> batch =
+                    list.subList(from, Math.min(list.size(), from + REGISTER_BATCH_SIZE));
+                ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+                request.addReceiver(shard.getKey());
+                try {
+                    ContentCodecs.fillContent(request, REGISTER_BATCH_ONTOLOGY,
+                                              batch.toArray(new DFAgentDescription[batch.size()]));
+                } catch (CodecException e) {
+                    // Codec enregistré par cette classe: ne devrait pas arriver
+                    Log.error(agent.getLocalName() + " cannot encode a registration batch - " + e.getMessage());
+                    tally.reject(batch);
+                    continue;
+                }
+                tally.expected++;
+
+                // ---- Étape 3: Noter les refus de chaque lot ----
+                correlator.request(request, REGISTER_BATCH_TIMEOUT, new ReplyCorrelator.ReplyHandler() {
+                    public void onReply(ACLMessage reply) {
+                        if (reply.getPerformative() != ACLMessage.INFORM) {
+                            // NOT_UNDERSTOOD du DF de JADE, FAILURE...
+                            tally.reject(batch);
+                        } else if (reply.getContent() != null && reply.getContent().length() > 0) {
+                            // Contenu: les noms refusés, un par ligne
+                            tally.rejected.addAll(Arrays.asList(reply.getContent().split("\n")));
+                        }
+                        tally.answered();
+                    }
+
+                    public void onTimeout(ACLMessage request) {
+                        tally.reject(batch);
+                        tally.answered();
+                    }
+                });
+            }
+        }
+        if (tally.expected == 0) {
+            tally.finish();
+        }
+    }
+
+    /**
+     * BatchTally - Bilan d'un enregistrement par lots, complété à chaque réponse
+     */
+    private static class BatchTally {
+        private final Agent agent;
+        private final int total;
+        private final BatchListener listener;
+        private final long start = System.nanoTime();
+        final Set<String> rejected = new LinkedHashSet<String>();
+        int expected = 0;
+        private int answers = 0;
+
+        BatchTally(Agent agent, int total, BatchListener listener) {
+            this.agent = agent;
+            this.total = total;
+            this.listener = listener;
+        }
+
+        void reject(List<DFAgentDescription> batch) {
+            for (DFAgentDescription dfd : batch) {
+                rejected.add(dfd.getName().getName());
+            }
+        }
+
+        void answered() {
+            if (++answers == expected) {
+                finish();
+            }
+        }
+
+        void finish() {
+            Metrics.of(agent).histogram("df.register.batch").record(System.nanoTime() - start);
+            listener.onDone(total - rejected.size(), new ArrayList<String>(rejected));
+        }
+    }
+
+
+    // ==================== Recherche ====================
+
+    /**
+     * search() - Recherche auprès du ou des annuaires concernés
+     *
+     * Si le gabarit précise un type de service, seul l'annuaire responsable
+     * est interrogé. Sinon, la requête part vers tous les annuaires en même
+     * temps et les résultats sont fusionnés (sans doublons).
+     *
+     * Comme DFService.search(), cette méthode attend les réponses: elle
+     * bloque le thread de l'agent (à réserver à setup() et aux outils).
+     * Dans un comportement, utiliser search(correlator, ...).
+     * Sa durée est enregistrée dans les métriques de l'agent (df.search).
+     *
+     * @param agent L'agent qui effectue la recherche
+     * @param template Le gabarit de recherche
+     * @param constraints Les contraintes (peut être null)
+     * @return Les descriptions trouvées
+     * @throws FIPAException Si aucun annuaire n'a répondu
+     */
+    public static DFAgentDescription[] search(Agent agent, DFAgentDescription template,
+                                              SearchConstraints constraints) throws FIPAException {
+        long start = System.nanoTime();
+        try {
+            String type = typeOf(template);
+            AID[] shards = shards(agent);
+            if (type != null || shards.length == 1) {
+                AID df = dfFor(agent, type);
+                DFAgentDescription[] result = DFService.search(agent, df, template, constraints);
+                warnIfCapped(agent, df, result.length);
+                return result;
+            }
+            return fanOut(agent, shards, template, constraints);
+        } finally {
+            Metrics.of(agent).histogram("df.search").record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * search() - Variante non bloquante, par le ReplyCorrelator de l'agent
+     *
+     * Les requêtes partent vers le ou les annuaires concernés, et les
+     * réponses sont fusionnées à leur arrivée, sans bloquer les autres
+     * comportements. Un annuaire qui ne répond pas avant FAN_OUT_TIMEOUT
+     * est ignoré (le résultat contient ceux des autres); sa réponse
+     * tardive est retirée de la file par le ReplyCorrelator.
+     *
+     * À appeler depuis le thread de l'agent.
+     *
+     * @param correlator Le ReplyCorrelator de l'agent (déjà ajouté à ses comportements)
+     * @param listener Reçoit la fusion des résultats, ou l'échec si aucun annuaire n'a répondu
+     */
+    public static void search(ReplyCorrelator correlator, DFAgentDescription template,
+                              final SearchConstraints constraints, final SearchListener listener) {
+        final Agent agent = correlator.getAgent();
+        String type = typeOf(template);
+        final AID[] dfs = type != null ? new AID[] { dfFor(agent, type) } : shards(agent);
+        final Map<AID, DFAgentDescription> merged = new LinkedHashMap<AID, DFAgentDescription>();
+        final long start = System.nanoTime();
+
+        ReplyCorrelator.ReplyHandler handler = new ReplyCorrelator.ReplyHandler() {
+            private int answered = 0;
+            private int failed = 0;
+
+            public void onReply(ACLMessage reply) {
+                if (reply.getPerformative() != ACLMessage.INFORM) {
+                    failed++;
+                } else {
+                    try {
+                        for (DFAgentDescription dfd : DFService.decodeResult(reply.getContent())) {
+                            mergeInto(merged, dfd);
+                        }
+                        answered++;
+                    } catch (FIPAException e) {
+                        failed++;
+                    }
+                }
+                finishIfDone();
+            }
+
+            public void onTimeout(ACLMessage request) {
+                failed++;
+                finishIfDone();
+            }
+
+            private void finishIfDone() {
+                if (answered + failed < dfs.length) {
+                    return;
+                }
+                Metrics.of(agent).histogram("df.search").record(System.nanoTime() - start);
+                if (answered == 0) {
+                    listener.onFailure("No directory shard answered the search");
+                    return;
+                }
+                if (answered < dfs.length) {
+                    Log.warn(agent.getLocalName() + " fan-out search: " +
+                             answered + "/" + dfs.length + " shards answered");
+                }
+                try {
+                    listener.onResult(merge(merged, constraints));
+                } catch (FIPAException e) {
+                    listener.onFailure(e.getMessage());
+                }
+            }
+        };
+
+        for (AID df : dfs) {
+            correlator.request(DFService.createRequestMessage(
+                agent, df, FIPAManagementVocabulary.SEARCH, template, constraints), FAN_OUT_TIMEOUT, handler);
+        }
+    }
+
+    /**
+     * searchPages() - Recherche par pages, résultats livrés au fur et à mesure
+     *
+     * Chaque page est une recherche d'au plus pageSize résultats; la suivante
+     * reprend après le dernier agent reçu (curseur dans le search-id). Le
+     * premier résultat est donc disponible dès la première page, et seule
+     * une page à la fois est en mémoire.
+     *
+     * Le DF de JADE ne connaît pas les curseurs: il est interrogé en une seule
+     * recherche, dont les résultats sont livrés de la même façon. Il ne rend
+     * jamais plus de JADE_DF_MAX_RESULTS résultats (100 par défaut, option
+     * -jade_domain_df_maxresult du conteneur principal): si la limite est
+     * atteinte, la liste est sans doute tronquée et un avertissement est écrit.
+     * Sans type de service dans le gabarit, les annuaires fédérés sont
+     * parcourus l'un après l'autre (sans fusion: un agent enregistré dans
+     * plusieurs annuaires est livré une fois par annuaire).
+     *
+     * @param pageSize Nombre maximal de résultats par page
+     * @return Le nombre de résultats livrés
+     * @throws FIPAException Si un annuaire ne répond pas
+     */
+    public static int searchPages(Agent agent, DFAgentDescription template, int pageSize,
+                                  ResultHandler handler) throws FIPAException {
+        String type = typeOf(template);
+        AID[] dfs = type != null ? new AID[] { dfFor(agent, type) } : shards(agent);
+        int delivered = 0;
+
+        for (AID df : dfs) {
+            boolean paged = pageSize > 0 && !df.equals(agent.getDefaultDF());
+            AID after = null;
+            while (true) {
+                // ---- Une page: au plus pageSize résultats après le curseur ----
+                SearchConstraints constraints = new SearchConstraints();
+                constraints.setMaxResults(Long.valueOf(paged ? pageSize : -1));
+                if (after != null) {
+                    constraints.setSearchId(CURSOR_PREFIX + after.getName());
+                }
+                long start = System.nanoTime();
+                DFAgentDescription[] page = DFService.search(agent, df, template, constraints);
+                Metrics.of(agent).histogram("df.search").record(System.nanoTime() - start);
+
+                if (!paged) {
+                    warnIfCapped(agent, df, page.length);
+                }
+
+                // ---- Livraison, avant de demander la page suivante ----
+                for (DFAgentDescription dfd : page) {
+                    delivered++;
+                    if (!handler.onResult(dfd)) {
+                        return delivered;
+                    }
+                }
+                if (!paged || page.length < pageSize) {
+                    break;
+                }
+                after = page[page.length - 1].getName();
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * jadeDfLimit() - Nombre maximal de résultats du DF de JADE
+     *
+     * Lu dans les propriétés du conteneur de l'agent: à donner aussi aux
+     * autres conteneurs si le conteneur principal le change.
+     */
+    public static int jadeDfLimit(Agent agent) {
+        try {
+            int limit = Integer.parseInt(agent.getProperty(JADE_DF_MAX_RESULTS,
+                                                           String.valueOf(JADE_DF_DEFAULT_MAX_RESULTS)).trim());
+            return limit > 0 ? limit : JADE_DF_DEFAULT_MAX_RESULTS;
+        } catch (NumberFormatException e) {
+            return JADE_DF_DEFAULT_MAX_RESULTS;
+        }
+    }
+
+    /**
+     * warnIfCapped() - Signale une recherche du DF de JADE arrêtée par sa limite
+     */
+    static void warnIfCapped(Agent agent, AID df, int results) {
+        if (df.equals(agent.getDefaultDF()) && results >= jadeDfLimit(agent)) {
+            Log.warn(agent.getLocalName() + " DF search returned " + results +
+                     " results, the JADE DF limit: the list is probably truncated (raise -" +
+                     JADE_DF_MAX_RESULTS + " or use an IndexedDFAgent, which pages)");
+        }
+    }
+
+    /**
+     * cursorOf() - Agent après lequel reprendre une recherche (null = début)
+     */
+    public static AID cursorOf(SearchConstraints constraints) {
+        if (constraints == null || constraints.getSearchId() == null
+                || !constraints.getSearchId().startsWith(CURSOR_PREFIX)) {
+            return null;
+        }
+        return new AID(constraints.getSearchId().substring(CURSOR_PREFIX.length()), AID.ISGUID);
+    }
+
+    /**
+     * fanOut() - Envoie la recherche à tous les annuaires, puis fusionne
+     *
+     * Les requêtes partent toutes avant d'attendre la première réponse:
+     * la durée totale est celle de l'annuaire le plus lent, pas la somme.
+     */
+    private static DFAgentDescription[] fanOut(Agent agent, AID[] shards, DFAgentDescription template,
+                                               SearchConstraints constraints) throws FIPAException {
+        String conversationId = "fan-out-" + agent.getLocalName() + "-" + nextFanOutId();
+        for (int i = 0; i < shards.length; i++) {
+            ACLMessage request = DFService.createRequestMessage(
+                agent, shards[i], FIPAManagementVocabulary.SEARCH, template, constraints);
+            request.setConversationId(conversationId);
+            request.setReplyWith(conversationId + "-" + i);
+            agent.send(request);
+        }
+
+        MessageTemplate mt = MessageTemplate.MatchConversationId(conversationId);
+        Map<AID, DFAgentDescription> merged = new LinkedHashMap<AID, DFAgentDescription>();
+        long deadline = System.currentTimeMillis() + FAN_OUT_TIMEOUT;
+        int answered = 0;
+        int failed = 0;
+
+        while (answered + failed < shards.length) {
+            long remaining = deadline - System.currentTimeMillis();
+            ACLMessage reply = remaining > 0 ? agent.blockingReceive(mt, remaining) : null;
+            if (reply == null) {
+                break;
+            }
+            if (reply.getPerformative() == ACLMessage.AGREE) {
+                continue;
+            }
+            if (reply.getPerformative() != ACLMessage.INFORM) {
+                failed++;
+                continue;
+            }
+            answered++;
+            for (DFAgentDescription dfd : DFService.decodeResult(reply.getContent())) {
+                mergeInto(merged, dfd);
+            }
+        }
+
+        if (answered + failed < shards.length) {
+            // Les réponses tardives ne doivent pas rester dans la file
+            agent.addBehaviour(new LateReplies(agent, mt, FAN_OUT_TIMEOUT));
+        }
+        if (answered == 0) {
+            throw new FIPAException("No directory shard answered the search");
+        }
+        if (answered < shards.length) {
+            Log.warn(agent.getLocalName() + " fan-out search: " +
+                   answered + "/" + shards.length + " shards answered");
+        }
+        return merge(merged, constraints);
+    }
+
+    /**
+     * merge() - Résultat d'une recherche envoyée à plusieurs annuaires
+     *
+     * Réapplique le filtre, le tri et la limite des contraintes à la fusion.
+     *
+     * @throws FIPAException Si la requête du search-id est mal formée (voir ServiceQuery.of())
+     */
+    private static DFAgentDescription[] merge(Map<AID, DFAgentDescription> merged,
+                                              SearchConstraints constraints) throws FIPAException {
+        List<DFAgentDescription> result = new ArrayList<DFAgentDescription>(merged.values());
+        ServiceQuery query = ServiceQuery.of(constraints);
+        if (query != null) {
+            // Chaque annuaire a renvoyé ses k premiers: les k premiers de la fusion
+            // sont parmi eux, une fois triés à nouveau
+            for (Iterator<DFAgentDescription> it = result.iterator(); it.hasNext();) {
+                if (!query.accepts(it.next(), null)) {
+                    it.remove();
+                }
+            }
+            query.sort(result, null);
+        }
+        if (constraints != null && constraints.getMaxResults() != null
+                && constraints.getMaxResults().longValue() >= 0
+                && result.size() > constraints.getMaxResults().longValue()) {
+            result = result.subList(0, constraints.getMaxResults().intValue());
+        }
+        return result.toArray(new DFAgentDescription[result.size()]);
+    }
+
+    /**
+     * mergeInto() - Fusionne les descriptions d'un même agent venant de plusieurs annuaires
+     */
+    private static void mergeInto(Map<AID, DFAgentDescription> merged, DFAgentDescription dfd) {
+        DFAgentDescription existing = merged.get(dfd.getName());
+        if (existing == null) {
+            merged.put(dfd.getName(), dfd);
+            return;
+        }
+        Iterator it = dfd.getAllServices();
+        while (it.hasNext()) {
+            existing.addServices((ServiceDescription) it.next());
+        }
+    }
+
+    static String typeOf(DFAgentDescription template) {
+        Iterator it = template.getAllServices();
+        while (it.hasNext()) {
+            String type = ((ServiceDescription) it.next()).getType();
+            if (type != null) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static synchronized long nextFanOutId() {
+        return fanOutCounter++;
+    }
+
+
+    // ==================== Réponses tardives ====================
+
+    /**
+     * LateReplies - Retire de la file les réponses tardives d'une recherche
+     * envoyée à plusieurs annuaires, jusqu'à la fin du délai de grâce
+     */
+    private static class LateReplies extends SimpleBehaviour {
+        private final MessageTemplate mt;
+        private final long until;
+
+        LateReplies(Agent agent, MessageTemplate mt, long grace) {
+            super(agent);
+            this.mt = mt;
+            this.until = System.currentTimeMillis() + grace;
+        }
+
+        public void action() {
+            while (myAgent.receive(mt) != null) {
+                // ignorée
+            }
+            long remaining = until - System.currentTimeMillis();
+            if (remaining > 0) {
+                block(remaining);
+            }
+        }
+
+        public boolean done() {
+            return System.currentTimeMillis() >= until;
+        }
+    }
+}
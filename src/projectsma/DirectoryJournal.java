@@ -0,0 +1,397 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * DirectoryJournal - Sauvegarde sur disque d'un IndexedDirectory
+ *
+ * Sans sauvegarde, un DF redémarré est vide: chaque agent doit se
+ * réenregistrer et les chercheurs attendent que l'annuaire se remplisse.
+ * Ici, l'annuaire est gardé dans deux fichiers:
+ * - <nom>.journal: chaque changement (enregistrement, retrait) est ajouté
+ *   à la fin d'un fichier projeté en mémoire (MappedByteBuffer): écrire
+ *   un changement est une simple copie en mémoire, le système écrit la
+ *   page sur disque (la donnée survit à l'arrêt du processus)
+ * - <nom>.snapshot: l'état complet, réécrit à la compaction, après quoi
+ *   le journal repart de zéro
+ *
+ * Au démarrage, load() lit l'instantané (une seule lecture) puis rejoue
+ * le journal. Chaque enregistrement garde son échéance de bail: ceux qui
+ * ont expiré pendant l'arrêt sont retirés par IndexedDirectory.expire().
+ *
+ * Format du journal:
+ *   en-tête:       [magic int][génération long]  (HEADER octets)
+ *   enregistrement: [longueur int][génération long][crc32 int][type byte][données]
+ * Une longueur 0, une génération différente ou un CRC faux marque la fin
+ * (fin normale, ou écriture interrompue par un arrêt brutal). La génération
+ * change à chaque compaction: les anciens enregistrements restés plus loin
+ * dans le fichier ne sont donc jamais rejoués, sans avoir à tronquer un
+ * fichier projeté (impossible sous Windows).
+ *
+ * Format de l'instantané:
+ *   [magic int][génération long][nombre int]
+ *   nombre x [échéance long][description]
+ *   [crc32 int]  (de tout ce qui précède)
+ * Un instantané dont le CRC est faux n'est pas décodé du tout: le
+ * chargement échoue (IOException) au lieu de lire des tailles forgées.
+ *
+ * Non synchronisé: utilisé sous le verrou de IndexedDirectory.
+ */
+public class DirectoryJournal {
+
+    // ==================== Constantes ====================
+
+    /** Propriété de la plateforme: répertoire des fichiers (absente = pas de sauvegarde) */
+    public static final String JOURNAL_PROPERTY = "projectsma.journal";
+
+    private static final int MAGIC = 0x44464a31;              // "DFJ1"
+    private static final int SNAPSHOT_MAGIC = 0x44465332;     // "DFS2" (avec CRC)
+    private static final int SNAPSHOT_HEADER = 4 + 8 + 4;
+    private static final int HEADER = 16;
+    private static final int RECORD_HEADER = 4 + 8 + 4;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    /** Taille initiale de la projection (doublée au besoin) */
+    private static final int INITIAL_MAPPING = 1 << 20;
+
+    private static final DFAgentDescriptionCodec codec = new DFAgentDescriptionCodec();
+
+
+    // ==================== Attributs ====================
+
+    private final File journalFile;
+    private final File snapshotFile;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    /** Génération courante: celle de l'instantané et des enregistrements valides */
+    private long generation;
+
+    /** Position de fin du journal */
+    private int position = HEADER;
+
+    /** Enregistrements ajoutés depuis la dernière compaction */
+    private int records = 0;
+
+    // Tampon réutilisé pour encoder un enregistrement
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+
+
+    // ==================== Ouverture ====================
+
+    /**
+     * @param directory Répertoire des fichiers (créé au besoin)
+     * @param name Nom de base des fichiers (nom de l'agent DF)
+     */
+    public DirectoryJournal(File directory, String name) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        journalFile = new File(directory, name + ".journal");
+        snapshotFile = new File(directory, name + ".snapshot");
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_MAPPING, channel.size()));
+    }
+
+    /**
+     * records() - Enregistrements ajoutés depuis la dernière compaction
+     */
+    public int records() {
+        return records;
+    }
+
+
+    // ==================== Chargement ====================
+
+    /**
+     * load() - Remplit l'annuaire avec l'instantané puis le journal
+     *
+     * À appeler avant IndexedDirectory.setJournal() (le chargement ne doit
+     * pas être réécrit dans le journal).
+     *
+     * @return Le nombre de descriptions chargées
+     */
+    public int load(IndexedDirectory directory) throws IOException {
+        generation = 0;
+        if (snapshotFile.exists()) {
+            generation = loadSnapshot(directory);
+        }
+
+        // ---- Rejouer le journal de la même génération ----
+        position = HEADER;
+        records = 0;
+        if (mapped.getInt(0) == MAGIC && mapped.getLong(4) == generation) {
+            while (replay(directory)) {
+                records++;
+            }
+        } else {
+            // Journal absent, ou déjà inclus dans l'instantané (arrêt pendant une compaction)
+            reset(generation);
+        }
+        return directory.size();
+    }
+
+    private long loadSnapshot(IndexedDirectory directory) throws IOException {
+        // Lecture en une fois (pas de projection: l'instantané est remplacé
+        // à la compaction, ce que Windows interdit sur un fichier projeté)
+        FileChannel in = new RandomAccessFile(snapshotFile, "r").getChannel();
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate((int) in.size());
+            while (bytes.hasRemaining() && in.read(bytes) >= 0) {
+                // lecture complète
+            }
+            bytes.flip();
+            if (bytes.limit() < SNAPSHOT_HEADER + 4 || bytes.getInt(0) != SNAPSHOT_MAGIC) {
+                throw new IOException(snapshotFile + " is not a directory snapshot");
+            }
+
+            // ---- Vérifier le CRC avant de décoder quoi que ce soit ----
+            int end = bytes.limit() - 4;
+            crc.reset();
+            crc.update(bytes.array(), 0, end);
+            if ((int) crc.getValue() != bytes.getInt(end)) {
+                throw new IOException(snapshotFile + " is corrupt (bad CRC)");
+            }
+            bytes.limit(end);
+
+            DataInput data = new DataInputStream(new ByteBufferInput(bytes));
+            data.readInt();
+            long snapshotGeneration = data.readLong();
+            int count = data.readInt();
+            try {
+                for (int i = 0; i < count; i++) {
+                    long expiresAt = data.readLong();
+                    directory.restore(codec.decode(data), expiresAt);
+                }
+            } catch (RuntimeException e) {
+                // CRC juste mais contenu incohérent (écrit par une autre version?)
+                throw new IOException(snapshotFile + " is unreadable - " + e, e);
+            }
+            return snapshotGeneration;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * replay() - Applique l'enregistrement à la position courante
+     *
+     * @return false à la fin du journal
+     */
+    private boolean replay(IndexedDirectory directory) throws IOException {
+        if (position + RECORD_HEADER > mapped.capacity()) {
+            return false;
+        }
+        int length = mapped.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER + length > mapped.capacity()
+                || mapped.getLong(position + 4) != generation) {
+            return false;
+        }
+        byte[] record = new byte[length];
+        ByteBuffer view = mapped.duplicate();
+        view.position(position + RECORD_HEADER);
+        view.get(record);
+        crc.reset();
+        crc.update(record, 0, length);
+        if ((int) crc.getValue() != mapped.getInt(position + 12)) {
+            return false;
+        }
+
+        DataInput data = new DataInputStream(new ByteBufferInput(ByteBuffer.wrap(record)));
+        if (data.readByte() == PUT) {
+            long expiresAt = data.readLong();
+            directory.restore(codec.decode(data), expiresAt);
+        } else {
+            directory.forget(new AID(ContentCodecs.readString(data), AID.ISGUID));
+        }
+        position += RECORD_HEADER + length;
+        return true;
+    }
+
+
+    // ==================== Écriture ====================
+
+    /**
+     * put() - Enregistrement (ou remplacement) d'une description
+     */
+    public void put(DFAgentDescription dfd, long expiresAt) throws IOException {
+        buffer.reset();
+        out.writeByte(PUT);
+        out.writeLong(expiresAt);
+        codec.encode(dfd, out);
+        append();
+    }
+
+    /**
+     * remove() - Retrait d'un agent
+     */
+    public void remove(AID name) throws IOException {
+        buffer.reset();
+        out.writeByte(REMOVE);
+        ContentCodecs.writeString(out, name.getName());
+        append();
+    }
+
+    private void append() throws IOException {
+        int length = buffer.size();
+        int needed = position + RECORD_HEADER + length + 4;
+        if (needed > mapped.capacity()) {
+            // Agrandir le fichier et la projection
+            long size = mapped.capacity();
+            while (size < needed) {
+                size *= 2;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        byte[] record = buffer.toByteArray();
+        crc.reset();
+        crc.update(record, 0, length);
+
+        // Données d'abord, longueur en dernier: un enregistrement n'est
+        // visible qu'une fois complet
+        mapped.putInt(position + RECORD_HEADER + length, 0);
+        mapped.putLong(position + 4, generation);
+        mapped.putInt(position + 12, (int) crc.getValue());
+        ByteBuffer view = mapped.duplicate();
+        view.position(position + RECORD_HEADER);
+        view.put(record);
+        mapped.putInt(position, length);
+
+        position += RECORD_HEADER + length;
+        records++;
+    }
+
+
+    // ==================== Compaction ====================
+
+    /**
+     * Snapshot - Instantané en cours d'écriture (voir IndexedDirectory.compact())
+     */
+    public class Snapshot {
+        private final File tmp;
+        private final DataOutputStream data;
+        private final CheckedOutputStream checked;
+        private final BufferedOutputStream buffered;
+        private final FileOutputStream stream;
+
+        Snapshot(int count) throws IOException {
+            tmp = new File(snapshotFile.getPath() + ".tmp");
+            stream = new FileOutputStream(tmp);
+            buffered = new BufferedOutputStream(stream, 1 << 16);
+            // Le CRC est calculé au fil de l'écriture, puis ajouté à la fin
+            checked = new CheckedOutputStream(buffered, new CRC32());
+            data = new DataOutputStream(checked);
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeLong(generation + 1);
+            data.writeInt(count);
+        }
+
+        public void add(DFAgentDescription dfd, long expiresAt) throws IOException {
+            data.writeLong(expiresAt);
+            codec.encode(dfd, data);
+        }
+
+        /**
+         * commit() - Remplace l'instantané, puis vide le journal
+         *
+         * Si le processus s'arrête entre les deux, le journal (ancienne
+         * génération) est ignoré au chargement: il est inclus dans l'instantané.
+         */
+        public void commit() throws IOException {
+            data.flush();
+            new DataOutputStream(buffered).writeInt((int) checked.getChecksum().getValue());
+            buffered.flush();
+            stream.getFD().sync();
+            data.close();
+            Files.move(tmp.toPath(), snapshotFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            reset(generation + 1);
+        }
+    }
+
+    /**
+     * beginSnapshot() - Commence un instantané de count descriptions
+     */
+    public Snapshot beginSnapshot(int count) throws IOException {
+        return new Snapshot(count);
+    }
+
+    /**
+     * reset() - Journal vide de la génération donnée
+     */
+    private void reset(long newGeneration) {
+        generation = newGeneration;
+        mapped.putInt(HEADER, 0);
+        mapped.putInt(0, MAGIC);
+        mapped.putLong(4, generation);
+        position = HEADER;
+        records = 0;
+        mapped.force();
+    }
+
+    /**
+     * close() - Écrit les pages modifiées sur disque et ferme le fichier
+     */
+    public void close() throws IOException {
+        mapped.force();
+        channel.close();
+        file.close();
+    }
+
+
+    // ==================== Lecture d'un ByteBuffer ====================
+
+    /**
+     * ByteBufferInput - InputStream sur un ByteBuffer (pour DataInputStream)
+     */
+    private static class ByteBufferInput extends InputStream {
+        private final ByteBuffer bytes;
+
+        ByteBufferInput(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        public int read() {
+            return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, bytes.remaining());
+            bytes.get(b, off, n);
+            return n;
+        }
+
+        public int available() {
+            return bytes.remaining();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.behaviours.SimpleBehaviour;
+
+/**
+ * DiscoveryReadinessBehaviour - Attente événementielle des fournisseurs
+ *
+ * Remplace l'attente fixe (Thread.sleep) avant la première recherche.
+ * Le comportement surveille le cache alimenté par l'abonnement au DF et
+ * se termine dès que:
+ * - le quorum de fournisseurs attendus est atteint, ou
+ * - le délai maximal est dépassé
+ *
+ * Entre deux vérifications, il se bloque avec block(): il ne consomme pas
+ * de CPU et ne bloque pas le thread de l'agent. JADE le réveille à chaque
+ * message reçu (donc à chaque notification du DF) ou à l'échéance.
+ *
+ * Utilisation:
+ *   addBehaviour(cache.subscribe(this, "construction"));
+ *   addBehaviour(new DiscoveryReadinessBehaviour(this, cache, "construction", 2, 1.0, 5000) {
+ *       protected void onReady(int found, boolean timedOut) { ... }
+ *   });
+ */
+public abstract class DiscoveryReadinessBehaviour extends SimpleBehaviour {
+
+    private final ServiceDirectoryCache cache;
+    private final String type;
+
+    /** Nombre de fournisseurs à attendre avant de déclarer la découverte terminée */
+    private final int required;
+
+    /** Délai maximal d'attente (ms) */
+    private final long timeout;
+
+    private long deadline;
+    private boolean finished = false;
+
+    /**
+     * Constructeur
+     *
+     * @param agent L'agent parent
+     * @param cache Le cache tenu à jour par l'abonnement au DF
+     * @param type Le type de service attendu
+     * @param expected Nombre de fournisseurs attendus
+     * @param quorum Fraction des fournisseurs attendus suffisante (entre 0 et 1)
+     * @param timeout Délai maximal d'attente en ms
+     */
+    public DiscoveryReadinessBehaviour(Agent agent, ServiceDirectoryCache cache, String type,
+                                       int expected, double quorum, long timeout) {
+        super(agent);
+        this.cache = cache;
+        this.type = type;
+        this.required = Math.max(1, (int) Math.ceil(expected * quorum));
+        this.timeout = timeout;
+    }
+
+    /**
+     * onStart() - Le délai commence quand le comportement démarre,
+     * pas quand il est créé.
+     */
+    public void onStart() {
+        deadline = System.currentTimeMillis() + timeout;
+    }
+
+    public void action() {
+        int found = cache.count(type);
+        long remaining = deadline - System.currentTimeMillis();
+
+        if (found >= required) {
+            finish(found, false);
+        } else if (remaining <= 0) {
+            finish(found, true);
+        } else {
+            // Attendre la prochaine notification, au plus jusqu'à l'échéance
+            block(remaining);
+        }
+    }
+
+    public boolean done() {
+        return finished;
+    }
+
+    private void finish(int found, boolean timedOut) {
+        finished = true;
+        onReady(found, timedOut);
+    }
+
+    /**
+     * onReady() - Appelée une seule fois, quand la découverte est terminée
+     *
+     * @param found Nombre de fournisseurs connus à cet instant
+     * @param timedOut true si on s'est arrêté sur le délai maximal
+     */
+    protected abstract void onReady(int found, boolean timedOut);
+}
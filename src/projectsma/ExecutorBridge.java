@@ -0,0 +1,133 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * ExecutorBridge - Exécute des tâches hors du thread de l'agent
+ *
+ * Un agent JADE n'a qu'un thread: un traitement long dans un comportement
+ * bloque tous les autres, et les messages s'accumulent dans la file.
+ *
+ * Ce comportement fait le pont entre l'agent et un Executor (pool de threads
+ * ou threads virtuels), à la manière de ThreadedBehaviourFactory:
+ * 1. submit() confie la tâche à l'Executor
+ * 2. la tâche s'exécute dans un autre thread
+ * 3. son résultat est déposé dans une file, et ce comportement est réveillé
+ * 4. la suite (onSuccess / onFailure) s'exécute dans le thread de l'agent,
+ *    qui peut donc envoyer des messages ou modifier son état sans verrou
+ *
+ * Utilisation:
+ *   ExecutorBridge bridge = new ExecutorBridge(this);
+ *   addBehaviour(bridge);
+ *   bridge.submit(executor, tache, new ExecutorBridge.Completion<String>() { ... });
+ */
+public class ExecutorBridge extends CyclicBehaviour {
+
+    // ==================== Interface de rappel ====================
+
+    /**
+     * Completion - Suite d'une tâche, appelée dans le thread de l'agent
+     */
+    public interface Completion<T> {
+        void onSuccess(T result);
+
+        void onFailure(Throwable error);
+    }
+
+
+    // ==================== Attributs ====================
+
+    /** Suites prêtes à être exécutées (déposées par les threads de l'Executor) */
+    private final Queue<Runnable> completed = new ConcurrentLinkedQueue<Runnable>();
+
+    /** Tâches soumises et pas encore terminées (lu et écrit dans le thread de l'agent) */
+    private int pending = 0;
+
+
+    // ==================== Constructeur ====================
+
+    public ExecutorBridge(Agent agent) {
+        super(agent);
+    }
+
+
+    // ==================== Soumission ====================
+
+    /**
+     * submit() - Exécute la tâche dans l'Executor, puis la suite dans l'agent
+     *
+     * À appeler depuis le thread de l'agent.
+     *
+     * @throws RejectedExecutionException Si l'Executor refuse la tâche (file pleine, arrêt)
+     */
+    public <T> void submit(Executor executor, final Callable<T> task, final Completion<T> completion) {
+        executor.execute(new Runnable() {
+            public void run() {
+                T result;
+                try {
+                    result = task.call();
+                } catch (final Throwable error) {
+                    post(new Runnable() {
+                        public void run() {
+                            completion.onFailure(error);
+                        }
+                    });
+                    return;
+                }
+
+                final T value = result;
+                post(new Runnable() {
+                    public void run() {
+                        completion.onSuccess(value);
+                    }
+                });
+            }
+        });
+        pending++;
+    }
+
+    /**
+     * pending() - Nombre de tâches soumises dont la suite n'a pas encore été exécutée
+     */
+    public int pending() {
+        return pending;
+    }
+
+
+    // ==================== Méthode action() ====================
+
+    public void action() {
+        // ---- Étape 1: Exécuter toutes les suites disponibles ----
+        Runnable next;
+        while ((next = completed.poll()) != null) {
+            pending--;
+            next.run();
+        }
+
+        // ---- Étape 2: Attendre la prochaine suite ----
+        block();
+
+        // Une suite déposée entre la fin de la boucle et block() aurait
+        // réveillé un comportement encore actif: on vérifie à nouveau
+        if (!completed.isEmpty()) {
+            restart();
+        }
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    /**
+     * post() - Dépose une suite et réveille le comportement (appelé hors de l'agent)
+     */
+    private void post(Runnable continuation) {
+        completed.add(continuation);
+        restart();
+    }
+}
@@ -0,0 +1,95 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FlowControlBehaviour - Côté récepteur d'une file bornée
+ *
+ * 1. Répond REFUSE aux messages rejetés par la BoundedMessageQueue, avec:
+ *    - RETRY_AFTER: délai conseillé avant de renvoyer (ms)
+ *    - CREDITS: places libres dans la file
+ *    Les refus ne peuvent pas être envoyés depuis addLast(): ce code
+ *    s'exécute dans le thread de l'émetteur, qui tient le verrou de la file.
+ * 2. Affiche périodiquement la profondeur de la file et les compteurs,
+ *    quand ils ont changé.
+ *
+ * JADE réveille tous les comportements bloqués à chaque message posté,
+ * même rejeté: les refus partent donc sans attendre la période.
+ */
+public class FlowControlBehaviour extends CyclicBehaviour {
+
+    /** Intervalle entre deux affichages des métriques (ms) */
+    public static final long REPORT_PERIOD = 2000;
+
+    private final BoundedMessageQueue queue;
+    private long nextReport = System.currentTimeMillis() + REPORT_PERIOD;
+    private String lastReport;
+
+    private final LongAdder messagesOut;
+
+    /**
+     * Publie aussi les compteurs de la file dans les métriques de l'agent
+     * (mailbox.rejected, mailbox.dropped, mailbox.spilled, mailbox.peak)
+     */
+    public FlowControlBehaviour(Agent a, final BoundedMessageQueue queue) {
+        super(a);
+        this.queue = queue;
+
+        Metrics metrics = Metrics.of(a);
+        messagesOut = metrics.counter("messages.out");
+        metrics.gauge("mailbox.rejected", new Metrics.Gauge() {
+            public long value() {
+                return queue.getRejected();
+            }
+        });
+        metrics.gauge("mailbox.dropped", new Metrics.Gauge() {
+            public long value() {
+                return queue.getDropped();
+            }
+        });
+        metrics.gauge("mailbox.spilled", new Metrics.Gauge() {
+            public long value() {
+                return queue.getSpilled();
+            }
+        });
+        metrics.gauge("mailbox.peak", new Metrics.Gauge() {
+            public long value() {
+                return queue.getHighWater();
+            }
+        });
+    }
+
+    public void action() {
+        // ---- Étape 1: Refuser les messages rejetés ----
+        List<ACLMessage> refused = queue.takeRefused();
+        if (refused != null) {
+            String retryAfter = String.valueOf(queue.retryAfter());
+            String credits = String.valueOf(queue.credits());
+            for (ACLMessage msg : refused) {
+                ACLMessage reply = msg.createReply();
+                reply.setPerformative(ACLMessage.REFUSE);
+                reply.setContent("mailbox full");
+                reply.addUserDefinedParameter(BoundedMessageQueue.RETRY_AFTER, retryAfter);
+                reply.addUserDefinedParameter(BoundedMessageQueue.CREDITS, credits);
+                myAgent.send(reply);
+                messagesOut.increment();
+            }
+        }
+
+        // ---- Étape 2: Métriques ----
+        long now = System.currentTimeMillis();
+        if (now >= nextReport) {
+            String report = queue.stats();
+            if (!report.equals(lastReport)) {
+                Log.info("[FLOW] " + myAgent.getLocalName() + ": " + report);
+                lastReport = report;
+            }
+            nextReport = now + REPORT_PERIOD;
+        }
+        block(Math.max(1, nextReport - now));
+    }
+}
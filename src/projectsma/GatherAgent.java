@@ -0,0 +1,137 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GatherAgent - SearchAgent qui pose ensuite chaque question à tous les fournisseurs
+ *
+ * Une fois la recherche terminée (voir SearchAgent), l'agent pose N
+ * questions, l'une après l'autre. Chacune part vers tous les fournisseurs
+ * (ScatterGather) et se termine dès les FIRST_K premières réponses: les
+ * requêtes encore en cours sont annulées (CANCEL, que les ProjectAgents
+ * traitent), la latence est celle des plus rapides, pas du plus lent.
+ *
+ * Utilisation:
+ *   boss:projectsma.GatherAgent(10,1.0,5000,50)
+ *   = attendre 10 fournisseurs (au plus 5 s), puis poser 50 questions
+ *     (les 3 premiers paramètres sont ceux du SearchAgent)
+ *
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class GatherAgent extends SearchAgent {
+
+    // ==================== Constantes ====================
+
+    /**
+     * Réponses utiles après lesquelles une question se termine
+     */
+    private static final int FIRST_K = 3;
+
+    /**
+     * Délai maximal d'une question (ms)
+     */
+    private static final long REQUEST_TIMEOUT = 5000;
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Interrogation de tous les fournisseurs; l'agrégat est la liste des réponses reçues
+     */
+    private ScatterGather<List<String>> gather;
+
+    // Compteurs des questions posées
+    private int questions = 0;
+    private int answered = 0;
+    private int unanswered = 0;
+    private long start;
+
+
+    // ==================== Méthode setup() ====================
+
+    /**
+     * setup() - Recherche (SearchAgent), puis prépare les questions
+     *
+     * Paramètres: les 3 du SearchAgent, puis le nombre de questions
+     */
+    protected void setup() {
+        super.setup();
+
+        Object[] args = getArguments();
+        try {
+            if (args != null && args.length > 3) {
+                questions = Integer.parseInt((String) args[3]);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.warn("Paramètres invalides, utilisation des valeurs par défaut");
+        }
+
+        ReplyCorrelator correlator = new ReplyCorrelator(this);
+        addBehaviour(correlator);
+        gather = new ScatterGather<List<String>>(correlator, Collections.<String>emptyList(),
+                                                 new ScatterGather.Reducer<List<String>>() {
+            public List<String> reduce(List<String> answers, ACLMessage reply) {
+                List<String> more = new ArrayList<String>(answers);
+                more.add(reply.getContent());
+                return more;
+            }
+        }).firstK(FIRST_K).timeout(REQUEST_TIMEOUT)
+          // Les ProjectAgents abandonnent les requêtes annulées
+          .setSendCancel(true);
+    }
+
+    protected void onProvidersFound() {
+        if (questions > 0) {
+            start = System.currentTimeMillis();
+            gatherNext(new LatencyRecorder(questions), 0);
+        }
+    }
+
+
+    // ==================== Méthode gatherNext() ====================
+
+    /**
+     * gatherNext() - Pose la question suivante à tous les fournisseurs
+     *
+     * Les questions se suivent: la suivante part dès que la précédente
+     * a ses FIRST_K réponses (ou à l'échéance), sans attendre les
+     * fournisseurs les plus lents, dont les requêtes sont annulées.
+     */
+    private void gatherNext(final LatencyRecorder latencies, final int index) {
+        if (index == questions) {
+            Log.info("[OK] " + getLocalName() + ": " + answered + " questions answered, " + unanswered +
+                   " without " + FIRST_K + " answers in " +
+                   (System.currentTimeMillis() - start) + " ms, latency " + latencies.summary());
+            return;
+        }
+        List<AID> aids = findProviderIds();
+        if (aids.isEmpty()) {
+            Log.error(getLocalName() + " no provider available for '" + TARGET_SERVICE + "'");
+            return;
+        }
+
+        ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+        msg.setOntology(TARGET_SERVICE);
+        msg.setContent("task " + index);
+        final long sent = System.nanoTime();
+        gather.start(msg, aids, new ScatterGather.Listener<List<String>>() {
+            public void onComplete(ScatterGather.Result<List<String>> result) {
+                latencies.record(System.nanoTime() - sent);
+                if (result.useful >= Math.min(FIRST_K, result.sent)) {
+                    answered++;
+                } else {
+                    unanswered++;
+                }
+                Log.debug(getLocalName() + " question " + index + ": " + result);
+                gatherNext(latencies, index + 1);
+            }
+        });
+    }
+
+}
+// Fin de la classe GatherAgent
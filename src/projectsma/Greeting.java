@@ -0,0 +1,46 @@
+package projectsma;
+
+/**
+ * Greeting - Contenu typé des messages SenderAgent2 <-> ReceiverBehaviour2
+ *
+ * Transmis en binaire (ContentCodecs, ontologie ONTOLOGY) au lieu d'une
+ * chaîne: le numéro du message revient dans la réponse, ce qui permet à
+ * l'émetteur de savoir à quel envoi elle correspond sans relire le texte.
+ */
+public class Greeting {
+
+    /** Ontologie des messages dont le contenu est un Greeting */
+    public static final String ONTOLOGY = "greeting";
+
+    /** Numéro du message chez l'émetteur (repris tel quel dans la réponse) */
+    private final int number;
+
+    /** Texte du message */
+    private final String text;
+
+    public Greeting(int number, String text) {
+        this.number = number;
+        this.text = text;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * register() - Enregistre GreetingCodec dans ContentCodecs
+     *
+     * Sans effet si c'est déjà fait: chaque agent peut l'appeler à son démarrage.
+     */
+    public static void register() {
+        ContentCodecs.register(ONTOLOGY, new GreetingCodec());
+    }
+
+    public String toString() {
+        return "#" + number + " " + text;
+    }
+}
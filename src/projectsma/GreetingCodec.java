@@ -0,0 +1,27 @@
+package projectsma;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * GreetingCodec - Encodage binaire d'un Greeting
+ *
+ * Numéro (taille variable, 1 octet sous 128) puis texte UTF-8.
+ */
+public class GreetingCodec implements PayloadCodec<Greeting> {
+
+    public Class<Greeting> getType() {
+        return Greeting.class;
+    }
+
+    public void encode(Greeting greeting, DataOutput out) throws IOException {
+        ContentCodecs.writeSize(out, greeting.getNumber());
+        ContentCodecs.writeString(out, greeting.getText());
+    }
+
+    public Greeting decode(DataInput in) throws IOException {
+        int number = ContentCodecs.readSize(in);
+        return new Greeting(number, ContentCodecs.readString(in));
+    }
+}
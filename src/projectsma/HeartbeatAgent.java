@@ -0,0 +1,208 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HeartbeatAgent - Relais des battements d'un conteneur (voir Heartbeats)
+ *
+ * - Note les agents du conteneur qui ont battu pendant la période, rangés
+ *   par annuaire (le battement liste les annuaires de l'agent)
+ * - Une fois par période, envoie à chaque annuaire la liste de ses agents
+ *   (un nom par ligne, au plus MAX_BATCH noms par message), avec la durée
+ *   du bail
+ * - Quand un annuaire répond FAILURE avec des noms qu'il ne connaît plus,
+ *   prévient ces agents (FAILURE, contenu = nom de l'annuaire) pour qu'ils
+ *   se réenregistrent. Seules comptent les réponses à un envoi de la
+ *   période en cours ou de la précédente (replyWith), venant de l'annuaire
+ *   destinataire: les échecs de livraison de l'AMS ne sont pas des listes
+ *   de noms, et les avis partent avec IGNORE_FAILURE, sans quoi un agent
+ *   disparu renverrait un FAILURE au relais, et ainsi de suite
+ *
+ * Le relais ne garde aucune liste d'agents d'une période à l'autre: un
+ * agent qui ne bat plus disparaît simplement du message suivant. Si le
+ * conteneur s'arrête, plus aucun battement n'arrive et tous ses agents
+ * expirent.
+ *
+ * Créé automatiquement par Heartbeats.relay(), un par conteneur.
+ */
+public class HeartbeatAgent extends Agent {
+
+    // ==================== Constantes ====================
+
+    /** Nombre maximal de noms par message groupé */
+    public static final int MAX_BATCH = 2000;
+
+    private static final MessageTemplate mt = MessageTemplate.MatchOntology(Heartbeats.ONTOLOGY);
+
+
+    // ==================== Attributs ====================
+
+    /** Agents qui ont battu depuis le dernier envoi, par annuaire */
+    private final Map<AID, Set<AID>> beats = new LinkedHashMap<AID, Set<AID>>();
+
+    /** Envois groupés de la période en cours et de la précédente: replyWith -> annuaire */
+    private Map<String, AID> sent = new HashMap<String, AID>();
+    private Map<String, AID> sentBefore = new HashMap<String, AID>();
+    private long sequence = 0;
+
+    private LongAdder received;
+    private LongAdder batches;
+    private LongAdder rejoins;
+
+
+    // ==================== Méthode setup() ====================
+
+    protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics metrics = Metrics.of(this);
+        received = metrics.counter("heartbeat.received");
+        batches = metrics.counter("heartbeat.batches");
+        rejoins = metrics.counter("heartbeat.rejoins");
+
+        // ---- Battements locaux et réponses des annuaires ----
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(mt);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                if (msg.getPerformative() == ACLMessage.INFORM) {
+                    beat(msg);
+                    received.increment();
+                } else if (msg.getPerformative() == ACLMessage.FAILURE) {
+                    rejoin(msg);
+                }
+            }
+        });
+
+        // ---- Un envoi groupé par période ----
+        addBehaviour(new TickerBehaviour(this, Heartbeats.period(this)) {
+            protected void onTick() {
+                flush();
+            }
+        });
+
+        Log.info(getLocalName() + " is ready to relay heartbeats of container " + here().getName() +
+               " (every " + Heartbeats.period(this) + " ms)");
+    }
+
+    protected void takeDown() {
+        Metrics.release(this);
+    }
+
+
+    // ==================== Envoi groupé ====================
+
+    private void beat(ACLMessage heartbeat) {
+        String content = heartbeat.getContent();
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        for (String df : content.split("\n")) {
+            AID aid = new AID(df, AID.ISGUID);
+            Set<AID> set = beats.get(aid);
+            if (set == null) {
+                set = new LinkedHashSet<AID>();
+                beats.put(aid, set);
+            }
+            set.add(heartbeat.getSender());
+        }
+    }
+
+    /**
+     * flush() - Envoie les battements de la période à chaque annuaire
+     */
+    private void flush() {
+        // Une réponse arrive en moins d'une période: les envois plus anciens sont oubliés
+        Map<String, AID> older = sentBefore;
+        sentBefore = sent;
+        sent = older;
+        sent.clear();
+
+        String lease = String.valueOf(Heartbeats.lease(this));
+        for (Map.Entry<AID, Set<AID>> e : beats.entrySet()) {
+            Set<AID> agents = e.getValue();
+            if (agents.isEmpty()) {
+                continue;
+            }
+            StringBuilder names = new StringBuilder(Math.min(agents.size(), MAX_BATCH) * 48);
+            int count = 0;
+            for (AID agent : agents) {
+                if (count > 0) {
+                    names.append('\n');
+                }
+                names.append(agent.getName());
+                if (++count == MAX_BATCH) {
+                    send(e.getKey(), lease, names.toString());
+                    names.setLength(0);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                send(e.getKey(), lease, names.toString());
+            }
+            // Les ensembles sont gardés (annuaires stables), seulement vidés
+            agents.clear();
+        }
+    }
+
+    private void send(AID df, String lease, String names) {
+        ACLMessage batch = new ACLMessage(ACLMessage.INFORM);
+        batch.addReceiver(df);
+        batch.setOntology(Heartbeats.ONTOLOGY);
+        batch.addUserDefinedParameter(Heartbeats.LEASE, lease);
+        batch.setContent(names);
+        String id = getLocalName() + "-" + (++sequence);
+        batch.setReplyWith(id);
+        sent.put(id, df);
+        send(batch);
+        batches.increment();
+    }
+
+    /**
+     * rejoin() - Prévient les agents que l'annuaire ne connaît plus
+     *
+     * Ignore les FAILURE qui ne répondent pas à un envoi groupé de ce relais,
+     * ou qui ne viennent pas de l'annuaire destinataire (par exemple l'AMS,
+     * quand un message n'a pas pu être livré).
+     */
+    private void rejoin(ACLMessage failure) {
+        String content = failure.getContent();
+        if (content == null || content.isEmpty() || failure.getSender().equals(getAMS())) {
+            return;
+        }
+        String id = failure.getInReplyTo();
+        AID df = id == null ? null : sent.get(id);
+        if (df == null && id != null) {
+            df = sentBefore.get(id);
+        }
+        if (df == null || !df.equals(failure.getSender())) {
+            if (Log.enabled(Log.Level.DEBUG)) {
+                Log.debug(getLocalName() + " ignores a FAILURE from " + failure.getSender().getName());
+            }
+            return;
+        }
+        ACLMessage notice = new ACLMessage(ACLMessage.FAILURE);
+        notice.setOntology(Heartbeats.ONTOLOGY);
+        // Un agent arrêté entre-temps ne doit pas renvoyer d'échec de livraison
+        notice.addUserDefinedParameter(ACLMessage.IGNORE_FAILURE, "true");
+        notice.setContent(df.getName());
+        for (String name : content.split("\n")) {
+            notice.addReceiver(new AID(name, AID.ISGUID));
+            rejoins.increment();
+        }
+        send(notice);
+    }
+}
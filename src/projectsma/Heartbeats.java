@@ -0,0 +1,169 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.StaleProxyException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Heartbeats - Baux de présence renouvelés par battements de cœur groupés
+ *
+ * ProjectAgent.takeDown() se désenregistre proprement, mais un agent
+ * bloqué ou un conteneur arrêté brutalement laisse son entrée dans
+ * l'annuaire. Avec -projectsma.heartbeat <période ms>:
+ * - chaque fournisseur (LeasedProjectAgent) s'enregistre avec un bail
+ *   court (LEASE_PERIODS périodes) et envoie un battement par période au
+ *   relais de son conteneur (HeartbeatAgent, créé au premier usage): un
+ *   message local, sans sérialisation
+ * - le relais envoie à chaque annuaire, une fois par période, la liste
+ *   des agents qui y sont enregistrés et qui ont battu: un message par
+ *   conteneur et par annuaire, et non un DFService.modify() par agent
+ * - l'IndexedDFAgent prolonge le bail de chacun; un agent qui ne bat
+ *   plus (bloqué, tué, conteneur perdu) expire, et les abonnés de
+ *   l'annuaire en sont notifiés
+ * - un agent retiré à tort (battement perdu) est prévenu par le relais
+ *   et se réenregistre
+ *
+ * Les recherches de l'IndexedDFAgent ne retournent jamais un bail échu,
+ * même entre deux passages d'expiration. Le DF de JADE ne comprend pas
+ * les battements: il faut un IndexedDFAgent (-projectsma.df ou shards).
+ *
+ * Utilisation:
+ *   java jade.Boot -projectsma.df idf -projectsma.heartbeat 2000 -agents "idf:projectsma.IndexedDFAgent;..."
+ */
+public class Heartbeats {
+
+    /** Propriété de la plateforme: période des battements (ms), 0 ou absente = désactivé */
+    public static final String HEARTBEAT_PROPERTY = "projectsma.heartbeat";
+
+    /** Ontologie des battements (agent -> relais -> annuaire) */
+    public static final String ONTOLOGY = "projectsma-heartbeat";
+
+    /** Paramètre du message groupé: durée du bail à accorder (ms) */
+    public static final String LEASE = "lease";
+
+    /** Bail = LEASE_PERIODS périodes: un battement perdu ne suffit pas à expirer */
+    public static final int LEASE_PERIODS = 3;
+
+    /** Préfixe du nom local des relais (suivi du nom du conteneur) */
+    public static final String RELAY_PREFIX = "heartbeat-";
+
+    /** Relais déjà créés dans cette JVM, par conteneur */
+    private static final Map<String, Boolean> started = new ConcurrentHashMap<String, Boolean>();
+
+    private Heartbeats() {
+    }
+
+    /**
+     * period() - Période des battements (ms), 0 si désactivé
+     */
+    public static long period(Agent agent) {
+        try {
+            return Math.max(0, Long.parseLong(agent.getProperty(HEARTBEAT_PROPERTY, "0").trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static boolean enabled(Agent agent) {
+        return period(agent) > 0;
+    }
+
+    /**
+     * lease() - Durée du bail d'un agent qui bat (ms)
+     */
+    public static long lease(Agent agent) {
+        return LEASE_PERIODS * period(agent);
+    }
+
+    /**
+     * withLease() - Fixe le bail d'une description à enregistrer
+     */
+    public static DFAgentDescription withLease(Agent agent, DFAgentDescription dfd) {
+        dfd.setLeaseTime(new Date(System.currentTimeMillis() + lease(agent)));
+        return dfd;
+    }
+
+
+    // ==================== Battements ====================
+
+    /**
+     * beat() - Comportement qui envoie un battement par période au relais
+     *
+     * À ajouter une fois l'agent enregistré (un battement pour un agent
+     * inconnu de l'annuaire lui ferait demander un réenregistrement).
+     *
+     * @param dfs Les annuaires où l'agent est enregistré (un seul hors fédération)
+     */
+    public static TickerBehaviour beat(Agent agent, Collection<AID> dfs) {
+        final AID relay = relay(agent);
+        final ACLMessage heartbeat = new ACLMessage(ACLMessage.INFORM);
+        heartbeat.addReceiver(relay);
+        heartbeat.setOntology(ONTOLOGY);
+        // Contenu: un annuaire par ligne (le relais groupe les battements par annuaire)
+        StringBuilder content = new StringBuilder();
+        for (AID df : dfs) {
+            if (content.length() > 0) {
+                content.append('\n');
+            }
+            content.append(df.getName());
+        }
+        heartbeat.setContent(content.toString());
+        return new TickerBehaviour(agent, period(agent)) {
+            public void onStart() {
+                super.onStart();
+                // Premier battement tout de suite
+                myAgent.send(heartbeat);
+            }
+
+            protected void onTick() {
+                myAgent.send(heartbeat);
+            }
+        };
+    }
+
+    /**
+     * alive() - Garde les descriptions dont le bail court encore
+     *
+     * Pour des résultats gardés par l'appelant (pages déjà reçues, listes
+     * conservées): l'échéance est celle connue au moment de la recherche.
+     * Une description sans bail est considérée vivante.
+     */
+    public static List<DFAgentDescription> alive(List<DFAgentDescription> dfds, long now) {
+        List<DFAgentDescription> result = new ArrayList<DFAgentDescription>(dfds.size());
+        for (DFAgentDescription dfd : dfds) {
+            if (dfd.getLeaseTime() == null || dfd.getLeaseTime().getTime() > now) {
+                result.add(dfd);
+            }
+        }
+        return result;
+    }
+
+
+    // ==================== Relais ====================
+
+    /**
+     * relay() - AID du relais du conteneur de l'agent (créé au premier appel)
+     */
+    public static AID relay(Agent agent) {
+        String container = agent.here().getName();
+        String name = RELAY_PREFIX + container;
+        if (started.putIfAbsent(container, Boolean.TRUE) == null) {
+            try {
+                agent.getContainerController()
+                     .createNewAgent(name, HeartbeatAgent.class.getName(), null).start();
+            } catch (StaleProxyException e) {
+                // Nom déjà pris: le relais existe déjà
+            }
+        }
+        return new AID(name, AID.ISLOCALNAME);
+    }
+}
@@ -0,0 +1,600 @@
+package projectsma;
+
+import jade.content.ContentElement;
+import jade.content.abs.AbsIRE;
+import jade.content.abs.AbsPredicate;
+import jade.content.abs.AbsTerm;
+import jade.content.lang.Codec.CodecException;
+import jade.content.lang.sl.SLCodec;
+import jade.content.lang.sl.SLVocabulary;
+import jade.content.onto.BasicOntology;
+import jade.content.onto.Ontology;
+import jade.content.onto.basic.Action;
+import jade.content.onto.basic.Done;
+import jade.content.onto.basic.Result;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Deregister;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.FIPAManagementVocabulary;
+import jade.domain.FIPAAgentManagement.Modify;
+import jade.domain.FIPAAgentManagement.Register;
+import jade.domain.FIPAAgentManagement.Search;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.UnrecognisedParameterValue;
+import jade.domain.FIPAException;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IndexedDFAgent - Directory Facilitator indexé pour un grand nombre d'agents
+ *
+ * Cet agent parle le même protocole FIPA que le DF de JADE: les agents
+ * continuent d'utiliser DFService.register(), DFService.search(), etc.
+ * en lui passant son AID (voir la classe Directory).
+ *
+ * Différences avec le DF par défaut:
+ * - les recherches passent par les index de IndexedDirectory
+ *   (coût proportionnel au nombre de résultats)
+ * - chaque enregistrement a un bail; les baux échus sont retirés
+ *   automatiquement, et les abonnés en sont notifiés
+ * - les résultats sont triés par nom, et une recherche peut reprendre
+ *   après un curseur (recherche par pages, voir Directory.searchPages())
+ * - intervalles et tri sur des propriétés numériques (top-k), par les
+ *   index de valeurs (voir ServiceQuery)
+ *
+ * Actions supportées: register, deregister, modify, search, et les
+ * abonnements (DFService.createSubscriptionMessage). Un abonné injoignable
+ * (FAILURE de remise de l'AMS) perd son abonnement; les autres performatifs
+ * sont ignorés, sans réponse.
+ * Il reçoit aussi les battements groupés des relais HeartbeatAgent, qui
+ * prolongent les baux sans renvoyer les descriptions (voir Heartbeats),
+ * et les enregistrements par lots (Directory.registerBatch()): plusieurs
+ * descriptions dans une seule requête binaire, sans décodage FIPA-SL.
+ *
+ * Utilisation:
+ *   java jade.Boot -projectsma.df idf -agents
+ *       "idf:projectsma.IndexedDFAgent;agent1:projectsma.ProjectAgent(construction)"
+ *
+ * Paramètre optionnel: bail par défaut en ms (0 ou absent = pas d'expiration).
+ * Avec un bail, les agents doivent le renouveler (DFService.modify) avant son échéance.
+ *
+ * Avec -projectsma.journal <répertoire>, l'annuaire est sauvegardé sur disque
+ * (DirectoryJournal) et rechargé au redémarrage: les recherches répondent
+ * tout de suite, sans attendre que les agents se réenregistrent. Les baux
+ * échus pendant l'arrêt sont retirés au chargement.
+ */
+public class IndexedDFAgent extends Agent {
+
+    // ==================== Constantes ====================
+
+    /** Période de vérification des baux (ms) */
+    private static final long SWEEP_PERIOD = 1000;
+
+    /** Nombre maximal de résultats quand la recherche n'en précise pas (comme le DF) */
+    private static final int DEFAULT_MAX_RESULTS = 100;
+
+    /** Taille minimale du journal avant compaction (enregistrements) */
+    private static final int COMPACT_THRESHOLD = 10000;
+
+    private static final MessageTemplate mt =
+        MessageTemplate.MatchOntology(FIPAManagementVocabulary.NAME);
+
+    private static final MessageTemplate heartbeats = MessageTemplate.and(
+        MessageTemplate.MatchOntology(Heartbeats.ONTOLOGY),
+        MessageTemplate.MatchPerformative(ACLMessage.INFORM));
+
+    private static final MessageTemplate batches = MessageTemplate.and(
+        MessageTemplate.MatchOntology(Directory.REGISTER_BATCH_ONTOLOGY),
+        MessageTemplate.MatchPerformative(ACLMessage.REQUEST));
+
+
+    // ==================== Attributs ====================
+
+    private IndexedDirectory directory;
+
+    /** Sauvegarde sur disque (null sans -projectsma.journal) */
+    private DirectoryJournal journal;
+
+    private final Ontology ontology = FIPAManagementOntology.getInstance();
+
+    /**
+     * Abonnement en cours: le message SUBSCRIBE d'origine, l'expression iota
+     * à renvoyer dans chaque notification et le gabarit de recherche
+     */
+    private static class Subscription {
+        ACLMessage subscribe;
+        AbsIRE iota;
+        DFAgentDescription template;
+    }
+
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+    /** Abonnements retirés parce que l'abonné était injoignable */
+    private LongAdder pruned;
+
+
+    // ==================== Méthode setup() ====================
+
+    protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics.of(this);
+
+        long lease = 0;
+        Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            try {
+                lease = Long.parseLong((String) args[0]);
+            } catch (NumberFormatException e) {
+                Log.warn("Bail invalide, pas d'expiration par défaut");
+            }
+        }
+        directory = new IndexedDirectory(lease);
+
+        // ---- Rechargement de l'annuaire sauvegardé ----
+        String journalDir = getProperty(DirectoryJournal.JOURNAL_PROPERTY, null);
+        if (journalDir != null) {
+            openJournal(new File(journalDir), lease);
+        }
+
+        // ---- Langage et ontologie du protocole DF ----
+        // DFService encode ses requêtes en FIPA-SL avec l'ontologie FIPA-Agent-Management
+        SLCodec codec = new SLCodec();
+        getContentManager().registerLanguage(codec, FIPANames.ContentLanguage.FIPA_SL);
+        getContentManager().registerLanguage(codec, FIPANames.ContentLanguage.FIPA_SL0);
+        getContentManager().registerOntology(ontology);
+
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(mt);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                switch (msg.getPerformative()) {
+                    case ACLMessage.REQUEST:
+                        handleRequest(msg);
+                        break;
+                    case ACLMessage.SUBSCRIBE:
+                        handleSubscribe(msg);
+                        break;
+                    case ACLMessage.CANCEL:
+                        handleCancel(msg);
+                        break;
+                    case ACLMessage.FAILURE:
+                        handleDeliveryFailure(msg);
+                        break;
+                    default:
+                        // Pas de NOT_UNDERSTOOD: répondre à une réponse (INFORM,
+                        // NOT_UNDERSTOOD d'un autre agent, avis de l'AMS...) peut
+                        // relancer un échange sans fin
+                        if (Log.enabled(Log.Level.DEBUG)) {
+                            Log.debug(getLocalName() + " ignored " +
+                                      ACLMessage.getPerformative(msg.getPerformative()) +
+                                      " from " + msg.getSender().getLocalName());
+                        }
+                }
+            }
+        });
+
+        // ---- Abonnements: nombre en cours et abonnés injoignables retirés ----
+        pruned = Metrics.of(this).counter("df.subscriptions.pruned");
+        Metrics.of(this).gauge("df.subscriptions", new Metrics.Gauge() {
+            public long value() {
+                return subscriptions.size();
+            }
+        });
+
+        // ---- Battements groupés: prolonger les baux ----
+        final LongAdder heartbeatBatches = Metrics.of(this).counter("heartbeat.batches");
+        final LongAdder renewed = Metrics.of(this).counter("heartbeat.renewed");
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(heartbeats);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                heartbeatBatches.increment();
+                renewed.add(handleHeartbeat(msg));
+            }
+        });
+
+        // ---- Enregistrements par lots ----
+        final LongAdder registerBatches = Metrics.of(this).counter("register.batches");
+        final LongAdder registered = Metrics.of(this).counter("register.batched");
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(batches);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                registerBatches.increment();
+                registered.add(handleRegisterBatch(msg));
+            }
+        });
+
+        // ---- Expiration des baux ----
+        addBehaviour(new TickerBehaviour(this, SWEEP_PERIOD) {
+            protected void onTick() {
+                for (DFAgentDescription dfd : directory.expire(System.currentTimeMillis())) {
+                    notifySubscribers(dfd, null);
+                }
+                // Le journal ne sert qu'à rejouer les changements récents:
+                // au-delà d'une taille comparable à l'annuaire, on le compacte
+                if (journal != null && journal.records() > Math.max(COMPACT_THRESHOLD, directory.size())) {
+                    compact();
+                }
+            }
+        });
+
+        Log.info(getLocalName() + " is ready (indexed directory" +
+               (lease > 0 ? ", lease " + lease + " ms)" : ")"));
+    }
+
+
+    protected void takeDown() {
+        if (journal != null) {
+            compact();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Log.error(getLocalName() + " cannot close the directory journal - " + e.getMessage());
+            }
+        }
+        Metrics.release(this);
+    }
+
+
+    // ==================== Sauvegarde sur disque ====================
+
+    /**
+     * openJournal() - Recharge l'annuaire sauvegardé, puis sauvegarde chaque changement
+     *
+     * En cas d'erreur, l'annuaire démarre vide et reste en mémoire seulement.
+     */
+    private void openJournal(File dir, long lease) {
+        long start = System.nanoTime();
+        try {
+            journal = new DirectoryJournal(dir, getLocalName());
+            int loaded = journal.load(directory);
+            directory.setJournal(journal);
+
+            // ---- Réconcilier les baux échus pendant l'arrêt ----
+            int expired = directory.expire(System.currentTimeMillis()).size();
+
+            Log.info("[OK] " + getLocalName() + " restored " + loaded + " registrations in " +
+                   (System.nanoTime() - start) / 1000000 + " ms (" + expired + " expired)");
+        } catch (IOException e) {
+            Log.error(getLocalName() + " cannot load the directory journal - " + e.getMessage());
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ignored) {
+                    // Fichier déjà inutilisable
+                }
+            }
+            journal = null;
+            directory = new IndexedDirectory(lease);
+        }
+    }
+
+    /**
+     * compact() - Remplace l'instantané par l'état courant et vide le journal
+     */
+    private void compact() {
+        long start = System.nanoTime();
+        try {
+            directory.compact();
+            Log.debug(getLocalName() + " directory compacted (" + directory.size() + " registrations, " +
+                    (System.nanoTime() - start) / 1000000 + " ms)");
+        } catch (IOException e) {
+            Log.error(getLocalName() + " directory compaction failed - " + e.getMessage());
+        }
+    }
+
+
+    // ==================== Requêtes FIPA ====================
+
+    /**
+     * handleRequest() - Traite une action register/deregister/modify/search
+     */
+    private void handleRequest(ACLMessage request) {
+        Action action;
+        try {
+            action = (Action) getContentManager().extractContent(request);
+        } catch (Exception e) {
+            reply(request, ACLMessage.NOT_UNDERSTOOD, e.getMessage());
+            return;
+        }
+
+        try {
+            Object act = action.getAction();
+            if (act instanceof Register) {
+                DFAgentDescription dfd = (DFAgentDescription) ((Register) act).getDescription();
+                directory.register(dfd);
+                notifySubscribers(null, dfd);
+                replyContent(request, new Done(action));
+            } else if (act instanceof Deregister) {
+                DFAgentDescription old = directory.deregister(
+                    ((DFAgentDescription) ((Deregister) act).getDescription()).getName());
+                notifySubscribers(old, null);
+                replyContent(request, new Done(action));
+            } else if (act instanceof Modify) {
+                DFAgentDescription dfd = (DFAgentDescription) ((Modify) act).getDescription();
+                DFAgentDescription old = directory.modify(dfd);
+                notifySubscribers(old, dfd);
+                replyContent(request, new Done(action));
+            } else if (act instanceof Search) {
+                Search search = (Search) act;
+                DFAgentDescription template = (DFAgentDescription) search.getDescription();
+                ServiceQuery query;
+                try {
+                    query = ServiceQuery.of(search.getConstraints());
+                } catch (UnrecognisedParameterValue e) {
+                    reply(request, ACLMessage.NOT_UNDERSTOOD, e.getMessage());
+                    return;
+                }
+                List<DFAgentDescription> found = query != null
+                    ? directory.query(template, query, maxResults(search.getConstraints()))
+                    : directory.search(template, Directory.cursorOf(search.getConstraints()),
+                                       maxResults(search.getConstraints()));
+                replyContent(request, new Result(action, toLeapList(found)));
+            } else {
+                reply(request, ACLMessage.REFUSE, "(unsupported-act " + act + ")");
+            }
+        } catch (FIPAException e) {
+            // AlreadyRegistered, NotRegistered...
+            reply(request, ACLMessage.FAILURE, e.getMessage());
+        }
+    }
+
+    private static int maxResults(SearchConstraints constraints) {
+        if (constraints == null || constraints.getMaxResults() == null) {
+            return DEFAULT_MAX_RESULTS;
+        }
+        return constraints.getMaxResults().intValue();
+    }
+
+
+    // ==================== Battements ====================
+
+    /**
+     * handleHeartbeat() - Prolonge le bail de chaque agent de la liste
+     *
+     * Les agents inconnus (retirés, ou enregistrés dans un autre annuaire
+     * fédéré) sont renvoyés au relais dans un FAILURE, pour qu'ils se
+     * réenregistrent s'ils offrent un service de cet annuaire.
+     *
+     * @return Le nombre de baux prolongés
+     */
+    private int handleHeartbeat(ACLMessage batch) {
+        long lease;
+        try {
+            lease = Long.parseLong(batch.getUserDefinedParameter(Heartbeats.LEASE));
+        } catch (NumberFormatException e) {
+            reply(batch, ACLMessage.NOT_UNDERSTOOD, "missing lease");
+            return 0;
+        }
+        long expiresAt = System.currentTimeMillis() + lease;
+        int count = 0;
+        StringBuilder unknown = null;
+        for (String name : batch.getContent().split("\n")) {
+            if (directory.renew(new AID(name, AID.ISGUID), expiresAt)) {
+                count++;
+            } else {
+                if (unknown == null) {
+                    unknown = new StringBuilder();
+                } else {
+                    unknown.append('\n');
+                }
+                unknown.append(name);
+            }
+        }
+        if (unknown != null) {
+            reply(batch, ACLMessage.FAILURE, unknown.toString());
+        }
+        return count;
+    }
+
+
+    // ==================== Enregistrements par lots ====================
+
+    /**
+     * handleRegisterBatch() - Enregistre chaque description du lot
+     *
+     * Réponse INFORM dont le contenu liste les agents refusés (déjà
+     * enregistrés), un par ligne; vide si tout le lot est enregistré.
+     * Les abonnés sont notifiés comme pour un register FIPA.
+     *
+     * @return Le nombre d'agents enregistrés
+     */
+    private int handleRegisterBatch(ACLMessage batch) {
+        DFAgentDescription[] dfds;
+        try {
+            dfds = (DFAgentDescription[]) ContentCodecs.extractContent(batch);
+        } catch (CodecException e) {
+            reply(batch, ACLMessage.NOT_UNDERSTOOD, e.getMessage());
+            return 0;
+        }
+        int count = 0;
+        StringBuilder rejected = null;
+        for (DFAgentDescription dfd : dfds) {
+            if (dfd.getName() == null) {
+                // Description sans agent (lot forgé): ignorée
+                continue;
+            }
+            try {
+                directory.register(dfd);
+                notifySubscribers(null, dfd);
+                count++;
+            } catch (FIPAException e) {
+                if (rejected == null) {
+                    rejected = new StringBuilder();
+                } else {
+                    rejected.append('\n');
+                }
+                rejected.append(dfd.getName().getName());
+            }
+        }
+        reply(batch, ACLMessage.INFORM, rejected == null ? null : rejected.toString());
+        return count;
+    }
+
+
+    // ==================== Abonnements ====================
+
+    /**
+     * handleSubscribe() - Enregistre un abonnement
+     *
+     * Contenu attendu: (iota ?x (result (action df (search gabarit contraintes)) ?x))
+     * Comme le DF de JADE, on envoie tout de suite les descriptions déjà
+     * enregistrées (s'il y en a), puis uniquement les changements.
+     */
+    private void handleSubscribe(ACLMessage subscribe) {
+        Subscription sub = new Subscription();
+        try {
+            sub.iota = (AbsIRE) getContentManager().extractAbsContent(subscribe);
+            AbsPredicate result = sub.iota.getProposition();
+            Action action = (Action) ontology.toObject(
+                result.getAbsObject(BasicOntology.RESULT_ACTION));
+            sub.template = (DFAgentDescription) ((Search) action.getAction()).getDescription();
+        } catch (Exception e) {
+            reply(subscribe, ACLMessage.NOT_UNDERSTOOD, e.getMessage());
+            return;
+        }
+        sub.subscribe = subscribe;
+        subscriptions.add(sub);
+
+        List<DFAgentDescription> current = directory.search(sub.template, -1);
+        if (!current.isEmpty()) {
+            notifySubscriber(sub, current);
+        }
+    }
+
+    /**
+     * handleCancel() - Annule l'abonnement de la même conversation
+     */
+    private void handleCancel(ACLMessage cancel) {
+        Iterator<Subscription> it = subscriptions.iterator();
+        while (it.hasNext()) {
+            ACLMessage subscribe = it.next().subscribe;
+            if (subscribe.getSender().equals(cancel.getSender())
+                    && subscribe.getConversationId() != null
+                    && subscribe.getConversationId().equals(cancel.getConversationId())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * handleDeliveryFailure() - Retire l'abonnement dont la notification n'a pas été remise
+     *
+     * Un abonné arrêté sans CANCEL ne peut plus recevoir de notification:
+     * l'AMS renvoie alors un FAILURE dans la conversation de l'abonnement
+     * (la notification est une réponse au SUBSCRIBE). Les FAILURE d'autres
+     * agents sont ignorés.
+     */
+    private void handleDeliveryFailure(ACLMessage failure) {
+        if (!getAMS().equals(failure.getSender()) || failure.getConversationId() == null) {
+            return;
+        }
+        Iterator<Subscription> it = subscriptions.iterator();
+        while (it.hasNext()) {
+            ACLMessage subscribe = it.next().subscribe;
+            if (failure.getConversationId().equals(subscribe.getConversationId())
+                    && failure.getContent() != null
+                    && failure.getContent().contains(subscribe.getSender().getName())) {
+                it.remove();
+                pruned.increment();
+                Log.warn(getLocalName() + " removed the subscription of " +
+                         subscribe.getSender().getLocalName() + " (unreachable)");
+            }
+        }
+    }
+
+    /**
+     * notifySubscribers() - Prévient les abonnés concernés par un changement
+     *
+     * @param before La description avant le changement (null pour un enregistrement)
+     * @param after La description après le changement (null pour un retrait)
+     */
+    private void notifySubscribers(DFAgentDescription before, DFAgentDescription after) {
+        for (Subscription sub : subscriptions) {
+            boolean wasMatching = before != null && IndexedDirectory.matches(sub.template, before);
+            boolean isMatching = after != null && IndexedDirectory.matches(sub.template, after);
+
+            if (isMatching) {
+                notifySubscriber(sub, Collections.singletonList(after));
+            } else if (wasMatching) {
+                // Comme le DF de JADE: une description sans service signale le retrait
+                DFAgentDescription removed = new DFAgentDescription();
+                removed.setName(before.getName());
+                notifySubscriber(sub, Collections.singletonList(removed));
+            }
+        }
+    }
+
+    /**
+     * notifySubscriber() - Envoie (= iota liste) à un abonné
+     */
+    private void notifySubscriber(Subscription sub, List<DFAgentDescription> dfds) {
+        ACLMessage inform = sub.subscribe.createReply();
+        inform.setPerformative(ACLMessage.INFORM);
+        try {
+            AbsPredicate equals = new AbsPredicate(SLVocabulary.EQUALS);
+            equals.set(SLVocabulary.EQUALS_LEFT, sub.iota);
+            equals.set(SLVocabulary.EQUALS_RIGHT, (AbsTerm) ontology.fromObject(toLeapList(dfds)));
+            getContentManager().fillContent(inform, equals);
+            send(inform);
+        } catch (Exception e) {
+            Log.error(getLocalName() +
+                    " cannot notify " + sub.subscribe.getSender().getLocalName() +
+                    " - " + e.getMessage());
+        }
+    }
+
+
+    // ==================== Réponses ====================
+
+    private void replyContent(ACLMessage request, ContentElement content) {
+        ACLMessage inform = request.createReply();
+        inform.setPerformative(ACLMessage.INFORM);
+        try {
+            getContentManager().fillContent(inform, content);
+        } catch (Exception e) {
+            reply(request, ACLMessage.FAILURE, e.getMessage());
+            return;
+        }
+        send(inform);
+    }
+
+    private void reply(ACLMessage request, int performative, String content) {
+        ACLMessage reply = request.createReply();
+        reply.setPerformative(performative);
+        if (content != null) {
+            reply.setContent(content);
+        }
+        send(reply);
+    }
+
+    private static jade.util.leap.List toLeapList(List<DFAgentDescription> dfds) {
+        jade.util.leap.List list = new jade.util.leap.ArrayList();
+        for (DFAgentDescription dfd : dfds) {
+            list.add(dfd);
+        }
+        return list;
+    }
+}
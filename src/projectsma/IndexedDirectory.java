@@ -0,0 +1,681 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.AlreadyRegistered;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.NotRegistered;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * IndexedDirectory - Annuaire en mémoire avec index
+ *
+ * Le DF de JADE compare le gabarit de recherche à TOUTES les descriptions
+ * enregistrées: le coût d'une recherche grandit avec le nombre d'agents.
+ *
+ * Ici, chaque description est indexée par:
+ * - type de service
+ * - nom de service
+ * - propriété de service (nom=valeur)
+ *
+ * Une recherche part du plus petit ensemble de candidats donné par les index,
+ * puis vérifie le gabarit complet uniquement sur ces candidats.
+ * Le coût dépend donc du nombre de résultats, pas du nombre d'enregistrements.
+ *
+ * Les propriétés numériques sont aussi indexées par valeur, triées (par
+ * type de service et pour tous les types): une ServiceQuery (intervalle,
+ * top-k) parcourt les valeurs dans l'ordre demandé et s'arrête aux k
+ * premiers, sans lire ni trier les autres fournisseurs (voir query()).
+ *
+ * Chaque enregistrement a un bail (lease): passé son échéance, expire() le retire.
+ *
+ * Les résultats sont triés par nom d'agent: une recherche par pages reprend
+ * après le dernier nom reçu (search() avec "after"), sans recompter les pages
+ * déjà lues et sans doublon si des agents arrivent ou partent entre deux pages.
+ *
+ * Avec un DirectoryJournal (setJournal()), chaque changement est aussi
+ * écrit sur disque, et l'annuaire peut être rechargé au redémarrage.
+ *
+ * Cette classe ne connaît pas les messages ACL: c'est IndexedDFAgent
+ * qui traduit le protocole FIPA du DF en appels à ces méthodes.
+ */
+public class IndexedDirectory {
+
+    // ==================== Constantes ====================
+
+    /** Bail infini: l'enregistrement ne expire jamais */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    /** Ordre des index: nom de l'agent, sans la casse (comme AID.equals()) */
+    private static final Comparator<AID> BY_NAME = new Comparator<AID>() {
+        public int compare(AID a, AID b) {
+            return String.CASE_INSENSITIVE_ORDER.compare(a.getName(), b.getName());
+        }
+    };
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Enregistrement: la description et l'échéance de son bail
+     */
+    private static class Registration {
+        DFAgentDescription dfd;
+        long expiresAt;
+        /** Rechargé depuis le disque, pas encore confirmé par l'agent */
+        boolean restored;
+    }
+
+    /** Bail par défaut (ms) quand l'agent n'en demande pas; 0 = infini */
+    private final long defaultLease;
+
+    /** Table principale: nom de l'agent -> enregistrement */
+    private final Map<AID, Registration> entries = new HashMap<AID, Registration>();
+
+    /** Tous les agents, triés par nom (recherche sans critère indexé) */
+    private final NavigableSet<AID> names = new TreeSet<AID>(BY_NAME);
+
+    // Index secondaires: clé -> agents (triés par nom)
+    private final Map<String, NavigableSet<AID>> byType = new HashMap<String, NavigableSet<AID>>();
+    private final Map<String, NavigableSet<AID>> byServiceName = new HashMap<String, NavigableSet<AID>>();
+    private final Map<String, NavigableSet<AID>> byProperty = new HashMap<String, NavigableSet<AID>>();
+
+    /** Valeurs numériques: valueKey(type, propriété) -> valeur -> agents (triés par nom) */
+    private final Map<String, TreeMap<Double, NavigableSet<AID>>> byValue =
+        new HashMap<String, TreeMap<Double, NavigableSet<AID>>>();
+
+    /** Échéances des baux, triées: expire() ne parcourt que les baux échus */
+    private final TreeMap<Long, NavigableSet<AID>> byExpiry = new TreeMap<Long, NavigableSet<AID>>();
+
+    /** Sauvegarde sur disque (null = annuaire en mémoire seulement) */
+    private DirectoryJournal journal;
+
+
+    // ==================== Constructeurs ====================
+
+    public IndexedDirectory() {
+        this(0);
+    }
+
+    /**
+     * @param defaultLease Bail par défaut en ms (0 = pas d'expiration)
+     */
+    public IndexedDirectory(long defaultLease) {
+        this.defaultLease = defaultLease;
+    }
+
+
+    // ==================== Enregistrement ====================
+
+    /**
+     * register() - Ajoute une description à l'annuaire
+     *
+     * Un agent rechargé depuis le disque peut se réenregistrer (il ne sait
+     * pas que le DF a redémarré): sa description est alors remplacée.
+     *
+     * @throws AlreadyRegistered Si l'agent est déjà enregistré
+     */
+    public synchronized void register(DFAgentDescription dfd) throws AlreadyRegistered {
+        Registration existing = entries.get(dfd.getName());
+        if (existing != null) {
+            if (!existing.restored) {
+                throw new AlreadyRegistered();
+            }
+            remove(existing);
+        }
+        add(dfd, expiryOf(dfd));
+    }
+
+    /**
+     * deregister() - Retire un agent de l'annuaire
+     *
+     * @return L'ancienne description
+     * @throws NotRegistered Si l'agent n'est pas enregistré
+     */
+    public synchronized DFAgentDescription deregister(AID name) throws NotRegistered {
+        Registration reg = entries.get(name);
+        if (reg == null) {
+            throw new NotRegistered();
+        }
+        remove(reg);
+        return reg.dfd;
+    }
+
+    /**
+     * modify() - Remplace la description d'un agent déjà enregistré
+     *
+     * Le bail est renouvelé: c'est aussi la façon de le prolonger.
+     *
+     * @return L'ancienne description
+     * @throws NotRegistered Si l'agent n'est pas enregistré
+     */
+    public synchronized DFAgentDescription modify(DFAgentDescription dfd) throws NotRegistered {
+        Registration reg = entries.get(dfd.getName());
+        if (reg == null) {
+            throw new NotRegistered();
+        }
+        remove(reg);
+        add(dfd, expiryOf(dfd));
+        return reg.dfd;
+    }
+
+    /**
+     * renew() - Prolonge le bail d'un agent (battement de cœur, voir Heartbeats)
+     *
+     * Moins coûteux que modify(): la description et les index de services
+     * ne changent pas. Le renouvellement n'est pas écrit dans le journal
+     * (un par agent et par période): après un arrêt brutal, le bail
+     * rechargé est celui du dernier enregistrement ou de la dernière
+     * compaction.
+     *
+     * @return false si l'agent n'est pas (ou plus) enregistré
+     */
+    public synchronized boolean renew(AID name, long expiresAt) {
+        Registration reg = entries.get(name);
+        if (reg == null) {
+            return false;
+        }
+        if (reg.expiresAt != NO_EXPIRY) {
+            unindex(byExpiry, Long.valueOf(reg.expiresAt), name);
+        }
+        reg.expiresAt = expiresAt;
+        reg.dfd.setLeaseTime(new Date(expiresAt));
+        index(byExpiry, Long.valueOf(expiresAt), name);
+        return true;
+    }
+
+    /**
+     * expire() - Retire les enregistrements dont le bail est échu
+     *
+     * @param now L'heure courante (ms)
+     * @return Les descriptions retirées
+     */
+    public synchronized List<DFAgentDescription> expire(long now) {
+        List<DFAgentDescription> expired = new ArrayList<DFAgentDescription>();
+        SortedMap<Long, NavigableSet<AID>> due = byExpiry.headMap(Long.valueOf(now), true);
+
+        // Copie: remove() modifie byExpiry pendant le parcours
+        List<AID> names = new ArrayList<AID>();
+        for (Set<AID> set : due.values()) {
+            names.addAll(set);
+        }
+        for (AID name : names) {
+            Registration reg = entries.get(name);
+            remove(reg);
+            expired.add(reg.dfd);
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    // ==================== Sauvegarde sur disque ====================
+
+    /**
+     * setJournal() - Écrit désormais chaque changement dans ce journal
+     *
+     * À appeler après DirectoryJournal.load(): le chargement lui-même
+     * n'est pas réécrit.
+     */
+    public synchronized void setJournal(DirectoryJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * restore() - Remet une description chargée depuis le disque, avec son échéance
+     */
+    public synchronized void restore(DFAgentDescription dfd, long expiresAt) {
+        Registration existing = entries.get(dfd.getName());
+        if (existing != null) {
+            remove(existing);
+        }
+        add(dfd, expiresAt).restored = true;
+    }
+
+    /**
+     * forget() - Retire un agent retiré avant l'arrêt (rejeu du journal)
+     */
+    public synchronized void forget(AID name) {
+        Registration reg = entries.get(name);
+        if (reg != null) {
+            remove(reg);
+        }
+    }
+
+    /**
+     * compact() - Écrit l'état complet dans un instantané et vide le journal
+     *
+     * Sans compaction, le journal grandit à chaque changement et son rejeu
+     * ralentit le redémarrage.
+     */
+    public synchronized void compact() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        DirectoryJournal.Snapshot snapshot = journal.beginSnapshot(entries.size());
+        for (Registration reg : entries.values()) {
+            snapshot.add(reg.dfd, reg.expiresAt);
+        }
+        snapshot.commit();
+    }
+
+    /**
+     * all() - Copie de toutes les descriptions enregistrées
+     */
+    public synchronized List<DFAgentDescription> all() {
+        List<DFAgentDescription> result = new ArrayList<DFAgentDescription>(entries.size());
+        for (Registration reg : entries.values()) {
+            result.add(reg.dfd);
+        }
+        return result;
+    }
+
+
+    // ==================== Recherche ====================
+
+    /**
+     * search() - Cherche les descriptions qui correspondent au gabarit
+     *
+     * @param template Le gabarit (les champs null sont des jokers)
+     * @param maxResults Nombre maximal de résultats (négatif = pas de limite)
+     * @return Les descriptions trouvées, triées par nom d'agent
+     *         (sans les baux échus pas encore retirés par expire())
+     */
+    public List<DFAgentDescription> search(DFAgentDescription template, int maxResults) {
+        return search(template, null, maxResults);
+    }
+
+    /**
+     * search() - Page suivante d'une recherche: les résultats après "after"
+     *
+     * @param after Dernier agent de la page précédente (null = première page)
+     */
+    public synchronized List<DFAgentDescription> search(DFAgentDescription template, AID after,
+                                                        int maxResults) {
+        List<DFAgentDescription> result = new ArrayList<DFAgentDescription>();
+        if (maxResults == 0) {
+            return result;
+        }
+
+        NavigableSet<AID> candidates = candidates(template);
+        if (after != null) {
+            candidates = candidates.tailSet(after, false);
+        }
+        long now = System.currentTimeMillis();
+        for (AID name : candidates) {
+            Registration reg = entries.get(name);
+            if (reg != null && reg.expiresAt > now && matches(template, reg.dfd)) {
+                result.add(reg.dfd);
+                if (maxResults > 0 && result.size() >= maxResults) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * query() - Recherche avec intervalles et tri sur des propriétés numériques
+     *
+     * Les candidats sont lus dans l'index de valeurs de la propriété de tri
+     * (sinon du premier intervalle), restreint à l'intervalle demandé et dans
+     * l'ordre demandé: les maxResults premiers qui correspondent au gabarit
+     * sont le résultat. Les résultats sont donc triés par valeur (puis par
+     * nom d'agent), pas par nom: une requête n'a pas de curseur.
+     *
+     * @param template Le gabarit (type et égalités de la requête)
+     * @param query Intervalles et tri (voir ServiceQuery.of())
+     */
+    public synchronized List<DFAgentDescription> query(DFAgentDescription template, ServiceQuery query,
+                                                       int maxResults) {
+        String driver = query.driver();
+        if (driver == null) {
+            return search(template, null, maxResults);
+        }
+        List<DFAgentDescription> result = new ArrayList<DFAgentDescription>();
+        if (maxResults == 0) {
+            return result;
+        }
+
+        // ---- Valeurs de la propriété, dans l'intervalle et l'ordre demandés ----
+        String type = Directory.typeOf(template);
+        TreeMap<Double, NavigableSet<AID>> values = byValue.get(valueKey(type, driver));
+        if (values == null) {
+            return result;
+        }
+        double[] range = query.getRange(driver);
+        NavigableMap<Double, NavigableSet<AID>> slice = range == null ? values
+            : values.subMap(Double.valueOf(range[0]), true, Double.valueOf(range[1]), true);
+        if (driver.equals(query.getOrderBy()) && query.isDescending()) {
+            slice = slice.descendingMap();
+        }
+
+        // ---- Les premiers qui correspondent au gabarit et aux autres intervalles ----
+        // (un agent peut avoir plusieurs valeurs: plusieurs services du même type)
+        Set<AID> seen = new HashSet<AID>();
+        long now = System.currentTimeMillis();
+        for (NavigableSet<AID> set : slice.values()) {
+            for (AID name : set) {
+                Registration reg = entries.get(name);
+                if (reg == null || !seen.add(name) || reg.expiresAt <= now
+                        || !matches(template, reg.dfd) || !query.accepts(reg.dfd, type)) {
+                    continue;
+                }
+                result.add(reg.dfd);
+                if (maxResults > 0 && result.size() >= maxResults) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * candidates() - Choisit le plus petit ensemble de candidats parmi les index
+     *
+     * Sans critère indexé, il faut parcourir tout l'annuaire.
+     */
+    private NavigableSet<AID> candidates(DFAgentDescription template) {
+        if (template.getName() != null) {
+            NavigableSet<AID> one = new TreeSet<AID>(BY_NAME);
+            one.add(template.getName());
+            return one;
+        }
+
+        NavigableSet<AID> best = null;
+        Iterator it = template.getAllServices();
+        while (it.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) it.next();
+            if (sd.getType() != null) {
+                best = smallest(best, lookup(byType, sd.getType()));
+            }
+            if (sd.getName() != null) {
+                best = smallest(best, lookup(byServiceName, sd.getName()));
+            }
+            Iterator props = sd.getAllProperties();
+            while (props.hasNext()) {
+                Property p = (Property) props.next();
+                if (p.getValue() != null) {
+                    best = smallest(best, lookup(byProperty, propertyKey(p)));
+                }
+            }
+        }
+        return best != null ? best : names;
+    }
+
+    private static NavigableSet<AID> smallest(NavigableSet<AID> current, NavigableSet<AID> other) {
+        return current == null || other.size() < current.size() ? other : current;
+    }
+
+    private static NavigableSet<AID> lookup(Map<String, NavigableSet<AID>> index, String key) {
+        NavigableSet<AID> set = index.get(key);
+        return set != null ? set : Collections.<AID>emptyNavigableSet();
+    }
+
+
+    // ==================== Correspondance avec le gabarit ====================
+
+    /**
+     * matches() - Vérifie qu'une description correspond au gabarit
+     *
+     * Même règles que le DF de JADE:
+     * - un champ null dans le gabarit accepte n'importe quelle valeur
+     * - chaque service du gabarit doit correspondre à au moins un service de la description
+     * - les protocoles, ontologies et langages du gabarit doivent tous être présents
+     */
+    public static boolean matches(DFAgentDescription template, DFAgentDescription dfd) {
+        if (template.getName() != null && !template.getName().equals(dfd.getName())) {
+            return false;
+        }
+        if (!containsAll(dfd.getAllProtocols(), template.getAllProtocols())
+                || !containsAll(dfd.getAllOntologies(), template.getAllOntologies())
+                || !containsAll(dfd.getAllLanguages(), template.getAllLanguages())) {
+            return false;
+        }
+
+        Iterator wanted = template.getAllServices();
+        while (wanted.hasNext()) {
+            ServiceDescription tsd = (ServiceDescription) wanted.next();
+            boolean found = false;
+            Iterator offered = dfd.getAllServices();
+            while (offered.hasNext() && !found) {
+                found = matches(tsd, (ServiceDescription) offered.next());
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(ServiceDescription template, ServiceDescription sd) {
+        if (template.getType() != null && !template.getType().equals(sd.getType())) {
+            return false;
+        }
+        if (template.getName() != null && !template.getName().equals(sd.getName())) {
+            return false;
+        }
+        if (template.getOwnership() != null && !template.getOwnership().equals(sd.getOwnership())) {
+            return false;
+        }
+        if (!containsAll(sd.getAllProtocols(), template.getAllProtocols())
+                || !containsAll(sd.getAllOntologies(), template.getAllOntologies())
+                || !containsAll(sd.getAllLanguages(), template.getAllLanguages())) {
+            return false;
+        }
+
+        Iterator props = template.getAllProperties();
+        while (props.hasNext()) {
+            Property tp = (Property) props.next();
+            if (!hasProperty(sd, tp)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasProperty(ServiceDescription sd, Property template) {
+        Iterator props = sd.getAllProperties();
+        while (props.hasNext()) {
+            Property p = (Property) props.next();
+            if (template.getName().equals(p.getName())) {
+                return template.getValue() == null
+                    || (p.getValue() != null && template.getValue().toString().equals(p.getValue().toString()));
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAll(Iterator offered, Iterator wanted) {
+        if (!wanted.hasNext()) {
+            return true;
+        }
+        Set<Object> set = new HashSet<Object>();
+        while (offered.hasNext()) {
+            set.add(offered.next());
+        }
+        while (wanted.hasNext()) {
+            if (!set.contains(wanted.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // ==================== Maintenance des index ====================
+
+    private Registration add(DFAgentDescription dfd, long expiresAt) {
+        Registration reg = new Registration();
+        reg.dfd = dfd;
+        reg.expiresAt = expiresAt;
+        AID name = dfd.getName();
+        entries.put(name, reg);
+        names.add(name);
+
+        Iterator it = dfd.getAllServices();
+        while (it.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) it.next();
+            if (sd.getType() != null) {
+                index(byType, sd.getType(), name);
+            }
+            if (sd.getName() != null) {
+                index(byServiceName, sd.getName(), name);
+            }
+            Iterator props = sd.getAllProperties();
+            while (props.hasNext()) {
+                Property p = (Property) props.next();
+                if (p.getValue() != null) {
+                    index(byProperty, propertyKey(p), name);
+                    indexValue(sd.getType(), p, name);
+                }
+            }
+        }
+
+        if (reg.expiresAt != NO_EXPIRY) {
+            index(byExpiry, Long.valueOf(reg.expiresAt), name);
+        }
+
+        if (journal != null) {
+            try {
+                journal.put(dfd, expiresAt);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+        return reg;
+    }
+
+    private void remove(Registration reg) {
+        AID name = reg.dfd.getName();
+        entries.remove(name);
+        names.remove(name);
+
+        Iterator it = reg.dfd.getAllServices();
+        while (it.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) it.next();
+            if (sd.getType() != null) {
+                unindex(byType, sd.getType(), name);
+            }
+            if (sd.getName() != null) {
+                unindex(byServiceName, sd.getName(), name);
+            }
+            Iterator props = sd.getAllProperties();
+            while (props.hasNext()) {
+                Property p = (Property) props.next();
+                if (p.getValue() != null) {
+                    unindex(byProperty, propertyKey(p), name);
+                    unindexValue(sd.getType(), p, name);
+                }
+            }
+        }
+
+        if (reg.expiresAt != NO_EXPIRY) {
+            unindex(byExpiry, Long.valueOf(reg.expiresAt), name);
+        }
+
+        if (journal != null) {
+            try {
+                journal.remove(name);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Une sauvegarde incomplète ne doit pas être rechargée comme si elle
+     * était à jour: on arrête d'écrire, l'annuaire continue en mémoire
+     */
+    private void journalFailed(IOException e) {
+        Log.error("directory journal disabled, changes are no longer saved - " + e.getMessage());
+        journal = null;
+    }
+
+    private long expiryOf(DFAgentDescription dfd) {
+        if (dfd.getLeaseTime() != null) {
+            return dfd.getLeaseTime().getTime();
+        }
+        return defaultLease > 0 ? System.currentTimeMillis() + defaultLease : NO_EXPIRY;
+    }
+
+    private static <K> void index(Map<K, NavigableSet<AID>> index, K key, AID name) {
+        NavigableSet<AID> set = index.get(key);
+        if (set == null) {
+            set = new TreeSet<AID>(BY_NAME);
+            index.put(key, set);
+        }
+        set.add(name);
+    }
+
+    private static <K> void unindex(Map<K, NavigableSet<AID>> index, K key, AID name) {
+        NavigableSet<AID> set = index.get(key);
+        if (set != null) {
+            set.remove(name);
+            if (set.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static String propertyKey(Property p) {
+        return p.getName() + "=" + p.getValue();
+    }
+
+    /**
+     * indexValue() - Indexe une valeur numérique, pour son type et pour tous les types
+     */
+    private void indexValue(String type, Property p, AID name) {
+        Double value = ServiceQuery.number(p.getValue());
+        if (value == null) {
+            return;
+        }
+        for (String key : new String[] { valueKey(type, p.getName()), valueKey(null, p.getName()) }) {
+            TreeMap<Double, NavigableSet<AID>> values = byValue.get(key);
+            if (values == null) {
+                values = new TreeMap<Double, NavigableSet<AID>>();
+                byValue.put(key, values);
+            }
+            index(values, value, name);
+        }
+    }
+
+    private void unindexValue(String type, Property p, AID name) {
+        Double value = ServiceQuery.number(p.getValue());
+        if (value == null) {
+            return;
+        }
+        for (String key : new String[] { valueKey(type, p.getName()), valueKey(null, p.getName()) }) {
+            TreeMap<Double, NavigableSet<AID>> values = byValue.get(key);
+            if (values != null) {
+                unindex(values, value, name);
+                if (values.isEmpty()) {
+                    byValue.remove(key);
+                }
+            }
+        }
+    }
+
+    private static String valueKey(String type, String property) {
+        return (type != null ? type : "*") + "/" + property;
+    }
+}
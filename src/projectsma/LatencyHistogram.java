@@ -0,0 +1,150 @@
+package projectsma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram - Histogramme de durées, sans verrou
+ *
+ * Contrairement à LatencyRecorder (mesures exactes, un seul thread), cet
+ * histogramme peut être alimenté par plusieurs threads à la fois et lu
+ * pendant ce temps (JMX, affichage périodique). Il occupe une taille fixe:
+ * les durées sont rangées dans des classes logarithmiques (8 classes par
+ * puissance de 2), soit une erreur relative d'au plus 12,5% sur les
+ * percentiles.
+ *
+ * Enregistrer une mesure: un incrément atomique (pas d'allocation).
+ *
+ * Utilisation:
+ *   LatencyHistogram h = Metrics.of(agent).histogram("df.search");
+ *   long t0 = System.nanoTime();
+ *   ...
+ *   h.record(System.nanoTime() - t0);
+ */
+public class LatencyHistogram {
+
+    /** Bits de précision dans chaque puissance de 2 (2^3 = 8 classes) */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /** Valeurs 0..LINEAR-1 rangées chacune dans sa propre classe */
+    private static final int LINEAR = 2 * SUB_COUNT;
+
+    private static final int BUCKETS = LINEAR + (63 - (SUB_BITS + 1)) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record() - Ajoute une durée en nanosecondes
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(index(nanos));
+        sum.addAndGet(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public long mean() {
+        long count = count();
+        return count == 0 ? 0 : sum.get() / count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * percentile() - Valeur sous laquelle se trouvent p% des mesures (borne haute de la classe)
+     *
+     * @param p Percentile entre 0 et 100
+     * @return La durée en nanosecondes (0 si aucune mesure)
+     */
+    public long percentile(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            count += snapshot[i];
+        }
+        return percentile(snapshot, count, p);
+    }
+
+    /**
+     * summary() - Résumé lisible en µs, même format que LatencyRecorder
+     */
+    public String summary() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return "no samples";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(count).append(" samples, mean ").append(sum.get() / count / 1000)
+          .append(" us, p50 ").append(percentile(snapshot, count, 50) / 1000)
+          .append(" p90 ").append(percentile(snapshot, count, 90) / 1000)
+          .append(" p99 ").append(percentile(snapshot, count, 99) / 1000)
+          .append(" p99.9 ").append(percentile(snapshot, count, 99.9) / 1000)
+          .append(" max ").append(max.get() / 1000).append(" us");
+        return sb.toString();
+    }
+
+
+    // ==================== Classes ====================
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Plus grande valeur rangée dans la classe i
+     */
+    private static long upperBound(int i) {
+        if (i < LINEAR) {
+            return i;
+        }
+        int exponent = (i - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (i - LINEAR) % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_COUNT + sub) * width) + width - 1;
+    }
+
+    private long percentile(long[] snapshot, long count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // La borne de la classe ne dépasse pas le maximum observé
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
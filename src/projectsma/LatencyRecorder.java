@@ -0,0 +1,111 @@
+package projectsma;
+
+import java.util.Arrays;
+
+/**
+ * LatencyRecorder - Enregistre des durées et calcule leurs percentiles
+ *
+ * Les durées (en nanosecondes) sont gardées dans un tableau qui grandit
+ * au besoin: enregistrer une mesure n'alloue rien la plupart du temps,
+ * ce qui évite de perturber la mesure elle-même.
+ *
+ * Non synchronisé: à utiliser depuis un seul thread (celui de l'agent).
+ *
+ * Utilisation:
+ *   LatencyRecorder latencies = new LatencyRecorder();
+ *   long t0 = System.nanoTime();
+ *   ...
+ *   latencies.record(System.nanoTime() - t0);
+ *   System.out.println(latencies.summary());
+ */
+public class LatencyRecorder {
+
+    private long[] values;
+    private int count = 0;
+
+    public LatencyRecorder() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity Nombre de mesures prévu (le tableau grandit au-delà)
+     */
+    public LatencyRecorder(int capacity) {
+        this.values = new long[Math.max(16, capacity)];
+    }
+
+    /**
+     * record() - Ajoute une durée en nanosecondes
+     */
+    public void record(long nanos) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count++] = nanos;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * percentile() - Valeur sous laquelle se trouvent p% des mesures
+     *
+     * @param p Percentile entre 0 et 100 (50 = médiane)
+     * @return La durée en nanosecondes (0 si aucune mesure)
+     */
+    public long percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[index(p, count)];
+    }
+
+    public long mean() {
+        if (count == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return sum / count;
+    }
+
+    /**
+     * summary() - Résumé lisible: nombre, moyenne et percentiles en µs
+     */
+    public String summary() {
+        if (count == 0) {
+            return "no samples";
+        }
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        StringBuilder sb = new StringBuilder();
+        sb.append(count).append(" samples, mean ").append(micros(mean()))
+          .append(" us, p50 ").append(micros(sorted[index(50, count)]))
+          .append(" p90 ").append(micros(sorted[index(90, count)]))
+          .append(" p99 ").append(micros(sorted[index(99, count)]))
+          .append(" p99.9 ").append(micros(sorted[index(99.9, count)]))
+          .append(" max ").append(micros(sorted[count - 1])).append(" us");
+        return sb.toString();
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    private static int index(double p, int count) {
+        int i = (int) Math.ceil(p / 100.0 * count) - 1;
+        return Math.max(0, Math.min(count - 1, i));
+    }
+
+    private static String micros(long nanos) {
+        return String.valueOf(nanos / 1000);
+    }
+}
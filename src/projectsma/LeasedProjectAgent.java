@@ -0,0 +1,89 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAException;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * LeasedProjectAgent - ProjectAgent enregistré avec un bail court, renouvelé par battements
+ * 
+ * Avec -projectsma.heartbeat <période ms>, l'agent s'enregistre avec un bail
+ * court et le renouvelle par des battements groupés (voir Heartbeats): s'il
+ * se bloque ou si son conteneur disparaît, l'annuaire le retire de lui-même.
+ * 
+ * Utilisation:
+ *   java jade.Boot -projectsma.heartbeat 1000 agent1:projectsma.LeasedProjectAgent(construction)
+ *   (mêmes paramètres que le ProjectAgent)
+ * 
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class LeasedProjectAgent extends ProjectAgent {
+    
+    // ==================== Méthode describe() ====================
+    
+    /**
+     * describe() - Description du ProjectAgent, avec un bail court (voir Heartbeats)
+     */
+    protected DFAgentDescription describe() {
+        DFAgentDescription dfd = super.describe();
+        if (Heartbeats.enabled(this)) {
+            Heartbeats.withLease(this, dfd);
+        }
+        return dfd;
+    }
+    
+    
+    // ==================== Battements de cœur ====================
+    
+    /**
+     * onRegistered() - Renouvelle le bail par battements, une fois enregistré
+     */
+    protected void onRegistered() {
+        if (Heartbeats.enabled(this)) {
+            addBehaviour(Heartbeats.beat(this, Directory.partition(this, description).keySet()));
+        }
+    }
+    
+    /**
+     * addHandlers() - L'annuaire ne nous connaît plus (voir Heartbeats): s'y réenregistrer
+     */
+    protected void addHandlers(MessageDispatcher dispatcher) {
+        dispatcher.on(Heartbeats.ONTOLOGY, ACLMessage.FAILURE, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage notice) {
+                // Un échec de livraison (relais arrêté) vient de l'AMS, pas du relais
+                if (notice.getSender().equals(getAMS()) || notice.getContent() == null) {
+                    return;
+                }
+                rejoin(new AID(notice.getContent(), AID.ISGUID));
+            }
+        });
+    }
+    
+    /**
+     * rejoin() - Se réenregistre auprès d'un annuaire qui nous a retiré
+     * 
+     * Arrive si des battements ont été perdus (agent ou réseau trop lent):
+     * l'annuaire ne connaît plus l'agent, qui reprend sa part de description.
+     */
+    private void rejoin(AID df) {
+        if (description == null) {
+            return;
+        }
+        DFAgentDescription part = Directory.partition(this, description).get(df);
+        if (part == null) {
+            return;
+        }
+        try {
+            DFService.register(this, df, Heartbeats.withLease(this, part));
+            Log.warn(getLocalName() + " lease expired at " + df.getLocalName() + ", registered again");
+        } catch (FIPAException e) {
+            Log.error(getLocalName() + " cannot register again with " + df.getLocalName() + 
+                    " - " + e.getMessage());
+        }
+    }
+    
+}
+// Fin de la classe LeasedProjectAgent
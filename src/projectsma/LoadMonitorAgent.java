@@ -0,0 +1,134 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadMonitorAgent - Mesure de la charge d'un conteneur (voir Rebalancer)
+ *
+ * Une fois par période, pour chaque agent migrable du conteneur
+ * (Rebalancer.join()):
+ * - débit de messages traités (messages/s), d'après sa métrique messages.in
+ * - temps CPU de son thread (ms par seconde écoulée)
+ * et, pour le conteneur, la charge CPU de la JVM (0 à 1, -1 si inconnue).
+ * Le tout part en un message au RebalancerAgent:
+ *   INFORM, ontologie Rebalancer.ONTOLOGY, paramètre CONTAINER = nom du conteneur
+ *   contenu: "<cpu JVM>" puis une ligne "<nom de l'agent> <messages/s> <cpu ms/s>" par agent
+ *
+ * Les compteurs d'un agent repartent de zéro quand il arrive d'un autre
+ * conteneur (nouvelle instance): sa première période sert de référence.
+ *
+ * Créé automatiquement par Rebalancer.monitor(), un par conteneur.
+ */
+public class LoadMonitorAgent extends Agent {
+
+    // ==================== Attributs ====================
+
+    /**
+     * Dernière mesure d'un agent
+     */
+    private static class Sample {
+        long messages;
+        long cpuNanos;
+    }
+
+    /** Dernière mesure par agent (par instance: un agent revenu repart de zéro) */
+    private final Map<Agent, Sample> samples = new IdentityHashMap<Agent, Sample>();
+
+    private long lastTick;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private LongAdder reports;
+
+
+    // ==================== Méthode setup() ====================
+
+    protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        reports = Metrics.of(this).counter("rebalance.reports");
+        lastTick = System.nanoTime();
+
+        // ---- Une mesure par période ----
+        addBehaviour(new TickerBehaviour(this, Rebalancer.period(this)) {
+            protected void onTick() {
+                report();
+            }
+        });
+
+        Log.info(getLocalName() + " is ready to measure the load of container " + here().getName() +
+               " (every " + Rebalancer.period(this) + " ms)");
+    }
+
+    protected void takeDown() {
+        Metrics.release(this);
+    }
+
+
+    // ==================== Mesure ====================
+
+    /**
+     * report() - Mesure les agents du conteneur et envoie le bilan au RebalancerAgent
+     */
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastTick) / 1e9;
+        lastTick = now;
+
+        StringBuilder content = new StringBuilder(64);
+        content.append(String.format(Locale.ROOT, "%.3f", processCpu()));
+
+        Map<Agent, Long> members = Rebalancer.members(here().getName());
+        samples.keySet().retainAll(members.keySet());
+        for (Map.Entry<Agent, Long> e : members.entrySet()) {
+            Agent agent = e.getKey();
+            long messages = Metrics.of(agent).counter("messages.in").sum();
+            long cpuNanos = Math.max(0, threads.getThreadCpuTime(e.getValue().longValue()));
+
+            Sample last = samples.get(agent);
+            if (last == null) {
+                // Première mesure de cet agent: référence seulement
+                last = new Sample();
+                last.messages = messages;
+                last.cpuNanos = cpuNanos;
+                samples.put(agent, last);
+                continue;
+            }
+            double rate = (messages - last.messages) / seconds;
+            double cpu = (cpuNanos - last.cpuNanos) / 1e6 / seconds;
+            last.messages = messages;
+            last.cpuNanos = cpuNanos;
+
+            content.append('\n').append(agent.getName()).append(' ')
+                   .append(String.format(Locale.ROOT, "%.1f %.1f", rate, cpu));
+        }
+
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(new AID(Rebalancer.AGENT_NAME, AID.ISLOCALNAME));
+        msg.setOntology(Rebalancer.ONTOLOGY);
+        msg.addUserDefinedParameter(Rebalancer.CONTAINER, here().getName());
+        msg.setContent(content.toString());
+        send(msg);
+        reports.increment();
+    }
+
+    /**
+     * processCpu() - Charge CPU de la JVM (0 à 1), -1 si la JVM ne la donne pas
+     */
+    private static double processCpu() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,207 @@
+package projectsma;
+
+import jade.core.Agent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log - Journal asynchrone, filtré par niveau
+ *
+ * System.out.println() est synchronisé et écrit sur la console dans le
+ * thread de l'appelant: appelé pour chaque message, il limite le débit
+ * de l'agent. Ici, l'appelant dépose la ligne dans une file bornée et un
+ * thread dédié l'écrit. Si la file est pleine, la ligne est perdue (et
+ * comptée) plutôt que de ralentir l'agent.
+ *
+ * Niveaux: OFF, ERROR, WARN, INFO (défaut), DEBUG. Sous le niveau choisi,
+ * un appel ne coûte qu'une comparaison; pour éviter aussi la construction
+ * du texte, tester enabled() avant.
+ *
+ * Réglage du niveau:
+ *   java -Dprojectsma.log=warn jade.Boot ...       (propriété système)
+ *   java jade.Boot -projectsma.log warn ...        (propriété de la plateforme,
+ *                                                  lue par Metrics.of(agent))
+ *
+ * Utilisation:
+ *   Log.info("[OK] " + getLocalName() + " registered with DF");
+ *   Log.warn(getLocalName() + " got no reply");        -> "[AVERTISSEMENT] ..."
+ *   Log.error(getLocalName() + " registration failed"); -> "[ERREUR] ..." (stderr)
+ *   if (Log.enabled(Log.Level.DEBUG)) { Log.debug("..." + msg.getContent()); }
+ */
+public final class Log {
+
+    public enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG
+    }
+
+    /** Propriété (système ou de la plateforme) donnant le niveau */
+    public static final String LEVEL_PROPERTY = "projectsma.log";
+
+    /** Lignes en attente d'écriture au maximum */
+    private static final int CAPACITY = 8192;
+
+    /**
+     * Ligne en attente d'écriture
+     */
+    private static class Line {
+        final Level level;
+        final String text;
+
+        Line(Level level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+    }
+
+    /** Dernière valeur invalide signalée (pour ne la signaler qu'une fois) */
+    private static String badValue;
+
+    private static volatile Level level = parse(System.getProperty(LEVEL_PROPERTY, "info"), Level.INFO);
+
+    private static final BlockingQueue<Line> lines = new ArrayBlockingQueue<Line>(CAPACITY);
+    private static final AtomicLong lost = new AtomicLong();
+
+    static {
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        write(lines.take());
+                    }
+                } catch (InterruptedException e) {
+                    // Fin de la JVM
+                }
+            }
+        }, "projectsma-log");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Les lignes encore en file sont écrites à l'arrêt de la JVM
+        java.lang.Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, "projectsma-log-flush"));
+    }
+
+    private Log() {
+    }
+
+
+    // ==================== Niveau ====================
+
+    /**
+     * configure() - Applique le niveau donné par la propriété de la plateforme, si elle existe
+     */
+    public static void configure(Agent agent) {
+        String value = agent.getProperty(LEVEL_PROPERTY, null);
+        if (value != null) {
+            setLevel(parse(value, level));
+        }
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    /**
+     * enabled() - Les lignes de ce niveau sont-elles écrites?
+     */
+    public static boolean enabled(Level l) {
+        return l != Level.OFF && l.ordinal() <= level.ordinal();
+    }
+
+    /**
+     * parse() - Niveau de ce nom, ou fallback (signalé une fois) s'il est inconnu
+     *
+     * Appelée pendant l'initialisation de la classe: une exception ici
+     * empêcherait toute classe qui journalise de se charger.
+     */
+    private static Level parse(String name, Level fallback) {
+        String normalized = name.trim().toUpperCase();
+        if ("WARNING".equals(normalized)) {
+            return Level.WARN;
+        }
+        try {
+            return Level.valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            synchronized (Log.class) {
+                if (!name.equals(badValue)) {
+                    badValue = name;
+                    // Directement sur stderr: le thread d'écriture n'existe peut-être pas encore
+                    System.err.println("[ERREUR] Unknown log level " + LEVEL_PROPERTY + "=" + name +
+                                       " (expected off, error, warn, info or debug), using " + fallback);
+                }
+            }
+            return fallback;
+        }
+    }
+
+
+    // ==================== Écriture ====================
+
+    public static void error(String text) {
+        log(Level.ERROR, text);
+    }
+
+    public static void warn(String text) {
+        log(Level.WARN, text);
+    }
+
+    public static void info(String text) {
+        log(Level.INFO, text);
+    }
+
+    public static void debug(String text) {
+        log(Level.DEBUG, text);
+    }
+
+    private static void log(Level l, String text) {
+        if (enabled(l) && !lines.offer(new Line(l, text))) {
+            lost.incrementAndGet();
+        }
+    }
+
+    /**
+     * flush() - Écrit immédiatement les lignes en attente (dans le thread appelant)
+     */
+    public static void flush() {
+        List<Line> pending = new ArrayList<Line>();
+        lines.drainTo(pending);
+        for (Line line : pending) {
+            write(line);
+        }
+    }
+
+    /**
+     * getLost() - Nombre de lignes perdues parce que la file était pleine
+     */
+    public static long getLost() {
+        return lost.get();
+    }
+
+    private static void write(Line line) {
+        long dropped = lost.getAndSet(0);
+        if (dropped > 0) {
+            System.out.println("[AVERTISSEMENT] " + dropped + " log lines lost (queue full)");
+        }
+        switch (line.level) {
+            case ERROR:
+                System.err.println("[ERREUR] " + line.text);
+                break;
+            case WARN:
+                System.out.println("[AVERTISSEMENT] " + line.text);
+                break;
+            default:
+                System.out.println(line.text);
+                break;
+        }
+    }
+}
@@ -0,0 +1,712 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.MessageQueue;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MessageCapture - Capture binaire du trafic reçu, pour l'analyse et le rejeu
+ *
+ * Quand le débit baisse, les métriques d'un agent ne disent pas quels flux
+ * (émetteur -> récepteur) sont lents. Avec -projectsma.capture <répertoire>,
+ * chaque message déposé dans la file d'un agent qui l'accepte (voir
+ * ReceiverAgent.createMessageQueue()) est enregistré:
+ * - ARRIVE: à l'arrivée dans la file (thread de l'émetteur): date,
+ *   enveloppe (performatif, émetteur, récepteur, conversation, ontologie...)
+ *   et contenu, de quoi rejouer le message (voir CaptureReplay)
+ * - TAKE: au retrait par l'agent: date, donc attente dans la file
+ *
+ * Coût pour l'émetteur: l'encodage dans un tampon du thread, puis une copie
+ * dans un anneau en mémoire (RING_SIZE octets) sous un verrou court. Un
+ * thread d'écriture vide l'anneau toutes les FLUSH_INTERVAL ms dans un
+ * fichier projeté en mémoire (messages-<pid>.capture). Si l'anneau est
+ * plein, ou si le fichier a atteint MAX_FILE_SIZE, l'enregistrement est
+ * perdu et compté: la capture ne ralentit jamais la messagerie.
+ *
+ * Format du fichier:
+ *   en-tête:        [magic int][début, ms depuis 1970 long][réservé int]  (HEADER octets)
+ *   enregistrement: [longueur int][type byte][date µs depuis le début long][numéro long][...]
+ * Une longueur 0 marque la fin.
+ *
+ * Utilisation:
+ *   java jade.Boot -projectsma.capture data -agents "receiver:projectsma.ReceiverAgent;..."
+ *   java -cp "bin;lib/*" projectsma.MessageCapture data/messages-1234.capture
+ *   (résumé par flux: messages, octets, attente dans la file)
+ */
+public class MessageCapture {
+
+    // ==================== Constantes ====================
+
+    /** Propriété de la plateforme: répertoire des captures (absente = pas de capture) */
+    public static final String CAPTURE_PROPERTY = "projectsma.capture";
+
+    /** Taille de l'anneau en mémoire (puissance de 2) */
+    public static final int RING_SIZE = 1 << 22;
+
+    /** Intervalle d'écriture de l'anneau dans le fichier (ms) */
+    public static final long FLUSH_INTERVAL = 20;
+
+    public static final byte ARRIVE = 1;
+    public static final byte TAKE = 2;
+
+    private static final int MAGIC = 0x4d435031;              // "MCP1"
+    private static final int HEADER = 16;
+
+    /** Taille initiale de la projection (doublée au besoin) */
+    private static final int INITIAL_MAPPING = 1 << 24;
+
+    /** Taille maximale du fichier: une projection ne dépasse pas 2 Go */
+    public static final long MAX_FILE_SIZE = 1L << 30;
+
+    // Contenu d'un ARRIVE
+    private static final byte NO_CONTENT = 0;
+    private static final byte TEXT = 1;
+    private static final byte BYTES = 2;
+
+    /** Captures ouvertes dans cette JVM, par répertoire */
+    private static final Map<String, MessageCapture> captures = new HashMap<String, MessageCapture>();
+
+
+    // ==================== Activation ====================
+
+    /**
+     * wrap() - Ajoute la capture à la file d'un agent, si elle est activée
+     *
+     * À appeler depuis Agent.createMessageQueue().
+     *
+     * @param queue La file de l'agent, ou null pour celle de JADE (sans limite)
+     * @return La file qui capture, ou queue si CAPTURE_PROPERTY n'est pas définie
+     */
+    public static MessageQueue wrap(Agent agent, MessageQueue queue) {
+        String directory = agent.getProperty(CAPTURE_PROPERTY, null);
+        if (directory == null || directory.trim().isEmpty()) {
+            return queue;
+        }
+        if (queue == null) {
+            // La file de JADE n'est pas accessible hors de jade.core: file
+            // bornée sans limite à la place (même comportement)
+            queue = new BoundedMessageQueue(agent.getLocalName(), Integer.MAX_VALUE,
+                                            BoundedMessageQueue.Policy.DROP);
+        }
+        try {
+            return new CaptureQueue(open(new File(directory.trim())), agent.getLocalName(), queue);
+        } catch (IOException e) {
+            Log.error(agent.getLocalName() + " cannot capture messages - " + e.getMessage());
+            return queue;
+        }
+    }
+
+    /**
+     * open() - Capture de la JVM dans ce répertoire (ouverte au premier appel)
+     */
+    public static synchronized MessageCapture open(File directory) throws IOException {
+        String key = directory.getAbsolutePath();
+        MessageCapture capture = captures.get(key);
+        if (capture == null) {
+            String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+            capture = new MessageCapture(new File(directory, "messages-" + pid + ".capture"));
+            captures.put(key, capture);
+        }
+        return capture;
+    }
+
+
+    // ==================== Attributs ====================
+
+    private final File path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    /** Position de fin du fichier (thread d'écriture, sous flushLock) */
+    private long position = HEADER;
+    private final Object flushLock = new Object();
+
+    private final long startNanos = System.nanoTime();
+
+    // Anneau: [tail, head) reste à écrire dans le fichier (positions absolues, sous this)
+    private final byte[] ring = new byte[RING_SIZE];
+    private long head = 0;
+    private long tail = 0;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private long records = 0;
+    private long dropped = 0;
+    private boolean full = false;
+    private volatile boolean closed = false;
+
+    /** Tampon d'encodage de chaque thread (émetteurs et agents) */
+    private final ThreadLocal<Encoder> encoders = new ThreadLocal<Encoder>() {
+        protected Encoder initialValue() {
+            return new Encoder();
+        }
+    };
+
+
+    // ==================== Ouverture et fermeture ====================
+
+    private MessageCapture(File path) throws IOException {
+        File directory = path.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_MAPPING);
+        mapped.putInt(0, MAGIC);
+        mapped.putLong(4, System.currentTimeMillis());
+        mapped.putInt(HEADER, 0);
+
+        // ---- Thread d'écriture: vide l'anneau dans le fichier ----
+        Thread flusher = new Thread(new Runnable() {
+            public void run() {
+                while (!closed) {
+                    synchronized (MessageCapture.this) {
+                        try {
+                            MessageCapture.this.wait(FLUSH_INTERVAL);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    flush();
+                }
+            }
+        }, "message-capture");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        // Les derniers enregistrements sont écrits à l'arrêt de la JVM
+        java.lang.Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                close();
+            }
+        }));
+        Log.info("[OK] capturing messages to " + path);
+    }
+
+    public File getPath() {
+        return path;
+    }
+
+    /**
+     * close() - Écrit ce qui reste dans l'anneau et ferme le fichier
+     */
+    public void close() {
+        synchronized (flushLock) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            try {
+                mapped.force();
+                channel.close();
+            } catch (IOException e) {
+                Log.error("cannot close " + path + " - " + e.getMessage());
+            }
+        }
+        Log.info("[OK] capture " + path + " closed: " + stats());
+    }
+
+
+    // ==================== Enregistrement (émetteurs et agents) ====================
+
+    /**
+     * arrive() - Message déposé dans la file de receiver
+     *
+     * @return Le numéro de l'enregistrement (repris par take())
+     */
+    public long arrive(String receiver, ACLMessage msg) {
+        long id = nextId.getAndIncrement();
+        Encoder encoder = encoders.get();
+        try {
+            DataOutputStream out = encoder.begin(ARRIVE, micros(), id);
+            out.writeByte(msg.getPerformative());
+            ContentCodecs.writeString(out, receiver);
+            ContentCodecs.writeString(out, msg.getSender() == null ? null : msg.getSender().getName());
+            ContentCodecs.writeString(out, msg.getConversationId());
+            ContentCodecs.writeString(out, msg.getReplyWith());
+            ContentCodecs.writeString(out, msg.getInReplyTo());
+            ContentCodecs.writeString(out, msg.getLanguage());
+            ContentCodecs.writeString(out, msg.getOntology());
+            ContentCodecs.writeString(out, msg.getProtocol());
+            if (msg.hasByteSequenceContent()) {
+                byte[] content = msg.getByteSequenceContent();
+                out.writeByte(BYTES);
+                ContentCodecs.writeSize(out, content.length);
+                out.write(content);
+            } else if (msg.getContent() != null) {
+                out.writeByte(TEXT);
+                ContentCodecs.writeString(out, msg.getContent());
+            } else {
+                out.writeByte(NO_CONTENT);
+            }
+        } catch (IOException e) {
+            // Impossible dans un tampon en mémoire
+            return id;
+        }
+        append(encoder);
+        return id;
+    }
+
+    /**
+     * take() - Message retiré de la file par l'agent
+     */
+    public void take(long id) {
+        Encoder encoder = encoders.get();
+        try {
+            encoder.begin(TAKE, micros(), id);
+        } catch (IOException e) {
+            return;
+        }
+        append(encoder);
+    }
+
+    private long micros() {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    /**
+     * append() - Copie l'enregistrement encodé dans l'anneau ([longueur][données])
+     */
+    private synchronized void append(Encoder encoder) {
+        int length = encoder.buffer.size();
+        if (closed || head - tail + 4 + length > RING_SIZE) {
+            dropped++;
+            return;
+        }
+        // head = octets déjà ajoutés: l'enregistrement et la marque de fin doivent tenir dans le fichier
+        if (HEADER + head + 4 + length + 4 > MAX_FILE_SIZE) {
+            dropped++;
+            if (!full) {
+                full = true;
+                Log.warn("capture " + path + " reached " + (MAX_FILE_SIZE >> 20) +
+                         " MB, further records are dropped");
+            }
+            return;
+        }
+        putInt(head, length);
+        put(head + 4, encoder.buffer.bytes(), length);
+        head += 4 + length;
+        records++;
+        if (head - tail > RING_SIZE / 2) {
+            // Réveiller le thread d'écriture sans attendre FLUSH_INTERVAL
+            notify();
+        }
+    }
+
+    private void putInt(long at, int value) {
+        ring[(int) (at & (RING_SIZE - 1))] = (byte) (value >>> 24);
+        ring[(int) ((at + 1) & (RING_SIZE - 1))] = (byte) (value >>> 16);
+        ring[(int) ((at + 2) & (RING_SIZE - 1))] = (byte) (value >>> 8);
+        ring[(int) ((at + 3) & (RING_SIZE - 1))] = (byte) value;
+    }
+
+    private void put(long at, byte[] bytes, int length) {
+        int start = (int) (at & (RING_SIZE - 1));
+        int first = Math.min(length, RING_SIZE - start);
+        System.arraycopy(bytes, 0, ring, start, first);
+        System.arraycopy(bytes, first, ring, 0, length - first);
+    }
+
+
+    // ==================== Écriture du fichier ====================
+
+    /**
+     * flush() - Écrit le contenu de l'anneau dans le fichier projeté
+     *
+     * La partie [tail, head) n'est pas modifiée par les émetteurs tant que
+     * tail n'avance pas: la copie se fait hors du verrou de l'anneau.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (closed) {
+                return;
+            }
+            long from;
+            long to;
+            synchronized (this) {
+                from = tail;
+                to = head;
+            }
+            if (from == to) {
+                return;
+            }
+            int length = (int) (to - from);
+            try {
+                ensureCapacity(position + length + 4);
+            } catch (IOException e) {
+                Log.error("cannot grow " + path + ", capture stopped - " + e.getMessage());
+                closed = true;
+                return;
+            }
+            int start = (int) (from & (RING_SIZE - 1));
+            int first = Math.min(length, RING_SIZE - start);
+            // Fin d'abord: les enregistrements ne sont visibles qu'une fois copiés
+            // (position < MAX_FILE_SIZE: les index int de la projection suffisent)
+            mapped.putInt((int) (position + length), 0);
+            MappedByteBuffer view = mapped;
+            view.position((int) position);
+            view.put(ring, start, first);
+            view.put(ring, 0, length - first);
+            position += length;
+            synchronized (this) {
+                tail = to;
+            }
+        }
+    }
+
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed > mapped.capacity()) {
+            long size = mapped.capacity();
+            while (size < needed) {
+                size *= 2;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_FILE_SIZE));
+        }
+    }
+
+
+    // ==================== Métriques ====================
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * stats() - Résumé: enregistrements, perdus (anneau ou fichier plein), taille du fichier
+     */
+    public synchronized String stats() {
+        return records + " records, " + dropped + " dropped, " + (head / 1024) + " KB";
+    }
+
+
+    // ==================== File qui capture ====================
+
+    /**
+     * CaptureQueue - Enveloppe la file d'un agent (JADE ou BoundedMessageQueue)
+     *
+     * JADE se synchronise sur la file (addLast() dans le thread de
+     * l'émetteur, receive() dans celui de l'agent): les méthodes synchronized
+     * utilisent le même verrou. Un message ignoré, refusé ou débordé sur
+     * disque par une file bornée a un ARRIVE sans TAKE.
+     */
+    private static class CaptureQueue implements MessageQueue {
+        private final MessageCapture capture;
+        private final String owner;
+        private final MessageQueue queue;
+
+        /** Numéro de l'ARRIVE de chaque message encore dans la file */
+        private final Map<ACLMessage, Long> ids = new IdentityHashMap<ACLMessage, Long>();
+
+        CaptureQueue(MessageCapture capture, String owner, MessageQueue queue) {
+            this.capture = capture;
+            this.owner = owner;
+            this.queue = queue;
+        }
+
+        public synchronized void addLast(ACLMessage msg) {
+            long id = capture.arrive(owner, msg);
+            int before = queue.size();
+            queue.addLast(msg);
+            // Gardé seulement s'il est bien dans la file (pas ignoré ni débordé sur disque)
+            if (queue.size() > before) {
+                ids.put(msg, Long.valueOf(id));
+            }
+        }
+
+        /**
+         * Message remis en tête (putBack): déjà compté, pas de nouvel ARRIVE
+         */
+        public synchronized void addFirst(ACLMessage msg) {
+            queue.addFirst(msg);
+        }
+
+        public synchronized ACLMessage receive(MessageTemplate template) {
+            ACLMessage msg = queue.receive(template);
+            if (msg != null) {
+                taken(msg);
+            }
+            return msg;
+        }
+
+        public synchronized List<ACLMessage> receive(MessageTemplate template, int max) {
+            List<ACLMessage> messages = queue.receive(template, max);
+            if (messages != null) {
+                for (ACLMessage msg : messages) {
+                    taken(msg);
+                }
+            }
+            return messages;
+        }
+
+        private void taken(ACLMessage msg) {
+            Long id = ids.remove(msg);
+            if (id != null) {
+                capture.take(id.longValue());
+            }
+        }
+
+        public synchronized int getMaxSize() {
+            return queue.getMaxSize();
+        }
+
+        public synchronized void setMaxSize(int newSize) {
+            queue.setMaxSize(newSize);
+        }
+
+        public synchronized boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        public synchronized int size() {
+            return queue.size();
+        }
+
+        public synchronized void copyTo(jade.util.leap.List messages) {
+            queue.copyTo(messages);
+        }
+    }
+
+    /**
+     * Encoder - Tampon réutilisé pour encoder un enregistrement (un par thread)
+     */
+    private static class Encoder {
+        final Buffer buffer = new Buffer();
+        final DataOutputStream out = new DataOutputStream(buffer);
+
+        DataOutputStream begin(byte type, long micros, long id) throws IOException {
+            buffer.reset();
+            out.writeByte(type);
+            out.writeLong(micros);
+            out.writeLong(id);
+            return out;
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(512);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+
+    // ==================== Lecture ====================
+
+    /**
+     * Record - Un enregistrement relu d'un fichier de capture
+     */
+    public static class Record {
+        public final byte type;
+        /** Date depuis le début de la capture (µs) */
+        public final long micros;
+        public final long id;
+        /** Nom local du récepteur (ARRIVE seulement) */
+        public final String receiver;
+        /** Message reconstitué, sans destinataire (ARRIVE seulement) */
+        public final ACLMessage message;
+        /** Taille de l'enregistrement (octets) */
+        public final int size;
+
+        Record(byte type, long micros, long id, String receiver, ACLMessage message, int size) {
+            this.type = type;
+            this.micros = micros;
+            this.id = id;
+            this.receiver = receiver;
+            this.message = message;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Handler - Reçoit les enregistrements dans l'ordre du fichier
+     */
+    public interface Handler {
+        void onRecord(Record record);
+    }
+
+    /**
+     * read() - Relit un fichier de capture
+     *
+     * @return Le nombre d'enregistrements lus
+     */
+    public static int read(File capture, Handler handler) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(capture, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (bytes.capacity() < HEADER + 4 || bytes.getInt(0) != MAGIC) {
+                throw new IOException(capture + " is not a message capture");
+            }
+            int count = 0;
+            int position = HEADER;
+            while (position + 4 <= bytes.capacity()) {
+                int length = bytes.getInt(position);
+                if (length <= 0 || position + 4 + length > bytes.capacity()) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                bytes.position(position + 4);
+                bytes.get(record);
+                handler.onRecord(decode(record));
+                position += 4 + length;
+                count++;
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Record decode(byte[] record) throws IOException {
+        DataInput in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        long micros = in.readLong();
+        long id = in.readLong();
+        if (type != ARRIVE) {
+            return new Record(type, micros, id, null, null, record.length);
+        }
+        ACLMessage msg = new ACLMessage(in.readByte());
+        String receiver = ContentCodecs.readString(in);
+        String sender = ContentCodecs.readString(in);
+        if (sender != null) {
+            msg.setSender(new AID(sender, AID.ISGUID));
+        }
+        msg.setConversationId(ContentCodecs.readString(in));
+        msg.setReplyWith(ContentCodecs.readString(in));
+        msg.setInReplyTo(ContentCodecs.readString(in));
+        msg.setLanguage(ContentCodecs.readString(in));
+        msg.setOntology(ContentCodecs.readString(in));
+        msg.setProtocol(ContentCodecs.readString(in));
+        byte content = in.readByte();
+        if (content == BYTES) {
+            byte[] bytes = new byte[ContentCodecs.readSize(in)];
+            in.readFully(bytes);
+            msg.setByteSequenceContent(bytes);
+        } else if (content == TEXT) {
+            msg.setContent(ContentCodecs.readString(in));
+        }
+        return new Record(type, micros, id, receiver, msg, record.length);
+    }
+
+
+    // ==================== Résumé par flux ====================
+
+    /**
+     * Flow - Messages d'un émetteur vers un récepteur
+     */
+    private static class Flow {
+        final String name;
+        int messages;
+        long bytes;
+        int waiting;
+        long first = -1;
+        long last;
+        final LatencyRecorder wait = new LatencyRecorder();
+
+        Flow(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * summary() - Une ligne par flux (émetteur -> récepteur), les plus lents d'abord
+     *
+     * Lents = attente dans la file la plus longue (p99). "not taken": messages
+     * encore dans la file à la fin de la capture, ou ignorés par une file bornée.
+     */
+    public static List<String> summary(File capture) throws IOException {
+        final Map<String, Flow> flows = new LinkedHashMap<String, Flow>();
+        final Map<Long, Object[]> pending = new HashMap<Long, Object[]>();
+        read(capture, new Handler() {
+            public void onRecord(Record record) {
+                if (record.type == ARRIVE) {
+                    AID sender = record.message.getSender();
+                    String name = (sender == null ? "?" : sender.getLocalName()) + " -> " + record.receiver;
+                    Flow flow = flows.get(name);
+                    if (flow == null) {
+                        flow = new Flow(name);
+                        flows.put(name, flow);
+                    }
+                    flow.messages++;
+                    flow.bytes += record.size;
+                    flow.waiting++;
+                    if (flow.first < 0) {
+                        flow.first = record.micros;
+                    }
+                    flow.last = record.micros;
+                    pending.put(Long.valueOf(record.id), new Object[] { flow, Long.valueOf(record.micros) });
+                } else {
+                    Object[] arrival = pending.remove(Long.valueOf(record.id));
+                    if (arrival != null) {
+                        Flow flow = (Flow) arrival[0];
+                        flow.waiting--;
+                        flow.wait.record((record.micros - ((Long) arrival[1]).longValue()) * 1000);
+                    }
+                }
+            }
+        });
+
+        List<Flow> sorted = new ArrayList<Flow>(flows.values());
+        Collections.sort(sorted, new Comparator<Flow>() {
+            public int compare(Flow a, Flow b) {
+                return Long.compare(b.wait.percentile(99), a.wait.percentile(99));
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        for (Flow flow : sorted) {
+            long span = Math.max(1, flow.last - flow.first);
+            lines.add(flow.name + ": " + flow.messages + " messages, " + flow.bytes / 1024 + " KB, " +
+                      (flow.messages > 1 ? flow.messages * 1000000L / span + " msg/s, " : "") +
+                      flow.waiting + " not taken, queue wait " + flow.wait.summary());
+        }
+        return lines;
+    }
+
+    /**
+     * main() - Affiche le résumé par flux d'un fichier de capture
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            Log.error("usage: MessageCapture <file.capture>");
+            Log.flush();
+            System.exit(1);
+        }
+        for (String line : summary(new File(args[0]))) {
+            Log.info(line);
+        }
+        Log.flush();
+    }
+}
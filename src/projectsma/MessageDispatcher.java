@@ -0,0 +1,316 @@
+package projectsma;
+
+import jade.content.lang.Codec.CodecException;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MessageDispatcher - Réception par lots et distribution par table
+ *
+ * Un comportement de réception classique traite un seul message par appel
+ * de action(): avec une file pleine, chaque message coûte un passage complet
+ * dans l'ordonnanceur de l'agent. De plus, createReply() alloue un nouveau
+ * message pour chaque réponse.
+ *
+ * Ce comportement:
+ * - vide la file: jusqu'à maxBatch messages par appel de action()
+ * - choisit le traitement dans une table indexée par performatif
+ *   (et, si besoin, par ontologie), préparée à l'avance
+ * - ne retire de la file que les messages qu'il sait traiter:
+ *   les autres restent disponibles pour les autres comportements
+ * - réutilise un seul message de réponse (JADE copie le message à l'envoi)
+ * - dépaquette les enveloppes d'un OutboundQueue: chaque message qu'elles
+ *   contiennent passe par son traitement, comme s'il était arrivé seul
+ * - compte les messages traités et envoyés (messages.in, messages.out) et
+ *   mesure la durée de chaque lot (action.<classe>), voir Metrics
+ *
+ * Utilisation:
+ *   MessageDispatcher dispatcher = new MessageDispatcher(this);
+ *   dispatcher.on(ACLMessage.INFORM, new MessageDispatcher.Handler() { ... });
+ *   addBehaviour(dispatcher);
+ */
+public class MessageDispatcher extends CyclicBehaviour {
+
+    // ==================== Interface de traitement ====================
+
+    /**
+     * Handler - Traite un message reçu
+     *
+     * Appelé dans le thread de l'agent. Pour répondre, utiliser
+     * reply() du dispatcher plutôt que msg.createReply().
+     */
+    public interface Handler {
+        void handle(ACLMessage msg);
+    }
+
+
+    // ==================== Constantes ====================
+
+    /** Nombre maximal de messages traités par appel de action() */
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    /** Nombre de performatifs FIPA (INFORM, REQUEST, ...) */
+    private static final int PERFORMATIVES = ACLMessage.getAllPerformativeNames().length;
+
+
+    // ==================== Attributs ====================
+
+    private final int maxBatch;
+
+    /** Traitements par performatif, toutes ontologies confondues */
+    private final Handler[] byPerformative = new Handler[PERFORMATIVES];
+
+    /** Traitements par ontologie puis par performatif (prioritaires) */
+    private final Map<String, Handler[]> byOntology = new HashMap<String, Handler[]>();
+
+    /** Message de réponse réutilisé d'une réponse à l'autre */
+    private final ACLMessage reply = new ACLMessage(ACLMessage.INFORM);
+
+    /** Nombre de messages traités depuis le début */
+    private long dispatched = 0;
+
+    /**
+     * Agent qui envoie les réponses. removeBehaviour() remet myAgent à null,
+     * mais reply() doit encore servir aux résultats des requêtes en cours
+     * quand le dispatcher est retiré (migration, voir MobileProjectAgent).
+     */
+    private Agent owner;
+
+    // Métriques de l'agent, obtenues dans onStart() (myAgent peut être null avant)
+    private LongAdder messagesIn;
+    private LongAdder messagesOut;
+    private LatencyHistogram actionTime;
+
+    /** Ne reçoit que les messages pour lesquels un traitement existe, et les enveloppes */
+    private final MessageTemplate mt = new MessageTemplate(new MessageTemplate.MatchExpression() {
+        public boolean match(ACLMessage msg) {
+            return OutboundQueue.isBatch(msg) || handlerFor(msg) != null;
+        }
+    });
+
+
+    // ==================== Constructeurs ====================
+
+    /**
+     * Constructeur sans agent: myAgent est renseigné par addBehaviour()
+     */
+    public MessageDispatcher() {
+        this.maxBatch = DEFAULT_MAX_BATCH;
+    }
+
+    public MessageDispatcher(Agent agent) {
+        this(agent, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param agent L'agent parent
+     * @param maxBatch Nombre maximal de messages traités par appel de action()
+     */
+    public MessageDispatcher(Agent agent, int maxBatch) {
+        super(agent);
+        this.maxBatch = maxBatch;
+        this.owner = agent;
+    }
+
+
+    // ==================== Enregistrement des traitements ====================
+
+    /**
+     * on() - Associe un traitement à un performatif, quelle que soit l'ontologie
+     *
+     * @return ce dispatcher (pour enchaîner les appels)
+     */
+    public MessageDispatcher on(int performative, Handler handler) {
+        byPerformative[performative] = handler;
+        return this;
+    }
+
+    /**
+     * on() - Associe un traitement à un couple ontologie/performatif
+     *
+     * Prioritaire sur le traitement enregistré pour le performatif seul.
+     *
+     * @return ce dispatcher (pour enchaîner les appels)
+     */
+    public MessageDispatcher on(String ontology, int performative, Handler handler) {
+        Handler[] table = byOntology.get(ontology);
+        if (table == null) {
+            table = new Handler[PERFORMATIVES];
+            byOntology.put(ontology, table);
+        }
+        table[performative] = handler;
+        return this;
+    }
+
+
+    // ==================== Méthode action() ====================
+
+    public void onStart() {
+        owner = myAgent;
+        Metrics metrics = Metrics.of(myAgent);
+        messagesIn = metrics.counter("messages.in");
+        messagesOut = metrics.counter("messages.out");
+        String name = getClass().getSimpleName();
+        actionTime = metrics.histogram("action." + (name.isEmpty() ? "MessageDispatcher" : name));
+    }
+
+    public void action() {
+        // ---- Étape 1: Vider la file, dans la limite du lot ----
+        long start = System.nanoTime();
+        int count = 0;
+        ACLMessage msg;
+        while (count < maxBatch && (msg = myAgent.receive(mt)) != null) {
+            // ---- Étape 2: Distribuer via la table (enveloppe: chacun de ses messages) ----
+            if (OutboundQueue.isBatch(msg)) {
+                count += unpack(msg);
+            } else {
+                handlerFor(msg).handle(msg);
+                count++;
+            }
+        }
+        dispatched += count;
+        if (count > 0) {
+            messagesIn.add(count);
+            actionTime.record(System.nanoTime() - start);
+        }
+
+        // ---- Étape 3: File vide: attendre le prochain message ----
+        // Si le lot est plein, on rend la main sans bloquer: les autres
+        // comportements passent, puis action() reprend la suite de la file
+        if (count < maxBatch) {
+            block();
+        }
+    }
+
+
+    // ==================== Réponse ====================
+
+    /**
+     * reply() - Répond à un message sans allouer de nouveau message
+     *
+     * Remplit les mêmes champs que createReply() (destinataire, conversation,
+     * inReplyTo, protocole, langage, ontologie) dans le message réutilisé.
+     *
+     * @param msg Le message reçu
+     * @param performative Le performatif de la réponse
+     * @param content Le contenu de la réponse
+     */
+    public void reply(ACLMessage msg, int performative, String content) {
+        prepareReply(msg, performative);
+        reply.setContent(content);
+
+        owner.send(reply);
+        messagesOut.increment();
+    }
+
+    /**
+     * reply() - Répond avec un contenu binaire (ContentCodecs)
+     *
+     * Même réponse que reply(msg, performative, content), mais le contenu
+     * est l'objet encodé par le codec enregistré pour cette ontologie.
+     *
+     * @throws CodecException Si aucun codec ne correspond (rien n'est envoyé)
+     */
+    public void reply(ACLMessage msg, int performative, String ontology, Object payload)
+            throws CodecException {
+        prepareReply(msg, performative);
+        ContentCodecs.fillContent(reply, ontology, payload);
+
+        owner.send(reply);
+        messagesOut.increment();
+    }
+
+    private void prepareReply(ACLMessage msg, int performative) {
+        reply.reset();
+        reply.setPerformative(performative);
+
+        Iterator it = msg.getAllReplyTo();
+        if (it.hasNext()) {
+            while (it.hasNext()) {
+                reply.addReceiver((AID) it.next());
+            }
+        } else {
+            reply.addReceiver(msg.getSender());
+        }
+        reply.setConversationId(msg.getConversationId());
+        reply.setInReplyTo(msg.getReplyWith());
+        reply.setProtocol(msg.getProtocol());
+        reply.setLanguage(msg.getLanguage());
+        reply.setOntology(msg.getOntology());
+        reply.setEncoding(msg.getEncoding());
+    }
+
+    /**
+     * getDispatched() - Nombre total de messages traités
+     */
+    public long getDispatched() {
+        return dispatched;
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    /**
+     * unpack() - Distribue les messages d'une enveloppe (voir OutboundQueue)
+     *
+     * Les messages sans traitement sont remis en tête de la file, dans leur
+     * ordre, pour les autres comportements.
+     *
+     * @return Le nombre de messages traités
+     */
+    private int unpack(ACLMessage envelope) {
+        List<ACLMessage> messages;
+        try {
+            messages = OutboundQueue.unpack(envelope, myAgent.getAID());
+        } catch (IOException e) {
+            Log.warn(myAgent.getLocalName() + " dropped an unreadable envelope from " +
+                     envelope.getSender().getLocalName() + " - " + e.getMessage());
+            return 0;
+        }
+        int count = 0;
+        List<ACLMessage> unhandled = null;
+        for (ACLMessage msg : messages) {
+            Handler handler = handlerFor(msg);
+            if (handler != null) {
+                handler.handle(msg);
+                count++;
+            } else {
+                if (unhandled == null) {
+                    unhandled = new ArrayList<ACLMessage>();
+                }
+                unhandled.add(msg);
+            }
+        }
+        if (unhandled != null) {
+            for (int i = unhandled.size() - 1; i >= 0; i--) {
+                myAgent.putBack(unhandled.get(i));
+            }
+        }
+        return count;
+    }
+
+    private Handler handlerFor(ACLMessage msg) {
+        int performative = msg.getPerformative();
+        if (performative < 0 || performative >= PERFORMATIVES) {
+            return null;
+        }
+        String ontology = msg.getOntology();
+        if (ontology != null && !byOntology.isEmpty()) {
+            Handler[] table = byOntology.get(ontology);
+            if (table != null && table[performative] != null) {
+                return table[performative];
+            }
+        }
+        return byPerformative[performative];
+    }
+}
@@ -0,0 +1,382 @@
+package projectsma;
+
+import jade.core.Agent;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Metrics - Compteurs et histogrammes d'un agent, exposés par JMX
+ *
+ * Chaque agent a son registre (Metrics.of(agent)), qui contient:
+ * - des compteurs (LongAdder): messages.in, messages.out...
+ * - des jauges, lues à la demande: queue.depth (toujours présente)
+ * - des histogrammes de durées (LatencyHistogram): action.*, df.search...
+ *
+ * Enregistrer une valeur ne prend aucun verrou: les compteurs et
+ * histogrammes sont à obtenir une fois (au démarrage du comportement)
+ * puis à garder dans un champ.
+ *
+ * Le registre est publié comme MBean "projectsma:type=Agent,name=<agent>"
+ * (visible dans jconsole ou VisualVM). Avec -projectsma.metrics <ms>, les
+ * registres sont aussi affichés périodiquement ([METRICS]), quand ils ont changé.
+ *
+ * Utilisation:
+ *   LongAdder in = Metrics.of(this).counter("messages.in");
+ *   in.increment();
+ *   ...
+ *   Metrics.release(this);   // dans takeDown()
+ */
+public class Metrics implements DynamicMBean {
+
+    // ==================== Configuration ====================
+
+    /** Propriété de la plateforme: intervalle d'affichage des métriques (ms, absente = pas d'affichage) */
+    public static final String METRICS_PROPERTY = "projectsma.metrics";
+
+    /** Domaine JMX des MBeans */
+    public static final String JMX_DOMAIN = "projectsma";
+
+    /**
+     * Gauge - Valeur lue au moment de l'affichage ou de la lecture JMX
+     *
+     * Appelée depuis un autre thread que celui de l'agent.
+     */
+    public interface Gauge {
+        long value();
+    }
+
+
+    // ==================== Registres des agents ====================
+
+    /** Registres par nom d'agent */
+    private static final Map<String, Metrics> registries = new ConcurrentHashMap<String, Metrics>();
+
+    /** Affichage périodique, démarré par le premier agent qui trouve METRICS_PROPERTY */
+    private static ScheduledExecutorService reporter;
+
+    /** METRICS_PROPERTY invalide, déjà signalée: pas d'affichage */
+    private static boolean badPeriod = false;
+
+    /**
+     * of() - Registre de cet agent (créé et publié par JMX au premier appel)
+     *
+     * Au premier appel pour un agent, applique aussi le niveau de Log
+     * de la plateforme (-projectsma.log).
+     */
+    public static Metrics of(Agent agent) {
+        Metrics metrics = registries.get(agent.getLocalName());
+        if (metrics != null && metrics.agent == agent) {
+            return metrics;
+        }
+        return create(agent);
+    }
+
+    private static synchronized Metrics create(Agent agent) {
+        Metrics metrics = registries.get(agent.getLocalName());
+        if (metrics != null && metrics.agent == agent) {
+            return metrics;
+        }
+        // Un agent supprimé puis recréé avec le même nom repart de zéro
+        if (metrics != null) {
+            metrics.unregister();
+        }
+        sweep();
+
+        Log.configure(agent);
+        metrics = new Metrics(agent);
+        metrics.register();
+        registries.put(agent.getLocalName(), metrics);
+        startReporter(agent);
+        return metrics;
+    }
+
+    /**
+     * release() - Retire le registre de cet agent (à appeler dans takeDown())
+     */
+    public static void release(Agent agent) {
+        Metrics metrics = registries.get(agent.getLocalName());
+        if (metrics != null && metrics.agent == agent) {
+            registries.remove(agent.getLocalName());
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Retire les registres des agents supprimés sans appel à release()
+     */
+    private static void sweep() {
+        Iterator<Metrics> it = registries.values().iterator();
+        while (it.hasNext()) {
+            Metrics metrics = it.next();
+            if (metrics.agent.getState() == Agent.AP_DELETED) {
+                it.remove();
+                metrics.unregister();
+            }
+        }
+    }
+
+    private static void startReporter(Agent agent) {
+        String period = agent.getProperty(METRICS_PROPERTY, null);
+        if (reporter != null || period == null || badPeriod) {
+            return;
+        }
+        // Une valeur invalide ne doit pas empêcher l'agent de démarrer:
+        // pas d'affichage, signalé une seule fois (comme Log.parse())
+        long parsed;
+        try {
+            parsed = Long.parseLong(period.trim());
+        } catch (NumberFormatException e) {
+            parsed = 0;
+        }
+        if (parsed <= 0) {
+            badPeriod = true;
+            Log.warn("Invalid -" + METRICS_PROPERTY + " \"" + period + "\" (expected a period in ms > 0):" +
+                     " metrics are not reported");
+            return;
+        }
+        final long millis = parsed;
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "projectsma-metrics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                synchronized (Metrics.class) {
+                    sweep();
+                }
+                // Seuls les registres qui ont changé depuis le dernier affichage
+                for (Metrics metrics : registries.values()) {
+                    String snapshot = metrics.snapshot();
+                    if (!snapshot.equals(metrics.lastReport)) {
+                        Log.info("[METRICS] " + snapshot);
+                        metrics.lastReport = snapshot;
+                    }
+                }
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+
+    // ==================== Attributs ====================
+
+    private final Agent agent;
+    private final String name;
+    private ObjectName objectName;
+
+    /** Dernier affichage périodique (thread d'affichage uniquement) */
+    private String lastReport;
+
+    // Triés par nom pour un affichage stable
+    private final ConcurrentSkipListMap<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+    private final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+    private final ConcurrentSkipListMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+    private Metrics(final Agent agent) {
+        this.agent = agent;
+        this.name = agent.getLocalName();
+        gauge("queue.depth", new Gauge() {
+            public long value() {
+                return agent.getCurQueueSize();
+            }
+        });
+    }
+
+
+    // ==================== Compteurs, jauges, histogrammes ====================
+
+    /**
+     * counter() - Compteur de ce nom (créé au premier appel)
+     */
+    public LongAdder counter(String key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = new LongAdder();
+            LongAdder existing = counters.putIfAbsent(key, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * histogram() - Histogramme de durées de ce nom (créé au premier appel)
+     */
+    public LatencyHistogram histogram(String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = histograms.putIfAbsent(key, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * gauge() - Publie une valeur lue à la demande (remplace une jauge du même nom)
+     */
+    public void gauge(String key, Gauge gauge) {
+        gauges.put(key, gauge);
+    }
+
+    /**
+     * snapshot() - Toutes les valeurs sur une ligne
+     *
+     * Ex: "Receiver: messages.in=1200 queue.depth=3 action.ReceiverBehaviour{...}"
+     */
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder(name).append(':');
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue().sum());
+        }
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue().value());
+        }
+        for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('{').append(e.getValue().summary()).append('}');
+        }
+        return sb.toString();
+    }
+
+
+    // ==================== Publication JMX ====================
+
+    private void register() {
+        try {
+            objectName = new ObjectName(JMX_DOMAIN + ":type=Agent,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            Log.warn(name + " metrics not published through JMX - " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    private void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            // Déjà retiré
+        }
+        objectName = null;
+    }
+
+    /**
+     * Attributs JMX: un par compteur et par jauge; pour chaque histogramme,
+     * <nom>.count, <nom>.meanMicros, <nom>.p50Micros, <nom>.p99Micros, <nom>.maxMicros
+     */
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongAdder counter = counters.get(attribute);
+        if (counter != null) {
+            return Long.valueOf(counter.sum());
+        }
+        Gauge gauge = gauges.get(attribute);
+        if (gauge != null) {
+            return Long.valueOf(gauge.value());
+        }
+        int dot = attribute.lastIndexOf('.');
+        LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram != null) {
+            String field = attribute.substring(dot + 1);
+            if ("count".equals(field)) {
+                return Long.valueOf(histogram.count());
+            } else if ("meanMicros".equals(field)) {
+                return Long.valueOf(histogram.mean() / 1000);
+            } else if ("p50Micros".equals(field)) {
+                return Long.valueOf(histogram.percentile(50) / 1000);
+            } else if ("p99Micros".equals(field)) {
+                return Long.valueOf(histogram.percentile(99) / 1000);
+            } else if ("maxMicros".equals(field)) {
+                return Long.valueOf(histogram.max() / 1000);
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Ignoré, comme le prévoit DynamicMBean
+            }
+        }
+        return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /**
+     * Une seule opération: snapshot()
+     */
+    public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+        if ("snapshot".equals(action)) {
+            return snapshot();
+        }
+        throw new ReflectionException(new NoSuchMethodException(action));
+    }
+
+    /**
+     * Recalculé à chaque appel: les métriques apparaissent au fil de l'exécution
+     */
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (String key : counters.keySet()) {
+            attributes.add(attribute(key, "Counter"));
+        }
+        for (String key : gauges.keySet()) {
+            attributes.add(attribute(key, "Gauge"));
+        }
+        String[] fields = { "count", "meanMicros", "p50Micros", "p99Micros", "maxMicros" };
+        for (String key : histograms.keySet()) {
+            for (String field : fields) {
+                attributes.add(attribute(key + "." + field, "Latency histogram"));
+            }
+        }
+        MBeanOperationInfo[] operations = {
+            new MBeanOperationInfo("snapshot", "All metrics on one line", new MBeanParameterInfo[0],
+                                   String.class.getName(), MBeanOperationInfo.INFO)
+        };
+        return new MBeanInfo(getClass().getName(), "Metrics of agent " + name,
+                             attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                             null, operations, null);
+    }
+
+    private static MBeanAttributeInfo attribute(String key, String description) {
+        return new MBeanAttributeInfo(key, Long.class.getName(), description, true, false, false);
+    }
+}
@@ -0,0 +1,382 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.ContainerID;
+import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.FIPAException;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.LEAPACLCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MobileProjectAgent - ProjectAgent qui peut migrer vers un conteneur moins chargé
+ * 
+ * Avec -projectsma.rebalance <période ms>, sa charge est mesurée et le
+ * RebalancerAgent peut le faire migrer vers un conteneur moins chargé
+ * (voir Rebalancer): il termine ses requêtes en cours, part avec un
+ * instantané de son état et de sa file, et met à jour sa description au DF
+ * (propriété CONTAINER de ses services).
+ * 
+ * Utilisation:
+ *   java jade.Boot -projectsma.rebalance 1000 agent1:projectsma.MobileProjectAgent(construction)
+ *   (mêmes paramètres que le ProjectAgent)
+ * 
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class MobileProjectAgent extends ProjectAgent {
+    
+    // ==================== Constantes ====================
+    
+    /**
+     * Avant une migration: intervalle de vérification de la fin des requêtes en cours (ms)
+     */
+    private static final long DRAIN_POLL = 5;
+    
+    
+    // ==================== Attributs ====================
+    
+    /**
+     * Comportements de l'agent, retirés avant une migration
+     * (créée au premier addBehaviour(), qui a lieu dans ProjectAgent.setup())
+     */
+    private transient List<Behaviour> behaviours;
+    
+    /**
+     * Confirmation à envoyer au RebalancerAgent une fois arrivé (null hors migration)
+     */
+    private transient ACLMessage migration;
+    
+    /**
+     * Instantané de l'état et de la file, seul à voyager pendant une migration
+     */
+    private byte[] checkpoint;
+    
+    /**
+     * Reprise du service si le transfert échoue (voir beforeMove())
+     */
+    private Stranded stranded;
+    
+    
+    // ==================== Méthode setup() ====================
+    
+    /**
+     * setup() - Démarrage du ProjectAgent, puis mesure de la charge du conteneur
+     */
+    protected void setup() {
+        super.setup();
+        if (Rebalancer.enabled(this)) {
+            Rebalancer.join(this);
+        }
+    }
+    
+    /**
+     * describe() - Ajoute le conteneur actuel aux services, mis à jour après chaque migration
+     */
+    protected DFAgentDescription describe() {
+        DFAgentDescription dfd = super.describe();
+        if (Rebalancer.enabled(this)) {
+            Iterator it = dfd.getAllServices();
+            while (it.hasNext()) {
+                ((ServiceDescription) it.next())
+                    .addProperties(new Property(Rebalancer.CONTAINER, here().getName()));
+            }
+        }
+        return dfd;
+    }
+    
+    /**
+     * addHandlers() - Migration demandée par le RebalancerAgent (voir Rebalancer)
+     */
+    protected void addHandlers(MessageDispatcher dispatcher) {
+        dispatcher.on(Rebalancer.ONTOLOGY, ACLMessage.REQUEST, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage request) {
+                migrate(request);
+            }
+        });
+    }
+    
+    
+    // ==================== Méthode migrate() ====================
+    
+    /**
+     * migrate() - Part vers un autre conteneur, à la demande du RebalancerAgent
+     * 
+     * L'agent cesse de lire sa file (les requêtes reçues attendront son
+     * arrivée), attend la fin des requêtes en cours, puis appelle doMove().
+     * Si l'instantané ne peut pas être écrit, il refuse de partir (FAILURE)
+     * et reprend le service: après doMove(), il serait trop tard.
+     */
+    private void migrate(ACLMessage request) {
+        final String target = request.getContent();
+        if (!registered || migration != null || target == null || target.equals(here().getName())) {
+            dispatcher.reply(request, ACLMessage.REFUSE, 
+                             registered ? "cannot move to " + target : "not registered yet");
+            return;
+        }
+        migration = request.createReply();
+        migration.setPerformative(ACLMessage.INFORM);
+        migration.setContent(target);
+        
+        // ---- Partir une fois les requêtes en cours terminées ----
+        addBehaviour(new TickerBehaviour(this, DRAIN_POLL) {
+            public void onStart() {
+                super.onStart();
+                // Ne plus lire la file (pas depuis le dispatcher lui-même,
+                // qui est encore dans son action())
+                removeBehaviour(dispatcher);
+            }
+            
+            protected void onTick() {
+                if (bridge.pending() > 0) {
+                    return;
+                }
+                stop();
+                
+                // Essai de l'instantané avec la file actuelle, remise en place ensuite
+                List<ACLMessage> mailbox = Rebalancer.drain(myAgent);
+                try {
+                    checkpoint(mailbox);
+                } catch (Exception e) {
+                    Rebalancer.restore(myAgent, mailbox);
+                    stayHere("cannot write checkpoint - " + e.getMessage());
+                    return;
+                }
+                Rebalancer.restore(myAgent, mailbox);
+                doMove(new ContainerID(target, null));
+            }
+        });
+    }
+    
+    /**
+     * stayHere() - Renonce à une migration pas encore commencée
+     */
+    private void stayHere(String reason) {
+        Log.error(getLocalName() + " does not move to " + migration.getContent() + ": " + reason);
+        migration.setPerformative(ACLMessage.FAILURE);
+        migration.setContent(reason);
+        send(migration);
+        migration = null;
+        addBehaviour(dispatcher);
+    }
+    
+    /**
+     * beforeMove() - Appelée par JADE juste avant le transfert (conteneur de départ)
+     * 
+     * Seul l'instantané (checkpoint) et quelques champs voyagent: les
+     * comportements, le pool de threads et les métriques restent ici.
+     */
+    protected void beforeMove() {
+        // ---- Étape 1: Quitter le conteneur de départ ----
+        Rebalancer.leave(this);
+        followTopics(false);
+        
+        // ---- Étape 2: Instantané de l'état et des messages en attente ----
+        // Déjà essayé dans migrate(); en cas d'échec ici, checkpoint reste null (voir resume())
+        try {
+            checkpoint = checkpoint(Rebalancer.drain(this));
+        } catch (Exception e) {
+            checkpoint = null;
+            Log.error(getLocalName() + " cannot write its checkpoint - " + e.getMessage());
+        }
+        
+        // ---- Étape 3: Arrêter ce qui ne voyage pas ----
+        for (Behaviour b : new ArrayList<Behaviour>(behaviours)) {
+            removeBehaviour(b);
+        }
+        workers.shutdown();
+        workers = null;
+        dispatcher = null;
+        bridge = null;
+        Metrics.release(this);
+        
+        // Si le transfert échoue, JADE n'appelle pas afterMove(): ce
+        // comportement, seul à voyager, reprend alors le service ici
+        stranded = new Stranded();
+        addBehaviour(stranded);
+    }
+    
+    /**
+     * afterMove() - Appelée par JADE à l'arrivée, avant tout comportement
+     */
+    protected void afterMove() {
+        removeBehaviour(stranded);
+        stranded = null;
+        resume(true);
+    }
+    
+    /**
+     * Stranded - Reprise du service si la migration a échoué
+     * 
+     * Classe nommée (et non anonyme): elle voyage avec l'agent, sans
+     * référence vers son contexte de création.
+     */
+    private static class Stranded extends OneShotBehaviour {
+        public void action() {
+            ((MobileProjectAgent) myAgent).resume(false);
+        }
+    }
+    
+    /**
+     * resume() - Reprend le service après une migration, ou son échec
+     * 
+     * @param moved true à l'arrivée dans le nouveau conteneur
+     */
+    private void resume(boolean moved) {
+        // Métriques de l'agent: un nouveau registre dans ce conteneur
+        Metrics.of(this);
+        
+        // ---- Étape 1: Relire l'instantané ----
+        // Sans instantané, l'agent arrivé n'a plus ni services ni confirmation;
+        // resté sur place, il a encore son état, mais plus les messages retirés de sa file
+        int size = 0;
+        List<ACLMessage> mailbox = new ArrayList<ACLMessage>();
+        if (checkpoint != null) {
+            size = checkpoint.length;
+            try {
+                mailbox = restore(checkpoint);
+            } catch (IOException e) {
+                Log.error(getLocalName() + " cannot read its checkpoint - " + e.getMessage());
+                doDelete();
+                return;
+            }
+            checkpoint = null;
+        } else if (moved) {
+            Log.error(getLocalName() + " arrived in " + here().getName() + " without its checkpoint");
+            doDelete();
+            return;
+        }
+        
+        // ---- Étape 2: Comportements et abonnements du conteneur actuel ----
+        serveRequests();
+        followTopics(true);
+        Rebalancer.join(this);
+        
+        // ---- Étape 3: Messages reçus avant le départ, en tête de file ----
+        Rebalancer.restore(this, mailbox);
+        
+        // ---- Étape 4: Description au DF (conteneur actuel) ----
+        description = describe();
+        if (moved) {
+            relocate();
+        }
+        
+        // ---- Étape 5: Prévenir le RebalancerAgent ----
+        if (moved) {
+            migration.setContent(here().getName() + " " + size + " " + mailbox.size());
+        } else {
+            Log.warn(getLocalName() + " cannot move to " + migration.getContent() + ", still in " + 
+                   here().getName());
+            migration.setPerformative(ACLMessage.FAILURE);
+            migration.setContent("cannot move to " + migration.getContent());
+        }
+        send(migration);
+        migration = null;
+    }
+    
+    /**
+     * relocate() - Met à jour la description au DF après une migration
+     * 
+     * L'AID ne change pas: seule la propriété CONTAINER des services change,
+     * et les abonnés de l'annuaire (ServiceDirectoryCache) sont notifiés.
+     */
+    private void relocate() {
+        try {
+            for (Map.Entry<AID, DFAgentDescription> part : Directory.partition(this, description).entrySet()) {
+                DFService.modify(this, part.getKey(), part.getValue());
+            }
+        } catch (FIPAException e) {
+            Log.error(getLocalName() + " cannot update its description after moving - " + e.getMessage());
+        }
+    }
+    
+    /**
+     * checkpoint() - Instantané binaire: services, propriétés, confirmation, file
+     */
+    private byte[] checkpoint(List<ACLMessage> mailbox) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        ContentCodecs.writeSize(out, services.length);
+        for (int i = 0; i < services.length; i++) {
+            ContentCodecs.writeString(out, services[i]);
+        }
+        ContentCodecs.writeSize(out, properties.size());
+        for (Property p : properties) {
+            ContentCodecs.writeString(out, p.getName());
+            ContentCodecs.writeString(out, String.valueOf(p.getValue()));
+        }
+        LEAPACLCodec.serializeACL(migration, out);
+        Rebalancer.writeMessages(out, mailbox);
+        out.flush();
+        return buffer.toByteArray();
+    }
+    
+    /**
+     * restore() - Relit un instantané écrit par checkpoint()
+     * 
+     * @return Les messages qui étaient en attente dans la file
+     */
+    private List<ACLMessage> restore(byte[] snapshot) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        services = new String[ContentCodecs.readSize(in)];
+        for (int i = 0; i < services.length; i++) {
+            services[i] = ContentCodecs.readString(in);
+        }
+        int count = ContentCodecs.readSize(in);
+        properties = new ArrayList<Property>(count);
+        for (int i = 0; i < count; i++) {
+            String name = ContentCodecs.readString(in);
+            properties.add(new Property(name, ServiceQuery.typed(ContentCodecs.readString(in))));
+        }
+        migration = LEAPACLCodec.deserializeACL(in);
+        return Rebalancer.readMessages(in);
+    }
+    
+    /**
+     * addBehaviour() - Garde la liste des comportements (retirés avant une migration)
+     */
+    public void addBehaviour(Behaviour b) {
+        if (behaviours == null) {
+            behaviours = new ArrayList<Behaviour>();
+        }
+        behaviours.add(b);
+        super.addBehaviour(b);
+    }
+    
+    /**
+     * removeBehaviour() - Appelée aussi par JADE quand un comportement se termine
+     */
+    public void removeBehaviour(Behaviour b) {
+        if (behaviours != null) {
+            behaviours.remove(b);
+        }
+        super.removeBehaviour(b);
+    }
+    
+    
+    // ==================== Méthode takeDown() ====================
+    
+    /**
+     * takeDown() - Quitte la mesure de charge, puis arrêt du ProjectAgent
+     */
+    protected void takeDown() {
+        Rebalancer.leave(this);
+        super.takeDown();
+    }
+    
+}
+// Fin de la classe MobileProjectAgent
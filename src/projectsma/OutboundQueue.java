@@ -0,0 +1,413 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.LEAPACLCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OutboundQueue - Côté émetteur: regroupe les messages par destinataire
+ *
+ * Un émetteur bavard (pings d'état, INFORM répétés) paie pour chaque
+ * message le transport (un envoi, une copie, un passage entre conteneurs)
+ * et, chez le récepteur, un réveil de l'agent. Ce comportement:
+ * - retient les messages pendant une micro-fenêtre (window ms à partir du
+ *   premier message en attente pour ce destinataire)
+ * - fusionne les messages identiques (même performatif, contenu,
+ *   conversation, etc.): un seul exemplaire part, avec le paramètre
+ *   DUPLICATES = nombre de copies fusionnées
+ * - envoie une seule enveloppe par destinataire: PROPAGATE, protocole et
+ *   ontologie ONTOLOGY, contenu binaire (messages encodés en LEAP, sans
+ *   leurs destinataires); un lot d'un seul message part tel quel
+ * - vide un lot dès qu'il atteint maxBatch messages distincts ou
+ *   MAX_BYTES octets, sans attendre la fin de la fenêtre
+ *
+ * Le récepteur doit lire ses messages avec un MessageDispatcher (ou
+ * ReceiverBehaviour): les enveloppes y sont dépaquetées, chaque message
+ * passe par son traitement habituel, comme s'il était arrivé seul.
+ * Le performatif PROPAGATE évite qu'un comportement qui attend des INFORM
+ * (MatchPerformative) prenne une enveloppe pour un message ordinaire; un
+ * récepteur sans MessageDispatcher ne doit pas recevoir de lots.
+ *
+ * Une copie fusionnée est livrée à la place du premier exemplaire: l'ordre
+ * des messages d'un même lot peut changer. À réserver aux messages dont
+ * seule la dernière valeur compte, ou désactiver avec setMergeDuplicates(false).
+ * Les messages à plusieurs destinataires partent sans attendre, après les
+ * lots en attente de chacun de ces destinataires (l'ordre est conservé).
+ *
+ * À utiliser depuis le thread de l'agent (non synchronisé).
+ *
+ * Utilisation:
+ *   OutboundQueue outbound = new OutboundQueue(this, 5);
+ *   addBehaviour(outbound);
+ *   outbound.send(msg);      // au lieu de send(msg)
+ */
+public class OutboundQueue extends CyclicBehaviour {
+
+    // ==================== Constantes ====================
+
+    /** Protocole et ontologie des enveloppes */
+    public static final String ONTOLOGY = "projectsma-batch";
+
+    /** Paramètre d'un message fusionné: nombre de copies identiques envoyées */
+    public static final String DUPLICATES = "duplicates";
+
+    /** Durée par défaut de la micro-fenêtre (ms) */
+    public static final long DEFAULT_WINDOW = 5;
+
+    /** Nombre maximal de messages distincts par enveloppe */
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    /** Taille maximale d'une enveloppe (octets, messages encodés) */
+    private static final int MAX_BYTES = 64 * 1024;
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Message en attente et son nombre de copies
+     */
+    private static class Entry {
+        ACLMessage msg;
+        byte[] encoded;
+        int count;
+    }
+
+    /**
+     * Messages en attente pour un destinataire
+     */
+    private static class Batch {
+        final AID receiver;
+        /** Messages distincts, dans l'ordre de leur premier envoi (clé: encodage) */
+        final Map<Object, Entry> entries = new LinkedHashMap<Object, Entry>();
+        /** Fin de la fenêtre (System.currentTimeMillis()) */
+        long due;
+        int bytes;
+
+        Batch(AID receiver) {
+            this.receiver = receiver;
+        }
+    }
+
+    private final long window;
+    private final int maxBatch;
+    private boolean mergeDuplicates = true;
+
+    /** Lots en attente, par destinataire, dans l'ordre de leur ouverture */
+    private final Map<AID, Batch> batches = new LinkedHashMap<AID, Batch>();
+
+    /** Tampon d'encodage réutilisé d'un message à l'autre */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+    // Métriques de l'agent (voir Metrics)
+    private final LongAdder messagesOut;
+    private final LongAdder queued;
+    private final LongAdder merged;
+    private final LongAdder envelopes;
+
+
+    // ==================== Constructeurs ====================
+
+    public OutboundQueue(Agent agent) {
+        this(agent, DEFAULT_WINDOW, DEFAULT_MAX_BATCH);
+    }
+
+    public OutboundQueue(Agent agent, long window) {
+        this(agent, window, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param agent L'agent parent
+     * @param window Durée de la micro-fenêtre (ms)
+     * @param maxBatch Nombre maximal de messages distincts par enveloppe
+     */
+    public OutboundQueue(Agent agent, long window, int maxBatch) {
+        super(agent);
+        this.window = Math.max(0, window);
+        this.maxBatch = Math.max(1, maxBatch);
+        Metrics metrics = Metrics.of(agent);
+        messagesOut = metrics.counter("messages.out");
+        queued = metrics.counter("outbound.queued");
+        merged = metrics.counter("outbound.merged");
+        envelopes = metrics.counter("outbound.envelopes");
+    }
+
+    /**
+     * setMergeDuplicates() - Fusionner (true, défaut) ou non les messages identiques
+     */
+    public void setMergeDuplicates(boolean mergeDuplicates) {
+        this.mergeDuplicates = mergeDuplicates;
+    }
+
+
+    // ==================== Envoi ====================
+
+    /**
+     * send() - Met un message en attente (copié: il peut être réutilisé)
+     *
+     * À appeler depuis le thread de l'agent.
+     */
+    public void send(ACLMessage msg) {
+        Iterator<?> it = msg.getAllReceiver();
+        AID receiver = it.hasNext() ? (AID) it.next() : null;
+        if (receiver == null || it.hasNext()) {
+            // Aucun ou plusieurs destinataires: pas de regroupement, mais
+            // les messages déjà retenus pour ces destinataires partent avant
+            flushFor(msg);
+            myAgent.send(msg);
+            messagesOut.increment();
+            return;
+        }
+        queued.increment();
+
+        // ---- Étape 1: Encoder le message, sans son destinataire ----
+        ACLMessage copy = (ACLMessage) msg.clone();
+        copy.clearAllReceiver();
+        byte[] encoded;
+        try {
+            buffer.reset();
+            LEAPACLCodec.serializeACL(copy, new DataOutputStream(buffer));
+            encoded = buffer.toByteArray();
+        } catch (IOException e) {
+            Log.warn(myAgent.getLocalName() + " cannot batch message - " + e.getMessage());
+            flushFor(msg);
+            myAgent.send(msg);
+            messagesOut.increment();
+            return;
+        }
+
+        // ---- Étape 2: Lot du destinataire (ouvert par le premier message) ----
+        Batch batch = batches.get(receiver);
+        if (batch == null) {
+            batch = new Batch(receiver);
+            batch.due = System.currentTimeMillis() + window;
+            batches.put(receiver, batch);
+        }
+
+        // ---- Étape 3: Fusionner avec une copie identique, ou ajouter ----
+        // Sans fusion, chaque message a sa propre clé
+        Object key = mergeDuplicates ? ByteBuffer.wrap(encoded) : new Object();
+        Entry entry = batch.entries.get(key);
+        if (entry != null) {
+            entry.count++;
+            merged.increment();
+        } else {
+            copy.addReceiver(receiver);
+            entry = new Entry();
+            entry.msg = copy;
+            entry.encoded = encoded;
+            entry.count = 1;
+            batch.entries.put(key, entry);
+            batch.bytes += encoded.length;
+        }
+
+        // ---- Étape 4: Lot plein: l'envoyer tout de suite ----
+        if (batch.entries.size() >= maxBatch || batch.bytes >= MAX_BYTES) {
+            batches.remove(receiver);
+            flush(batch);
+        }
+
+        // Réveiller le comportement pour qu'il tienne compte de la nouvelle échéance
+        restart();
+    }
+
+    /**
+     * flush() - Envoie tout de suite tous les lots en attente
+     */
+    public void flush() {
+        for (Batch batch : batches.values()) {
+            flush(batch);
+        }
+        batches.clear();
+    }
+
+    /**
+     * pending() - Nombre de messages distincts en attente
+     */
+    public int pending() {
+        int pending = 0;
+        for (Batch batch : batches.values()) {
+            pending += batch.entries.size();
+        }
+        return pending;
+    }
+
+
+    // ==================== Méthode action() ====================
+
+    public void action() {
+        // ---- Étape 1: Envoyer les lots dont la fenêtre est écoulée ----
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        Iterator<Batch> it = batches.values().iterator();
+        while (it.hasNext()) {
+            Batch batch = it.next();
+            if (batch.due <= now) {
+                it.remove();
+                flush(batch);
+            } else {
+                next = Math.min(next, batch.due);
+            }
+        }
+
+        // ---- Étape 2: Attendre le prochain message ou la prochaine échéance ----
+        if (next == Long.MAX_VALUE) {
+            block();
+        } else {
+            block(Math.max(1, next - now));
+        }
+    }
+
+
+    // ==================== Enveloppes ====================
+
+    /**
+     * isBatch() - Ce message est-il une enveloppe d'OutboundQueue?
+     */
+    public static boolean isBatch(ACLMessage msg) {
+        return msg.getPerformative() == ACLMessage.PROPAGATE && ONTOLOGY.equals(msg.getProtocol()) &&
+               ONTOLOGY.equals(msg.getOntology()) && ContentCodecs.LANGUAGE.equals(msg.getLanguage());
+    }
+
+    /**
+     * unpack() - Messages d'une enveloppe, adressés à receiver
+     *
+     * Un message fusionné porte le paramètre DUPLICATES (nombre de copies).
+     *
+     * Les tailles lues sont bornées par les octets restants: une enveloppe
+     * forgée ou tronquée donne une IOException, jamais une exception
+     * d'exécution (MessageDispatcher n'attrape que IOException).
+     *
+     * @throws IOException Si le contenu est illisible
+     */
+    public static List<ACLMessage> unpack(ACLMessage envelope, AID receiver) throws IOException {
+        byte[] content = envelope.getByteSequenceContent();
+        if (content == null) {
+            throw new IOException("Envelope has no content");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        int size = ContentCodecs.readSize(in);
+        // Au moins 2 octets par message: nombre de copies, puis message encodé
+        if (size > in.available() / 2) {
+            throw new IOException("Malformed envelope: " + size + " messages in " +
+                                  in.available() + " bytes");
+        }
+        List<ACLMessage> messages = new ArrayList<ACLMessage>(size);
+        for (int i = 0; i < size; i++) {
+            int count = ContentCodecs.readSize(in);
+            if (count < 1 || in.available() == 0) {
+                throw new IOException("Malformed envelope: message " + i + " of " + size);
+            }
+            ACLMessage msg;
+            try {
+                msg = LEAPACLCodec.deserializeACL(in);
+            } catch (RuntimeException e) {
+                // Le décodeur de JADE ne vérifie pas les tailles qu'il lit
+                throw new IOException("Malformed envelope: message " + i + " of " + size + " - " + e, e);
+            }
+            if (msg.getSender() == null) {
+                msg.setSender(envelope.getSender());
+            }
+            msg.addReceiver(receiver);
+            if (count > 1) {
+                msg.addUserDefinedParameter(DUPLICATES, String.valueOf(count));
+            }
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    /**
+     * copies() - Nombre de copies représentées par un message reçu (1 s'il n'a pas été fusionné)
+     */
+    public static int copies(ACLMessage msg) {
+        String duplicates = msg.getUserDefinedParameter(DUPLICATES);
+        if (duplicates == null) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(duplicates));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    /**
+     * flushFor() - Envoie les lots en attente des destinataires d'un message
+     *
+     * Appelé avant un envoi qui ne passe pas par les lots.
+     */
+    private void flushFor(ACLMessage msg) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        Iterator<?> it = msg.getAllReceiver();
+        while (it.hasNext()) {
+            Batch batch = batches.remove(it.next());
+            if (batch != null) {
+                flush(batch);
+            }
+        }
+    }
+
+    /**
+     * flush() - Envoie un lot: le message seul, ou une enveloppe
+     */
+    private void flush(Batch batch) {
+        if (batch.entries.isEmpty()) {
+            return;
+        }
+
+        // ---- Un seul message: il part tel quel ----
+        if (batch.entries.size() == 1) {
+            Entry entry = batch.entries.values().iterator().next();
+            if (entry.count > 1) {
+                entry.msg.addUserDefinedParameter(DUPLICATES, String.valueOf(entry.count));
+            }
+            myAgent.send(entry.msg);
+            messagesOut.increment();
+            return;
+        }
+
+        // ---- Sinon: une enveloppe (nombre, puis copies + message encodé) ----
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.bytes + 2 * batch.entries.size() + 5);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            ContentCodecs.writeSize(out, batch.entries.size());
+            for (Entry entry : batch.entries.values()) {
+                ContentCodecs.writeSize(out, entry.count);
+                out.write(entry.encoded);
+            }
+        } catch (IOException e) {
+            // Écriture en mémoire: n'arrive pas
+            throw new IllegalStateException(e);
+        }
+
+        // Pas un INFORM: un récepteur qui filtre par performatif ne la prend pas
+        ACLMessage envelope = new ACLMessage(ACLMessage.PROPAGATE);
+        envelope.addReceiver(batch.receiver);
+        envelope.setProtocol(ONTOLOGY);
+        envelope.setLanguage(ContentCodecs.LANGUAGE);
+        envelope.setOntology(ONTOLOGY);
+        envelope.setByteSequenceContent(bytes.toByteArray());
+        myAgent.send(envelope);
+        messagesOut.increment();
+        envelopes.increment();
+    }
+}
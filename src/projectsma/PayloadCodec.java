@@ -0,0 +1,35 @@
+package projectsma;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * PayloadCodec - Encodage binaire d'un type de contenu
+ *
+ * Chaque implémentation sait écrire et relire un seul type d'objet,
+ * champ par champ, sans les noms de classes ni les métadonnées de la
+ * sérialisation Java. Les codecs sont enregistrés dans ContentCodecs,
+ * par couple langage/ontologie.
+ *
+ * Un codec ne garde pas d'état: la même instance sert à tous les agents.
+ *
+ * @param <T> Le type de contenu encodé
+ */
+public interface PayloadCodec<T> {
+
+    /**
+     * getType() - Classe des objets acceptés par encode()
+     */
+    Class<T> getType();
+
+    /**
+     * encode() - Écrit l'objet dans le flux
+     */
+    void encode(T payload, DataOutput out) throws IOException;
+
+    /**
+     * decode() - Relit un objet écrit par encode()
+     */
+    T decode(DataInput in) throws IOException;
+}
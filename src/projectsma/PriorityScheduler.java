@@ -0,0 +1,336 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PriorityScheduler - Ordonnancement par priorité à l'intérieur d'un agent
+ *
+ * L'ordonnanceur de JADE donne la main à chaque comportement à tour de
+ * rôle: une réponse urgente attend que tous les comportements de fond
+ * aient fait leur action(). Ce comportement regroupe à la place:
+ * - des classes de messages (gabarit + priorité + traitement): les
+ *   messages reçus sont rangés par classe, la plus prioritaire est
+ *   servie d'abord
+ * - des tâches de fond (Task), découpées en étapes courtes, qui passent
+ *   seulement quand aucun message n'attend
+ *
+ * Chaque appel de action() dispose d'un budget de temps (slice): tant
+ * qu'il reste du budget, on sert un message ou une étape de fond, en
+ * relisant la file de l'agent entre deux: un message urgent arrivé
+ * pendant le travail de fond passe à l'étape suivante. Le budget épuisé,
+ * on rend la main aux autres comportements de l'agent.
+ *
+ * Protection contre la famine: un message qui attend depuis plus de
+ * maxWait passe devant les classes plus prioritaires, et les tâches de
+ * fond font au moins une étape par maxWait.
+ *
+ * Seuls les messages d'une classe sont retirés de la file: les autres
+ * restent pour les autres comportements. Une classe ne garde au plus que
+ * maxQueued messages: le reste attend dans la file de l'agent, où une
+ * file bornée (BoundedMessageQueue) le voit et peut refuser les suivants.
+ *
+ * L'attente de chaque classe est mesurée depuis l'arrivée du message dans
+ * la file de l'agent (postTimeStamp de JADE, à la milliseconde près)
+ * jusqu'au début de son traitement (sched.wait.<classe>, voir Metrics).
+ *
+ * Utilisation:
+ *   PriorityScheduler scheduler = new PriorityScheduler(this);
+ *   scheduler.on("ping", PriorityScheduler.HIGH, MessageTemplate.MatchPerformative(ACLMessage.REQUEST), handler);
+ *   scheduler.on("bulk", PriorityScheduler.LOW, MessageTemplate.MatchPerformative(ACLMessage.INFORM), handler);
+ *   scheduler.background(task);
+ *   addBehaviour(scheduler);
+ */
+public class PriorityScheduler extends CyclicBehaviour {
+
+    // ==================== Interface des tâches de fond ====================
+
+    /**
+     * Task - Travail de fond, exécuté par étapes dans le thread de l'agent
+     */
+    public interface Task {
+        /**
+         * step() - Une étape courte (de l'ordre de la milliseconde)
+         *
+         * @return false quand la tâche est terminée
+         */
+        boolean step();
+    }
+
+
+    // ==================== Constantes ====================
+
+    /** Priorités usuelles (plus petit = plus urgent) */
+    public static final int HIGH = 0;
+    public static final int NORMAL = 5;
+    public static final int LOW = 10;
+
+    /** Budget de temps d'un appel de action() (µs) */
+    public static final long DEFAULT_SLICE_MICROS = 2000;
+
+    /** Attente au-delà de laquelle un message passe devant tous les autres (ms) */
+    public static final long DEFAULT_MAX_WAIT = 50;
+
+    /** Messages retirés de la file de l'agent et pas encore traités, par classe */
+    public static final int DEFAULT_MAX_QUEUED = 16;
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * MessageClass - Classe de messages: gabarit, priorité, traitement, file
+     */
+    private static class MessageClass {
+        final String name;
+        final int priority;
+        final MessageTemplate template;
+        final MessageDispatcher.Handler handler;
+        final Deque<Pending> queue = new ArrayDeque<Pending>();
+        LatencyHistogram wait;
+
+        MessageClass(String name, int priority, MessageTemplate template,
+                     MessageDispatcher.Handler handler) {
+            this.name = name;
+            this.priority = priority;
+            this.template = template;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Pending - Message reçu, en attente de traitement
+     */
+    private static class Pending {
+        final ACLMessage msg;
+        /** Arrivée dans la file de l'agent (échelle de System.nanoTime()) */
+        final long queuedAt;
+
+        Pending(ACLMessage msg, long queuedAt) {
+            this.msg = msg;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private final long sliceNanos;
+    private final long maxWaitNanos;
+    private final int maxQueued;
+
+    /** Classes triées par priorité croissante */
+    private final List<MessageClass> classes = new ArrayList<MessageClass>();
+
+    /** Tâches de fond, servies à tour de rôle */
+    private final Deque<Task> tasks = new ArrayDeque<Task>();
+    private long lastBackgroundStep = System.nanoTime();
+
+    /** Messages attendus par une des classes, tant qu'elle a de la place */
+    private final MessageTemplate mt = new MessageTemplate(new MessageTemplate.MatchExpression() {
+        public boolean match(ACLMessage msg) {
+            MessageClass mc = classOf(msg);
+            return mc != null && mc.queue.size() < maxQueued;
+        }
+    });
+
+    // Métriques de l'agent, obtenues dans onStart() (myAgent peut être null avant)
+    private LongAdder messagesIn;
+    private LongAdder backgroundSteps;
+    private LongAdder starved;
+
+
+    // ==================== Constructeurs ====================
+
+    public PriorityScheduler(Agent agent) {
+        this(agent, DEFAULT_SLICE_MICROS, DEFAULT_MAX_WAIT, DEFAULT_MAX_QUEUED);
+    }
+
+    public PriorityScheduler(Agent agent, long sliceMicros, long maxWait) {
+        this(agent, sliceMicros, maxWait, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * @param agent L'agent parent
+     * @param sliceMicros Budget de temps d'un appel de action() (µs)
+     * @param maxWait Attente maximale avant de passer devant les plus prioritaires (ms)
+     * @param maxQueued Messages retirés de la file de l'agent et pas encore traités, par classe
+     */
+    public PriorityScheduler(Agent agent, long sliceMicros, long maxWait, int maxQueued) {
+        super(agent);
+        this.sliceNanos = sliceMicros * 1000;
+        this.maxWaitNanos = maxWait * 1000000;
+        this.maxQueued = Math.max(1, maxQueued);
+    }
+
+
+    // ==================== Enregistrement ====================
+
+    /**
+     * on() - Ajoute une classe de messages
+     *
+     * Un message appartient à la première classe (par priorité, puis par
+     * ordre d'ajout) dont le gabarit lui correspond.
+     *
+     * @param name Le nom de la classe (métrique sched.wait.<name>)
+     * @param priority La priorité (HIGH, NORMAL, LOW ou une autre valeur)
+     * @return ce scheduler (pour enchaîner les appels)
+     */
+    public PriorityScheduler on(String name, int priority, MessageTemplate template,
+                                MessageDispatcher.Handler handler) {
+        MessageClass mc = new MessageClass(name, priority, template, handler);
+        int i = 0;
+        while (i < classes.size() && classes.get(i).priority <= priority) {
+            i++;
+        }
+        classes.add(i, mc);
+        if (myAgent != null) {
+            mc.wait = Metrics.of(myAgent).histogram("sched.wait." + name);
+        }
+        return this;
+    }
+
+    /**
+     * background() - Ajoute une tâche de fond (thread de l'agent)
+     */
+    public void background(Task task) {
+        if (tasks.isEmpty()) {
+            // Pas de famine à rattraper pour une tâche qui vient d'arriver
+            lastBackgroundStep = System.nanoTime();
+        }
+        tasks.add(task);
+        restart();
+    }
+
+    /**
+     * pendingTasks() - Tâches de fond pas encore terminées
+     */
+    public int pendingTasks() {
+        return tasks.size();
+    }
+
+
+    // ==================== Méthode action() ====================
+
+    public void onStart() {
+        Metrics metrics = Metrics.of(myAgent);
+        messagesIn = metrics.counter("messages.in");
+        backgroundSteps = metrics.counter("sched.background.steps");
+        starved = metrics.counter("sched.starvation");
+        for (MessageClass mc : classes) {
+            mc.wait = metrics.histogram("sched.wait." + mc.name);
+        }
+    }
+
+    public void action() {
+        long start = System.nanoTime();
+        long deadline = start + sliceNanos;
+
+        // ---- Au moins une unité de travail, puis tant qu'il reste du budget ----
+        long now = start;
+        do {
+            // ---- Étape 1: Ranger les nouveaux messages dans leur classe (dans la limite) ----
+            drain(now);
+
+            // ---- Étape 2: Choisir le travail suivant ----
+            MessageClass next = select(now);
+            if (next != null) {
+                Pending p = next.queue.poll();
+                next.wait.record(now - p.queuedAt);
+                next.handler.handle(p.msg);
+                messagesIn.increment();
+            } else if (!tasks.isEmpty()) {
+                step();
+            } else {
+                break;
+            }
+            now = System.nanoTime();
+        } while (now < deadline);
+
+        // ---- Étape 3: Plus rien à faire: attendre le prochain message ----
+        // Sinon, on rend la main sans bloquer: les autres comportements
+        // passent, puis action() reprend avec un nouveau budget
+        drain(now);
+        if (tasks.isEmpty() && !hasMessages()) {
+            block();
+        }
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    private void drain(long now) {
+        long nowMillis = System.currentTimeMillis();
+        ACLMessage msg;
+        while ((msg = myAgent.receive(mt)) != null) {
+            // Heure d'arrivée dans la file de l'agent, ramenée à l'échelle de nanoTime()
+            long waited = msg.getPostTimeStamp() > 0 ? Math.max(0, nowMillis - msg.getPostTimeStamp()) : 0;
+            classOf(msg).queue.add(new Pending(msg, now - waited * 1000000L));
+        }
+    }
+
+    /**
+     * select() - Classe à servir maintenant (null = aucune, ou tour du fond)
+     *
+     * 1. un message qui attend depuis plus de maxWait (le plus ancien)
+     * 2. les tâches de fond, si elles n'ont pas avancé depuis maxWait
+     * 3. la classe non vide la plus prioritaire
+     */
+    private MessageClass select(long now) {
+        MessageClass oldest = null;
+        long oldestAt = now - maxWaitNanos;
+        for (MessageClass mc : classes) {
+            Pending head = mc.queue.peek();
+            if (head != null && head.queuedAt < oldestAt) {
+                oldest = mc;
+                oldestAt = head.queuedAt;
+            }
+        }
+        if (oldest != null && oldest != firstNonEmpty()) {
+            starved.increment();
+            return oldest;
+        }
+        if (!tasks.isEmpty() && now - lastBackgroundStep > maxWaitNanos) {
+            starved.increment();
+            return null;
+        }
+        return firstNonEmpty();
+    }
+
+    private MessageClass firstNonEmpty() {
+        for (MessageClass mc : classes) {
+            if (!mc.queue.isEmpty()) {
+                return mc;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasMessages() {
+        return firstNonEmpty() != null;
+    }
+
+    /**
+     * step() - Une étape de la première tâche, qui passe ensuite en fin de file
+     */
+    private void step() {
+        Task task = tasks.poll();
+        if (task.step()) {
+            tasks.add(task);
+        }
+        backgroundSteps.increment();
+        lastBackgroundStep = System.nanoTime();
+    }
+
+    private MessageClass classOf(ACLMessage msg) {
+        for (MessageClass mc : classes) {
+            if (mc.template.match(msg)) {
+                return mc;
+            }
+        }
+        return null;
+    }
+}
@@ -1,10 +1,23 @@
 package projectsma;
 
+import jade.core.AID;
 import jade.core.Agent;
+import jade.core.MessageQueue;
+import jade.core.behaviours.WakerBehaviour;
 import jade.domain.FIPAException;
 import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.lang.acl.ACLMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * ProjectAgent - Agent de base qui offre un service
@@ -17,19 +30,117 @@ import jade.domain.FIPAAgentManagement.DFAgentDescription;
  *   java jade.Boot -gui agent1:projetsma.ProjectAgent(construction)
  * 
  * Où "construction" est le type de service offert par cet agent.
+ * Plusieurs services peuvent être annoncés en une seule requête au DF:
+ *   agent1:projectsma.ProjectAgent(construction,blanchissement)
+ * 
+ * Un paramètre "nom=valeur" est une propriété typée de chacun des services
+ * (ex: prix=50 est le nombre 50), que les clients peuvent filtrer et
+ * trier avec une ServiceQuery (les 5 moins chers, prix entre 10 et 50...):
+ *   agent1:projectsma.ProjectAgent(construction,prix=50,delai=3,region=nord)
+ * 
+ * Si la propriété "projectsma.stagger" est définie (ex: -projectsma.stagger 5000),
+ * l'enregistrement est retardé d'un délai entre 0 et cette durée (ms), tiré
+ * du nom de l'agent: des milliers d'agents créés ensemble (AgentSpawner)
+ * s'enregistrent alors étalés, sans rafale de requêtes au DF.
+ * 
+ * Une fois enregistré, l'agent répond aux requêtes pour ses services:
+ * REQUEST dont l'ontologie est le type de service -> INFORM.
+ * Une requête annulée par un CANCEL (voir ScatterGather) avant le début
+ * de son exécution n'est pas exécutée, et ne reçoit pas de réponse.
+ * Les requêtes sont exécutées par un pool de threads (ou des threads
+ * virtuels), voir WorkerPool: -projectsma.executor, -projectsma.workers.
+ * Avec -projectsma.topics on, il s'abonne aussi au sujet de chacun de ses
+ * services (voir Topics): une requête publiée sur "construction" atteint
+ * tous les fournisseurs de construction en un seul envoi.
+ * Avec -projectsma.capture <répertoire>, les messages reçus sont enregistrés
+ * pour l'analyse par flux et le rejeu (voir MessageCapture, CaptureReplay).
+ * 
+ * D'autres exemples en héritent: ContractorAgent (appels d'offres),
+ * LeasedProjectAgent (bail renouvelé par battements), MobileProjectAgent
+ * (migration vers un conteneur moins chargé).
  * 
  * @author TP IAD 2025
  * @version 1.0
  */
 public class ProjectAgent extends Agent {
     
+    // ==================== Constantes ====================
+    
+    /**
+     * Propriété de la plateforme donnant la durée simulée d'une requête (ms)
+     */
+    public static final String WORK_PROPERTY = "projectsma.work";
+    
+    /**
+     * Propriété de la plateforme donnant la fenêtre d'étalement des enregistrements (ms)
+     */
+    public static final String STAGGER_PROPERTY = "projectsma.stagger";
+    
+    
     // ==================== Attributs ====================
     
+    // Les attributs "transient" ne voyagent pas avec l'agent quand il migre
+    // (voir MobileProjectAgent): ils sont recréés à l'arrivée.
+    
     /**
      * Type de service offert par cet agent.
      * Peut être: construction, blanchissement, découpe, etc.
+     * C'est le premier des services annoncés.
+     */
+    private transient String service;
+    
+    /**
+     * Tous les types de service offerts par cet agent (un par paramètre)
      */
-    private String service;
+    protected transient String[] services;
+    
+    /**
+     * Propriétés annoncées avec chaque service (paramètres "nom=valeur")
+     */
+    protected transient List<Property> properties = new ArrayList<Property>();
+    
+    /**
+     * Description enregistrée auprès du DF (gardée pour le désenregistrement)
+     */
+    protected transient DFAgentDescription description;
+    
+    /**
+     * Enregistrement confirmé par le DF
+     */
+    protected boolean registered = false;
+    
+    /**
+     * Threads qui exécutent les requêtes (voir WorkerPool)
+     */
+    protected transient ExecutorService workers;
+    
+    /**
+     * Durée simulée d'une requête (ms)
+     */
+    protected transient long work;
+    
+    /**
+     * Requêtes en cours: émetteur + replyWith -> annulée par un CANCEL.
+     * Lue par les threads du WorkerPool, d'où la table concurrente.
+     */
+    private transient Map<String, Boolean> running;
+    
+    /**
+     * Distribution des messages et retour des résultats (voir serveRequests())
+     */
+    protected transient MessageDispatcher dispatcher;
+    protected transient ExecutorBridge bridge;
+    
+    // ==================== Méthode createMessageQueue() ====================
+    
+    /**
+     * createMessageQueue() - Appelée par JADE avant setup()
+     * 
+     * Enregistre le trafic reçu si -projectsma.capture est défini.
+     */
+    protected MessageQueue createMessageQueue() {
+        return MessageCapture.wrap(this, super.createMessageQueue());
+    }
     
     
     // ==================== Méthode setup() ====================
@@ -42,31 +153,65 @@ public class ProjectAgent extends Agent {
      * 1. Récupère le paramètre du service
      * 2. Affiche un message de bienvenue
      * 3. Enregistre le service auprès du DF
+     * 4. Répond aux requêtes adressées à ses services
      */
     protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics.of(this);
+
         // ---- Étape 1: Récupérer les paramètres ----
         // getArguments() retourne un tableau contenant tous les paramètres
         // passés lors du lancement de l'agent
         Object[] args = getArguments();
         
         // Vérifier que des paramètres ont été fournis
-        if (args != null && args.length > 0) {
-            // Récupérer le premier paramètre (type de service)
-            service = (String) args[0];
+        List<String> types = new ArrayList<String>();
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                String arg = (String) args[i];
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    // "prix=50": propriété typée (nombre, booléen ou texte)
+                    properties.add(new Property(arg.substring(0, eq).trim(),
+                                                ServiceQuery.typed(arg.substring(eq + 1))));
+                } else {
+                    // Sinon: un type de service offert
+                    types.add(arg);
+                }
+            }
+        }
+        if (!types.isEmpty()) {
+            services = types.toArray(new String[types.size()]);
         } else {
             // Si aucun paramètre, utiliser une valeur par défaut
-            service = "defaultService";
-            System.out.println("[AVERTISSEMENT] Aucun service spécifié, utilisation de: " + service);
+            services = new String[] { "defaultService" };
+            Log.warn("Aucun service spécifié, utilisation de: " + services[0]);
         }
+        service = services[0];
         
         // ---- Étape 2: Afficher le message de démarrage ----
         // getLocalName() retourne le nom de l'agent (ex: "agent1")
         // this.getLocalName() est équivalent à getLocalName()
-        System.out.println("Hello. My name is " + this.getLocalName() + 
-                         " and I provide " + service + " service.");
+        Log.info("Hello. My name is " + this.getLocalName() + 
+               " and I provide " + String.join(", ", services) + " service.");
         
         // ---- Étape 3: Enregistrer le service ----
-        registerService();
+        long stagger = millisProperty(STAGGER_PROPERTY);
+        if (stagger > 0) {
+            // Délai fixé par le nom: réparti uniformément, stable d'un lancement à l'autre
+            long delay = (getLocalName().hashCode() & 0x7fffffff) % stagger;
+            addBehaviour(new WakerBehaviour(this, Math.max(1, delay)) {
+                protected void onWake() {
+                    registerService();
+                }
+            });
+        } else {
+            registerService();
+        }
+        
+        // ---- Étape 4: Répondre aux requêtes pour ce service ----
+        serveRequests();
+        followTopics(true);
     }
     
     
@@ -79,51 +224,84 @@ public class ProjectAgent extends Agent {
      * de tous les services offerts par les agents de la plateforme.
      * 
      * Processus:
-     * 1. Créer une DFAgentDescription pour décrire cet agent
-     * 2. Créer une ServiceDescription pour décrire le service
-     * 3. Ajouter la description du service à celle de l'agent
-     * 4. Envoyer l'enregistrement au DF
-     * 5. Gérer les erreurs en cas d'échec
+     * 1. Créer une DFAgentDescription pour décrire cet agent (describe())
+     * 2. Envoyer l'enregistrement au DF
+     * 3. Gérer les erreurs en cas d'échec
      */
     private void registerService() {
-        try {
-            // ---- Création de la description de l'agent ----
-            // DFAgentDescription contient les informations sur l'agent
-            DFAgentDescription dfd = new DFAgentDescription();
-            
-            // Définir le nom unique de cet agent
-            // getAID() retourne l'Agent Identifier, identifiant unique
-            // Ex: "agent1@ma-plateforme"
-            dfd.setName(this.getAID());
-            
+        DFAgentDescription dfd = describe();
+        description = dfd;
+        registerDirectly(dfd);
+    }
+    
+    /**
+     * describe() - Description de l'agent et de ses services pour le DF
+     * 
+     * 1. Créer une DFAgentDescription pour décrire cet agent
+     * 2. Créer une ServiceDescription pour chaque service offert
+     * 3. Ajouter les descriptions des services à celle de l'agent
+     */
+    protected DFAgentDescription describe() {
+        // ---- Création de la description de l'agent ----
+        // DFAgentDescription contient les informations sur l'agent
+        DFAgentDescription dfd = new DFAgentDescription();
+        
+        // Définir le nom unique de cet agent
+        // getAID() retourne l'Agent Identifier, identifiant unique
+        // Ex: "agent1@ma-plateforme"
+        dfd.setName(this.getAID());
+        
+        for (int i = 0; i < services.length; i++) {
             // ---- Création de la description du service ----
             // ServiceDescription décrit un service spécifique
             ServiceDescription sd = new ServiceDescription();
             
             // setType() - Le type de service (catégorie générale)
             // Tous les agents offrant "construction" auront le même type
-            sd.setType(service);
+            sd.setType(services[i]);
             
             // setName() - Le nom unique du service
             // Peut être identique au type ou différent selon le besoin
-            sd.setName(service);
+            sd.setName(services[i]);
             
-            // Note: On pourrait ajouter d'autres propriétés:
-            // sd.addProperties(new Property("prix", "50€"));
+            // Propriétés typées (ex: prix=50), indexées par valeur
+            // dans IndexedDFAgent (voir ServiceQuery)
+            for (Property p : properties) {
+                sd.addProperties(p);
+            }
             
             // ---- Ajouter le service à la description de l'agent ----
-            // Un agent peut offrir plusieurs services
-            // Dans cet exemple, on n'en offre qu'un
+            // Un agent peut offrir plusieurs services: ils partent
+            // tous dans la même requête au DF
             dfd.addServices(sd);
-            
+        }
+        return dfd;
+    }
+    
+    /**
+     * registerDirectly() - Enregistrement synchrone auprès du DF
+     * 
+     * Le thread de l'agent attend la réponse du DF.
+     * Avec un annuaire fédéré, chaque annuaire reçoit uniquement
+     * les services dont il est responsable.
+     */
+    private void registerDirectly(DFAgentDescription dfd) {
+        try {
             // ---- Enregistrer auprès du DF ----
             // DFService.register() envoie la description au DF
             // Après cet appel, les autres agents peuvent découvrir ce service
-            DFService.register(this, dfd);
+            // La durée de l'enregistrement est mesurée (métrique df.register)
+            long start = System.nanoTime();
+            for (Map.Entry<AID, DFAgentDescription> part : Directory.partition(this, dfd).entrySet()) {
+                DFService.register(this, part.getKey(), part.getValue());
+            }
+            Metrics.of(this).histogram("df.register").record(System.nanoTime() - start);
             
             // Message de confirmation
-            System.out.println("[OK] " + getLocalName() + 
-                             " registered with DF. Service type: " + service);
+            Log.info("[OK] " + getLocalName() + 
+                   " registered with DF. Service type: " + String.join(", ", services));
+            registered = true;
+            onRegistered();
             
         } catch (FIPAException e) {
             // ---- Gestion des erreurs ----
@@ -131,14 +309,192 @@ public class ProjectAgent extends Agent {
             // - Le DF n'est pas accessible
             // - Il y a un problème réseau
             // - L'enregistrement est mal formé
-            
-            System.err.println("[ERREUR] " + getLocalName() + 
-                             " registration with DF unsucceeded. Reason: " + 
-                             e.getMessage());
-            
-            // Si l'enregistrement échoue, l'agent n'a pas d'utilité
-            // On le supprime donc avec doDelete()
-            doDelete();
+            registrationFailed(e.getMessage());
+        }
+    }
+    
+    /**
+     * onRegistered() - Appelée une fois l'enregistrement confirmé par le DF
+     * 
+     * Ne fait rien ici (voir LeasedProjectAgent).
+     */
+    protected void onRegistered() {
+    }
+    
+    
+    // ==================== Méthode serveRequests() ====================
+    
+    /**
+     * serveRequests() - Répond aux requêtes adressées aux services de l'agent
+     * 
+     * Une requête est un REQUEST dont l'ontologie est le type de service
+     * demandé (ex: "construction"). Le MessageDispatcher choisit le traitement
+     * d'après l'ontologie; un REQUEST pour un service non offert reçoit REFUSE.
+     * 
+     * Le traitement (perform()) s'exécute dans les threads du WorkerPool:
+     * une requête longue ne bloque pas le thread de l'agent, qui continue
+     * à lire sa file. La réponse est envoyée depuis le thread de l'agent,
+     * quand l'ExecutorBridge y ramène le résultat.
+     * Les sous-classes ajoutent leurs traitements dans addHandlers().
+     */
+    protected void serveRequests() {
+        final MessageDispatcher dispatcher = new MessageDispatcher(this);
+        final ExecutorBridge bridge = new ExecutorBridge(this);
+        this.dispatcher = dispatcher;
+        this.bridge = bridge;
+        workers = WorkerPool.create(this);
+        work = millisProperty(WORK_PROPERTY);
+        running = new ConcurrentHashMap<String, Boolean>();
+        
+        MessageDispatcher.Handler serve = new MessageDispatcher.Handler() {
+            public void handle(final ACLMessage request) {
+                final String key = requestKey(request.getSender(), request.getReplyWith());
+                if (key != null) {
+                    running.put(key, Boolean.FALSE);
+                }
+                try {
+                    // ---- Exécuter la requête hors du thread de l'agent ----
+                    bridge.submit(workers, new Callable<String>() {
+                        public String call() throws Exception {
+                            // Annulée pendant son attente dans le pool: travail inutile
+                            if (key != null && Boolean.TRUE.equals(running.get(key))) {
+                                throw new CancellationException();
+                            }
+                            return perform(request.getOntology(), request.getContent());
+                        }
+                    }, new ExecutorBridge.Completion<String>() {
+                        // ---- De retour dans le thread de l'agent: répondre ----
+                        public void onSuccess(String result) {
+                            if (key != null) {
+                                running.remove(key);
+                            }
+                            dispatcher.reply(request, ACLMessage.INFORM, result);
+                        }
+                        
+                        public void onFailure(Throwable error) {
+                            if (key != null) {
+                                running.remove(key);
+                            }
+                            if (error instanceof CancellationException) {
+                                Metrics.of(ProjectAgent.this).counter("requests.cancelled").increment();
+                                return;
+                            }
+                            dispatcher.reply(request, ACLMessage.FAILURE, String.valueOf(error.getMessage()));
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Trop de requêtes en attente
+                    if (key != null) {
+                        running.remove(key);
+                    }
+                    dispatcher.reply(request, ACLMessage.REFUSE, "busy");
+                }
+            }
+        };
+        for (int i = 0; i < services.length; i++) {
+            dispatcher.on(services[i], ACLMessage.REQUEST, serve);
+        }
+        
+        dispatcher.on(ACLMessage.REQUEST, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage msg) {
+                dispatcher.reply(msg, ACLMessage.REFUSE, 
+                                 "service not provided: " + msg.getOntology());
+            }
+        });
+        
+        // La réponse n'est plus attendue (voir ScatterGather): inReplyTo (ou, à
+        // défaut, le contenu) = replyWith de la requête. Déjà exécutée ou
+        // inconnue: rien à faire.
+        dispatcher.on(ACLMessage.CANCEL, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage cancel) {
+                String replyWith = cancel.getInReplyTo() != null ? cancel.getInReplyTo() : cancel.getContent();
+                String key = requestKey(cancel.getSender(), replyWith);
+                if (key != null && running.containsKey(key)) {
+                    running.put(key, Boolean.TRUE);
+                }
+            }
+        });
+        
+        addHandlers(dispatcher);
+        addBehaviour(dispatcher);
+        addBehaviour(bridge);
+    }
+    
+    /**
+     * addHandlers() - Traitements supplémentaires des sous-classes
+     * 
+     * Appelée par serveRequests(), avant que le dispatcher ne démarre.
+     * Ne fait rien ici.
+     */
+    protected void addHandlers(MessageDispatcher dispatcher) {
+    }
+    
+    /**
+     * perform() - Exécute une requête (dans un thread du WorkerPool)
+     * 
+     * Ne doit pas utiliser l'agent (send(), behaviours...): seulement
+     * calculer le résultat. Ici, le travail est simulé par une attente
+     * de "projectsma.work" ms.
+     * 
+     * @param service Le type de service demandé
+     * @param content Le contenu de la requête
+     * @return Le contenu de la réponse
+     */
+    protected String perform(String service, String content) throws Exception {
+        if (work > 0) {
+            Thread.sleep(work);
+        }
+        return service + " done by " + getLocalName();
+    }
+    
+    /**
+     * requestKey() - Clé d'une requête en cours: émetteur et replyWith (null sans replyWith)
+     */
+    private static String requestKey(AID sender, String replyWith) {
+        if (sender == null || replyWith == null) {
+            return null;
+        }
+        return sender.getName() + "/" + replyWith;
+    }
+    
+    
+    /**
+     * followTopics() - S'abonne (ou se désabonne) au sujet de chaque service, avec -projectsma.topics on
+     */
+    protected void followTopics(boolean follow) {
+        if (!Topics.enabled(this) || services == null) {
+            return;
+        }
+        for (int i = 0; i < services.length; i++) {
+            if (follow) {
+                Topics.subscribe(this, services[i]);
+            } else {
+                Topics.unsubscribe(this, services[i]);
+            }
+        }
+    }
+    
+    /**
+     * registrationFailed() - Si l'enregistrement échoue, l'agent n'a pas d'utilité
+     * On le supprime donc avec doDelete()
+     */
+    private void registrationFailed(String reason) {
+        Log.error(getLocalName() + 
+                " registration with DF unsucceeded. Reason: " + reason);
+        doDelete();
+    }
+    
+    /**
+     * millisProperty() - Durée (ms) donnée par une propriété de la plateforme
+     * 
+     * 0 si elle est absente, négative ou invalide (comme Heartbeats.period()):
+     * une faute de frappe ne doit pas empêcher l'agent de démarrer.
+     */
+    private long millisProperty(String name) {
+        try {
+            return Math.max(0, Long.parseLong(getProperty(name, "0").trim()));
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
     
@@ -156,13 +512,23 @@ public class ProjectAgent extends Agent {
      * Cette méthode est optionnelle.
      */
     protected void takeDown() {
+        Metrics.release(this);
+        followTopics(false);
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        if (description == null) {
+            return;
+        }
         try {
-            // Désenregistrer le service auprès du DF
-            DFService.deregister(this);
-            System.out.println("[OK] " + getLocalName() + " unregistered from DF");
+            // Désenregistrer le service auprès du (ou des) DF
+            for (AID df : Directory.partition(this, description).keySet()) {
+                DFService.deregister(this, df);
+            }
+            Log.info("[OK] " + getLocalName() + " unregistered from DF");
         } catch (FIPAException e) {
-            System.err.println("[ERREUR] " + getLocalName() + 
-                             " unregistration failed: " + e.getMessage());
+            Log.error(getLocalName() + 
+                    " unregistration failed: " + e.getMessage());
         }
     }
     
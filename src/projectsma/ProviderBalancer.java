@@ -0,0 +1,393 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.lang.acl.ACLMessage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * ProviderBalancer - Répartit les requêtes entre les fournisseurs d'un service
+ *
+ * La recherche au DF retourne tous les agents qui offrent un service.
+ * Envoyer toutes les requêtes au premier de la liste surcharge un seul agent;
+ * ce composant choisit un fournisseur à chaque requête, selon une stratégie:
+ * - ROUND_ROBIN: chacun son tour
+ * - LEAST_OUTSTANDING: celui qui a le moins de requêtes en cours
+ * - LATENCY_WEIGHTED: tirage pondéré par la rapidité (latence moyenne
+ *   récente) et la charge (requêtes en cours)
+ *
+ * Pour chaque fournisseur, il compte les requêtes en cours et mesure la
+ * latence des réponses. Un fournisseur qui ne répond plus (maxFailures
+ * échecs de suite) est retiré, et n'est pas repris avant la fin de sa
+ * quarantaine, même si le DF le liste encore.
+ *
+ * À utiliser depuis le thread de l'agent (non synchronisé).
+ *
+ * Utilisation:
+ *   ProviderBalancer balancer = new ProviderBalancer(ProviderBalancer.Strategy.LEAST_OUTSTANDING);
+ *   balancer.update(findProviders("construction"));
+ *   balancer.request(correlator, msg, 5000, handler);
+ */
+public class ProviderBalancer {
+
+    // ==================== Stratégies ====================
+
+    public enum Strategy {
+        ROUND_ROBIN, LEAST_OUTSTANDING, LATENCY_WEIGHTED;
+
+        /**
+         * parse() - Lit une stratégie écrite comme "round-robin", "least-outstanding"...
+         */
+        public static Strategy parse(String name) {
+            String normalized = name.trim().toUpperCase().replace('-', '_');
+            if ("LATENCY".equals(normalized)) {
+                return LATENCY_WEIGHTED;
+            }
+            return valueOf(normalized);
+        }
+    }
+
+
+    // ==================== Constantes ====================
+
+    /** Échecs consécutifs (délai dépassé, FAILURE) avant de retirer un fournisseur */
+    public static final int DEFAULT_MAX_FAILURES = 3;
+
+    /** Durée pendant laquelle un fournisseur retiré n'est pas repris (ms) */
+    public static final long DEFAULT_QUARANTINE = 30000;
+
+    /** Poids de la dernière mesure dans la latence moyenne (moyenne mobile exponentielle) */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * État d'un fournisseur
+     */
+    private static class Provider {
+        final AID aid;
+        int inFlight;
+        long sent;
+        long answered;
+        int consecutiveFailures;
+        /** Latence moyenne récente en ns (0 = pas encore de mesure) */
+        double latency;
+
+        Provider(AID aid) {
+            this.aid = aid;
+        }
+    }
+
+    private final Strategy strategy;
+    private final int maxFailures;
+    private final long quarantine;
+
+    /** Fournisseurs actifs, dans l'ordre de la recherche */
+    private final List<Provider> providers = new ArrayList<Provider>();
+    private final Map<AID, Provider> byAID = new HashMap<AID, Provider>();
+
+    /** Fournisseurs retirés: AID -> fin de la quarantaine */
+    private final Map<AID, Long> evicted = new LinkedHashMap<AID, Long>();
+
+    private int next = 0;
+    private final Random random = new Random();
+
+
+    // ==================== Constructeurs ====================
+
+    public ProviderBalancer(Strategy strategy) {
+        this(strategy, DEFAULT_MAX_FAILURES, DEFAULT_QUARANTINE);
+    }
+
+    /**
+     * @param strategy La stratégie de choix
+     * @param maxFailures Échecs consécutifs avant retrait
+     * @param quarantine Durée minimale d'exclusion d'un fournisseur retiré (ms)
+     */
+    public ProviderBalancer(Strategy strategy, int maxFailures, long quarantine) {
+        this.strategy = strategy;
+        this.maxFailures = maxFailures;
+        this.quarantine = quarantine;
+    }
+
+
+    // ==================== Liste des fournisseurs ====================
+
+    /**
+     * update() - Met à jour les fournisseurs d'après un résultat de recherche
+     *
+     * Les fournisseurs déjà connus gardent leurs compteurs; ceux qui ont
+     * disparu du DF sont oubliés; ceux en quarantaine sont ignorés.
+     */
+    public void update(Collection<DFAgentDescription> found) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<AID, Long>> it = evicted.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().longValue() <= now) {
+                it.remove();
+            }
+        }
+
+        Set<AID> current = new HashSet<AID>();
+        for (DFAgentDescription dfd : found) {
+            AID aid = dfd.getName();
+            if (evicted.containsKey(aid) || !current.add(aid)) {
+                continue;
+            }
+            if (!byAID.containsKey(aid)) {
+                Provider p = new Provider(aid);
+                providers.add(p);
+                byAID.put(aid, p);
+            }
+        }
+
+        Iterator<Provider> known = providers.iterator();
+        while (known.hasNext()) {
+            Provider p = known.next();
+            if (!current.contains(p.aid)) {
+                known.remove();
+                byAID.remove(p.aid);
+            }
+        }
+    }
+
+    /**
+     * size() - Nombre de fournisseurs actifs
+     */
+    public int size() {
+        return providers.size();
+    }
+
+    /**
+     * inFlight() - Requêtes en cours chez ce fournisseur
+     */
+    public int inFlight(AID aid) {
+        Provider p = byAID.get(aid);
+        return p == null ? 0 : p.inFlight;
+    }
+
+
+    // ==================== Choix du fournisseur ====================
+
+    /**
+     * select() - Choisit le fournisseur de la prochaine requête
+     *
+     * Compte la requête comme en cours: appeler ensuite onReply()
+     * ou onFailure() avec le même AID.
+     *
+     * @return Le fournisseur choisi, ou null si aucun n'est disponible
+     */
+    public AID select() {
+        if (providers.isEmpty()) {
+            return null;
+        }
+
+        Provider chosen;
+        switch (strategy) {
+            case LEAST_OUTSTANDING:
+                chosen = leastOutstanding();
+                break;
+            case LATENCY_WEIGHTED:
+                chosen = latencyWeighted();
+                break;
+            default:
+                chosen = providers.get(next++ % providers.size());
+                break;
+        }
+
+        chosen.inFlight++;
+        chosen.sent++;
+        return chosen.aid;
+    }
+
+    /**
+     * Le moins chargé; en cas d'égalité, on tourne pour ne pas favoriser le premier
+     */
+    private Provider leastOutstanding() {
+        int n = providers.size();
+        int start = next++ % n;
+        Provider best = null;
+        for (int i = 0; i < n; i++) {
+            Provider p = providers.get((start + i) % n);
+            if (best == null || p.inFlight < best.inFlight) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tirage pondéré par 1 / (latence x (requêtes en cours + 1))
+     *
+     * Un fournisseur encore jamais mesuré reçoit la meilleure latence connue,
+     * pour qu'il soit essayé rapidement.
+     */
+    private Provider latencyWeighted() {
+        double best = 0;
+        for (Provider p : providers) {
+            if (p.latency > 0 && (best == 0 || p.latency < best)) {
+                best = p.latency;
+            }
+        }
+        if (best == 0) {
+            best = 1;
+        }
+
+        double total = 0;
+        double[] weights = new double[providers.size()];
+        for (int i = 0; i < weights.length; i++) {
+            Provider p = providers.get(i);
+            double latency = p.latency > 0 ? p.latency : best;
+            weights[i] = 1.0 / (latency * (p.inFlight + 1));
+            total += weights[i];
+        }
+
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r <= 0) {
+                return providers.get(i);
+            }
+        }
+        return providers.get(weights.length - 1);
+    }
+
+
+    // ==================== Résultats ====================
+
+    /**
+     * onReply() - Le fournisseur a répondu
+     *
+     * @param latencyNanos Temps entre l'envoi et la réponse
+     */
+    public void onReply(AID aid, long latencyNanos) {
+        Provider p = byAID.get(aid);
+        if (p == null) {
+            return;
+        }
+        p.inFlight = Math.max(0, p.inFlight - 1);
+        p.answered++;
+        p.consecutiveFailures = 0;
+        p.latency = p.latency == 0 ? latencyNanos
+                  : p.latency + LATENCY_SMOOTHING * (latencyNanos - p.latency);
+    }
+
+    /**
+     * onFailure() - Le fournisseur n'a pas répondu à temps (ou a répondu FAILURE)
+     *
+     * Après maxFailures échecs consécutifs, il est retiré et mis en quarantaine.
+     *
+     * @return true si le fournisseur vient d'être retiré
+     */
+    public boolean onFailure(AID aid) {
+        Provider p = byAID.get(aid);
+        if (p == null) {
+            return false;
+        }
+        p.inFlight = Math.max(0, p.inFlight - 1);
+        p.consecutiveFailures++;
+        if (p.consecutiveFailures < maxFailures) {
+            return false;
+        }
+
+        providers.remove(p);
+        byAID.remove(aid);
+        evicted.put(aid, Long.valueOf(System.currentTimeMillis() + quarantine));
+        return true;
+    }
+
+    /**
+     * onRefused() - Le fournisseur a refusé la requête (REFUSE: surchargé)
+     *
+     * Un refus arrive vite: ce n'est pas une mesure de latence, qui ferait
+     * passer le fournisseur surchargé pour le plus rapide. Sa latence est
+     * au contraire doublée (pénalité: LATENCY_WEIGHTED l'évite tant qu'une
+     * réponse normale ne l'a pas fait redescendre). Ce n'est pas un échec:
+     * les refus d'une file pleine arrivent en rafale, et le fournisseur
+     * est vivant.
+     */
+    public void onRefused(AID aid) {
+        Provider p = byAID.get(aid);
+        if (p == null) {
+            return;
+        }
+        p.inFlight = Math.max(0, p.inFlight - 1);
+        p.latency *= 2;
+    }
+
+
+    // ==================== Envoi ====================
+
+    /**
+     * request() - Envoie une requête au fournisseur choisi, via le ReplyCorrelator
+     *
+     * Le destinataire du message est remplacé par le fournisseur choisi.
+     * Les compteurs et la latence sont mis à jour avant d'appeler handler.
+     * Une réponse FAILURE compte comme un échec du fournisseur, un REFUSE
+     * comme une surcharge (onRefused()): ni l'un ni l'autre ne mesure la latence.
+     *
+     * @return L'identifiant de corrélation, ou null si aucun fournisseur n'est disponible
+     */
+    public String request(ReplyCorrelator correlator, ACLMessage msg, long timeout,
+                          final ReplyCorrelator.ReplyHandler handler) {
+        final AID provider = select();
+        if (provider == null) {
+            return null;
+        }
+        msg.clearAllReceiver();
+        msg.addReceiver(provider);
+
+        final long sent = System.nanoTime();
+        return correlator.request(msg, timeout, new ReplyCorrelator.ReplyHandler() {
+            public void onReply(ACLMessage reply) {
+                if (reply.getPerformative() == ACLMessage.FAILURE) {
+                    reportFailure(provider);
+                } else if (reply.getPerformative() == ACLMessage.REFUSE) {
+                    onRefused(provider);
+                } else {
+                    ProviderBalancer.this.onReply(provider, System.nanoTime() - sent);
+                }
+                handler.onReply(reply);
+            }
+
+            public void onTimeout(ACLMessage request) {
+                reportFailure(provider);
+                handler.onTimeout(request);
+            }
+        });
+    }
+
+    private void reportFailure(AID provider) {
+        if (onFailure(provider)) {
+            Log.warn(provider.getLocalName() +
+                   " stopped answering, removed for " + quarantine + " ms");
+        }
+    }
+
+    /**
+     * summary() - Répartition des requêtes: "agent1=34 agent2=33 ..."
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Provider p : providers) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(p.aid.getLocalName()).append('=').append(p.answered);
+        }
+        for (AID aid : evicted.keySet()) {
+            sb.append(' ').append(aid.getLocalName()).append("=evicted");
+        }
+        return sb.toString();
+    }
+}
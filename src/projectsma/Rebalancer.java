@@ -0,0 +1,191 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.LEAPACLCodec;
+import jade.wrapper.StaleProxyException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rebalancer - Migration des agents pour équilibrer la charge des conteneurs
+ *
+ * Les agents restent dans le conteneur où ils ont été créés: si les clients
+ * sollicitent surtout les fournisseurs d'un même conteneur, celui-ci sature
+ * pendant que les autres attendent. Avec -projectsma.rebalance <période ms>:
+ * - chaque conteneur a un moniteur (LoadMonitorAgent, créé au premier
+ *   usage) qui mesure, par période, le débit de messages de chacun de ses
+ *   agents migrables (MobileProjectAgent) et le temps CPU de leur thread, ainsi que la charge
+ *   CPU de la JVM, et l'envoie au RebalancerAgent
+ * - le RebalancerAgent compare les conteneurs et demande (REQUEST, contenu =
+ *   conteneur de destination) à des agents du plus chargé de partir vers le
+ *   moins chargé
+ * - l'agent termine les requêtes en cours, puis part avec doMove(): son état
+ *   et sa file d'attente voyagent dans un instantané binaire compact
+ *   (writeMessages(), encodage LEAP des messages), et non dans la
+ *   sérialisation Java de ses comportements et de ses threads
+ * - à l'arrivée, l'agent reprend ses comportements, remet les messages en
+ *   attente en tête de sa file, et met à jour sa description au DF
+ *   (propriété CONTAINER): les abonnés de l'annuaire (ServiceDirectoryCache)
+ *   en sont notifiés
+ *
+ * L'AID d'un agent ne change pas en migrant: les messages envoyés pendant
+ * le transfert lui sont remis à l'arrivée par JADE.
+ *
+ * Utilisation:
+ *   java jade.Boot -projectsma.rebalance 2000 -agents "rebalancer:projectsma.RebalancerAgent;..."
+ *   java jade.Boot -container -container-name Load-1 -projectsma.rebalance 2000 -agents "..."
+ */
+public class Rebalancer {
+
+    /** Propriété de la plateforme: période des mesures (ms), 0 ou absente = désactivé */
+    public static final String REBALANCE_PROPERTY = "projectsma.rebalance";
+
+    /** Ontologie des mesures (moniteur -> RebalancerAgent) et des migrations */
+    public static final String ONTOLOGY = "projectsma-rebalance";
+
+    /** Paramètre d'un message de mesure, et propriété des services au DF: nom du conteneur */
+    public static final String CONTAINER = "container";
+
+    /** Nom local du RebalancerAgent (dans le conteneur principal) */
+    public static final String AGENT_NAME = "rebalancer";
+
+    /** Préfixe du nom local des moniteurs (suivi du nom du conteneur) */
+    public static final String MONITOR_PREFIX = "load-";
+
+    /** Agents migrables de cette JVM, par conteneur: agent -> identifiant de son thread */
+    private static final Map<String, Map<Agent, Long>> members = new ConcurrentHashMap<String, Map<Agent, Long>>();
+
+    /** Moniteurs déjà créés dans cette JVM, par conteneur */
+    private static final Map<String, Boolean> started = new ConcurrentHashMap<String, Boolean>();
+
+    private Rebalancer() {
+    }
+
+    /**
+     * period() - Période des mesures (ms), 0 si désactivé
+     */
+    public static long period(Agent agent) {
+        try {
+            return Math.max(0, Long.parseLong(agent.getProperty(REBALANCE_PROPERTY, "0").trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static boolean enabled(Agent agent) {
+        return period(agent) > 0;
+    }
+
+
+    // ==================== Agents migrables ====================
+
+    /**
+     * join() - L'agent est mesuré par le moniteur de son conteneur (créé au premier appel)
+     *
+     * À appeler depuis le thread de l'agent (setup(), afterMove()): c'est
+     * son temps CPU qui est mesuré.
+     */
+    public static void join(Agent agent) {
+        String container = agent.here().getName();
+        Map<Agent, Long> local = members.get(container);
+        if (local == null) {
+            members.putIfAbsent(container, new ConcurrentHashMap<Agent, Long>());
+            local = members.get(container);
+        }
+        local.put(agent, Long.valueOf(Thread.currentThread().getId()));
+        monitor(agent);
+    }
+
+    /**
+     * leave() - L'agent quitte son conteneur (beforeMove(), takeDown())
+     */
+    public static void leave(Agent agent) {
+        Map<Agent, Long> local = members.get(agent.here().getName());
+        if (local != null) {
+            local.remove(agent);
+        }
+    }
+
+    /**
+     * members() - Agents migrables d'un conteneur et leur thread (vue non modifiable)
+     */
+    static Map<Agent, Long> members(String container) {
+        Map<Agent, Long> local = members.get(container);
+        return local != null ? Collections.unmodifiableMap(local) : Collections.<Agent, Long>emptyMap();
+    }
+
+    /**
+     * monitor() - AID du moniteur du conteneur de l'agent (créé au premier appel)
+     */
+    public static AID monitor(Agent agent) {
+        String container = agent.here().getName();
+        String name = MONITOR_PREFIX + container;
+        if (started.putIfAbsent(container, Boolean.TRUE) == null) {
+            try {
+                agent.getContainerController()
+                     .createNewAgent(name, LoadMonitorAgent.class.getName(), null).start();
+            } catch (StaleProxyException e) {
+                // Nom déjà pris: le moniteur existe déjà
+            }
+        }
+        return new AID(name, AID.ISLOCALNAME);
+    }
+
+
+    // ==================== File d'attente ====================
+
+    /**
+     * drain() - Retire tous les messages en attente dans la file de l'agent
+     *
+     * À appeler dans beforeMove(), une fois les comportements arrêtés.
+     */
+    public static List<ACLMessage> drain(Agent agent) {
+        List<ACLMessage> messages = new ArrayList<ACLMessage>();
+        ACLMessage msg;
+        while ((msg = agent.receive()) != null) {
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    /**
+     * restore() - Remet les messages en tête de la file, dans leur ordre d'arrivée
+     *
+     * Ils passent avant les messages arrivés pendant le transfert.
+     */
+    public static void restore(Agent agent, List<ACLMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            agent.putBack(messages.get(i));
+        }
+    }
+
+    /**
+     * writeMessages() - Encode des messages dans un instantané (encodage LEAP)
+     */
+    public static void writeMessages(DataOutputStream out, List<ACLMessage> messages) throws IOException {
+        ContentCodecs.writeSize(out, messages.size());
+        for (ACLMessage msg : messages) {
+            LEAPACLCodec.serializeACL(msg, out);
+        }
+    }
+
+    /**
+     * readMessages() - Relit des messages écrits par writeMessages()
+     */
+    public static List<ACLMessage> readMessages(DataInputStream in) throws IOException {
+        int count = ContentCodecs.readSize(in);
+        List<ACLMessage> messages = new ArrayList<ACLMessage>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(LEAPACLCodec.deserializeACL(in));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,404 @@
+package projectsma;
+
+import jade.content.lang.sl.SLCodec;
+import jade.content.onto.basic.Action;
+import jade.content.onto.basic.Result;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Location;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.FIPANames;
+import jade.domain.JADEAgentManagement.QueryPlatformLocationsAction;
+import jade.domain.mobility.MobilityOntology;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RebalancerAgent - Décide des migrations entre conteneurs (voir Rebalancer)
+ *
+ * Reçoit les mesures des LoadMonitorAgents (une par conteneur et par
+ * période). À chaque période, la charge d'un conteneur est le débit de
+ * messages de ses agents migrables; si le plus chargé dépasse la moyenne
+ * de plus de TOLERANCE, et l'écart avec le moins chargé de plus de MIN_GAP
+ * messages/s, un de ses agents est envoyé vers le moins chargé:
+ * - celui dont le débit est le plus proche de la moitié de l'écart (ni trop
+ *   petit pour rien changer, ni assez gros pour inverser le déséquilibre)
+ * - au plus MAX_MOVES migrations par période, les charges estimées étant
+ *   mises à jour après chacune
+ * - un agent qui vient de migrer ne repart pas avant COOLDOWN_PERIODS
+ *   périodes, et un conteneur dont la JVM dépasse MAX_TARGET_CPU n'en
+ *   reçoit pas
+ * - un conteneur sans mesure depuis STALE_PERIODS périodes est oublié
+ * - un conteneur sans agent migrable n'a pas de moniteur: la liste des
+ *   conteneurs est demandée à l'AMS à chaque période, et ceux qui n'ont
+ *   pas envoyé de mesure ont une charge nulle (sauf le conteneur du
+ *   RebalancerAgent, qui n'est une destination que s'il a un moniteur)
+ * - pas de décision tant qu'une migration est en cours, ni pendant
+ *   SETTLE_PERIODS périodes après l'arrivée d'un agent: le moniteur de son
+ *   nouveau conteneur doit d'abord avoir mesuré son débit
+ *
+ * L'agent choisi reçoit un REQUEST (ontologie Rebalancer.ONTOLOGY, contenu =
+ * conteneur de destination) et répond INFORM une fois arrivé ("<conteneur>
+ * <octets de l'instantané> <messages en attente>"), ou REFUSE.
+ *
+ * Utilisation:
+ *   java jade.Boot -projectsma.rebalance 2000 -agents "rebalancer:projectsma.RebalancerAgent"
+ */
+public class RebalancerAgent extends Agent {
+
+    // ==================== Constantes ====================
+
+    /** Écart toléré au-dessus de la charge moyenne (0.25 = 25 %) */
+    public static final double TOLERANCE = 0.25;
+
+    /** Écart minimal entre le plus et le moins chargé (messages/s) */
+    public static final double MIN_GAP = 5;
+
+    /** Nombre maximal de migrations décidées par période */
+    public static final int MAX_MOVES = 2;
+
+    /** Un agent ne repart pas avant ce nombre de périodes */
+    public static final int COOLDOWN_PERIODS = 5;
+
+    /** Pas de migration vers un conteneur dont la JVM est plus chargée */
+    public static final double MAX_TARGET_CPU = 0.9;
+
+    /** Mesure trop ancienne: le conteneur est oublié */
+    public static final int STALE_PERIODS = 3;
+
+    /** Périodes sans décision après une migration (une de référence, une de mesure) */
+    public static final int SETTLE_PERIODS = 2;
+
+    private static final MessageTemplate mt = MessageTemplate.MatchOntology(Rebalancer.ONTOLOGY);
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Dernière mesure d'un conteneur
+     */
+    private static class Report {
+        String container;
+        double cpu;
+        long received;
+        /** Débit de messages par agent (nom complet) */
+        Map<String, Double> rates = new LinkedHashMap<String, Double>();
+        double load;
+    }
+
+    /**
+     * Migration demandée, en attente de confirmation
+     */
+    private static class Move {
+        String agent;
+        String from;
+        String to;
+        long start;
+    }
+
+    private final Map<String, Report> reports = new LinkedHashMap<String, Report>();
+
+    /** Migrations en cours: replyWith -> migration */
+    private final Map<String, Move> moving = new HashMap<String, Move>();
+
+    /** Dernière migration de chaque agent (ms), pour le délai entre deux départs */
+    private final Map<String, Long> lastMoved = new HashMap<String, Long>();
+
+    /** Conteneurs de la plateforme (dernière réponse de l'AMS) */
+    private Set<String> locations = new HashSet<String>();
+
+    /** Requêtes à l'AMS */
+    private ReplyCorrelator correlator;
+
+    private long period;
+    private long requests = 0;
+
+    /** Pas de décision avant cette date (ms): les dernières arrivées ne sont pas encore mesurées */
+    private long settledAt = 0;
+
+    private LongAdder moves;
+    private LongAdder refused;
+    private LatencyHistogram moveLatency;
+
+
+    // ==================== Méthode setup() ====================
+
+    protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics metrics = Metrics.of(this);
+        moves = metrics.counter("rebalance.moves");
+        refused = metrics.counter("rebalance.refused");
+        moveLatency = metrics.histogram("rebalance.move");
+
+        period = Rebalancer.period(this);
+        if (period <= 0) {
+            Log.error(getLocalName() + " needs -" + Rebalancer.REBALANCE_PROPERTY + " <period ms>");
+            doDelete();
+            return;
+        }
+
+        // ---- Liste des conteneurs: requêtes à l'AMS (SL0, ontologie de la mobilité) ----
+        getContentManager().registerLanguage(new SLCodec(), FIPANames.ContentLanguage.FIPA_SL0);
+        getContentManager().registerOntology(MobilityOntology.getInstance());
+        correlator = new ReplyCorrelator(this);
+        addBehaviour(correlator);
+
+        // ---- Mesures des moniteurs et confirmations des agents ----
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(mt);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                if (msg.getUserDefinedParameter(Rebalancer.CONTAINER) != null) {
+                    report(msg);
+                } else if (msg.getInReplyTo() != null) {
+                    moved(msg);
+                }
+            }
+        });
+
+        // ---- Une décision par période ----
+        addBehaviour(new TickerBehaviour(this, period) {
+            protected void onTick() {
+                rebalance();
+            }
+        });
+
+        Log.info(getLocalName() + " is ready to rebalance containers (every " + period + " ms)");
+    }
+
+    protected void takeDown() {
+        Metrics.release(this);
+    }
+
+
+    // ==================== Mesures ====================
+
+    private void report(ACLMessage msg) {
+        Report report = new Report();
+        report.container = msg.getUserDefinedParameter(Rebalancer.CONTAINER);
+        report.received = System.currentTimeMillis();
+        String[] lines = msg.getContent().split("\n");
+        try {
+            report.cpu = Double.parseDouble(lines[0]);
+            for (int i = 1; i < lines.length; i++) {
+                String[] fields = lines[i].split(" ");
+                double rate = Double.parseDouble(fields[1]);
+                report.rates.put(fields[0], Double.valueOf(rate));
+                report.load += rate;
+            }
+        } catch (RuntimeException e) {
+            Log.warn(getLocalName() + " ignored a malformed report from " + report.container);
+            return;
+        }
+        reports.put(report.container, report);
+    }
+
+    private void moved(ACLMessage reply) {
+        Move move = moving.remove(reply.getInReplyTo());
+        if (move == null) {
+            return;
+        }
+        settledAt = System.currentTimeMillis() + SETTLE_PERIODS * period;
+        if (reply.getPerformative() != ACLMessage.INFORM) {
+            refused.increment();
+            Log.warn(getLocalName() + " - " + move.agent + " did not move: " + reply.getContent());
+            return;
+        }
+        long millis = System.currentTimeMillis() - move.start;
+        moveLatency.record(millis * 1000000L);
+        moves.increment();
+        String[] fields = reply.getContent() != null ? reply.getContent().split(" ") : new String[0];
+        if (fields.length < 3) {
+            Log.warn(getLocalName() + " - " + move.agent + " moved, malformed confirmation: " + reply.getContent());
+            return;
+        }
+        Log.info("[OK] " + new AID(move.agent, AID.ISGUID).getLocalName() + " moved from " + move.from +
+                 " to " + fields[0] + " in " + millis + " ms (checkpoint " + fields[1] + " bytes, " +
+                 fields[2] + " queued messages)");
+    }
+
+
+    // ==================== Conteneurs de la plateforme ====================
+
+    /**
+     * queryLocations() - Demande la liste des conteneurs à l'AMS (réponse dans locations)
+     */
+    private void queryLocations() {
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.addReceiver(getAMS());
+        request.setLanguage(FIPANames.ContentLanguage.FIPA_SL0);
+        request.setOntology(MobilityOntology.NAME);
+        try {
+            getContentManager().fillContent(request, new Action(getAMS(), new QueryPlatformLocationsAction()));
+        } catch (Exception e) {
+            Log.warn(getLocalName() + " cannot query the containers - " + e.getMessage());
+            return;
+        }
+        correlator.request(request, period, new ReplyCorrelator.ReplyHandler() {
+            public void onReply(ACLMessage reply) {
+                try {
+                    Set<String> names = new HashSet<String>();
+                    Iterator<?> it = ((Result) getContentManager().extractContent(reply)).getItems().iterator();
+                    while (it.hasNext()) {
+                        names.add(((Location) it.next()).getName());
+                    }
+                    locations = names;
+                } catch (Exception e) {
+                    Log.warn(getLocalName() + " cannot read the containers - " + e.getMessage());
+                }
+            }
+
+            public void onTimeout(ACLMessage request) {
+                // Liste précédente gardée
+            }
+        });
+    }
+
+
+    // ==================== Décision ====================
+
+    /**
+     * rebalance() - Décide les migrations de la période
+     */
+    private void rebalance() {
+        long now = System.currentTimeMillis();
+        queryLocations();
+
+        // ---- Étape 1: Oublier les conteneurs muets et les migrations perdues ----
+        Iterator<Report> it = reports.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().received > STALE_PERIODS * period) {
+                it.remove();
+            }
+        }
+        Iterator<Move> pending = moving.values().iterator();
+        while (pending.hasNext()) {
+            if (now - pending.next().start > STALE_PERIODS * period) {
+                pending.remove();
+            }
+        }
+        if (!moving.isEmpty() || now < settledAt) {
+            return;
+        }
+
+        // ---- Étape 2: Conteneurs sans moniteur (pas d'agent migrable): charge nulle ----
+        Map<String, Report> containers = new LinkedHashMap<String, Report>(reports);
+        for (String location : locations) {
+            if (!containers.containsKey(location) && !location.equals(here().getName())) {
+                Report empty = new Report();
+                empty.container = location;
+                empty.cpu = -1;
+                containers.put(location, empty);
+            }
+        }
+        if (containers.size() < 2) {
+            return;
+        }
+
+        // ---- Étape 3: Charges estimées (modifiées par chaque migration décidée) ----
+        Map<String, Double> loads = new HashMap<String, Double>();
+        double total = 0;
+        for (Report report : containers.values()) {
+            loads.put(report.container, Double.valueOf(report.load));
+            total += report.load;
+        }
+        double mean = total / containers.size();
+
+        // ---- Étape 4: Du plus chargé vers le moins chargé ----
+        for (int m = 0; m < MAX_MOVES; m++) {
+            Report hottest = null;
+            Report coldest = null;
+            for (Report report : containers.values()) {
+                double load = loads.get(report.container).doubleValue();
+                if (hottest == null || load > loads.get(hottest.container).doubleValue()) {
+                    hottest = report;
+                }
+                if (report.cpu < MAX_TARGET_CPU &&
+                    (coldest == null || load < loads.get(coldest.container).doubleValue())) {
+                    coldest = report;
+                }
+            }
+            if (coldest == null || coldest == hottest) {
+                return;
+            }
+            double hot = loads.get(hottest.container).doubleValue();
+            double cold = loads.get(coldest.container).doubleValue();
+            double gap = hot - cold;
+            if (hot <= mean * (1 + TOLERANCE) || gap < MIN_GAP) {
+                return;
+            }
+
+            String agent = choose(hottest, gap, now);
+            if (agent == null) {
+                return;
+            }
+            double rate = hottest.rates.remove(agent).doubleValue();
+            loads.put(hottest.container, Double.valueOf(hot - rate));
+            loads.put(coldest.container, Double.valueOf(cold + rate));
+            move(agent, hottest, coldest, now);
+        }
+    }
+
+    /**
+     * choose() - Agent dont le débit est le plus proche de la moitié de l'écart
+     *
+     * @return null si aucun agent ne réduit l'écart
+     */
+    private String choose(Report hottest, double gap, long now) {
+        List<String> busy = new ArrayList<String>();
+        for (Move move : moving.values()) {
+            busy.add(move.agent);
+        }
+        String best = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (Map.Entry<String, Double> e : hottest.rates.entrySet()) {
+            double rate = e.getValue().doubleValue();
+            Long last = lastMoved.get(e.getKey());
+            if (rate <= 0 || rate >= gap || busy.contains(e.getKey()) ||
+                (last != null && now - last.longValue() < COOLDOWN_PERIODS * period)) {
+                continue;
+            }
+            double distance = Math.abs(rate - gap / 2);
+            if (distance < bestDistance) {
+                best = e.getKey();
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private void move(String agent, Report from, Report to, long now) {
+        Move move = new Move();
+        move.agent = agent;
+        move.from = from.container;
+        move.to = to.container;
+        move.start = now;
+
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.addReceiver(new AID(agent, AID.ISGUID));
+        request.setOntology(Rebalancer.ONTOLOGY);
+        request.setContent(to.container);
+        request.setReplyWith("move-" + (requests++));
+        moving.put(request.getReplyWith(), move);
+        lastMoved.put(agent, Long.valueOf(now));
+        send(request);
+
+        Log.info(getLocalName() + " moves " + new AID(agent, AID.ISGUID).getLocalName() + " from " + from.container +
+                 " (" + String.format(Locale.ROOT, "%.0f", from.load) + " msg/s) to " + to.container +
+                 " (" + String.format(Locale.ROOT, "%.0f", to.load) + " msg/s)");
+    }
+}
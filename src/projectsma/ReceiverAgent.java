@@ -1,6 +1,7 @@
 package projectsma;
 
 import jade.core.Agent;
+import jade.core.MessageQueue;
 import jade.lang.acl.ACLMessage;
 
 /**
@@ -34,14 +35,41 @@ public class ReceiverAgent extends Agent {
     //     System.out.println("Content: " + content);
     // }
 
+    /**
+     * File bornée, si -projectsma.mailbox est défini (null sinon)
+     */
+    private BoundedMessageQueue mailbox;
+
+    /**
+     * createMessageQueue() - Appelée par JADE avant setup()
+     *
+     * Remplace la file sans limite de JADE par une BoundedMessageQueue
+     * quand la plateforme est lancée avec -projectsma.mailbox, et enregistre
+     * le trafic reçu avec -projectsma.capture (voir MessageCapture).
+     */
+    protected MessageQueue createMessageQueue() {
+        mailbox = BoundedMessageQueue.create(this);
+        return MessageCapture.wrap(this, mailbox != null ? mailbox : super.createMessageQueue());
+    }
+
     protected void setup() {
-        System.out.println("Hello. My name is " + this.getLocalName());
-        
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics.of(this);
+
+        Log.info("Hello. My name is " + this.getLocalName());
+
         // ---- Ajouter le comportement de réception ----
         // addBehaviour() ajoute un comportement à l'agent
         // Le comportement s'exécute en parallèle avec setup()
         addBehaviour(new ReceiverBehaviour(this));
-        
-        System.out.println(this.getLocalName() + " is ready to receive messages");
+
+        // ---- Contrôle de flux (file bornée) ----
+        if (mailbox != null) {
+            addBehaviour(new FlowControlBehaviour(this, mailbox));
+            Log.info(this.getLocalName() + " mailbox limited to " +
+                   mailbox.getMaxSize() + " messages");
+        }
+
+        Log.info(this.getLocalName() + " is ready to receive messages");
     }
 }
\ No newline at end of file
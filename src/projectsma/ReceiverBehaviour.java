@@ -1,75 +1,69 @@
 package projectsma;
 
+import jade.content.lang.Codec.CodecException;
 import jade.core.Agent;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
-import jade.core.behaviours.SimpleBehaviour;
 
 /**
  * ReceiverBehaviour - Comportement de réception non-bloquante
  * 
  * Ce comportement:
  * - S'exécute régulièrement
- * - Vérifie s'il y a un message INFORM
- * - Si oui: traite le message
+ * - Vérifie s'il y a des messages INFORM
+ * - Si oui: traite tous les messages en attente (MessageDispatcher),
+ *   y compris ceux regroupés par l'OutboundQueue d'un émetteur
  * - Si non: se bloque pour ne pas consommer de CPU
  * 
  * Avantage: L'agent peut faire d'autres choses
  * Inconvénient: Code plus complexe
  */
-public class ReceiverBehaviour extends SimpleBehaviour {
-    
-    /**
-     * MessageTemplate: Filtre pour recevoir seulement les INFORM
-     * 
-     * Sans ce filtre, on reçoit tous les messages.
-     * Avec ce filtre, on reçoit seulement les INFORM.
-     */
-    private static final MessageTemplate mt = 
-        MessageTemplate.MatchPerformative(ACLMessage.INFORM);
+public class ReceiverBehaviour extends MessageDispatcher {
     
     /**
      * Constructeur
      * 
+     * on(ACLMessage.INFORM, ...) joue le rôle du filtre MessageTemplate:
+     * seuls les INFORM sont retirés de la file, les autres messages
+     * restent disponibles pour les autres comportements.
+     * 
      * @param agent L'agent parent
      */
     public ReceiverBehaviour(Agent agent) {
         super(agent);
+        Greeting.register();
+        on(ACLMessage.INFORM, new Handler() {
+            /**
+             * handle() - Appelée pour chaque INFORM reçu
+             * 
+             * La boucle de réception (receive() puis block() quand la file
+             * est vide) est dans MessageDispatcher.action().
+             */
+            public void handle(ACLMessage msg) {
+                // Afficher l'émetteur et le contenu
+                // (msg.toString() formaterait toute l'enveloppe du message)
+                // Le test évite de construire le texte si le niveau INFO est coupé
+                if (Log.enabled(Log.Level.INFO)) {
+                    Log.info(myAgent.getLocalName() + 
+                             ":Received message from " + 
+                             msg.getSender().getLocalName() + 
+                             "\nContent: " + content(msg) +
+                             (OutboundQueue.copies(msg) > 1 ? " (x" + OutboundQueue.copies(msg) + ")" : ""));
+                }
+            }
+        });
     }
     
     /**
-     * action() - Appelée régulièrement par JADE
-     * 
-     * C'est la méthode principale du comportement.
-     * Elle s'exécute en boucle jusqu'à ce que done() retourne true.
+     * content() - Contenu à afficher, décodé s'il est binaire (ContentCodecs)
      */
-    public void action() {
-        // ---- Étape 1: Essayer de recevoir un message ----
-        // receive(mt) ne bloque PAS
-        // Retourne le message s'il y en a un, null sinon
-        ACLMessage msg = myAgent.receive(mt);
-        
-        // ---- Étape 2: Si un message a été reçu ----
-        if (msg != null) {
-            // Afficher le message
-            System.out.println(myAgent.getLocalName() + 
-                             ":Received message.\n" + 
-                             msg.toString());
-        } else {
-            // ---- Étape 3: Si pas de message ----
-            // this.block() met en pause le comportement
-            // Évite de consommer du CPU en boucle
-            this.block();
+    private static String content(ACLMessage msg) {
+        if (!ContentCodecs.isEncoded(msg)) {
+            return msg.getContent();
+        }
+        try {
+            return String.valueOf(ContentCodecs.extractContent(msg));
+        } catch (CodecException e) {
+            return "(unreadable " + msg.getOntology() + " content: " + e.getMessage() + ")";
         }
     }
-    
-    /**
-     * done() - Indique si le comportement doit continuer
-     * 
-     * Retourne false = continuer indéfiniment
-     * Retourne true = arrêter le comportement
-     */
-    public boolean done() {
-        return false;  // Continuer indéfiniment
-    }
-}
\ No newline at end of file
+}
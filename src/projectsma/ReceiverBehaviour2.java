@@ -1,54 +1,75 @@
 package projectsma;
 
+import jade.content.lang.Codec.CodecException;
 import jade.core.Agent;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
-import jade.core.behaviours.SimpleBehaviour;
 
 /**
  * ReceiverBehaviour - Version qui envoie une réponse
  * 
  * Quand on reçoit un message, on envoie une réponse.
+ * 
+ * Tous les INFORM en attente sont traités à chaque réveil (MessageDispatcher).
+ * 
+ * Un Greeting binaire (ContentCodecs, envoyé par SenderAgent2) reçoit une
+ * réponse Greeting du même numéro; un message texte, une réponse texte.
  */
-public class ReceiverBehaviour2 extends SimpleBehaviour {
+public class ReceiverBehaviour2 extends MessageDispatcher {
     
-    private static final MessageTemplate mt = 
-        MessageTemplate.MatchPerformative(ACLMessage.INFORM);
+    private static final String ANSWER = "Hello! I'm fine, thanks for asking!";
     
     public ReceiverBehaviour2(Agent agent) {
         super(agent);
-    }
-    
-    public void action() {
-        ACLMessage msg = myAgent.receive(mt);
-        
-        if (msg != null) {
-            System.out.println(myAgent.getLocalName() + 
+        Greeting.register();
+        on(ACLMessage.INFORM, new Handler() {
+            public void handle(ACLMessage msg) {
+                // ---- Contenu binaire: décodé seulement ici ----
+                if (ContentCodecs.isEncoded(msg)) {
+                    replyEncoded(msg);
+                    return;
+                }
+                
+                if (Log.enabled(Log.Level.INFO)) {
+                    Log.info(myAgent.getLocalName() + 
                              ":Received message from " + 
-                             msg.getSender().getLocalName());
-            System.out.println("Content: " + msg.getContent());
-            
-            // ---- NOUVEAU: Envoyer une réponse ----
-            // createReply() crée un message de réponse
-            // Remplit automatiquement:
-            //   - receiver = l'émetteur du message original
-            //   - inReplyTo = le replyWith du message original
-            ACLMessage reply = msg.createReply();
-            
-            // Marquer comme réponse (c'est automatique avec createReply())
-            reply.setPerformative(ACLMessage.INFORM);
-            reply.setContent("Hello! I'm fine, thanks for asking!");
-            
-            // Envoyer la réponse
-            myAgent.send(reply);
-            
-            System.out.println(myAgent.getLocalName() + " sent reply");
-        } else {
-            this.block();
-        }
+                             msg.getSender().getLocalName() +
+                             "\nContent: " + msg.getContent());
+                }
+                
+                // ---- NOUVEAU: Envoyer une réponse ----
+                // reply() remplit les mêmes champs que createReply():
+                //   - receiver = l'émetteur du message original
+                //   - inReplyTo = le replyWith du message original
+                // mais réutilise le même message au lieu d'en créer un
+                reply(msg, ACLMessage.INFORM, ANSWER);
+                
+                if (Log.enabled(Log.Level.INFO)) {
+                    Log.info(myAgent.getLocalName() + " sent reply");
+                }
+            }
+        });
     }
     
-    public boolean done() {
-        return false;
+    /**
+     * replyEncoded() - Répond à un Greeting par un Greeting du même numéro
+     * 
+     * Un contenu illisible reçoit NOT_UNDERSTOOD au lieu d'arrêter l'agent.
+     */
+    private void replyEncoded(ACLMessage msg) {
+        try {
+            Greeting greeting = (Greeting) ContentCodecs.extractContent(msg);
+            if (Log.enabled(Log.Level.INFO)) {
+                Log.info(myAgent.getLocalName() + 
+                         ":Received message from " + 
+                         msg.getSender().getLocalName() +
+                         "\nContent: " + greeting);
+            }
+            reply(msg, ACLMessage.INFORM, Greeting.ONTOLOGY,
+                  new Greeting(greeting.getNumber(), ANSWER));
+        } catch (CodecException e) {
+            Log.warn(myAgent.getLocalName() + ": unreadable " + msg.getOntology() +
+                     " content from " + msg.getSender().getLocalName() + ": " + e.getMessage());
+            reply(msg, ACLMessage.NOT_UNDERSTOOD, null);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,6 @@
 package projectsma;
 
-import jade.core.Agent;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.MessageTemplate;
-import jade.core.behaviours.CyclicBehaviour;
 
 /**
  * ReceiverCyclicBehaviour - Comportement cyclique
@@ -14,38 +11,36 @@ import jade.core.behaviours.CyclicBehaviour;
  * Différence avec SimpleBehaviour:
  * - SimpleBehaviour: done() détermine l'arrêt
  * - CyclicBehaviour: Tourne indéfiniment
+ * 
+ * Hérite de MessageDispatcher (lui-même un CyclicBehaviour): à chaque réveil,
+ * tous les INFORM en attente sont traités, pas seulement le premier.
  */
-public class ReceiverCyclicBehaviour extends CyclicBehaviour {
-    
-    private static final MessageTemplate mt = 
-        MessageTemplate.MatchPerformative(ACLMessage.INFORM);
+public class ReceiverCyclicBehaviour extends MessageDispatcher {
     
     /**
-     * action() - S'exécute EN BOUCLE infiniment
+     * Constructeur - Enregistre le traitement des INFORM
      * 
      * Pas de done() à implémenter (contrairement à SimpleBehaviour)
      */
-    public void action() {
-        // ---- Recevoir un message ----
-        ACLMessage msg = myAgent.receive(mt);
-        
-        if (msg != null) {
-            // Message reçu
-            System.out.println(myAgent.getLocalName() + 
+    public ReceiverCyclicBehaviour() {
+        on(ACLMessage.INFORM, new Handler() {
+            public void handle(ACLMessage msg) {
+                // Message reçu
+                if (Log.enabled(Log.Level.INFO)) {
+                    Log.info(myAgent.getLocalName() + 
                              ": Received message from " + 
-                             msg.getSender().getLocalName());
-            System.out.println("Content: " + msg.getContent());
-            
-            // ---- Répondre ----
-            ACLMessage reply = msg.createReply();
-            reply.setPerformative(ACLMessage.INFORM);
-            reply.setContent("Thank you for your message!");
-            myAgent.send(reply);
-            
-            System.out.println(myAgent.getLocalName() + " sent reply\n");
-        } else {
-            // Pas de message
-            this.block();  // Libérer les ressources
-        }
+                             msg.getSender().getLocalName() +
+                             "\nContent: " + msg.getContent());
+                }
+                
+                // ---- Répondre ----
+                // reply() réutilise le même message de réponse à chaque fois
+                reply(msg, ACLMessage.INFORM, "Thank you for your message!");
+                
+                if (Log.enabled(Log.Level.INFO)) {
+                    Log.info(myAgent.getLocalName() + " sent reply\n");
+                }
+            }
+        });
     }
-}
\ No newline at end of file
+}
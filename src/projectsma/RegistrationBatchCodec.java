@@ -0,0 +1,46 @@
+package projectsma;
+
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RegistrationBatchCodec - Encodage binaire d'un lot d'enregistrements
+ *
+ * Nombre de descriptions, puis chaque description (DFAgentDescriptionCodec).
+ * Utilisé par Directory.registerBatch() et IndexedDFAgent (ontologie
+ * Directory.REGISTER_BATCH_ONTOLOGY).
+ */
+public class RegistrationBatchCodec implements PayloadCodec<DFAgentDescription[]> {
+
+    private static final DFAgentDescriptionCodec codec = new DFAgentDescriptionCodec();
+
+    public Class<DFAgentDescription[]> getType() {
+        return DFAgentDescription[].class;
+    }
+
+    public void encode(DFAgentDescription[] dfds, DataOutput out) throws IOException {
+        ContentCodecs.writeSize(out, dfds.length);
+        for (DFAgentDescription dfd : dfds) {
+            codec.encode(dfd, out);
+        }
+    }
+
+    public DFAgentDescription[] decode(DataInput in) throws IOException {
+        int size = ContentCodecs.readSize(in);
+        // Pas de tableau alloué d'après la taille annoncée: un lot forgé
+        // s'arrête à la fin du contenu (EOFException)
+        List<DFAgentDescription> dfds = new ArrayList<DFAgentDescription>(Math.min(size, 256));
+        for (int i = 0; i < size; i++) {
+            dfds.add(codec.decode(in));
+        }
+        if (dfds.size() != size) {
+            throw new EOFException();
+        }
+        return dfds.toArray(new DFAgentDescription[size]);
+    }
+}
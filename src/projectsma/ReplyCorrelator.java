@@ -0,0 +1,276 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ReplyCorrelator - Association non bloquante des requêtes et de leurs réponses
+ *
+ * blockingReceive() sans gabarit fige le thread de l'agent et peut lui donner
+ * n'importe quel message, pas forcément la réponse attendue.
+ *
+ * Ce comportement garde une table des requêtes en cours, indexée par replyWith:
+ * - chaque requête reçoit un identifiant unique (nom de l'agent + instance + compteur)
+ * - une réponse est reconnue par son inReplyTo et transmise au bon destinataire
+ * - chaque requête a son délai; à l'échéance, onTimeout() est appelée
+ * - une requête annulée (cancel()) ou expirée n'est plus transmise: sa
+ *   réponse tardive est retirée de la file et ignorée, jusqu'à l'échéance
+ *   de la requête plus un délai de grâce (le délai de la requête, au moins
+ *   MIN_GRACE ms); sinon elle resterait dans la file, qu'aucun comportement
+ *   ne lit, et ralentirait chaque receive() avec gabarit
+ * - la latence de chaque réponse est mesurée (reply.latency, voir Metrics)
+ *
+ * L'agent peut ainsi avoir des milliers de conversations en cours en même temps,
+ * tout en continuant à exécuter ses autres comportements.
+ *
+ * Utilisation:
+ *   ReplyCorrelator correlator = new ReplyCorrelator(this);
+ *   addBehaviour(correlator);
+ *   correlator.request(msg, 5000, new ReplyCorrelator.ReplyHandler() { ... });
+ *   // ou: correlator.request(msg, 5000).thenAccept(reply -> ...);
+ */
+public class ReplyCorrelator extends CyclicBehaviour {
+
+    // ==================== Interface de rappel ====================
+
+    /**
+     * ReplyHandler - Reçoit le résultat d'une requête
+     *
+     * Les méthodes sont appelées dans le thread de l'agent.
+     */
+    public interface ReplyHandler {
+        /** Une réponse est arrivée */
+        void onReply(ACLMessage reply);
+
+        /** Aucune réponse avant l'échéance */
+        void onTimeout(ACLMessage request);
+    }
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Requête en attente de réponse
+     */
+    private static class Pending implements Comparable<Pending> {
+        String id;
+        ACLMessage request;
+        ReplyHandler handler;
+        long deadline;
+        /** Délai demandé (ms), repris pour le délai de grâce */
+        long timeout;
+        /** Heure d'envoi (System.nanoTime()), pour la latence */
+        long sent;
+        boolean done;
+        /** Annulée ou expirée: deadline est la fin du délai de grâce */
+        boolean discarding;
+
+        public int compareTo(Pending other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+
+    /** Table des requêtes en cours: replyWith -> requête */
+    private final Map<String, Pending> pending = new HashMap<String, Pending>();
+
+    /** Délai de grâce minimal d'une requête annulée ou expirée (ms) */
+    public static final long MIN_GRACE = 1000;
+
+    /**
+     * Requêtes annulées ou expirées, jusqu'à la fin de leur délai de grâce:
+     * leur réponse tardive est retirée de la file et ignorée
+     */
+    private final Map<String, Pending> cancelled = new HashMap<String, Pending>();
+
+    /**
+     * Échéances triées: la prochaine à expirer est en tête.
+     * Une requête terminée y reste (marquée done) jusqu'à son échéance:
+     * la retirer d'un tas coûterait O(n) à chaque réponse.
+     */
+    private final PriorityQueue<Pending> deadlines = new PriorityQueue<Pending>();
+
+    /** Préfixe unique pour cette instance (deux agents, ou deux redémarrages, n'entrent pas en collision) */
+    private final String idPrefix;
+    private long counter = 0;
+
+    // Métriques de l'agent (voir Metrics)
+    private final LongAdder messagesIn;
+    private final LongAdder messagesOut;
+    private final LongAdder discarded;
+    private final LatencyHistogram replyLatency;
+
+    /** Ne reçoit que les réponses à nos requêtes en cours */
+    private final MessageTemplate mt = new MessageTemplate(new MessageTemplate.MatchExpression() {
+        public boolean match(ACLMessage msg) {
+            return msg.getInReplyTo() != null
+                && (pending.containsKey(msg.getInReplyTo()) || cancelled.containsKey(msg.getInReplyTo()));
+        }
+    });
+
+
+    // ==================== Constructeur ====================
+
+    public ReplyCorrelator(Agent agent) {
+        super(agent);
+        this.idPrefix = agent.getLocalName() + "-" +
+                        Long.toString(System.currentTimeMillis(), 36) + "-" +
+                        Integer.toString(System.identityHashCode(this), 36) + "-";
+        Metrics metrics = Metrics.of(agent);
+        messagesIn = metrics.counter("messages.in");
+        messagesOut = metrics.counter("messages.out");
+        discarded = metrics.counter("reply.discarded");
+        replyLatency = metrics.histogram("reply.latency");
+    }
+
+
+    // ==================== Envoi ====================
+
+    /**
+     * request() - Envoie un message et attend sa réponse sans bloquer
+     *
+     * À appeler depuis le thread de l'agent (dans un comportement ou setup()).
+     *
+     * @param msg Le message à envoyer (son replyWith est remplacé)
+     * @param timeout Délai maximal d'attente en ms
+     * @param handler Appelé à la réponse ou à l'échéance
+     * @return L'identifiant de corrélation (replyWith)
+     */
+    public String request(ACLMessage msg, long timeout, ReplyHandler handler) {
+        Pending p = new Pending();
+        p.id = nextId();
+        p.request = msg;
+        p.handler = handler;
+        p.timeout = timeout;
+        p.deadline = System.currentTimeMillis() + timeout;
+
+        msg.setReplyWith(p.id);
+        pending.put(p.id, p);
+        deadlines.add(p);
+        p.sent = System.nanoTime();
+        myAgent.send(msg);
+        messagesOut.increment();
+
+        // Réveiller le comportement pour qu'il tienne compte de la nouvelle échéance
+        restart();
+        return p.id;
+    }
+
+    /**
+     * request() - Variante qui retourne un CompletableFuture
+     *
+     * Le futur est complété dans le thread de l'agent, avec la réponse,
+     * ou en erreur (TimeoutException) à l'échéance.
+     */
+    public CompletableFuture<ACLMessage> request(ACLMessage msg, long timeout) {
+        final CompletableFuture<ACLMessage> future = new CompletableFuture<ACLMessage>();
+        request(msg, timeout, new ReplyHandler() {
+            public void onReply(ACLMessage reply) {
+                future.complete(reply);
+            }
+
+            public void onTimeout(ACLMessage request) {
+                future.completeExceptionally(
+                    new TimeoutException("No reply to " + request.getReplyWith()));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * cancel() - Abandonne une requête en cours (sa réponse sera ignorée)
+     *
+     * Le destinataire n'est pas prévenu: voir ScatterGather pour l'envoi
+     * d'un CANCEL.
+     *
+     * @return true si la requête était encore en cours
+     */
+    public boolean cancel(String id) {
+        Pending p = pending.remove(id);
+        if (p == null) {
+            return false;
+        }
+        p.done = true;
+        // Le délai de grâce commence à l'échéance d'origine (voir action())
+        cancelled.put(id, p);
+        return true;
+    }
+
+    /**
+     * inFlight() - Nombre de requêtes en attente de réponse
+     */
+    public int inFlight() {
+        return pending.size();
+    }
+
+
+    // ==================== Méthode action() ====================
+
+    public void action() {
+        // ---- Étape 1: Distribuer toutes les réponses arrivées ----
+        ACLMessage reply;
+        while ((reply = myAgent.receive(mt)) != null) {
+            Pending p = pending.remove(reply.getInReplyTo());
+            if (p == null) {
+                // Réponse tardive à une requête annulée ou expirée
+                cancelled.remove(reply.getInReplyTo());
+                discarded.increment();
+                continue;
+            }
+            p.done = true;
+            messagesIn.increment();
+            replyLatency.record(System.nanoTime() - p.sent);
+            p.handler.onReply(reply);
+        }
+
+        // ---- Étape 2: Expirer les requêtes dont l'échéance est passée ----
+        long now = System.currentTimeMillis();
+        while (!deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+            Pending p = deadlines.poll();
+            if (!p.done) {
+                // Expirée: sa réponse sera ignorée pendant le délai de grâce
+                pending.remove(p.id);
+                p.done = true;
+                cancelled.put(p.id, p);
+                discardLater(p, now);
+                p.handler.onTimeout(p.request);
+            } else if (p.discarding) {
+                // Fin du délai de grâce
+                cancelled.remove(p.id, p);
+            } else if (cancelled.get(p.id) == p) {
+                // Annulée: délai de grâce à partir de l'échéance d'origine
+                discardLater(p, now);
+            }
+        }
+
+        // ---- Étape 3: Attendre la prochaine réponse ou la prochaine échéance ----
+        if (deadlines.isEmpty()) {
+            block();
+        } else {
+            block(Math.max(1, deadlines.peek().deadline - now));
+        }
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    private String nextId() {
+        return idPrefix + (counter++);
+    }
+
+    /**
+     * discardLater() - Garde l'identifiant (réponse ignorée) pendant le délai de grâce
+     */
+    private void discardLater(Pending p, long now) {
+        p.discarding = true;
+        p.deadline = now + Math.max(MIN_GRACE, p.timeout);
+        deadlines.add(p);
+    }
+}
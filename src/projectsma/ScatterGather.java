@@ -0,0 +1,360 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ScatterGather - Interroge N agents en une opération et agrège leurs réponses
+ *
+ * Attendre la réponse de tous les fournisseurs, c'est attendre le plus lent:
+ * un seul fournisseur chargé fixe la latence de chaque interrogation.
+ * Ici, les réponses sont agrégées au fil de l'eau (Reducer), et
+ * l'interrogation se termine dès que la réponse est utile:
+ * - firstK(k): k réponses utiles reçues (les k plus rapides)
+ * - quorum(q): une fraction q des agents a répondu (utile ou non)
+ * - timeout(ms): l'échéance est atteinte, avec ce qui a été reçu
+ * - ou quand tous ont répondu
+ * Les requêtes encore en cours sont alors annulées: le ReplyCorrelator
+ * ignore leurs réponses tardives. Avec setSendCancel(true), chaque agent
+ * reçoit aussi un CANCEL pour abandonner le travail pas encore commencé
+ * (ProjectAgent le fait): même conversation, protocole et ontologie que
+ * la requête, inReplyTo (et contenu) = le replyWith de la requête.
+ *
+ * Une réponse est utile si elle correspond au gabarit setUseful() (par
+ * défaut: tout sauf FAILURE, REFUSE et NOT_UNDERSTOOD); seules les
+ * réponses utiles sont passées au Reducer.
+ *
+ * Les messages passent par un ReplyCorrelator (corrélation, délais): tout
+ * s'exécute dans le thread de l'agent, sans bloquer ses autres comportements.
+ * Un ScatterGather peut servir à plusieurs interrogations, en même temps
+ * ou l'une après l'autre; chaque interrogation garde les règles (firstK,
+ * quorum, timeout...) en vigueur à son start().
+ *
+ * Utilisation:
+ *   ScatterGather<Integer> offers = new ScatterGather<Integer>(correlator, Integer.MAX_VALUE,
+ *       new ScatterGather.Reducer<Integer>() {
+ *           public Integer reduce(Integer best, ACLMessage reply) {
+ *               return Math.min(best, Integer.parseInt(reply.getContent()));
+ *           }
+ *       }).firstK(3).timeout(2000);
+ *   offers.start(msg, providers, listener);
+ */
+public class ScatterGather<A> {
+
+    // ==================== Interfaces de rappel ====================
+
+    /**
+     * Reducer - Ajoute une réponse utile à l'agrégat (thread de l'agent)
+     */
+    public interface Reducer<A> {
+        A reduce(A aggregate, ACLMessage reply);
+    }
+
+    /**
+     * Listener - Reçoit le résultat d'une interrogation (thread de l'agent)
+     */
+    public interface Listener<A> {
+        void onComplete(Result<A> result);
+    }
+
+
+    // ==================== Résultat ====================
+
+    /**
+     * Outcome - Raison de la fin d'une interrogation
+     */
+    public enum Outcome {
+        /** Tous les agents ont répondu */
+        ALL,
+        /** k réponses utiles */
+        FIRST_K,
+        /** Le quorum a répondu */
+        QUORUM,
+        /** Échéance atteinte */
+        DEADLINE,
+        /** Gather.cancel() */
+        CANCELLED
+    }
+
+    /**
+     * Result - Agrégat et bilan d'une interrogation
+     */
+    public static class Result<A> {
+        public final A value;
+        public final Outcome outcome;
+        /** Agents interrogés */
+        public final int sent;
+        /** Réponses reçues, dont utiles */
+        public final int replies;
+        public final int useful;
+        /** Requêtes encore en cours à la fin, annulées */
+        public final int cancelled;
+        public final long elapsedMillis;
+
+        Result(A value, Outcome outcome, int sent, int replies, int useful, int cancelled, long elapsedMillis) {
+            this.value = value;
+            this.outcome = outcome;
+            this.sent = sent;
+            this.replies = replies;
+            this.useful = useful;
+            this.cancelled = cancelled;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String toString() {
+            return outcome + " after " + elapsedMillis + " ms: " + replies + "/" + sent + " replies (" +
+                   useful + " useful), " + cancelled + " cancelled, value " + value;
+        }
+    }
+
+
+    // ==================== Constantes ====================
+
+    /** Délai par défaut de l'interrogation (ms) */
+    public static final long DEFAULT_TIMEOUT = 5000;
+
+    /** Réponses utiles par défaut: tout sauf un échec ou un refus */
+    private static final MessageTemplate DEFAULT_USEFUL = MessageTemplate.not(MessageTemplate.or(
+        MessageTemplate.MatchPerformative(ACLMessage.FAILURE),
+        MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.REFUSE),
+                           MessageTemplate.MatchPerformative(ACLMessage.NOT_UNDERSTOOD))));
+
+
+    // ==================== Attributs ====================
+
+    private final ReplyCorrelator correlator;
+    private final A initial;
+    private final Reducer<A> reducer;
+
+    private int firstK = -1;
+    private double quorum = -1;
+    private long timeout = DEFAULT_TIMEOUT;
+    private boolean sendCancel = false;
+    private MessageTemplate useful = DEFAULT_USEFUL;
+
+    private long gathers = 0;
+
+    // Métriques de l'agent (voir Metrics)
+    private final LatencyHistogram gatherLatency;
+    private final LongAdder cancelledRequests;
+
+
+    // ==================== Construction ====================
+
+    /**
+     * @param correlator Le ReplyCorrelator de l'agent (déjà ajouté à ses comportements)
+     * @param initial L'agrégat de départ (le même pour chaque interrogation: non modifiable)
+     * @param reducer Ajoute chaque réponse utile à l'agrégat
+     */
+    public ScatterGather(ReplyCorrelator correlator, A initial, Reducer<A> reducer) {
+        this.correlator = correlator;
+        this.initial = initial;
+        this.reducer = reducer;
+        Metrics metrics = Metrics.of(correlator.getAgent());
+        gatherLatency = metrics.histogram("gather.latency");
+        cancelledRequests = metrics.counter("gather.cancelled");
+    }
+
+    /**
+     * firstK() - Terminer dès k réponses utiles
+     */
+    public ScatterGather<A> firstK(int k) {
+        this.firstK = k;
+        return this;
+    }
+
+    /**
+     * quorum() - Terminer dès qu'une fraction des agents a répondu (0 à 1)
+     */
+    public ScatterGather<A> quorum(double fraction) {
+        this.quorum = fraction;
+        return this;
+    }
+
+    /**
+     * timeout() - Échéance de l'interrogation (ms)
+     */
+    public ScatterGather<A> timeout(long millis) {
+        this.timeout = millis;
+        return this;
+    }
+
+    /**
+     * setUseful() - Gabarit des réponses utiles (passées au Reducer)
+     */
+    public ScatterGather<A> setUseful(MessageTemplate useful) {
+        this.useful = useful;
+        return this;
+    }
+
+    /**
+     * setSendCancel() - Prévenir (CANCEL) les agents dont la réponse n'est plus attendue
+     *
+     * Désactivé par défaut: à n'activer que si tous les destinataires
+     * traitent les CANCEL (ex: ProjectAgent), sinon ils resteraient dans
+     * leur file.
+     */
+    public ScatterGather<A> setSendCancel(boolean sendCancel) {
+        this.sendCancel = sendCancel;
+        return this;
+    }
+
+
+    // ==================== Interrogation ====================
+
+    /**
+     * start() - Envoie le message à tous les destinataires et agrège leurs réponses
+     *
+     * À appeler depuis le thread de l'agent. Chaque destinataire reçoit une
+     * copie du message avec son propre replyWith (ses receveurs sont remplacés).
+     *
+     * @return L'interrogation en cours (pour l'annuler)
+     */
+    public Gather start(ACLMessage msg, Collection<AID> receivers, Listener<A> listener) {
+        String conversationId = msg.getConversationId() != null ? msg.getConversationId()
+            : "gather-" + correlator.getAgent().getLocalName() + "-" + (gathers++);
+        Gather gather = new Gather(receivers.size(), listener, msg, conversationId);
+
+        for (AID receiver : receivers) {
+            ACLMessage request = (ACLMessage) msg.clone();
+            request.clearAllReceiver();
+            request.addReceiver(receiver);
+            request.setConversationId(conversationId);
+            // L'échéance du ReplyCorrelator est celle de l'interrogation
+            long remaining = Math.max(1, gather.deadline - System.currentTimeMillis());
+            gather.outstanding.put(correlator.request(request, remaining, gather), receiver);
+        }
+        gather.check();
+        return gather;
+    }
+
+    /**
+     * start() - Variante qui retourne un CompletableFuture (complété dans le thread de l'agent)
+     */
+    public CompletableFuture<Result<A>> start(ACLMessage msg, Collection<AID> receivers) {
+        final CompletableFuture<Result<A>> future = new CompletableFuture<Result<A>>();
+        start(msg, receivers, new Listener<A>() {
+            public void onComplete(Result<A> result) {
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+
+
+    // ==================== Interrogation en cours ====================
+
+    /**
+     * Gather - Une interrogation: agrégat, compteurs et requêtes en cours
+     */
+    public class Gather implements ReplyCorrelator.ReplyHandler {
+        private final int sent;
+        private final Listener<A> listener;
+        /** Repris par les CANCEL, pour que le destinataire les rattache à la requête */
+        private final String conversationId;
+        private final String protocol;
+        private final String ontology;
+        private final long start = System.nanoTime();
+        // Règles lues au départ: les modifier ensuite ne change que les interrogations suivantes
+        private final long deadline = System.currentTimeMillis() + timeout;
+        private final int k = firstK;
+        private final double fraction = quorum;
+        private final MessageTemplate usefulTemplate = useful;
+        private final boolean notify = sendCancel;
+
+        /** Requêtes en cours: replyWith -> destinataire */
+        private final Map<String, AID> outstanding = new LinkedHashMap<String, AID>();
+
+        private A value = initial;
+        private int replies = 0;
+        private int usefulReplies = 0;
+        private boolean done = false;
+
+        Gather(int sent, Listener<A> listener, ACLMessage msg, String conversationId) {
+            this.sent = sent;
+            this.listener = listener;
+            this.conversationId = conversationId;
+            this.protocol = msg.getProtocol();
+            this.ontology = msg.getOntology();
+        }
+
+        public void onReply(ACLMessage reply) {
+            outstanding.remove(reply.getInReplyTo());
+            replies++;
+            if (usefulTemplate.match(reply)) {
+                usefulReplies++;
+                value = reducer.reduce(value, reply);
+            }
+            check();
+        }
+
+        public void onTimeout(ACLMessage request) {
+            // Toutes les requêtes ont la même échéance: la première qui expire termine
+            outstanding.remove(request.getReplyWith());
+            complete(Outcome.DEADLINE);
+        }
+
+        /**
+         * cancel() - Termine l'interrogation tout de suite, avec ce qui a été reçu
+         */
+        public void cancel() {
+            complete(Outcome.CANCELLED);
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * check() - Termine l'interrogation si une condition est atteinte
+         */
+        private void check() {
+            if (done) {
+                return;
+            }
+            if (replies >= sent) {
+                complete(Outcome.ALL);
+            } else if (k > 0 && usefulReplies >= k) {
+                complete(Outcome.FIRST_K);
+            } else if (fraction > 0 && replies >= Math.ceil(fraction * sent)) {
+                complete(Outcome.QUORUM);
+            }
+        }
+
+        private void complete(Outcome outcome) {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            // ---- Annuler les requêtes encore en cours ----
+            int cancelled = outstanding.size();
+            for (Map.Entry<String, AID> e : outstanding.entrySet()) {
+                correlator.cancel(e.getKey());
+                if (notify) {
+                    ACLMessage cancel = new ACLMessage(ACLMessage.CANCEL);
+                    cancel.addReceiver(e.getValue());
+                    cancel.setConversationId(conversationId);
+                    cancel.setInReplyTo(e.getKey());
+                    cancel.setProtocol(protocol);
+                    cancel.setOntology(ontology);
+                    cancel.setContent(e.getKey());
+                    correlator.getAgent().send(cancel);
+                }
+            }
+            outstanding.clear();
+            cancelledRequests.add(cancelled);
+
+            long nanos = System.nanoTime() - start;
+            gatherLatency.record(nanos);
+            listener.onComplete(new Result<A>(value, outcome, sent, replies, usefulReplies,
+                                              cancelled, nanos / 1000000));
+        }
+    }
+}
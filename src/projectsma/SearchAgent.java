@@ -1,10 +1,17 @@
 package projectsma;
 
+import jade.core.AID;
 import jade.core.Agent;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.proto.SubscriptionInitiator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * SearchAgent - Agent spécialisé dans la recherche de services
@@ -20,6 +27,10 @@ import java.util.Iterator;
  * - Localiser les agents offrant un service
  * - Superviser les services enregistrés
  * 
+ * Pour solliciter ensuite les fournisseurs trouvés, voir les exemples
+ * qui en héritent: BalancingAgent (requêtes réparties), ContractNetAgent
+ * (appels d'offres groupés), GatherAgent (questions à tous).
+ * 
  * @author TP IAD 2025
  * @version 1.0
  */
@@ -32,7 +43,47 @@ public class SearchAgent extends Agent {
      * On cherche les agents offrant le service "construction".
      * Cette valeur peut être modifiée pour chercher d'autres services.
      */
-    private static final String TARGET_SERVICE = "construction";
+    protected static final String TARGET_SERVICE = "construction";
+    
+    /**
+     * Nombre de fournisseurs attendus par défaut avant de lancer la recherche
+     */
+    private static final int DEFAULT_EXPECTED = 1;
+    
+    /**
+     * Délai maximal d'attente par défaut (ms).
+     * C'est l'ancienne attente fixe, qui n'est plus qu'une borne supérieure.
+     */
+    private static final long DEFAULT_DISCOVERY_TIMEOUT = 2000;
+    
+    /**
+     * Nombre de fournisseurs par page quand la recherche interroge l'annuaire
+     */
+    private static final int SEARCH_PAGE_SIZE = 100;
+    
+    
+    // ==================== Attributs ====================
+    
+    /**
+     * Cache local de l'annuaire: les recherches répétées sont servies
+     * en mémoire, le DF ne nous envoie que les changements.
+     */
+    private final ServiceDirectoryCache cache = new ServiceDirectoryCache();
+    
+    /**
+     * Abonnement au DF qui tient le cache à jour pour TARGET_SERVICE
+     */
+    private SubscriptionInitiator subscription;
+    
+    /**
+     * Corrélateur des recherches auprès de l'annuaire (pages non bloquantes)
+     */
+    private ReplyCorrelator searches;
+    
+    /**
+     * Ligne d'affichage, réutilisée pour chaque fournisseur
+     */
+    private final StringBuilder line = new StringBuilder(128);
     
     
     // ==================== Méthode setup() ====================
@@ -41,24 +92,74 @@ public class SearchAgent extends Agent {
      * setup() - Point d'entrée du cycle de vie du SearchAgent
      * 
      * Appelée automatiquement au démarrage de l'agent.
-     * Affiche un message d'initialisation, puis lance la recherche.
+     * Affiche un message d'initialisation, puis lance la recherche
+     * dès que les fournisseurs attendus se sont enregistrés.
+     * 
+     * Paramètres optionnels: SearchAgent(attendus, quorum, délaiMs)
+     *   ex: boss:projectsma.SearchAgent(10,0.8,5000)
+     *   = chercher dès que 8 des 10 fournisseurs sont là, ou après 5 s
      */
     protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics.of(this);
+
         // Afficher le message de démarrage
         // getLocalName() retourne le nom de l'agent (ex: "boss")
-        System.out.println("Hello. I am " + this.getLocalName() + ".");
+        Log.info("Hello. I am " + this.getLocalName() + ".");
+
+        // S'abonner aux changements du DF pour le service recherché
+        // Le comportement démarrera dès que setup() sera terminé
+        subscription = cache.subscribe(this, TARGET_SERVICE);
+        addBehaviour(subscription);
+
+        // Les pages de la recherche arrivent par ce corrélateur, sans bloquer
+        searches = new ReplyCorrelator(this);
+        addBehaviour(searches);
 
-        // Attendre que les autres agents se registrent auprès du DF
-        // 2000ms = 2 secondes, ce qui laisse le temps aux ProjectAgents de démarrer
+        // Lire les paramètres de découverte
+        Object[] args = getArguments();
+        int expected = DEFAULT_EXPECTED;
+        double quorum = 1.0;
+        long timeout = DEFAULT_DISCOVERY_TIMEOUT;
         try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            if (args != null && args.length > 0) {
+                expected = Integer.parseInt((String) args[0]);
+            }
+            if (args != null && args.length > 1) {
+                quorum = Double.parseDouble((String) args[1]);
+            }
+            if (args != null && args.length > 2) {
+                timeout = Long.parseLong((String) args[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.warn("Paramètres invalides, utilisation des valeurs par défaut");
         }
 
-        // Lancer la recherche des services
-        // Cette méthode interroge le DF et affiche les résultats
-        this.searchAgents();
+        // Attendre que les ProjectAgents s'enregistrent auprès du DF, sans
+        // bloquer le thread de l'agent: le comportement est réveillé par les
+        // notifications du DF et lance la recherche dès que le quorum est atteint
+        addBehaviour(new DiscoveryReadinessBehaviour(this, cache, TARGET_SERVICE,
+                                                     expected, quorum, timeout) {
+            protected void onReady(int found, boolean timedOut) {
+                if (timedOut) {
+                    Log.warn(getLocalName() + 
+                           " discovery deadline reached with " + found + " provider(s)");
+                }
+                // Lancer la recherche des services
+                // Cette méthode interroge le cache (ou le DF) et affiche les résultats,
+                // puis sollicite les fournisseurs trouvés (onProvidersFound())
+                searchAgents();
+            }
+        });
+    }
+    
+    /**
+     * onProvidersFound() - Appelée une fois la recherche affichée
+     * 
+     * Ne fait rien ici: les exemples qui héritent de SearchAgent y
+     * sollicitent les fournisseurs trouvés.
+     */
+    protected void onProvidersFound() {
     }
     
     
@@ -70,96 +171,187 @@ public class SearchAgent extends Agent {
      * Processus:
      * 1. Créer une DFAgentDescription pour spécifier les critères de recherche
      * 2. Créer une ServiceDescription avec le type de service recherché
-     * 3. Interroger le DF avec DFService.search()
-     * 4. Parcourir les résultats et afficher les informations
+     * 3. Lire le cache local, ou interroger l'annuaire page par page
+     *    (Directory.search() par le corrélateur, voir searchPage())
+     * 4. Afficher chaque fournisseur dès qu'il arrive
      * 5. Gérer les erreurs en cas d'échec
+     * 
+     * Les pages arrivent comme des messages: le thread de l'agent n'est
+     * jamais bloqué (abonnement et autres comportements continuent).
+     * Avec un grand annuaire, le premier fournisseur s'affiche dès la
+     * première page, sans attendre ni garder en mémoire toute la liste.
      */
     private void searchAgents() {
-        try {
-            // ---- Étape 1: Préparer les critères de recherche ----
-            // DFAgentDescription est utilisée à la fois pour:
-            // - Enregistrer un agent (avec ses services)
-            // - Chercher des agents (avec les critères)
-            DFAgentDescription dfd = new DFAgentDescription();
-            
-            // ---- Étape 2: Spécifier le service recherché ----
-            // Créer une description du service qu'on cherche
-            ServiceDescription sd = new ServiceDescription();
-            
-            // setType() - Le type de service recherché
-            // On cherche tous les agents offrant le service "construction"
-            sd.setType(TARGET_SERVICE);
-            
-            // Ajouter le critère à la description
-            dfd.addServices(sd);
-            
-            // ---- Étape 3: Interroger le DF ----
-            // DFService.search() retourne un tableau contenant tous les agents
-            // qui offrent un service correspondant aux critères
-            // Paramètres:
-            //   this - l'agent qui effectue la recherche
-            //   dfd - la description avec les critères
-            DFAgentDescription[] result = DFService.search(this, dfd);
-            
-            // ---- Étape 4: Traiter les résultats ----
-            // Le tableau result contient les agents trouvés
-            // Si aucun agent n'offre le service, result.length == 0
-            
-            // Afficher le nombre d'agents trouvés
-            System.out.println("[RECHERCHE] " + this.getLocalName() + 
-                             " found " + result.length + 
-                             " agents providing '" + TARGET_SERVICE + "' service");
-            
-            // ---- Étape 5: Parcourir et afficher chaque résultat ----
-            // Boucle classique for
-            for (int i = 0; i < result.length; i++) {
-                // Construire la ligne à afficher
-                String out = result[i].getName() + " provides";
-                
-                // getName() retourne l'AID (Agent IDentifier)
-                // Ex: "agent1@ma-plateforme"
-                
-                // Obtenir un itérateur sur tous les services de cet agent
-                // getAllServices() retourne un Iterator sur les ServiceDescription
-                Iterator iter = result[i].getAllServices();
-                
-                // Parcourir tous les services offerts par cet agent
-                while (iter.hasNext()) {
-                    // Récupérer la description du service
-                    ServiceDescription sd_result = (ServiceDescription) iter.next();
-                    
-                    // Ajouter le nom du service à la chaîne
-                    out += " " + sd_result.getName();
-                    
-                    // Remarque: un agent peut offrir plusieurs services
-                    // Cette boucle affichera tous les services
+        List<DFAgentDescription> cached = cache.lookup(TARGET_SERVICE);
+        if (cached != null) {
+            // ---- Étape 3a: Le cache (tenu à jour par l'abonnement) répond ----
+            Metrics.of(this).counter("directory.cache.hit").increment();
+            for (DFAgentDescription dfd : cached) {
+                print(dfd);
+            }
+            searchCompleted(cached.size());
+            return;
+        }
+        
+        // ---- Étapes 1 à 3b: Interroger l'annuaire, page par page ----
+        Metrics.of(this).counter("directory.cache.miss").increment();
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(TARGET_SERVICE);
+        template.addServices(sd);
+        
+        // Le DF de JADE ne connaît pas les curseurs: une seule page
+        boolean paged = !Directory.dfFor(this, TARGET_SERVICE).equals(getDefaultDF());
+        searchPage(template, paged, null, 0);
+    }
+    
+    /**
+     * searchPage() - Demande une page à l'annuaire, puis la suivante à sa réception
+     * 
+     * Chaque page est une recherche d'au plus SEARCH_PAGE_SIZE résultats;
+     * la suivante reprend après le dernier agent reçu (curseur dans le
+     * search-id, voir Directory.searchPages()).
+     * 
+     * @param after Agent après lequel reprendre (null = première page)
+     * @param delivered Nombre de fournisseurs déjà affichés
+     */
+    private void searchPage(final DFAgentDescription template, final boolean paged,
+                            AID after, final int delivered) {
+        SearchConstraints constraints = new SearchConstraints();
+        constraints.setMaxResults(Long.valueOf(paged ? SEARCH_PAGE_SIZE : -1));
+        if (after != null) {
+            constraints.setSearchId(Directory.CURSOR_PREFIX + after.getName());
+        }
+        
+        Directory.search(searches, template, constraints, new Directory.SearchListener() {
+            public void onResult(DFAgentDescription[] page) {
+                if (!paged) {
+                    Directory.warnIfCapped(SearchAgent.this, getDefaultDF(), page.length);
                 }
                 
-                // Afficher le résultat pour cet agent
-                System.out.println(this.getLocalName() + ": " + out);
+                // ---- Étape 4: Afficher chaque fournisseur reçu ----
+                for (DFAgentDescription dfd : page) {
+                    print(dfd);
+                }
+                int found = delivered + page.length;
+                if (paged && page.length == SEARCH_PAGE_SIZE) {
+                    searchPage(template, paged, page[page.length - 1].getName(), found);
+                } else {
+                    searchCompleted(found);
+                }
             }
             
-            // Message de fin de recherche
-            System.out.println("[OK] " + this.getLocalName() + 
-                             " search completed successfully");
-            
-        } catch (Exception fe) {
-            // ---- Gestion des erreurs ----
-            // Une exception peut être levée si:
-            // - Le DF n'est pas accessible
-            // - Il y a un problème réseau
-            // - La recherche est mal formée
-            
-            System.err.println("[ERREUR] " + getLocalName() + 
-                             " search with DF unsucceeded - " + 
-                             fe.getMessage());
-            
-            // Afficher la stack trace pour le débogage
-            fe.printStackTrace();
-            
-            // Arrêter l'agent en cas d'erreur critique
-            doDelete();
+            public void onFailure(String reason) {
+                // ---- Étape 5: Gestion des erreurs ----
+                // L'échec survient si:
+                // - Le DF n'est pas accessible (pas de réponse avant l'échéance)
+                // - Il y a un problème réseau
+                // - La recherche est mal formée (FAILURE ou REFUSE du DF)
+                
+                Log.error(getLocalName() + 
+                        " search with DF unsucceeded - " + reason);
+                
+                // Arrêter l'agent en cas d'erreur critique
+                doDelete();
+            }
+        });
+    }
+    
+    /**
+     * searchCompleted() - Affiche le bilan, puis sollicite les fournisseurs
+     */
+    private void searchCompleted(int found) {
+        // Nombre d'agents trouvés (0 si aucun agent n'offre le service)
+        Log.info("[RECHERCHE] " + this.getLocalName() + 
+               " found " + found + 
+               " agents providing '" + TARGET_SERVICE + "' service");
+        
+        // Message de fin de recherche
+        Log.info("[OK] " + this.getLocalName() + 
+               " search completed successfully");
+        
+        // Puis solliciter les fournisseurs trouvés (sous-classes)
+        onProvidersFound();
+    }
+    
+    /**
+     * print() - Affiche un fournisseur: "agent provides service1 service2..."
+     */
+    private void print(DFAgentDescription dfd) {
+        // Le même StringBuilder sert pour toutes les lignes
+        line.setLength(0);
+        describe(dfd, line);
+        Log.info(getLocalName() + ": " + line);
+    }
+    
+    /**
+     * describe() - Ajoute "agent provides service1 service2..." au StringBuilder
+     */
+    private static void describe(DFAgentDescription dfd, StringBuilder out) {
+        // getName() retourne l'AID (Agent IDentifier)
+        // Ex: "agent1@ma-plateforme"
+        out.append(dfd.getName()).append(" provides");
+        
+        // Parcourir tous les services offerts par cet agent
+        // (un agent peut offrir plusieurs services)
+        Iterator iter = dfd.getAllServices();
+        while (iter.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) iter.next();
+            out.append(' ').append(sd.getName());
+        }
+    }
+    
+    
+    // ==================== Méthode findProviders() ====================
+    
+    /**
+     * findProviders() - Retourne les agents offrant un type de service
+     * 
+     * Le cache local répond en mémoire. En cas d'absence (premier appel,
+     * entrée expirée ou évincée), on interroge le DF et on remplit le cache.
+     * 
+     * @param type Le type de service recherché
+     * @return La liste des descriptions des fournisseurs
+     * @throws FIPAException Si le DF n'est pas joignable
+     */
+    public List<DFAgentDescription> findProviders(String type) throws FIPAException {
+        List<DFAgentDescription> cached = cache.lookup(type);
+        if (cached != null) {
+            Metrics.of(this).counter("directory.cache.hit").increment();
+            return cached;
+        }
+        Metrics.of(this).counter("directory.cache.miss").increment();
+        
+        // DFAgentDescription est utilisée à la fois pour:
+        // - Enregistrer un agent (avec ses services)
+        // - Chercher des agents (avec les critères)
+        DFAgentDescription dfd = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        dfd.addServices(sd);
+        
+        // Directory.search() interroge l'annuaire responsable du type
+        // (DFService.search()) et retourne un tableau contenant tous les agents
+        // qui offrent un service correspondant aux critères
+        DFAgentDescription[] result = Directory.search(this, dfd, null);
+        cache.put(type, result);
+        
+        return Arrays.asList(result);
+    }
+    
+    /**
+     * findProviderIds() - Les AID des fournisseurs de TARGET_SERVICE (liste vide en cas d'erreur)
+     */
+    protected List<AID> findProviderIds() {
+        List<AID> aids = new ArrayList<AID>();
+        try {
+            for (DFAgentDescription dfd : findProviders(TARGET_SERVICE)) {
+                aids.add(dfd.getName());
+            }
+        } catch (FIPAException e) {
+            Log.error(getLocalName() + " cannot list providers - " + e.getMessage());
         }
+        return aids;
     }
     
     
@@ -168,12 +360,15 @@ public class SearchAgent extends Agent {
     /**
      * takeDown() - Appelée quand l'agent s'arrête
      * 
-     * Le SearchAgent ne s'enregistre pas au DF et n'a pas de ressources spéciales,
-     * donc on peut ne pas redéfinir cette méthode.
-     * Elle est incluse à titre d'exemple.
+     * Le SearchAgent ne s'enregistre pas au DF, mais il doit annuler
+     * son abonnement pour que le DF arrête de lui envoyer des notifications.
      */
     protected void takeDown() {
-        System.out.println("[OK] " + getLocalName() + " is shutting down");
+        Metrics.release(this);
+        if (subscription != null) {
+            subscription.cancel(Directory.dfFor(this, TARGET_SERVICE), true);
+        }
+        Log.info("[OK] " + getLocalName() + " is shutting down");
     }
     
 }
@@ -17,7 +17,10 @@ import jade.lang.acl.ACLMessage;
 public class SenderAgent extends Agent {
     
     protected void setup() {
-        System.out.println("Hello. My name is " + this.getLocalName());
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics.of(this);
+
+        Log.info("Hello. My name is " + this.getLocalName());
         
         // Envoyer un message au démarrage
         sendMessage();
@@ -50,6 +53,6 @@ public class SenderAgent extends Agent {
         // send() envoie le message via l'ACC
         send(msg);
         
-        System.out.println(this.getLocalName() + " sent message to Receiver");
+        Log.info(this.getLocalName() + " sent message to Receiver");
     }
 }
\ No newline at end of file
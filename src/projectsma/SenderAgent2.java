@@ -1,61 +1,200 @@
 package projectsma;
 
+import jade.content.lang.Codec.CodecException;
 import jade.core.AID;
 import jade.core.Agent;
+import jade.core.behaviours.WakerBehaviour;
 import jade.lang.acl.ACLMessage;
 
 /**
  * SenderAgent - Version avec attente de réponse
- * 
+ *
  * Cet agent:
  * 1. Envoie un message au ReceiverAgent
- * 2. Attend la réponse
+ * 2. Attend la réponse (sans bloquer, grâce au ReplyCorrelator)
  * 3. Affiche la réponse
+ *
+ * Le contenu est un Greeting encodé en binaire (ContentCodecs), auquel
+ * ReceiverBehaviour2 répond par un Greeting du même numéro.
+ *
+ * Paramètre optionnel: nombre de messages envoyés
+ *   sender:projectsma.SenderAgent2(1000)
+ *
+ * Les envois sont limités par une CreditWindow: au plus window() messages
+ * sans réponse. Un REFUSE "mailbox full" du récepteur (file bornée) réduit
+ * la fenêtre, suspend les envois pendant le délai conseillé, et le message
+ * refusé est renvoyé.
  */
 public class SenderAgent2 extends Agent {
-    
+
+    /**
+     * Délai maximal d'attente d'une réponse (ms)
+     */
+    private static final long REPLY_TIMEOUT = 10000;
+
+    /**
+     * Associe chaque réponse à sa requête (table indexée par replyWith)
+     */
+    private ReplyCorrelator correlator;
+
+    /**
+     * Messages en attente de réponse autorisés (contrôle de flux)
+     */
+    private final CreditWindow window = new CreditWindow();
+
+    // Compteurs pour le mode "plusieurs messages"
+    private int expected;
+    private int remaining;
+    private int replies = 0;
+    private int timeouts = 0;
+    private long start;
+
+    /**
+     * Un réveil est déjà prévu pour reprendre les envois après un refus
+     */
+    private boolean resumeScheduled = false;
+
     protected void setup() {
-        System.out.println("Hello. My name is " + this.getLocalName());
-        
-        // Envoyer un message et attendre la réponse
-        sendMessageAndWaitReply();
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics.of(this);
+
+        Log.info("Hello. My name is " + this.getLocalName());
+
+        Object[] args = getArguments();
+        expected = 1;
+        try {
+            if (args != null && args.length > 0) {
+                expected = Integer.parseInt((String) args[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.warn("Paramètres invalides, utilisation des valeurs par défaut");
+        }
+
+        Greeting.register();
+
+        correlator = new ReplyCorrelator(this);
+        addBehaviour(correlator);
+
+        // Envoyer les messages; les réponses seront traitées à leur arrivée
+        start = System.currentTimeMillis();
+        remaining = expected;
+        sendAllowed();
+    }
+
+    /**
+     * sendAllowed() - Envoie autant de messages que la fenêtre le permet
+     *
+     * Appelée au démarrage, à chaque réponse et à la fin d'une pause.
+     */
+    private void sendAllowed() {
+        while (remaining > 0 && window.canSend()) {
+            remaining--;
+            window.onSent();
+            sendMessageAndWaitReply();
+        }
+    }
+
+    /**
+     * resumeLater() - Reprend les envois après le délai conseillé par le récepteur
+     */
+    private void resumeLater(long delay) {
+        if (resumeScheduled) {
+            return;
+        }
+        resumeScheduled = true;
+        addBehaviour(new WakerBehaviour(this, Math.max(1, delay)) {
+            protected void onWake() {
+                resumeScheduled = false;
+                sendAllowed();
+            }
+        });
     }
-    
+
     /**
      * sendMessageAndWaitReply() - Envoie un message et attend la réponse
-     * 
+     *
      * Processus:
      * 1. Créer le message
-     * 2. Ajouter un ID unique (replyWith)
-     * 3. Envoyer
-     * 4. Attendre la réponse avec blockingReceive()
-     * 5. Afficher la réponse
+     * 2. Envoyer via le ReplyCorrelator, qui ajoute un ID unique (replyWith)
+     * 3. Continuer sans attendre: le thread de l'agent reste libre
+     * 4. À l'arrivée de la réponse (inReplyTo = cet ID), onReply() est appelée
+     * 5. Sans réponse après REPLY_TIMEOUT, onTimeout() est appelée
      */
     private void sendMessageAndWaitReply() {
-        // ---- Étape 1-3: Créer et envoyer le message ----
+        // ---- Étape 1: Créer le message ----
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.addReceiver(new AID("Receiver", AID.ISLOCALNAME));
-        msg.setContent("Hello! How are you?");
-        
-        // ---- ID unique pour associer la réponse ----
-        // replyWith() marque le message avec un ID
-        // Quand on reçoit une réponse, elle aura inReplyTo = cet ID
-        String msgId = "msg-" + System.currentTimeMillis();
-        msg.setReplyWith(msgId);
-        
-        send(msg);
-        System.out.println(this.getLocalName() + " sent message, waiting for reply...");
-        
-        // ---- Étape 4: Attendre la réponse ----
-        // blockingReceive() attend n'importe quel message
-        // On aurait pu utiliser replyReceived() (méthode de Agent)
-        // mais blockingReceive() est plus simple pour l'exemple
-        ACLMessage reply = blockingReceive();
-        
-        // ---- Étape 5: Traiter la réponse ----
-        if (reply != null) {
-            System.out.println(this.getLocalName() + 
-                             " received reply: " + reply.getContent());
+        try {
+            ContentCodecs.fillContent(msg, Greeting.ONTOLOGY,
+                                      new Greeting(expected - remaining, "Hello! How are you?"));
+        } catch (CodecException e) {
+            // Codec enregistré dans setup(): ne devrait pas arriver
+            Log.error(getLocalName() + " cannot encode greeting: " + e.getMessage());
+            return;
+        }
+
+        // ---- Étape 2-3: Envoyer ----
+        // L'ID de corrélation est unique même pour deux envois
+        // dans la même milliseconde (compteur, pas l'heure)
+        correlator.request(msg, REPLY_TIMEOUT, new ReplyCorrelator.ReplyHandler() {
+            // ---- Étape 4: Traiter la réponse ----
+            public void onReply(ACLMessage reply) {
+                // Refus de contrôle de flux: ralentir et renvoyer plus tard
+                if (CreditWindow.isBackpressure(reply)) {
+                    remaining++;
+                    resumeLater(window.onRefused(reply));
+                    return;
+                }
+                window.onAccepted();
+                replies++;
+                if (expected == 1) {
+                    Log.info(getLocalName() +
+                           " received reply: " + describe(reply));
+                }
+                checkCompleted();
+                sendAllowed();
+            }
+
+            // ---- Étape 5: Pas de réponse ----
+            public void onTimeout(ACLMessage request) {
+                window.onLost();
+                timeouts++;
+                if (expected == 1) {
+                    Log.warn(getLocalName() +
+                           " got no reply within " + REPLY_TIMEOUT + " ms");
+                }
+                checkCompleted();
+                sendAllowed();
+            }
+        });
+
+        if (expected == 1) {
+            Log.info(this.getLocalName() + " sent message, waiting for reply...");
+        }
+    }
+
+    /**
+     * describe() - Contenu de la réponse, décodé s'il est binaire
+     */
+    private String describe(ACLMessage reply) {
+        if (!ContentCodecs.isEncoded(reply)) {
+            return reply.getContent();
+        }
+        try {
+            return String.valueOf(ContentCodecs.extractContent(reply));
+        } catch (CodecException e) {
+            return "(unreadable: " + e.getMessage() + ")";
+        }
+    }
+
+    /**
+     * checkCompleted() - Affiche le bilan quand toutes les conversations sont terminées
+     */
+    private void checkCompleted() {
+        if (expected > 1 && replies + timeouts == expected) {
+            Log.info("[OK] " + getLocalName() + ": " + replies + " replies, " +
+                   timeouts + " timeouts, " + window.refusals() + " refusals in " +
+                   (System.currentTimeMillis() - start) + " ms");
         }
     }
-}
\ No newline at end of file
+}
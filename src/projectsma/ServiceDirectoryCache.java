@@ -0,0 +1,296 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ServiceDirectoryCache - Cache local de l'annuaire des services
+ *
+ * Au lieu d'interroger le DF à chaque recherche (un aller-retour complet),
+ * l'agent garde en mémoire les résultats, indexés par type de service.
+ * Le cache est tenu à jour par les notifications du DF: on s'abonne une
+ * seule fois avec DFService.createSubscriptionMessage() et le DF nous
+ * envoie ensuite uniquement les changements (enregistrement, désenregistrement).
+ *
+ * Limites du cache:
+ * - TTL: une entrée qui n'est pas suivie par un abonnement expire après ttl ms
+ * - Taille: au-delà de maxTypes types, le type le moins récemment utilisé est évincé
+ *
+ * Utilisation:
+ *   ServiceDirectoryCache cache = new ServiceDirectoryCache();
+ *   addBehaviour(cache.subscribe(this, "construction"));
+ *   List<DFAgentDescription> providers = cache.lookup("construction");
+ *
+ * @author TP IAD 2025
+ * @version 1.0
+ */
+public class ServiceDirectoryCache {
+
+    // ==================== Constantes ====================
+
+    /** Durée de vie par défaut d'une entrée non abonnée (30 secondes) */
+    public static final long DEFAULT_TTL = 30000;
+
+    /** Nombre maximal de types de service gardés en mémoire */
+    public static final int DEFAULT_MAX_TYPES = 256;
+
+
+    // ==================== Attributs ====================
+
+    private final long ttl;
+    private final int maxTypes;
+
+    /**
+     * Index principal: type de service -> entrée du cache.
+     * LinkedHashMap en ordre d'accès: le premier élément est toujours
+     * le moins récemment utilisé, ce qui donne l'éviction LRU gratuitement.
+     */
+    private final LinkedHashMap<String, TypeEntry> byType;
+
+    /** Types suivis par un abonnement actif au DF (ils n'expirent pas) */
+    private final Set<String> subscribedTypes = new HashSet<String>();
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Entrée du cache pour un type de service
+     */
+    private static class TypeEntry {
+        // AID du fournisseur -> sa description (ordre d'arrivée conservé)
+        final Map<AID, DFAgentDescription> providers = new LinkedHashMap<AID, DFAgentDescription>();
+        long refreshedAt;
+    }
+
+
+    // ==================== Constructeurs ====================
+
+    public ServiceDirectoryCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_TYPES);
+    }
+
+    /**
+     * @param ttl Durée de vie (ms) des entrées qui ne sont pas suivies par un abonnement
+     * @param maxTypes Nombre maximal de types de service en cache
+     */
+    public ServiceDirectoryCache(long ttl, int maxTypes) {
+        this.ttl = ttl;
+        this.maxTypes = maxTypes;
+        this.byType = new LinkedHashMap<String, TypeEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, TypeEntry> eldest) {
+                return size() > ServiceDirectoryCache.this.maxTypes;
+            }
+        };
+    }
+
+
+    // ==================== Consultation ====================
+
+    /**
+     * lookup() - Cherche les fournisseurs d'un type de service en mémoire
+     *
+     * @param type Le type de service recherché
+     * @return La liste des fournisseurs, ou null si le type n'est pas en cache
+     *         (ou a expiré): il faut alors interroger le DF et appeler put()
+     */
+    public synchronized List<DFAgentDescription> lookup(String type) {
+        TypeEntry entry = byType.get(type);
+
+        if (entry == null || entry.refreshedAt == 0) {
+            // Absent, ou abonné mais pas encore alimenté
+            misses++;
+            return null;
+        }
+        if (isExpired(type, entry, System.currentTimeMillis())) {
+            byType.remove(type);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return new ArrayList<DFAgentDescription>(entry.providers.values());
+    }
+
+    /**
+     * count() - Nombre de fournisseurs connus pour un type (0 si absent)
+     *
+     * Contrairement à lookup(), ne compte ni comme succès ni comme échec:
+     * utilisé pour surveiller l'arrivée des fournisseurs pendant le démarrage.
+     */
+    public synchronized int count(String type) {
+        TypeEntry entry = byType.get(type);
+        return entry == null ? 0 : entry.providers.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    // ==================== Mise à jour ====================
+
+    /**
+     * put() - Remplace le contenu du cache pour un type par un résultat complet du DF
+     *
+     * @param type Le type de service
+     * @param result Le résultat de DFService.search()
+     */
+    public synchronized void put(String type, DFAgentDescription[] result) {
+        TypeEntry entry = byType.get(type);
+        if (entry == null) {
+            entry = new TypeEntry();
+            byType.put(type, entry);
+        }
+
+        entry.providers.clear();
+        for (int i = 0; i < result.length; i++) {
+            entry.providers.put(result[i].getName(), result[i]);
+        }
+        entry.refreshedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * apply() - Applique une notification du DF (changement incrémental)
+     *
+     * Dans une notification:
+     * - une description AVEC le service = enregistrement ou modification
+     * - une description SANS le service = désenregistrement
+     *
+     * Juste après l'abonnement, le DF envoie les fournisseurs déjà enregistrés
+     * (s'il y en a), puis uniquement les changements: appliquer les notifications
+     * dans l'ordre suffit donc à reconstruire l'état complet.
+     *
+     * Si le type n'est plus en cache (évincé), la notification est ignorée:
+     * une entrée partielle serait fausse. Le prochain lookup() ratera et
+     * déclenchera une recherche complète.
+     */
+    public synchronized void apply(String type, DFAgentDescription[] changes) {
+        TypeEntry entry = byType.get(type);
+        if (entry == null) {
+            return;
+        }
+
+        for (int i = 0; i < changes.length; i++) {
+            if (providesType(changes[i], type)) {
+                entry.providers.put(changes[i].getName(), changes[i]);
+            } else {
+                entry.providers.remove(changes[i].getName());
+            }
+        }
+        entry.refreshedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * invalidate() - Oublie un type de service
+     */
+    public synchronized void invalidate(String type) {
+        byType.remove(type);
+    }
+
+
+    // ==================== Abonnement au DF ====================
+
+    /**
+     * subscribe() - Crée le comportement d'abonnement au DF pour un type
+     *
+     * Le comportement retourné doit être ajouté à l'agent avec addBehaviour().
+     * Tant qu'il tourne, l'entrée du type n'expire pas: c'est le DF qui
+     * nous prévient des changements.
+     * Pour se désabonner: subscription.cancel(Directory.dfFor(agent, type), true)
+     *
+     * @param agent L'agent propriétaire du cache
+     * @param type Le type de service à suivre
+     */
+    public SubscriptionInitiator subscribe(Agent agent, final String type) {
+        // Même gabarit que pour une recherche
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        template.addServices(sd);
+
+        // Pas de limite au nombre de résultats notifiés
+        SearchConstraints sc = new SearchConstraints();
+        sc.setMaxResults(Long.valueOf(-1));
+
+        ACLMessage subscription = DFService.createSubscriptionMessage(
+            agent, Directory.dfFor(agent, type), template, sc);
+
+        markSubscribed(type, true);
+
+        return new SubscriptionInitiator(agent, subscription) {
+            protected void handleInform(ACLMessage inform) {
+                try {
+                    apply(type, DFService.decodeNotification(inform.getContent()));
+                } catch (Exception e) {
+                    // Notification illisible: on repart d'un état propre
+                    Log.error(myAgent.getLocalName() +
+                            " cannot decode DF notification - " + e.getMessage());
+                    invalidate(type);
+                }
+            }
+
+            protected void handleRefuse(ACLMessage refuse) {
+                markSubscribed(type, false);
+            }
+
+            protected void handleFailure(ACLMessage failure) {
+                markSubscribed(type, false);
+            }
+
+            public int onEnd() {
+                markSubscribed(type, false);
+                return super.onEnd();
+            }
+        };
+    }
+
+
+    // ==================== Méthodes internes ====================
+
+    private synchronized void markSubscribed(String type, boolean subscribed) {
+        if (subscribed) {
+            subscribedTypes.add(type);
+            // Entrée vide prête à recevoir les notifications
+            if (!byType.containsKey(type)) {
+                byType.put(type, new TypeEntry());
+            }
+        } else {
+            subscribedTypes.remove(type);
+        }
+    }
+
+    private boolean isExpired(String type, TypeEntry entry, long now) {
+        if (subscribedTypes.contains(type)) {
+            return false;
+        }
+        return now - entry.refreshedAt > ttl;
+    }
+
+    private static boolean providesType(DFAgentDescription dfd, String type) {
+        Iterator it = dfd.getAllServices();
+        while (it.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) it.next();
+            if (type.equals(sd.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
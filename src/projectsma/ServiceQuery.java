@@ -0,0 +1,413 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAAgentManagement.UnrecognisedParameterValue;
+import jade.domain.FIPAException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ServiceQuery - Recherche de services par propriétés typées
+ *
+ * Un gabarit FIPA ne sait exprimer que l'égalité: pour trouver les 5
+ * fournisseurs de construction les moins chers, il fallait lire tous les
+ * fournisseurs et trier chez le chercheur. Une ServiceQuery ajoute:
+ * - des intervalles sur des propriétés numériques (prix entre 10 et 50)
+ * - un tri par propriété et un nombre maximal de résultats (top-k)
+ *
+ * Les égalités partent dans le gabarit, comme avant. Les intervalles et le
+ * tri partent dans le search-id des SearchConstraints (QUERY_PREFIX), comme
+ * le curseur des recherches par pages: l'IndexedDFAgent y répond avec ses
+ * index triés par valeur (voir IndexedDirectory), sans lire les autres
+ * fournisseurs. Le DF de JADE ne les comprend pas: il est interrogé avec le
+ * gabarit seul, et le filtre et le tri sont faits ici, avec le même résultat.
+ *
+ * Les valeurs des propriétés sont typées (voir typed()): "50" est le
+ * nombre 50, ce qui permet de les comparer. Une valeur qui n'est pas un
+ * nombre n'est jamais dans un intervalle.
+ *
+ * Utilisation:
+ *   DFAgentDescription[] cheapest = new ServiceQuery("construction")
+ *       .equal("region", "nord").atMost("prix", 100).orderBy("prix").limit(5).search(this);
+ */
+public class ServiceQuery {
+
+    /**
+     * Préfixe de la requête dans le search-id, suivi de
+     * "range=nom,min,max;...;order=nom,asc|desc". Seul IndexedDFAgent le comprend.
+     */
+    public static final String QUERY_PREFIX = "projectsma-query:";
+
+
+    // ==================== Attributs ====================
+
+    private final String type;
+    private final Map<String, Object> equal = new LinkedHashMap<String, Object>();
+
+    /** Intervalles (bornes incluses), par propriété */
+    private final Map<String, double[]> ranges = new LinkedHashMap<String, double[]>();
+
+    private String orderBy;
+    private boolean descending;
+    private int limit = -1;
+
+
+    // ==================== Construction ====================
+
+    /**
+     * @param type Le type de service (null = tous les types)
+     */
+    public ServiceQuery(String type) {
+        this.type = type;
+    }
+
+    /**
+     * equal() - La propriété doit valoir exactement value (gabarit FIPA)
+     */
+    public ServiceQuery equal(String name, Object value) {
+        equal.put(name, value);
+        return this;
+    }
+
+    /**
+     * range() - La propriété doit être un nombre entre min et max (inclus)
+     *
+     * @throws IllegalArgumentException Si le nom contient ',' ou ';' (séparateurs du search-id)
+     */
+    public ServiceQuery range(String name, double min, double max) {
+        checkName(name);
+        double[] range = ranges.get(name);
+        if (range == null) {
+            ranges.put(name, new double[] { min, max });
+        } else {
+            // Deux bornes sur la même propriété: leur intersection
+            range[0] = Math.max(range[0], min);
+            range[1] = Math.min(range[1], max);
+        }
+        return this;
+    }
+
+    public ServiceQuery atLeast(String name, double min) {
+        return range(name, min, Double.POSITIVE_INFINITY);
+    }
+
+    public ServiceQuery atMost(String name, double max) {
+        return range(name, Double.NEGATIVE_INFINITY, max);
+    }
+
+    /**
+     * orderBy() - Résultats triés par valeur croissante de la propriété
+     *
+     * Les fournisseurs sans valeur numérique pour cette propriété sont exclus.
+     */
+    public ServiceQuery orderBy(String name) {
+        return orderBy(name, false);
+    }
+
+    /**
+     * @throws IllegalArgumentException Si le nom contient ',' ou ';' (séparateurs du search-id)
+     */
+    public ServiceQuery orderBy(String name, boolean descending) {
+        checkName(name);
+        this.orderBy = name;
+        this.descending = descending;
+        return this;
+    }
+
+    private static void checkName(String name) {
+        if (name == null || name.isEmpty() || name.indexOf(',') >= 0 || name.indexOf(';') >= 0) {
+            throw new IllegalArgumentException("invalid property name: " + name);
+        }
+    }
+
+    /**
+     * limit() - Nombre maximal de résultats (les k premiers dans l'ordre demandé)
+     */
+    public ServiceQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * getRange() - Intervalle demandé pour la propriété (null = aucun)
+     */
+    public double[] getRange(String name) {
+        return ranges.get(name);
+    }
+
+    /**
+     * driver() - Propriété dont l'index sert à parcourir les candidats
+     *
+     * Celle du tri, sinon celle du premier intervalle (null = aucune:
+     * recherche par le gabarit seul).
+     */
+    public String driver() {
+        if (orderBy != null) {
+            return orderBy;
+        }
+        return ranges.isEmpty() ? null : ranges.keySet().iterator().next();
+    }
+
+
+    // ==================== Traduction FIPA ====================
+
+    /**
+     * template() - Gabarit FIPA: type et égalités
+     */
+    public DFAgentDescription template() {
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        for (Map.Entry<String, Object> e : equal.entrySet()) {
+            sd.addProperties(new Property(e.getKey(), e.getValue()));
+        }
+        template.addServices(sd);
+        return template;
+    }
+
+    /**
+     * constraints() - Contraintes: limite et requête dans le search-id
+     */
+    public SearchConstraints constraints() {
+        SearchConstraints constraints = new SearchConstraints();
+        constraints.setMaxResults(Long.valueOf(limit));
+        if (driver() != null) {
+            constraints.setSearchId(encode());
+        }
+        return constraints;
+    }
+
+    private String encode() {
+        StringBuilder sb = new StringBuilder(QUERY_PREFIX);
+        for (Map.Entry<String, double[]> e : ranges.entrySet()) {
+            sb.append("range=").append(e.getKey()).append(',')
+              .append(e.getValue()[0]).append(',').append(e.getValue()[1]).append(';');
+        }
+        if (orderBy != null) {
+            sb.append("order=").append(orderBy).append(',').append(descending ? "desc" : "asc");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * of() - Requête portée par des contraintes de recherche (null = aucune)
+     *
+     * Côté annuaire: le type et les égalités sont dans le gabarit, déjà
+     * vérifiés par IndexedDirectory.matches().
+     *
+     * @throws UnrecognisedParameterValue Si le search-id est mal formé
+     *         (champ manquant, borne qui n'est pas un nombre, nom vide)
+     */
+    public static ServiceQuery of(SearchConstraints constraints) throws UnrecognisedParameterValue {
+        if (constraints == null || constraints.getSearchId() == null
+                || !constraints.getSearchId().startsWith(QUERY_PREFIX)) {
+            return null;
+        }
+        String searchId = constraints.getSearchId();
+        ServiceQuery query = new ServiceQuery(null);
+        try {
+            for (String part : searchId.substring(QUERY_PREFIX.length()).split(";")) {
+                if (part.startsWith("range=")) {
+                    String[] f = part.substring(6).split(",", -1);
+                    if (f.length != 3) {
+                        throw new IllegalArgumentException("range needs name,min,max");
+                    }
+                    query.range(f[0], Double.parseDouble(f[1]), Double.parseDouble(f[2]));
+                } else if (part.startsWith("order=")) {
+                    String[] f = part.substring(6).split(",", -1);
+                    if (f.length > 2) {
+                        throw new IllegalArgumentException("order needs name[,asc|desc]");
+                    }
+                    query.orderBy(f[0], f.length > 1 && "desc".equals(f[1]));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Couvre aussi NumberFormatException (borne qui n'est pas un nombre)
+            throw new UnrecognisedParameterValue("search-id", searchId);
+        }
+        if (constraints.getMaxResults() != null) {
+            query.limit(constraints.getMaxResults().intValue());
+        }
+        return query;
+    }
+
+
+    // ==================== Vérification et tri ====================
+
+    /**
+     * accepts() - Vérifie les intervalles et la présence de la clé de tri
+     *
+     * La propriété est lue dans un service du type demandé (type = null:
+     * n'importe quel service).
+     */
+    public boolean accepts(DFAgentDescription dfd, String serviceType) {
+        for (Map.Entry<String, double[]> e : ranges.entrySet()) {
+            Double value = numberOf(dfd, serviceType, e.getKey());
+            if (value == null || value.doubleValue() < e.getValue()[0] || value.doubleValue() > e.getValue()[1]) {
+                return false;
+            }
+        }
+        return orderBy == null || numberOf(dfd, serviceType, orderBy) != null;
+    }
+
+    /**
+     * sort() - Trie des résultats selon orderBy (puis par nom d'agent)
+     */
+    public void sort(List<DFAgentDescription> results, final String serviceType) {
+        if (orderBy == null) {
+            return;
+        }
+        Collections.sort(results, new Comparator<DFAgentDescription>() {
+            public int compare(DFAgentDescription a, DFAgentDescription b) {
+                int c = numberOf(a, serviceType, orderBy).compareTo(numberOf(b, serviceType, orderBy));
+                if (c == 0) {
+                    return String.CASE_INSENSITIVE_ORDER.compare(a.getName().getName(), b.getName().getName());
+                }
+                return descending ? -c : c;
+            }
+        });
+    }
+
+
+    // ==================== Recherche ====================
+
+    /**
+     * search() - Exécute la requête auprès de l'annuaire responsable du type
+     *
+     * Comme Directory.search(), attend la réponse. Sans type, avec des
+     * annuaires fédérés, chacun renvoie ses k premiers et la fusion est
+     * triée à nouveau (voir Directory.fanOut()).
+     */
+    public DFAgentDescription[] search(Agent agent) throws FIPAException {
+        AID df = Directory.dfFor(agent, type);
+        if (driver() == null || !df.equals(agent.getDefaultDF())) {
+            return Directory.search(agent, template(), constraints());
+        }
+
+        // ---- DF de JADE: gabarit seul, filtre et tri ici ----
+        SearchConstraints all = new SearchConstraints();
+        all.setMaxResults(Long.valueOf(-1));
+        long start = System.nanoTime();
+        DFAgentDescription[] found = DFService.search(agent, df, template(), all);
+        Metrics.of(agent).histogram("df.search").record(System.nanoTime() - start);
+        List<DFAgentDescription> result = new ArrayList<DFAgentDescription>();
+        for (DFAgentDescription dfd : found) {
+            if (accepts(dfd, type)) {
+                result.add(dfd);
+            }
+        }
+        sort(result, type);
+        if (limit >= 0 && result.size() > limit) {
+            result = result.subList(0, limit);
+        }
+        return result.toArray(new DFAgentDescription[result.size()]);
+    }
+
+
+    // ==================== Valeurs typées ====================
+
+    /**
+     * typed() - Valeur typée d'un texte: Long, Double, Boolean, sinon le texte
+     *
+     * Ex: "50" -> 50L, "4.5" -> 4.5, "true" -> Boolean.TRUE, "nord" -> "nord".
+     */
+    public static Object typed(String text) {
+        String s = text.trim();
+        if ("true".equalsIgnoreCase(s) || "false".equalsIgnoreCase(s)) {
+            return Boolean.valueOf(s);
+        }
+        try {
+            return Long.valueOf(s);
+        } catch (NumberFormatException e) {
+            // pas un entier
+        }
+        try {
+            return Double.valueOf(s);
+        } catch (NumberFormatException e) {
+            return text;
+        }
+    }
+
+    /**
+     * number() - Valeur numérique d'une propriété (null si ce n'est pas un nombre)
+     *
+     * Accepte les nombres et leur écriture en texte (le langage SL peut
+     * transmettre l'un ou l'autre).
+     */
+    public static Double number(Object value) {
+        if (value instanceof Number) {
+            return Double.valueOf(((Number) value).doubleValue());
+        }
+        if (value instanceof String) {
+            try {
+                return Double.valueOf(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * numberOf() - Valeur numérique d'une propriété dans un service du type donné
+     */
+    public static Double numberOf(DFAgentDescription dfd, String serviceType, String property) {
+        Iterator services = dfd.getAllServices();
+        while (services.hasNext()) {
+            ServiceDescription sd = (ServiceDescription) services.next();
+            if (serviceType != null && !serviceType.equals(sd.getType())) {
+                continue;
+            }
+            Iterator props = sd.getAllProperties();
+            while (props.hasNext()) {
+                Property p = (Property) props.next();
+                if (property.equals(p.getName())) {
+                    Double value = number(p.getValue());
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public String toString() {
+        return (type == null ? "*" : type) + (equal.isEmpty() ? "" : " " + equal) +
+               (ranges.isEmpty() ? "" : " " + rangesToString()) +
+               (orderBy == null ? "" : " order by " + orderBy + (descending ? " desc" : "")) +
+               (limit < 0 ? "" : " limit " + limit);
+    }
+
+    private String rangesToString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, double[]> e : ranges.entrySet()) {
+            sb.append(e.getKey()).append(Arrays.toString(e.getValue()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,493 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TaskAllocator - Attribution de tâches par Contract-Net, par lots
+ *
+ * Le Contract-Net classique coûte, pour une tâche et N fournisseurs,
+ * N appels d'offres (CFP), N offres et N décisions. Ici, les tâches sont
+ * regroupées en tours:
+ * 1. un tour prend jusqu'à batchSize tâches en attente
+ * 2. un seul CFP par fournisseur, envoyé à tous en même temps, liste
+ *    toutes les tâches du tour
+ * 3. chaque fournisseur répond par une offre groupée (PROPOSE):
+ *    son coût par tâche, sa charge, et les tâches qu'il accepte
+ *    (ou REFUSE); les offres arrivées après bidTimeout sont ignorées
+ * 4. les tâches sont attribuées une à une au fournisseur le moins cher,
+ *    en tenant compte de ce qu'il a déjà gagné dans ce tour
+ * 5. un seul ACCEPT_PROPOSAL par gagnant (ses tâches), un REJECT_PROPOSAL
+ *    aux autres; le gagnant répond INFORM avec les résultats
+ * Une tâche sans offre repart dans la file (au plus MAX_ATTEMPTS tours).
+ * Plusieurs tours peuvent être en cours en même temps (maxRounds).
+ *
+ * Les messages passent par un ReplyCorrelator (délais, corrélation).
+ * Le responder correspondant est TaskBidder (utilisé par ContractorAgent).
+ *
+ * Format des contenus (une ligne par élément):
+ *   CFP:             id;description
+ *   PROPOSE:         1re ligne "coût charge", puis un id par ligne
+ *   ACCEPT_PROPOSAL: id;description
+ *   INFORM:          id;résultat
+ *
+ * Utilisation:
+ *   TaskAllocator allocator = new TaskAllocator(this, correlator, "construction");
+ *   allocator.setProviders(aids);
+ *   allocator.submit("t1", "mur nord");
+ *   addBehaviour(allocator);
+ */
+public class TaskAllocator extends CyclicBehaviour {
+
+    // ==================== Interface de rappel ====================
+
+    /**
+     * Listener - Résultat de chaque tâche, appelé dans le thread de l'agent
+     */
+    public interface Listener {
+        void onCompleted(String taskId, AID provider, String result);
+
+        void onFailed(String taskId, String reason);
+    }
+
+
+    // ==================== Constantes ====================
+
+    /** Nombre maximal de tâches par tour */
+    public static final int DEFAULT_BATCH = 100;
+
+    /** Délai de réception des offres (ms) */
+    public static final long DEFAULT_BID_TIMEOUT = 2000;
+
+    /** Délai d'exécution des tâches attribuées (ms) */
+    public static final long DEFAULT_RESULT_TIMEOUT = 30000;
+
+    /** Nombre maximal de tours en cours en même temps */
+    public static final int DEFAULT_MAX_ROUNDS = 4;
+
+    /** Nombre de tours avant d'abandonner une tâche sans offre */
+    public static final int MAX_ATTEMPTS = 3;
+
+
+    // ==================== Attributs ====================
+
+    /**
+     * Task - Tâche à attribuer
+     */
+    public static class Task {
+        public final String id;
+        public final String description;
+        int attempts = 0;
+
+        public Task(String id, String description) {
+            this.id = id;
+            this.description = description;
+        }
+    }
+
+    /**
+     * Round - Un tour d'appel d'offres
+     */
+    private class Round {
+        final List<Task> tasks;
+        /** Offres reçues: fournisseur -> offre */
+        final Map<AID, Bid> bids = new LinkedHashMap<AID, Bid>();
+        int waiting;
+
+        Round(List<Task> tasks) {
+            this.tasks = tasks;
+        }
+    }
+
+    /**
+     * Bid - Offre groupée d'un fournisseur pour un tour
+     * (visible dans le paquetage pour les vérifications de test/)
+     */
+    static class Bid {
+        long cost;
+        long load;
+        final Set<String> taskIds = new HashSet<String>();
+        /** Tâches attribuées pendant le tour */
+        final List<Task> awarded = new ArrayList<Task>();
+    }
+
+    private final ReplyCorrelator correlator;
+    private final String service;
+    private final int batchSize;
+    private final long bidTimeout;
+    private final long resultTimeout;
+    private final int maxRounds;
+
+    private final Deque<Task> queue = new ArrayDeque<Task>();
+    private List<AID> providers = new ArrayList<AID>();
+    private Listener listener;
+    private int rounds = 0;
+
+    // Compteurs (voir summary())
+    private long start = 0;
+    private long submitted = 0;
+    private long cfps = 0;
+    private long proposals = 0;
+    private long awarded = 0;
+    private long completed = 0;
+    private long failed = 0;
+    private long roundCount = 0;
+
+
+    // ==================== Constructeurs ====================
+
+    public TaskAllocator(Agent agent, ReplyCorrelator correlator, String service) {
+        this(agent, correlator, service, DEFAULT_BATCH, DEFAULT_BID_TIMEOUT,
+             DEFAULT_RESULT_TIMEOUT, DEFAULT_MAX_ROUNDS);
+    }
+
+    /**
+     * @param correlator Le ReplyCorrelator de l'agent (déjà ajouté à l'agent)
+     * @param service Le type de service (ontologie des messages)
+     * @param batchSize Nombre maximal de tâches par tour
+     * @param bidTimeout Délai de réception des offres (ms)
+     * @param resultTimeout Délai d'exécution des tâches attribuées (ms)
+     * @param maxRounds Nombre maximal de tours en cours en même temps
+     */
+    public TaskAllocator(Agent agent, ReplyCorrelator correlator, String service, int batchSize,
+                         long bidTimeout, long resultTimeout, int maxRounds) {
+        super(agent);
+        this.correlator = correlator;
+        this.service = service;
+        this.batchSize = batchSize;
+        this.bidTimeout = bidTimeout;
+        this.resultTimeout = resultTimeout;
+        this.maxRounds = maxRounds;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * setProviders() - Fournisseurs sollicités aux prochains tours
+     */
+    public void setProviders(Collection<AID> providers) {
+        this.providers = new ArrayList<AID>(providers);
+    }
+
+    /**
+     * submit() - Ajoute une tâche à attribuer (thread de l'agent)
+     *
+     * Les contenus ont une tâche par ligne (id;description): l'id ne peut
+     * contenir ni ';' ni retour à la ligne, la description pas de retour
+     * à la ligne.
+     *
+     * @throws IllegalArgumentException Si l'id ou la description ne passent pas dans ce format
+     */
+    public void submit(String id, String description) {
+        if (id == null || id.isEmpty() || id.indexOf(';') >= 0 || hasLineBreak(id)) {
+            throw new IllegalArgumentException("invalid task id: " + id);
+        }
+        if (description == null || hasLineBreak(description)) {
+            throw new IllegalArgumentException("invalid description for task " + id);
+        }
+        if (start == 0) {
+            start = System.currentTimeMillis();
+        }
+        queue.add(new Task(id, description));
+        submitted++;
+        restart();
+    }
+
+    /**
+     * pending() - Tâches pas encore terminées (en file, en appel d'offres ou en cours)
+     */
+    public long pending() {
+        return submitted - completed - failed;
+    }
+
+
+    // ==================== Méthode action() ====================
+
+    public void action() {
+        // Lancer des tours tant qu'il y a des tâches et de la place
+        while (!queue.isEmpty() && rounds < maxRounds) {
+            if (providers.isEmpty()) {
+                failAll("no provider for " + service);
+                break;
+            }
+            startRound();
+        }
+        block();
+    }
+
+
+    // ==================== Appel d'offres ====================
+
+    private void startRound() {
+        List<Task> tasks = new ArrayList<Task>();
+        while (!queue.isEmpty() && tasks.size() < batchSize) {
+            Task task = queue.poll();
+            task.attempts++;
+            tasks.add(task);
+        }
+        final Round round = new Round(tasks);
+        rounds++;
+        roundCount++;
+
+        // Même contenu pour tous les fournisseurs: construit une seule fois
+        String content = formatTasks(tasks);
+        round.waiting = providers.size();
+        for (final AID provider : providers) {
+            ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+            cfp.addReceiver(provider);
+            cfp.setOntology(service);
+            cfp.setProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET);
+            cfp.setContent(content);
+            cfps++;
+            correlator.request(cfp, bidTimeout, new ReplyCorrelator.ReplyHandler() {
+                public void onReply(ACLMessage reply) {
+                    if (reply.getPerformative() == ACLMessage.PROPOSE) {
+                        proposals++;
+                        Bid bid = parseBid(reply.getContent());
+                        if (bid != null) {
+                            round.bids.put(provider, bid);
+                        }
+                    }
+                    answered(round);
+                }
+
+                public void onTimeout(ACLMessage request) {
+                    answered(round);
+                }
+            });
+        }
+    }
+
+    private void answered(Round round) {
+        round.waiting--;
+        if (round.waiting == 0) {
+            award(round);
+        }
+    }
+
+
+    // ==================== Attribution ====================
+
+    /**
+     * award() - Attribue les tâches du tour, remet en file celles sans offre
+     */
+    private void award(Round round) {
+        rounds--;
+
+        for (Task task : assign(round.tasks, round.bids.values())) {
+            if (task.attempts < MAX_ATTEMPTS) {
+                queue.add(task);
+            } else {
+                fail(task.id, "no bid after " + task.attempts + " rounds");
+            }
+        }
+
+        for (Map.Entry<AID, Bid> e : round.bids.entrySet()) {
+            if (e.getValue().awarded.isEmpty()) {
+                reject(e.getKey());
+            } else {
+                accept(e.getKey(), e.getValue().awarded);
+            }
+        }
+        // Tâches remises en file: un nouveau tour peut partir
+        restart();
+    }
+
+    /**
+     * assign() - Attribue chaque tâche au fournisseur le moins cher (dans Bid.awarded)
+     *
+     * Coût de la n-ième tâche gagnée dans le tour par un fournisseur:
+     * (charge + n) x coût par tâche. Un fournisseur rapide mais chargé
+     * n'emporte donc pas tout le lot. À coût égal, la première offre l'emporte.
+     *
+     * @return Les tâches qu'aucune offre ne couvre, dans leur ordre
+     */
+    static List<Task> assign(List<Task> tasks, Collection<Bid> bids) {
+        List<Task> unassigned = new ArrayList<Task>();
+        for (Task task : tasks) {
+            Bid best = null;
+            long bestCost = Long.MAX_VALUE;
+            for (Bid bid : bids) {
+                if (!bid.taskIds.contains(task.id)) {
+                    continue;
+                }
+                long cost = (bid.load + bid.awarded.size() + 1) * bid.cost;
+                if (cost < bestCost) {
+                    best = bid;
+                    bestCost = cost;
+                }
+            }
+            if (best != null) {
+                best.awarded.add(task);
+            } else {
+                unassigned.add(task);
+            }
+        }
+        return unassigned;
+    }
+
+    private void accept(final AID provider, final List<Task> tasks) {
+        ACLMessage accept = new ACLMessage(ACLMessage.ACCEPT_PROPOSAL);
+        accept.addReceiver(provider);
+        accept.setOntology(service);
+        accept.setProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET);
+        accept.setContent(formatTasks(tasks));
+        awarded += tasks.size();
+
+        correlator.request(accept, resultTimeout, new ReplyCorrelator.ReplyHandler() {
+            public void onReply(ACLMessage reply) {
+                if (reply.getPerformative() != ACLMessage.INFORM) {
+                    for (Task task : tasks) {
+                        fail(task.id, reply.getContent());
+                    }
+                    return;
+                }
+                // Une tâche absente du résultat a échoué chez le fournisseur
+                Set<String> missing = new HashSet<String>();
+                for (Task task : tasks) {
+                    missing.add(task.id);
+                }
+                for (Task result : parseTasks(reply.getContent())) {
+                    if (missing.remove(result.id)) {
+                        completed++;
+                        if (listener != null) {
+                            listener.onCompleted(result.id, provider, result.description);
+                        }
+                    }
+                }
+                for (String id : missing) {
+                    fail(id, "failed at " + provider.getLocalName());
+                }
+            }
+
+            public void onTimeout(ACLMessage request) {
+                for (Task task : tasks) {
+                    fail(task.id, "no result from " + provider.getLocalName());
+                }
+            }
+        });
+    }
+
+    private void reject(AID provider) {
+        ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+        reject.addReceiver(provider);
+        reject.setOntology(service);
+        reject.setProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET);
+        myAgent.send(reject);
+    }
+
+    private void failAll(String reason) {
+        while (!queue.isEmpty()) {
+            fail(queue.poll().id, reason);
+        }
+    }
+
+    private void fail(String taskId, String reason) {
+        failed++;
+        if (listener != null) {
+            listener.onFailed(taskId, reason);
+        }
+    }
+
+
+    // ==================== Format des contenus ====================
+
+    /**
+     * formatTasks() - Une tâche par ligne: id;description
+     */
+    public static String formatTasks(List<Task> tasks) {
+        StringBuilder sb = new StringBuilder(tasks.size() * 16);
+        for (Task task : tasks) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(task.id).append(';').append(task.description);
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasLineBreak(String s) {
+        return s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0;
+    }
+
+    /**
+     * parseTasks() - Inverse de formatTasks()
+     */
+    public static List<Task> parseTasks(String content) {
+        List<Task> tasks = new ArrayList<Task>();
+        if (content == null || content.isEmpty()) {
+            return tasks;
+        }
+        for (String line : content.split("\n")) {
+            int sep = line.indexOf(';');
+            if (sep > 0) {
+                tasks.add(new Task(line.substring(0, sep), line.substring(sep + 1)));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * formatBid() - Offre groupée: "coût charge" puis un id par ligne
+     */
+    public static String formatBid(long cost, long load, List<Task> tasks) {
+        StringBuilder sb = new StringBuilder(16 + tasks.size() * 8);
+        sb.append(cost).append(' ').append(load);
+        for (Task task : tasks) {
+            sb.append('\n').append(task.id);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * parseBid() - Inverse de formatBid() (null si l'en-tête est illisible)
+     */
+    static Bid parseBid(String content) {
+        if (content == null) {
+            return null;
+        }
+        String[] lines = content.split("\n");
+        String[] header = lines[0].split(" ");
+        Bid bid = new Bid();
+        try {
+            bid.cost = Math.max(1, Long.parseLong(header[0]));
+            bid.load = Long.parseLong(header[1]);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        for (int i = 1; i < lines.length; i++) {
+            bid.taskIds.add(lines[i]);
+        }
+        return bid;
+    }
+
+
+    // ==================== Mesures ====================
+
+    /**
+     * summary() - Débit et coût en messages de l'attribution
+     *
+     * Ex: "2000 tasks awarded in 12 rounds (1850 tasks/s), 0.02 CFP/task, 2000 completed, 0 failed"
+     */
+    public String summary() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        return awarded + " tasks awarded in " + roundCount + " rounds (" +
+               awarded * 1000 / elapsed + " tasks/s), " +
+               String.format("%.2f", awarded > 0 ? (double) cfps / awarded : 0.0) + " CFP/task, " +
+               proposals + " proposals, " + completed + " completed, " + failed + " failed";
+    }
+}
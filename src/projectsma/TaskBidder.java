@@ -0,0 +1,139 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TaskBidder - Côté fournisseur du Contract-Net par lots (voir TaskAllocator)
+ *
+ * Ajoute au MessageDispatcher de l'agent, pour chaque service:
+ * - CFP: offre groupée (PROPOSE) pour les tâches que l'agent peut encore
+ *   prendre, avec son coût par tâche et sa charge actuelle; REFUSE s'il
+ *   est plein
+ * - ACCEPT_PROPOSAL: exécute les tâches gagnées dans l'Executor de l'agent,
+ *   puis répond INFORM avec un résultat par tâche
+ * - REJECT_PROPOSAL: rien à faire (aucune place n'est réservée à l'offre)
+ *
+ * Utilisation (voir ContractorAgent):
+ *   TaskBidder bidder = new TaskBidder(this, dispatcher, bridge, workers, 10, performer);
+ *   bidder.serve("construction");
+ */
+public class TaskBidder {
+
+    /**
+     * Performer - Exécute une tâche (dans un thread de l'Executor)
+     */
+    public interface Performer {
+        String perform(String service, String description) throws Exception;
+    }
+
+    /** Nombre maximal de tâches gagnées et pas encore terminées */
+    public static final int MAX_LOAD = 10000;
+
+    private final MessageDispatcher dispatcher;
+    private final ExecutorBridge bridge;
+    private final Executor workers;
+    private final long cost;
+    private final Performer performer;
+
+    /** Tâches gagnées et pas encore terminées (thread de l'agent) */
+    private int load = 0;
+
+    private final LongAdder proposals;
+    private final LongAdder contracted;
+
+    /**
+     * @param cost Coût annoncé par tâche (ex: durée estimée en ms, au moins 1)
+     */
+    public TaskBidder(Agent agent, MessageDispatcher dispatcher, ExecutorBridge bridge,
+                      Executor workers, long cost, Performer performer) {
+        this.dispatcher = dispatcher;
+        this.bridge = bridge;
+        this.workers = workers;
+        this.cost = Math.max(1, cost);
+        this.performer = performer;
+        Metrics metrics = Metrics.of(agent);
+        proposals = metrics.counter("contract.proposals");
+        contracted = metrics.counter("contract.tasks");
+    }
+
+    /**
+     * serve() - Répond aux appels d'offres pour ce service
+     */
+    public void serve(final String service) {
+        dispatcher.on(service, ACLMessage.CFP, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage cfp) {
+                bid(cfp);
+            }
+        });
+        dispatcher.on(service, ACLMessage.ACCEPT_PROPOSAL, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage accept) {
+                perform(service, accept);
+            }
+        });
+        dispatcher.on(service, ACLMessage.REJECT_PROPOSAL, new MessageDispatcher.Handler() {
+            public void handle(ACLMessage reject) {
+                // Rien de réservé, rien à libérer
+            }
+        });
+    }
+
+    private void bid(ACLMessage cfp) {
+        List<TaskAllocator.Task> tasks = TaskAllocator.parseTasks(cfp.getContent());
+        int capacity = MAX_LOAD - load;
+        if (capacity <= 0 || tasks.isEmpty()) {
+            dispatcher.reply(cfp, ACLMessage.REFUSE, "busy");
+            return;
+        }
+        if (tasks.size() > capacity) {
+            tasks = tasks.subList(0, capacity);
+        }
+        proposals.increment();
+        dispatcher.reply(cfp, ACLMessage.PROPOSE, TaskAllocator.formatBid(cost, load, tasks));
+    }
+
+    private void perform(final String service, final ACLMessage accept) {
+        final List<TaskAllocator.Task> tasks = TaskAllocator.parseTasks(accept.getContent());
+        load += tasks.size();
+        contracted.add(tasks.size());
+        try {
+            // ---- Tout le lot dans un seul thread de l'Executor ----
+            bridge.submit(workers, new Callable<String>() {
+                public String call() {
+                    StringBuilder results = new StringBuilder(tasks.size() * 32);
+                    for (TaskAllocator.Task task : tasks) {
+                        try {
+                            String result = performer.perform(service, task.description);
+                            if (results.length() > 0) {
+                                results.append('\n');
+                            }
+                            // Une ligne par résultat: pas de retour à la ligne dedans
+                            results.append(task.id).append(';').append(result.replace('\n', ' ').replace('\r', ' '));
+                        } catch (Exception e) {
+                            // Tâche absente du résultat: comptée en échec par l'initiateur
+                        }
+                    }
+                    return results.toString();
+                }
+            }, new ExecutorBridge.Completion<String>() {
+                public void onSuccess(String results) {
+                    load -= tasks.size();
+                    dispatcher.reply(accept, ACLMessage.INFORM, results);
+                }
+
+                public void onFailure(Throwable error) {
+                    load -= tasks.size();
+                    dispatcher.reply(accept, ACLMessage.FAILURE, String.valueOf(error.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            load -= tasks.size();
+            dispatcher.reply(accept, ACLMessage.FAILURE, "busy");
+        }
+    }
+}
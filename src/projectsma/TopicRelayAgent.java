@@ -0,0 +1,362 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.SubscriptionInitiator;
+import jade.wrapper.ContainerController;
+import jade.wrapper.ControllerException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TopicRelayAgent - Relais de diffusion d'un conteneur (voir Topics)
+ *
+ * - Garde les abonnés de son conteneur, par sujet (SUBSCRIBE / CANCEL)
+ * - S'enregistre à l'annuaire avec un service RELAY_TYPE par sujet suivi:
+ *   les autres relais savent ainsi quels conteneurs ont des abonnés
+ * - Cherche les autres relais au démarrage, avant de traiter la première
+ *   publication, puis les suit par un abonnement à l'annuaire (pas de
+ *   recherche par message publié)
+ * - Message publié par un agent du conteneur: une copie vers chaque
+ *   autre relais intéressé, puis remise aux abonnés locaux
+ * - Message venant d'un autre relais: remise aux abonnés locaux seulement
+ *
+ * La remise locale est un seul send() avec tous les abonnés comme
+ * destinataires: le contenu n'est pas réencodé par abonné.
+ *
+ * Un abonné qui disparaît sans CANCEL (arrêt brutal) est retiré par la
+ * vérification périodique des abonnés (SWEEP_PERIOD): ils sont tous dans
+ * le conteneur du relais, qui les cherche dans son conteneur sans message.
+ * Les échecs de remise ne peuvent pas servir: l'AMS les renvoie à
+ * l'éditeur, pas au relais.
+ *
+ * Un relais qui vient de s'enregistrer n'est connu des autres qu'après
+ * la notification de l'annuaire: un message publié juste avant ne lui
+ * parvient pas.
+ *
+ * Créé automatiquement par Topics.relay(), un par conteneur.
+ */
+public class TopicRelayAgent extends Agent {
+
+    // ==================== Constantes ====================
+
+    /** Type de service des relais dans l'annuaire (nom du service = sujet) */
+    public static final String RELAY_TYPE = "projectsma-topic-relay";
+
+    /** Période de vérification des abonnés (ms) */
+    public static final long SWEEP_PERIOD = 5000;
+
+    /** Paramètre d'un message transmis par un autre relais */
+    private static final String RELAYED = "topic-relayed";
+
+    /** Messages qui concernent les sujets (les notifications de l'annuaire sont à part) */
+    private static final MessageTemplate mt = new MessageTemplate(new MessageTemplate.MatchExpression() {
+        public boolean match(ACLMessage msg) {
+            return Topics.topicOf(msg) != null;
+        }
+    });
+
+
+    // ==================== Attributs ====================
+
+    /** Abonnés du conteneur, par sujet */
+    private final Map<String, Set<AID>> subscribers = new HashMap<String, Set<AID>>();
+
+    /** Sujets suivis par chacun des autres relais (d'après l'annuaire) */
+    private final Map<AID, Set<String>> remoteTopics = new HashMap<AID, Set<String>>();
+
+    /** Relais intéressés par sujet, recalculé après un changement de remoteTopics */
+    private final Map<String, List<AID>> remoteByTopic = new HashMap<String, List<AID>>();
+
+    /** Vrai si ce relais est enregistré à l'annuaire */
+    private boolean registered = false;
+
+    private LongAdder published;
+    private LongAdder forwarded;
+    private LongAdder delivered;
+    private LongAdder pruned;
+
+
+    // ==================== Méthode setup() ====================
+
+    protected void setup() {
+        // Métriques de l'agent (JMX); applique aussi le niveau du journal (-projectsma.log)
+        Metrics metrics = Metrics.of(this);
+        published = metrics.counter("topic.published");
+        forwarded = metrics.counter("topic.forwarded");
+        delivered = metrics.counter("topic.delivered");
+        pruned = metrics.counter("topic.pruned");
+
+        // ---- Connaître les autres relais avant la première publication ----
+        DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(RELAY_TYPE);
+        template.addServices(sd);
+        SearchConstraints all = new SearchConstraints();
+        all.setMaxResults(Long.valueOf(-1));
+        try {
+            update(Directory.search(this, template, all));
+        } catch (FIPAException e) {
+            Log.warn(getLocalName() + " cannot list the other relays - " + e.getMessage());
+        }
+        addBehaviour(followRelays(template, all));
+
+        // ---- Abonnements et messages publiés ----
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(mt);
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                switch (msg.getPerformative()) {
+                    case ACLMessage.SUBSCRIBE:
+                        subscribe(Topics.topicOf(msg), msg.getSender());
+                        break;
+                    case ACLMessage.CANCEL:
+                        unsubscribe(Topics.topicOf(msg), msg.getSender());
+                        break;
+                    default:
+                        relay(msg);
+                }
+            }
+        });
+
+        // ---- Abonnés disparus sans CANCEL ----
+        addBehaviour(new TickerBehaviour(this, SWEEP_PERIOD) {
+            protected void onTick() {
+                sweep();
+            }
+        });
+
+        Log.info(getLocalName() + " is ready to relay topics of container " + here().getName());
+    }
+
+    protected void takeDown() {
+        if (registered) {
+            try {
+                DFService.deregister(this, Directory.dfFor(this, RELAY_TYPE));
+            } catch (FIPAException e) {
+                // Annuaire déjà arrêté
+            }
+        }
+        Metrics.release(this);
+    }
+
+
+    // ==================== Diffusion ====================
+
+    /**
+     * relay() - Transmet un message publié aux autres relais et aux abonnés locaux
+     */
+    private void relay(ACLMessage msg) {
+        String topic = Topics.topicOf(msg);
+
+        // ---- Étape 1: Une copie par conteneur intéressé (publication locale) ----
+        if (msg.getUserDefinedParameter(RELAYED) == null) {
+            published.increment();
+            List<AID> relays = remoteRelays(topic);
+            if (!relays.isEmpty()) {
+                ACLMessage copy = (ACLMessage) msg.clone();
+                copy.clearAllReceiver();
+                for (AID relay : relays) {
+                    copy.addReceiver(relay);
+                }
+                copy.addUserDefinedParameter(RELAYED, "true");
+                send(copy);
+                forwarded.add(relays.size());
+            }
+        }
+
+        // ---- Étape 2: Remise aux abonnés du conteneur, en un seul envoi ----
+        Set<AID> local = subscribers.get(topic);
+        if (local == null || local.isEmpty()) {
+            return;
+        }
+        msg.clearAllReceiver();
+        msg.removeUserDefinedParameter(RELAYED);
+        for (AID subscriber : local) {
+            msg.addReceiver(subscriber);
+        }
+        send(msg);
+        delivered.add(local.size());
+    }
+
+    private List<AID> remoteRelays(String topic) {
+        List<AID> relays = remoteByTopic.get(topic);
+        if (relays == null) {
+            relays = new ArrayList<AID>();
+            for (Map.Entry<AID, Set<String>> e : remoteTopics.entrySet()) {
+                if (e.getValue().contains(topic)) {
+                    relays.add(e.getKey());
+                }
+            }
+            remoteByTopic.put(topic, relays);
+        }
+        return relays;
+    }
+
+
+    // ==================== Abonnés locaux ====================
+
+    private void subscribe(String topic, AID subscriber) {
+        Set<AID> set = subscribers.get(topic);
+        if (set == null) {
+            set = new LinkedHashSet<AID>();
+            subscribers.put(topic, set);
+        }
+        set.add(subscriber);
+        if (set.size() == 1) {
+            // Premier abonné du conteneur: les autres relais doivent le savoir
+            updateRegistration();
+        }
+    }
+
+    private void unsubscribe(String topic, AID subscriber) {
+        Set<AID> set = subscribers.get(topic);
+        if (set == null || !set.remove(subscriber)) {
+            return;
+        }
+        if (set.isEmpty()) {
+            subscribers.remove(topic);
+            updateRegistration();
+        }
+    }
+
+    /**
+     * sweep() - Retire les abonnés qui ne sont plus dans le conteneur
+     */
+    private void sweep() {
+        ContainerController container = getContainerController();
+        Set<AID> dead = new HashSet<AID>();
+        for (Set<AID> set : subscribers.values()) {
+            for (AID subscriber : set) {
+                if (!dead.contains(subscriber) && !isAlive(container, subscriber)) {
+                    dead.add(subscriber);
+                }
+            }
+        }
+        if (dead.isEmpty()) {
+            return;
+        }
+
+        boolean changed = false;
+        for (Iterator<Set<AID>> it = subscribers.values().iterator(); it.hasNext();) {
+            Set<AID> set = it.next();
+            if (set.removeAll(dead) && set.isEmpty()) {
+                it.remove();
+                changed = true;
+            }
+        }
+        pruned.add(dead.size());
+        Log.warn(getLocalName() + " removed " + dead.size() + " subscriber(s) gone without CANCEL");
+        if (changed) {
+            updateRegistration();
+        }
+    }
+
+    private static boolean isAlive(ContainerController container, AID agent) {
+        try {
+            container.getAgent(agent.getLocalName());
+            return true;
+        } catch (ControllerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * updateRegistration() - Publie à l'annuaire la liste des sujets suivis
+     *
+     * Appelé seulement quand un sujet gagne son premier abonné ou perd le
+     * dernier: un abonné de plus sur un sujet connu ne coûte rien.
+     */
+    private void updateRegistration() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        for (String topic : subscribers.keySet()) {
+            ServiceDescription sd = new ServiceDescription();
+            sd.setType(RELAY_TYPE);
+            sd.setName(topic);
+            dfd.addServices(sd);
+        }
+
+        AID df = Directory.dfFor(this, RELAY_TYPE);
+        try {
+            if (subscribers.isEmpty()) {
+                if (registered) {
+                    DFService.deregister(this, df);
+                    registered = false;
+                }
+            } else if (registered) {
+                DFService.modify(this, df, dfd);
+            } else {
+                DFService.register(this, df, dfd);
+                registered = true;
+            }
+        } catch (FIPAException e) {
+            Log.error(getLocalName() + " cannot publish its topics - " + e.getMessage());
+        }
+    }
+
+
+    // ==================== Autres relais ====================
+
+    /**
+     * followRelays() - Abonnement à l'annuaire pour le type RELAY_TYPE
+     */
+    private SubscriptionInitiator followRelays(DFAgentDescription template, SearchConstraints all) {
+        ACLMessage subscription = DFService.createSubscriptionMessage(
+            this, Directory.dfFor(this, RELAY_TYPE), template, all);
+
+        return new SubscriptionInitiator(this, subscription) {
+            protected void handleInform(ACLMessage inform) {
+                try {
+                    update(DFService.decodeNotification(inform.getContent()));
+                } catch (FIPAException e) {
+                    Log.error(getLocalName() + " cannot decode DF notification - " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * update() - Applique des descriptions de relais (recherche ou notification)
+     *
+     * Une description avec des services = sujets suivis par ce relais;
+     * sans service = relais retiré.
+     */
+    private void update(DFAgentDescription[] relays) {
+        for (DFAgentDescription dfd : relays) {
+            if (dfd.getName().equals(getAID())) {
+                continue;
+            }
+            Set<String> topics = new LinkedHashSet<String>();
+            Iterator it = dfd.getAllServices();
+            while (it.hasNext()) {
+                topics.add(((ServiceDescription) it.next()).getName());
+            }
+            if (topics.isEmpty()) {
+                remoteTopics.remove(dfd.getName());
+            } else {
+                remoteTopics.put(dfd.getName(), topics);
+            }
+        }
+        remoteByTopic.clear();
+    }
+}
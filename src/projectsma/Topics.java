@@ -0,0 +1,143 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.StaleProxyException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Topics - Diffusion d'un message à tous les abonnés d'un sujet
+ *
+ * Envoyer le même contenu à N agents avec N addReceiver() coûte une copie
+ * (et une sérialisation, entre conteneurs) par destinataire. Ici:
+ * - chaque conteneur a un relais (TopicRelayAgent, créé au premier usage)
+ *   qui connaît les abonnés de son conteneur
+ * - l'éditeur envoie le message une seule fois, à son relais
+ * - ce relais le transmet une fois à chaque autre conteneur qui a des
+ *   abonnés, et le relais de chaque conteneur le remet à ses abonnés locaux
+ * Le contenu n'est donc sérialisé qu'une fois par conteneur, et non une
+ * fois par abonné.
+ *
+ * Le message reçu par l'abonné garde l'expéditeur d'origine (les réponses
+ * vont directement à l'éditeur) et porte le sujet dans le paramètre TOPIC.
+ * Un sujet peut être un type de service: avec -projectsma.topics on, chaque
+ * ProjectAgent s'abonne aux sujets de ses services.
+ *
+ * Utilisation:
+ *   Topics.subscribe(this, "construction");
+ *   ...
+ *   ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+ *   msg.setOntology("construction");
+ *   Topics.publish(this, "construction", msg);
+ */
+public class Topics {
+
+    /** Propriété de la plateforme: "on" pour abonner les ProjectAgents à leurs services */
+    public static final String TOPICS_PROPERTY = "projectsma.topics";
+
+    /** Paramètre du message: le sujet */
+    public static final String TOPIC = "topic";
+
+    /** Préfixe du nom local des relais (suivi du nom du conteneur) */
+    public static final String RELAY_PREFIX = "topics-";
+
+    /** Relais déjà créés dans cette JVM, par conteneur */
+    private static final Map<String, Boolean> started = new ConcurrentHashMap<String, Boolean>();
+
+    private Topics() {
+    }
+
+    /**
+     * enabled() - Vrai si la plateforme est lancée avec -projectsma.topics on
+     */
+    public static boolean enabled(Agent agent) {
+        return "on".equals(agent.getProperty(TOPICS_PROPERTY, "off"));
+    }
+
+
+    // ==================== Abonnement ====================
+
+    /**
+     * subscribe() - Abonne l'agent à un sujet (sans attendre)
+     */
+    public static void subscribe(Agent agent, String topic) {
+        send(agent, ACLMessage.SUBSCRIBE, topic);
+    }
+
+    /**
+     * unsubscribe() - Désabonne l'agent d'un sujet
+     */
+    public static void unsubscribe(Agent agent, String topic) {
+        send(agent, ACLMessage.CANCEL, topic);
+    }
+
+    private static void send(Agent agent, int performative, String topic) {
+        ACLMessage msg = new ACLMessage(performative);
+        msg.addReceiver(relay(agent));
+        msg.addUserDefinedParameter(TOPIC, topic);
+        agent.send(msg);
+    }
+
+
+    // ==================== Publication ====================
+
+    /**
+     * publish() - Envoie le message à tous les abonnés du sujet
+     *
+     * Les destinataires déjà présents dans le message sont remplacés par
+     * les abonnés. Le message ne doit plus être modifié après l'appel.
+     */
+    public static void publish(Agent agent, String topic, ACLMessage msg) {
+        msg.clearAllReceiver();
+        msg.addReceiver(relay(agent));
+        msg.addUserDefinedParameter(TOPIC, topic);
+        if (msg.getSender() == null) {
+            msg.setSender(agent.getAID());
+        }
+        agent.send(msg);
+    }
+
+    /**
+     * topicOf() - Sujet d'un message diffusé (null pour un message direct)
+     */
+    public static String topicOf(ACLMessage msg) {
+        return msg.getUserDefinedParameter(TOPIC);
+    }
+
+    /**
+     * match() - Gabarit des messages diffusés sur ce sujet
+     */
+    public static MessageTemplate match(final String topic) {
+        return new MessageTemplate(new MessageTemplate.MatchExpression() {
+            public boolean match(ACLMessage msg) {
+                return topic.equals(topicOf(msg));
+            }
+        });
+    }
+
+
+    // ==================== Relais ====================
+
+    /**
+     * relay() - AID du relais du conteneur de l'agent (créé au premier appel)
+     *
+     * Un seul agent du conteneur tente la création; si le nom est déjà
+     * pris, le relais existe, c'est ce qui compte.
+     */
+    public static AID relay(Agent agent) {
+        String container = agent.here().getName();
+        String name = RELAY_PREFIX + container;
+        if (started.putIfAbsent(container, Boolean.TRUE) == null) {
+            try {
+                agent.getContainerController()
+                     .createNewAgent(name, TopicRelayAgent.class.getName(), null).start();
+            } catch (StaleProxyException e) {
+                // Nom déjà pris: le relais existe déjà
+            }
+        }
+        return new AID(name, AID.ISLOCALNAME);
+    }
+}
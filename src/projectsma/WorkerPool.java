@@ -0,0 +1,107 @@
+package projectsma;
+
+import jade.core.Agent;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WorkerPool - Crée l'Executor qui traite les requêtes d'un agent
+ *
+ * Configuré par les propriétés de la plateforme:
+ *   -projectsma.executor pool|virtual   (défaut: pool)
+ *   -projectsma.workers N               (taille du pool, défaut: nombre de cœurs)
+ *
+ * - pool: pool borné de threads classiques. Les threads sont créés à la
+ *   demande et s'arrêtent après 30 s d'inactivité: des milliers d'agents
+ *   au repos ne gardent aucun thread. Au-delà de QUEUE_CAPACITY tâches en
+ *   attente, les nouvelles tâches sont refusées (RejectedExecutionException).
+ * - virtual: un thread virtuel par tâche (Java 21 et plus). Sur une JVM plus
+ *   ancienne, on revient au pool avec un avertissement.
+ */
+public class WorkerPool {
+
+    /** Propriété de la plateforme: "pool" ou "virtual" */
+    public static final String EXECUTOR_PROPERTY = "projectsma.executor";
+
+    /** Propriété de la plateforme: nombre de threads du pool */
+    public static final String WORKERS_PROPERTY = "projectsma.workers";
+
+    /** Nombre maximal de tâches en attente dans le pool */
+    public static final int QUEUE_CAPACITY = 1000;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private WorkerPool() {
+    }
+
+    /**
+     * create() - Crée l'Executor de l'agent d'après les propriétés de la plateforme
+     */
+    public static ExecutorService create(Agent agent) {
+        if ("virtual".equals(agent.getProperty(EXECUTOR_PROPERTY, "pool"))) {
+            ExecutorService virtual = virtualThreads();
+            if (virtual != null) {
+                return virtual;
+            }
+            Log.warn(agent.getLocalName() +
+                   ": virtual threads need Java 21+, using a thread pool");
+        }
+
+        int workers = Runtime.getRuntime().availableProcessors();
+        String configured = agent.getProperty(WORKERS_PROPERTY, null);
+        if (configured != null) {
+            try {
+                workers = Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                workers = 0;
+            }
+            if (workers < 1) {
+                // Valeur invalide: garder la valeur par défaut plutôt que d'empêcher le démarrage
+                workers = Runtime.getRuntime().availableProcessors();
+                Log.error(agent.getLocalName() + " ignores -" + WORKERS_PROPERTY + " " + configured +
+                          ", using " + workers + " workers");
+            }
+        }
+        return pool(agent.getLocalName(), workers);
+    }
+
+    /**
+     * pool() - Pool borné, threads créés à la demande et libérés après inactivité
+     */
+    public static ExecutorService pool(final String name, int workers) {
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            workers, workers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name + "-worker-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * virtualThreads() - Executors.newVirtualThreadPerTaskExecutor(), par réflexion
+     *
+     * Le projet compile pour Java 8: l'appel direct ne compilerait pas.
+     *
+     * @return L'Executor, ou null si la JVM n'a pas de threads virtuels
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
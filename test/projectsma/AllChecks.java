@@ -0,0 +1,83 @@
+package projectsma;
+
+/**
+ * AllChecks - Lance toutes les vérifications de test/
+ *
+ * Les vérifications sans plateforme d'abord, puis celles qui ont besoin
+ * d'agents (CheckPlatform, port 1399). Code de sortie 1 si une
+ * vérification échoue.
+ *
+ * Utilisation:
+ *   javac -d bin -cp "lib/*" src/**\/*.java test/**\/*.java
+ *   java -cp "bin;lib/*" projectsma.AllChecks
+ */
+public class AllChecks {
+
+    public static void main(String[] args) throws Exception {
+        Log.setLevel(Log.Level.WARN);
+        run("BoundedMessageQueue", new Suite() {
+            public void run() throws Exception {
+                BoundedMessageQueueCheck.run();
+            }
+        });
+        run("TaskAllocator", new Suite() {
+            public void run() throws Exception {
+                TaskAllocatorCheck.run();
+            }
+        });
+        run("IndexedDirectory", new Suite() {
+            public void run() throws Exception {
+                IndexedDirectoryCheck.run();
+            }
+        });
+        run("DirectoryJournal", new Suite() {
+            public void run() throws Exception {
+                DirectoryJournalCheck.run();
+            }
+        });
+        run("ContentCodecs", new Suite() {
+            public void run() throws Exception {
+                ContentCodecsCheck.run();
+            }
+        });
+        run("IndexedDFAgent", new Suite() {
+            public void run() throws Exception {
+                IndexedDFAgentCheck.run();
+            }
+        });
+        run("ReplyCorrelator", new Suite() {
+            public void run() throws Exception {
+                ReplyCorrelatorCheck.run();
+            }
+        });
+        run("OutboundQueue", new Suite() {
+            public void run() throws Exception {
+                OutboundQueueCheck.run();
+            }
+        });
+        Log.setLevel(Log.Level.INFO);
+        Check.exit();
+    }
+
+    /**
+     * Suite - Les vérifications d'une classe
+     */
+    private interface Suite {
+        void run() throws Exception;
+    }
+
+    /**
+     * run() - Lance une suite; une exception compte comme un échec, les suites suivantes continuent
+     */
+    private static void run(String name, Suite suite) {
+        int failedBefore = Check.failed();
+        int passedBefore = Check.passed();
+        try {
+            suite.run();
+        } catch (Exception e) {
+            Check.fail(name + " stopped", e);
+        }
+        Log.warn(name + ": " + (Check.passed() - passedBefore) + " passed, " +
+                 (Check.failed() - failedBefore) + " failed");
+    }
+}
@@ -0,0 +1,107 @@
+package projectsma;
+
+import jade.lang.acl.ACLMessage;
+import java.util.List;
+
+/**
+ * BoundedMessageQueueCheck - Politiques de débordement de la BoundedMessageQueue
+ *
+ * Sans plateforme, une file de 2 messages reçoit 5 messages:
+ * - DROP: les 2 premiers sont gardés, les autres ignorés
+ * - REJECT: les autres attendent leur REFUSE (takeRefused(), au plus 2)
+ * - SPILL: les autres passent sur disque et sont relus dans l'ordre
+ * - dans tous les cas, une réponse (in-reply-to) est acceptée
+ */
+public class BoundedMessageQueueCheck {
+
+    private static final int SIZE = 2;
+    private static final int SENT = 5;
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() {
+        drop();
+        reject();
+        spill();
+        repliesAlwaysAccepted();
+        setMaxSize();
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void drop() {
+        BoundedMessageQueue queue = fill(BoundedMessageQueue.Policy.DROP);
+        Check.equal(SIZE, queue.size(), "DROP keeps the queue at its bound");
+        Check.equal((long) (SENT - SIZE), queue.getDropped(), "DROP counts the ignored messages");
+        Check.that(queue.takeRefused() == null, "DROP sends no REFUSE");
+        Check.equal("m0", queue.receive(null).getContent(), "DROP keeps the first messages");
+    }
+
+    private static void reject() {
+        BoundedMessageQueue queue = fill(BoundedMessageQueue.Policy.REJECT);
+        Check.equal(SIZE, queue.size(), "REJECT keeps the queue at its bound");
+        Check.equal((long) (SENT - SIZE), queue.getRejected(), "REJECT counts the refused messages");
+        // La liste des refus est bornée comme la file: au plus SIZE REFUSE en attente
+        List<ACLMessage> refused = queue.takeRefused();
+        Check.equal(Math.min(SENT - SIZE, SIZE), refused == null ? 0 : refused.size(),
+                    "REJECT hands out the refused messages, up to the bound");
+        Check.equal("m2", refused == null ? null : refused.get(0).getContent(), "first refused message");
+        Check.that(queue.takeRefused() == null, "refused messages handed out once");
+        Check.that(queue.retryAfter() >= 1 && queue.credits() >= 1, "REFUSE hints are positive");
+    }
+
+    private static void spill() {
+        BoundedMessageQueue queue = fill(BoundedMessageQueue.Policy.SPILL);
+        Check.equal(SIZE, queue.size(), "SPILL keeps the queue at its bound in memory");
+        Check.equal((long) (SENT - SIZE), queue.getSpilled(), "SPILL counts the messages written to disk");
+
+        // Un message arrivé pendant le débordement passe après ceux sur disque
+        queue.addLast(message("m" + SENT));
+        StringBuilder order = new StringBuilder();
+        ACLMessage msg;
+        while ((msg = queue.receive(null)) != null) {
+            order.append(msg.getContent()).append(' ');
+        }
+        Check.equal("m0 m1 m2 m3 m4 m5 ", order.toString(), "SPILL keeps the arrival order");
+        Check.that(queue.isEmpty(), "SPILL file read back entirely");
+        Check.equal(0L, queue.getDropped(), "SPILL loses nothing");
+    }
+
+    private static void repliesAlwaysAccepted() {
+        BoundedMessageQueue.Policy[] policies = BoundedMessageQueue.Policy.values();
+        for (BoundedMessageQueue.Policy policy : policies) {
+            BoundedMessageQueue queue = fill(policy);
+            ACLMessage reply = message("reply");
+            reply.setInReplyTo("r1");
+            queue.addLast(reply);
+            Check.equal(SIZE + 1, queue.size(), policy + " accepts a reply over the bound");
+        }
+    }
+
+    private static void setMaxSize() {
+        BoundedMessageQueue queue = new BoundedMessageQueue("check", SIZE, BoundedMessageQueue.Policy.DROP);
+        queue.setMaxSize(0);
+        Check.equal(SIZE, queue.getMaxSize(), "JADE's unlimited size keeps the configured bound");
+        queue.setMaxSize(10);
+        Check.equal(10, queue.getMaxSize(), "positive size replaces the bound");
+    }
+
+    // ==================== Utilitaires ====================
+
+    private static BoundedMessageQueue fill(BoundedMessageQueue.Policy policy) {
+        BoundedMessageQueue queue = new BoundedMessageQueue("check", SIZE, policy);
+        for (int i = 0; i < SENT; i++) {
+            queue.addLast(message("m" + i));
+        }
+        return queue;
+    }
+
+    private static ACLMessage message(String content) {
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setContent(content);
+        return msg;
+    }
+}
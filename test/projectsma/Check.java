@@ -0,0 +1,74 @@
+package projectsma;
+
+/**
+ * Check - Vérifications minimales, sans bibliothèque de test
+ *
+ * Chaque classe *Check regroupe les vérifications d'une classe du TP.
+ * Une vérification fausse est signalée ([ERREUR]) et comptée, sans
+ * arrêter les suivantes; AllChecks termine avec le code 1 s'il y en a.
+ *
+ * Utilisation (dans une classe *Check):
+ *   Check.equal(2, queue.size(), "DROP keeps the first messages");
+ *   Check.that(msg == null, "no message left");
+ */
+public final class Check {
+
+    private static int passed = 0;
+    private static int failed = 0;
+
+    private Check() {
+    }
+
+    /**
+     * that() - Vérifie une condition
+     */
+    public static void that(boolean condition, String what) {
+        if (condition) {
+            passed++;
+        } else {
+            failed++;
+            Log.error("check failed: " + what);
+        }
+    }
+
+    /**
+     * equal() - Vérifie une valeur attendue (equals(), null accepté)
+     */
+    public static void equal(Object expected, Object actual, String what) {
+        if (expected == null ? actual == null : expected.equals(actual)) {
+            passed++;
+        } else {
+            failed++;
+            Log.error("check failed: " + what + " - expected " + expected + ", got " + actual);
+        }
+    }
+
+    /**
+     * fail() - Une vérification qui n'a pas pu aller au bout (exception inattendue)
+     */
+    public static void fail(String what, Throwable error) {
+        failed++;
+        Log.error("check failed: " + what + " - " + error);
+    }
+
+    public static int passed() {
+        return passed;
+    }
+
+    public static int failed() {
+        return failed;
+    }
+
+    /**
+     * exit() - Affiche le bilan et termine la JVM (code 1 en cas d'échec)
+     */
+    public static void exit() {
+        if (failed == 0) {
+            Log.info("[OK] " + passed + " checks passed");
+        } else {
+            Log.error(failed + " of " + (passed + failed) + " checks failed");
+        }
+        Log.flush();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
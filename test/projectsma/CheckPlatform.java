@@ -0,0 +1,108 @@
+package projectsma;
+
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.wrapper.AgentContainer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CheckPlatform - Plateforme JADE dans la JVM, pour les vérifications qui envoient des messages
+ *
+ * ReplyCorrelator et OutboundQueue appellent send(): il leur faut un agent
+ * vivant. La plateforme (port 1399, sans MTP) est créée au premier agent
+ * demandé; les agents sont de simples Agent sans comportement, que les
+ * vérifications pilotent avec call().
+ *
+ * L'annuaire de la plateforme (Directory, -projectsma.df) est l'agent DF,
+ * un IndexedDFAgent démarré par les vérifications qui en ont besoin.
+ */
+public final class CheckPlatform {
+
+    /** Délai maximal d'un appel dans le thread d'un agent (ms) */
+    private static final long CALL_TIMEOUT = 5000;
+
+    /** Nom de l'annuaire des agents de vérification (Directory.DF_PROPERTY) */
+    public static final String DF = "check-idf";
+
+    private static AgentContainer main;
+
+    private CheckPlatform() {
+    }
+
+    /**
+     * agent() - Crée et démarre un agent vide
+     */
+    public static Agent agent(String name) throws Exception {
+        return agent(name, new Agent());
+    }
+
+    /**
+     * agent() - Démarre un agent déjà créé (IndexedDFAgent...)
+     */
+    public static synchronized <A extends Agent> A agent(String name, A agent) throws Exception {
+        if (main == null) {
+            Runtime rt = Runtime.instance();
+            rt.setCloseVM(true);
+            Profile profile = new ProfileImpl();
+            profile.setParameter(Profile.LOCAL_PORT, "1399");
+            profile.setParameter("nomtp", "true");
+            profile.setParameter(Directory.DF_PROPERTY, DF);
+            main = rt.createMainContainer(profile);
+        }
+        main.acceptNewAgent(name, agent).start();
+        return agent;
+    }
+
+    /**
+     * call() - Exécute une tâche dans le thread de l'agent et attend son résultat
+     *
+     * Les classes vérifiées ne sont pas synchronisées: elles ne doivent être
+     * utilisées que depuis le thread de leur agent.
+     */
+    public static <T> T call(Agent agent, final Callable<T> task) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+        final Exception[] error = new Exception[1];
+        agent.addBehaviour(new OneShotBehaviour(agent) {
+            public void action() {
+                try {
+                    result[0] = task.call();
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+                done.countDown();
+            }
+        });
+        if (!done.await(CALL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("no answer from " + agent.getLocalName());
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    /**
+     * settle() - Attend que la file de l'agent soit vide (au plus timeout ms)
+     *
+     * @return true si la file s'est vidée
+     */
+    public static boolean settle(Agent agent, long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (agent.getCurQueueSize() > 0) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package projectsma;
+
+import jade.content.lang.Codec.CodecException;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * ContentCodecsCheck - Contenus binaires: aller-retour et contenus forgés
+ *
+ * - un Greeting encodé par fillContent() est relu par extractContent(),
+ *   avec language et ontology renseignés
+ * - SenderAgent2 -> ReceiverBehaviour2: un vrai échange sur la plateforme,
+ *   la réponse est un Greeting du même numéro
+ * - readSize() refuse une taille au-delà de Integer.MAX_VALUE ou sur plus
+ *   de 5 octets, readString() une taille plus grande que le contenu
+ * - extractContent() rend une CodecException pour un contenu forgé
+ */
+public class ContentCodecsCheck {
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() throws Exception {
+        Greeting.register();
+
+        roundTrip();
+        exchange();
+        malformedSizes();
+        forgedContent();
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void roundTrip() throws Exception {
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        // 300: numéro écrit sur 2 octets
+        ContentCodecs.fillContent(msg, Greeting.ONTOLOGY, new Greeting(300, "héllo"));
+        Check.equal(ContentCodecs.LANGUAGE, msg.getLanguage(), "language set by fillContent");
+        Check.equal(Greeting.ONTOLOGY, msg.getOntology(), "ontology set by fillContent");
+        Check.that(ContentCodecs.isEncoded(msg), "encoded message recognised");
+
+        Greeting greeting = (Greeting) ContentCodecs.extractContent(msg);
+        Check.equal(300, greeting.getNumber(), "number kept");
+        Check.equal("héllo", greeting.getText(), "text kept");
+
+        try {
+            ContentCodecs.fillContent(msg, Greeting.ONTOLOGY, "not a greeting");
+            Check.that(false, "payload of the wrong type rejected");
+        } catch (CodecException e) {
+            Check.that(true, "payload of the wrong type rejected");
+        }
+    }
+
+    private static void exchange() throws Exception {
+        final Agent receiver = CheckPlatform.agent("cc-receiver");
+        final Agent sender = CheckPlatform.agent("cc-sender");
+        CheckPlatform.call(receiver, new Callable<Void>() {
+            public Void call() {
+                receiver.addBehaviour(new ReceiverBehaviour2(receiver));
+                return null;
+            }
+        });
+
+        ACLMessage reply = CheckPlatform.call(sender, new Callable<ACLMessage>() {
+            public ACLMessage call() throws CodecException {
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.addReceiver(receiver.getAID());
+                msg.setReplyWith("cc-1");
+                ContentCodecs.fillContent(msg, Greeting.ONTOLOGY, new Greeting(7, "Hello! How are you?"));
+                sender.send(msg);
+                return sender.blockingReceive(2000);
+            }
+        });
+        Check.that(reply != null, "ReceiverBehaviour2 replies to a Greeting");
+        if (reply == null) {
+            return;
+        }
+        Check.equal("cc-1", reply.getInReplyTo(), "reply correlated");
+        Check.that(ContentCodecs.isEncoded(reply), "reply encoded in the same ontology");
+        Greeting answer = (Greeting) ContentCodecs.extractContent(reply);
+        Check.equal(7, answer.getNumber(), "reply carries the request number");
+        Check.equal("Hello! I'm fine, thanks for asking!", answer.getText(), "reply text");
+    }
+
+    private static void malformedSizes() {
+        Check.equal(Integer.MAX_VALUE, size(0xff, 0xff, 0xff, 0xff, 0x07), "largest size accepted");
+        rejected("size above Integer.MAX_VALUE", 0xff, 0xff, 0xff, 0xff, 0x0f);
+        rejected("size on more than 5 bytes", 0x80, 0x80, 0x80, 0x80, 0x80, 0x01);
+
+        // Chaîne annoncée de 999 octets, 2 présents
+        try {
+            ContentCodecs.readString(input(0xe8, 0x07, 'a', 'b'));
+            Check.that(false, "string longer than the content rejected");
+        } catch (IOException e) {
+            Check.equal("Malformed size", e.getMessage(), "string longer than the content rejected");
+        }
+    }
+
+    private static void forgedContent() {
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setLanguage(ContentCodecs.LANGUAGE);
+        msg.setOntology(Greeting.ONTOLOGY);
+        msg.setByteSequenceContent(new byte[] { 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f });
+        try {
+            ContentCodecs.extractContent(msg);
+            Check.that(false, "forged content rejected");
+        } catch (CodecException e) {
+            Check.that(true, "forged content rejected");
+        }
+    }
+
+    // ==================== Utilitaires ====================
+
+    private static Integer size(int... bytes) {
+        try {
+            return ContentCodecs.readSize(input(bytes));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void rejected(String what, int... bytes) {
+        try {
+            ContentCodecs.readSize(input(bytes));
+            Check.that(false, what + " rejected");
+        } catch (IOException e) {
+            Check.equal("Malformed size", e.getMessage(), what + " rejected");
+        }
+    }
+
+    private static DataInputStream input(int... bytes) {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte) bytes[i];
+        }
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,223 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * DirectoryJournalCheck - Rechargement d'un IndexedDirectory sauvegardé
+ *
+ * Sans plateforme, dans un répertoire temporaire:
+ * - journal seul, puis instantané + journal: l'annuaire rechargé est
+ *   celui d'avant l'arrêt (enregistrements et retraits)
+ * - enregistrement tronqué (arrêt pendant l'écriture, la fin de ses
+ *   données n'a pas atteint le disque): le rechargement s'arrête avant
+ *   lui, et les enregistrements suivants repartent de là
+ * - instantané abîmé (taille forgée): load() échoue par une IOException,
+ *   que le CRC soit faux ou recalculé, au lieu d'une exception d'exécution
+ *   qui arrêterait le setup() du DF
+ */
+public class DirectoryJournalCheck {
+
+    /** En-têtes du format (voir DirectoryJournal): fichier, puis enregistrement */
+    private static final int HEADER = 16;
+    private static final int RECORD_HEADER = 4 + 8 + 4;
+    private static final int SNAPSHOT_HEADER = 4 + 8 + 4;
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() throws Exception {
+        File dir = Files.createTempDirectory("journal-check").toFile();
+        try {
+            replayAfterRestart(new File(dir, "replay"));
+            snapshotThenJournal(new File(dir, "snapshot"));
+            truncatedRecord(new File(dir, "truncated"));
+            corruptSnapshot(new File(dir, "corrupt"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void replayAfterRestart(File dir) throws Exception {
+        IndexedDirectory directory = new IndexedDirectory();
+        DirectoryJournal written = open(dir, directory);
+        directory.register(provider("a1", 10));
+        directory.register(provider("a2", 20));
+        directory.register(provider("a3", 30));
+        directory.deregister(aid("a2"));
+        written.close();
+
+        IndexedDirectory reloaded = new IndexedDirectory();
+        DirectoryJournal journal = new DirectoryJournal(dir, "df");
+        Check.equal(2, journal.load(reloaded), "registrations replayed from the journal");
+        Check.equal(4, journal.records(), "every journal record read (3 registrations, 1 removal)");
+        Check.that(has(reloaded, "a1") && has(reloaded, "a3") && !has(reloaded, "a2"),
+                   "deregistration replayed");
+        journal.close();
+    }
+
+    private static void snapshotThenJournal(File dir) throws Exception {
+        IndexedDirectory directory = new IndexedDirectory();
+        DirectoryJournal journal = open(dir, directory);
+        directory.register(provider("a1", 10));
+        directory.register(provider("a2", 20));
+        directory.compact();
+        Check.equal(0, journal.records(), "journal empty after compaction");
+        directory.register(provider("a3", 30));
+        directory.deregister(aid("a1"));
+        journal.close();
+
+        IndexedDirectory reloaded = new IndexedDirectory();
+        DirectoryJournal again = new DirectoryJournal(dir, "df");
+        Check.equal(2, again.load(reloaded), "snapshot plus journal reloaded");
+        Check.equal(2, again.records(), "only post-compaction records replayed");
+        Check.that(!has(reloaded, "a1") && has(reloaded, "a2") && has(reloaded, "a3"),
+                   "snapshot and journal combined");
+        again.close();
+    }
+
+    private static void truncatedRecord(File dir) throws Exception {
+        IndexedDirectory directory = new IndexedDirectory();
+        DirectoryJournal written = open(dir, directory);
+        directory.register(provider("a1", 10));
+        directory.register(provider("a2", 20));
+        directory.register(provider("a3", 30));
+        written.close();
+
+        // ---- Effacer la seconde moitié des données du 3e enregistrement ----
+        // (pas de setLength(): un fichier projeté ne peut pas être raccourci partout)
+        RandomAccessFile file = new RandomAccessFile(new File(dir, "df.journal"), "rw");
+        try {
+            long position = HEADER;
+            for (int i = 0; i < 2; i++) {
+                file.seek(position);
+                position += RECORD_HEADER + file.readInt();
+            }
+            file.seek(position);
+            int length = file.readInt();
+            file.seek(position + RECORD_HEADER + length / 2);
+            file.write(new byte[length - length / 2]);
+        } finally {
+            file.close();
+        }
+
+        IndexedDirectory reloaded = new IndexedDirectory();
+        DirectoryJournal journal = new DirectoryJournal(dir, "df");
+        Check.equal(2, journal.load(reloaded), "complete records before the truncated one reloaded");
+        Check.that(has(reloaded, "a1") && has(reloaded, "a2") && !has(reloaded, "a3"),
+                   "truncated record ignored");
+
+        // ---- Les enregistrements suivants remplacent la fin abîmée ----
+        reloaded.setJournal(journal);
+        reloaded.register(provider("a4", 40));
+        journal.close();
+
+        IndexedDirectory last = new IndexedDirectory();
+        DirectoryJournal check = new DirectoryJournal(dir, "df");
+        Check.equal(3, check.load(last), "record written after recovery reloaded");
+        Check.that(has(last, "a4") && !has(last, "a3"), "recovered journal continues after the last good record");
+        check.close();
+    }
+
+    private static void corruptSnapshot(File dir) throws Exception {
+        IndexedDirectory directory = new IndexedDirectory();
+        DirectoryJournal journal = open(dir, directory);
+        directory.register(provider("a1", 10));
+        directory.register(provider("a2", 20));
+        directory.compact();
+        journal.close();
+
+        // ---- Taille du nom du 1er agent remplacée par Integer.MAX_VALUE ----
+        File snapshot = new File(dir, "df.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        byte[] forged = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 };
+        System.arraycopy(forged, 0, bytes, SNAPSHOT_HEADER + 8, forged.length);
+        Files.write(snapshot.toPath(), bytes);
+        Check.that(loadFails(dir), "snapshot with a bad CRC rejected with an IOException");
+
+        // ---- Même contenu forgé, CRC recalculé: le codec refuse la taille ----
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        int value = (int) crc.getValue();
+        for (int i = 0; i < 4; i++) {
+            bytes[bytes.length - 4 + i] = (byte) (value >>> (24 - 8 * i));
+        }
+        Files.write(snapshot.toPath(), bytes);
+        Check.that(loadFails(dir), "forged size in a snapshot rejected with an IOException");
+    }
+
+    // ==================== Utilitaires ====================
+
+    /**
+     * loadFails() - Le chargement de dir échoue par une IOException
+     *
+     * Une autre exception (NegativeArraySizeException, OutOfMemoryError...)
+     * n'est pas attrapée: la vérification s'arrête, comme le DF.
+     */
+    private static boolean loadFails(File dir) throws Exception {
+        DirectoryJournal journal = new DirectoryJournal(dir, "df");
+        try {
+            journal.load(new IndexedDirectory());
+            return false;
+        } catch (IOException e) {
+            return true;
+        } finally {
+            journal.close();
+        }
+    }
+
+    static DFAgentDescription provider(String name, long price) {
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("construction");
+        sd.setName("construction");
+        sd.addProperties(new Property("prix", Long.valueOf(price)));
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(aid(name));
+        dfd.addServices(sd);
+        return dfd;
+    }
+
+    /**
+     * aid() - Nom complet (sans plateforme, un nom local ne peut pas être complété)
+     */
+    static AID aid(String name) {
+        return new AID(name + "@check", AID.ISGUID);
+    }
+
+    /**
+     * open() - Charge l'annuaire depuis dir, puis y écrit chaque changement
+     */
+    private static DirectoryJournal open(File dir, IndexedDirectory directory) throws Exception {
+        DirectoryJournal journal = new DirectoryJournal(dir, "df");
+        journal.load(directory);
+        directory.setJournal(journal);
+        return journal;
+    }
+
+    private static boolean has(IndexedDirectory directory, String name) {
+        DFAgentDescription template = new DFAgentDescription();
+        template.setName(aid(name));
+        return directory.search(template, -1).size() == 1;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
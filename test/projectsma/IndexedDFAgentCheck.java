@@ -0,0 +1,205 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.FIPAManagementVocabulary;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndexedDFAgentCheck - Requêtes reçues par un IndexedDFAgent
+ *
+ * Sur la plateforme de vérification (annuaire CheckPlatform.DF):
+ * - enregistrement par lots (Directory.registerBatch()): tout le lot est
+ *   enregistré et trouvé par une recherche FIPA; un agent déjà enregistré
+ *   est refusé sans bloquer le reste du lot
+ * - un lot illisible reçoit NOT_UNDERSTOOD
+ * - un abonné arrêté sans CANCEL est retiré au premier FAILURE de remise
+ *   de l'AMS (df.subscriptions, df.subscriptions.pruned)
+ * - un performatif autre que REQUEST, SUBSCRIBE ou CANCEL ne reçoit pas
+ *   de réponse (pas de NOT_UNDERSTOOD en retour d'une réponse)
+ */
+public class IndexedDFAgentCheck {
+
+    private static final long TIMEOUT = 5000;
+
+    private static Agent client;
+    private static IndexedDFAgent df;
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() throws Exception {
+        df = CheckPlatform.agent(CheckPlatform.DF, new IndexedDFAgent());
+        client = CheckPlatform.agent("idf-client");
+
+        registerBatch();
+        unreadableBatch();
+        deadSubscriberPruned();
+        otherPerformativesIgnored();
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void registerBatch() throws Exception {
+        Outcome first = registerBatch("b1", "b2", "b3");
+        Check.equal(3, first.registered, "whole batch registered");
+        Check.equal(new ArrayList<String>(), first.rejected, "nothing rejected");
+
+        Outcome second = registerBatch("b3", "b4");
+        Check.equal(1, second.registered, "new agent of the second batch registered");
+        Check.equal(Arrays.asList(name("b3")), second.rejected, "already registered agent rejected");
+
+        DFAgentDescription[] found = CheckPlatform.call(client, new Callable<DFAgentDescription[]>() {
+            public DFAgentDescription[] call() throws Exception {
+                return DFService.search(client, new AID(CheckPlatform.DF, AID.ISLOCALNAME), template());
+            }
+        });
+        Check.equal(4, found.length, "batched registrations found by a FIPA search");
+    }
+
+    private static void unreadableBatch() throws Exception {
+        ACLMessage reply = CheckPlatform.call(client, new Callable<ACLMessage>() {
+            public ACLMessage call() {
+                ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+                request.addReceiver(new AID(CheckPlatform.DF, AID.ISLOCALNAME));
+                request.setLanguage(ContentCodecs.LANGUAGE);
+                request.setOntology(Directory.REGISTER_BATCH_ONTOLOGY);
+                request.setByteSequenceContent(new byte[] { 5, 1 });
+                request.setReplyWith("forged-batch");
+                client.send(request);
+                return client.blockingReceive(2000);
+            }
+        });
+        Check.equal(ACLMessage.NOT_UNDERSTOOD, reply == null ? -1 : reply.getPerformative(),
+                    "unreadable batch not understood");
+    }
+
+    private static void deadSubscriberPruned() throws Exception {
+        final Agent subscriber = CheckPlatform.agent("idf-subscriber");
+        final DFAgentDescription template = new DFAgentDescription();
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("watched");
+        template.addServices(sd);
+        CheckPlatform.call(subscriber, new Callable<Void>() {
+            public Void call() {
+                subscriber.send(DFService.createSubscriptionMessage(
+                    subscriber, new AID(CheckPlatform.DF, AID.ISLOCALNAME), template, null));
+                return null;
+            }
+        });
+        Check.that(waitFor("df.subscriptions", 1), "subscription recorded");
+
+        // ---- Arrêt brutal: pas de CANCEL ----
+        subscriber.doDelete();
+        Thread.sleep(200);
+
+        // La notification de cet enregistrement ne peut pas être remise
+        final DFAgentDescription watched = new DFAgentDescription();
+        watched.setName(new AID(name("w1"), AID.ISGUID));
+        ServiceDescription service = new ServiceDescription();
+        service.setType("watched");
+        service.setName("watched");
+        watched.addServices(service);
+        CheckPlatform.call(client, new Callable<Void>() {
+            public Void call() throws Exception {
+                DFService.register(client, new AID(CheckPlatform.DF, AID.ISLOCALNAME), watched);
+                return null;
+            }
+        });
+        Check.that(waitFor("df.subscriptions", 0), "dead subscriber's subscription removed");
+        Check.equal(Long.valueOf(1), metric("df.subscriptions.pruned"), "pruned subscription counted");
+    }
+
+    private static void otherPerformativesIgnored() throws Exception {
+        ACLMessage reply = CheckPlatform.call(client, new Callable<ACLMessage>() {
+            public ACLMessage call() {
+                ACLMessage inform = new ACLMessage(ACLMessage.INFORM);
+                inform.addReceiver(new AID(CheckPlatform.DF, AID.ISLOCALNAME));
+                inform.setOntology(FIPAManagementVocabulary.NAME);
+                inform.setContent("stray");
+                client.send(inform);
+                return client.blockingReceive(500);
+            }
+        });
+        Check.that(reply == null, "INFORM to the DF gets no NOT_UNDERSTOOD");
+    }
+
+    // ==================== Utilitaires ====================
+
+    private static Object metric(String key) throws Exception {
+        return Metrics.of(df).getAttribute(key);
+    }
+
+    /**
+     * waitFor() - Attend que la métrique de l'annuaire atteigne la valeur (au plus TIMEOUT)
+     */
+    private static boolean waitFor(String key, long value) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (((Long) metric(key)).longValue() != value) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Outcome - Bilan reçu par le BatchListener
+     */
+    private static class Outcome {
+        int registered = -1;
+        List<String> rejected;
+    }
+
+    private static Outcome registerBatch(final String... names) throws Exception {
+        final Outcome outcome = new Outcome();
+        final CountDownLatch done = new CountDownLatch(1);
+        CheckPlatform.call(client, new Callable<Void>() {
+            public Void call() {
+                ReplyCorrelator correlator = new ReplyCorrelator(client);
+                client.addBehaviour(correlator);
+                List<DFAgentDescription> dfds = new ArrayList<DFAgentDescription>();
+                for (String name : names) {
+                    DFAgentDescription dfd = template();
+                    dfd.setName(new AID(name(name), AID.ISGUID));
+                    dfds.add(dfd);
+                }
+                Directory.registerBatch(correlator, dfds, new Directory.BatchListener() {
+                    public void onDone(int registered, List<String> rejected) {
+                        outcome.registered = registered;
+                        outcome.rejected = rejected;
+                        done.countDown();
+                    }
+                });
+                return null;
+            }
+        });
+        Check.that(done.await(TIMEOUT, TimeUnit.MILLISECONDS), "batch answered");
+        return outcome;
+    }
+
+    private static DFAgentDescription template() {
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("batched");
+        sd.setName("batched");
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.addServices(sd);
+        return dfd;
+    }
+
+    private static String name(String local) {
+        return local + "@check";
+    }
+}
@@ -0,0 +1,163 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.AlreadyRegistered;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAAgentManagement.UnrecognisedParameterValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IndexedDirectoryCheck - Recherches de l'IndexedDirectory
+ *
+ * Sans plateforme, sur un annuaire de fournisseurs de construction
+ * (p10 à p60, prix = 10 à 60) et d'un fournisseur d'un autre type:
+ * - intervalles (bornes incluses) et top-k croissant ou décroissant
+ * - type de service respecté par les requêtes
+ * - recherche par pages (curseur "after"), triée par nom
+ * - baux échus absents des résultats, puis retirés par expire()
+ * - requête du search-id: aller-retour, search-id mal formé refusé
+ */
+public class IndexedDirectoryCheck {
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() throws Exception {
+        IndexedDirectory directory = new IndexedDirectory();
+        for (int price = 60; price >= 10; price -= 10) {
+            directory.register(DirectoryJournalCheck.provider("p" + price, price));
+        }
+        directory.register(other("o5", 5));
+
+        ranges(directory);
+        topK(directory);
+        pages(directory);
+        duplicates(directory);
+        leases(directory);
+        searchIds(directory);
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void ranges(IndexedDirectory directory) {
+        ServiceQuery query = new ServiceQuery("construction").range("prix", 20, 40);
+        Check.equal(Arrays.asList("p20", "p30", "p40"), names(directory, query, -1),
+                    "range bounds included, sorted by value");
+
+        query = new ServiceQuery("construction").atLeast("prix", 45);
+        Check.equal(Arrays.asList("p50", "p60"), names(directory, query, -1), "lower bound only");
+
+        query = new ServiceQuery("construction").atMost("prix", 9);
+        Check.equal(new ArrayList<String>(), names(directory, query, -1),
+                    "other service types not in the range");
+
+        query = new ServiceQuery(null).atMost("prix", 10);
+        Check.equal(Arrays.asList("o5", "p10"), names(directory, query, -1), "range over every type");
+    }
+
+    private static void topK(IndexedDirectory directory) {
+        ServiceQuery cheapest = new ServiceQuery("construction").orderBy("prix");
+        Check.equal(Arrays.asList("p10", "p20"), names(directory, cheapest, 2), "two cheapest");
+
+        ServiceQuery dearest = new ServiceQuery("construction").orderBy("prix", true);
+        Check.equal(Arrays.asList("p60", "p50", "p40"), names(directory, dearest, 3), "three dearest");
+
+        ServiceQuery both = new ServiceQuery("construction").range("prix", 25, 55).orderBy("prix", true);
+        Check.equal(Arrays.asList("p50", "p40"), names(directory, both, 2), "top-k within a range");
+    }
+
+    private static void pages(IndexedDirectory directory) {
+        DFAgentDescription template = template("construction");
+        List<DFAgentDescription> first = directory.search(template, null, 4);
+        Check.equal(Arrays.asList("p10", "p20", "p30", "p40"), names(first), "first page sorted by name");
+
+        AID after = first.get(first.size() - 1).getName();
+        Check.equal(Arrays.asList("p50", "p60"), names(directory.search(template, after, 4)),
+                    "next page after the cursor");
+        Check.equal(7, directory.search(new DFAgentDescription(), -1).size(), "empty template matches all");
+    }
+
+    private static void duplicates(IndexedDirectory directory) {
+        try {
+            directory.register(DirectoryJournalCheck.provider("p10", 10));
+            Check.that(false, "second registration refused");
+        } catch (AlreadyRegistered e) {
+            Check.that(true, "second registration refused");
+        }
+    }
+
+    private static void leases(IndexedDirectory directory) {
+        long past = System.currentTimeMillis() - 1000;
+        directory.restore(DirectoryJournalCheck.provider("p15", 15), past);
+        ServiceQuery query = new ServiceQuery("construction").range("prix", 10, 20);
+        Check.equal(Arrays.asList("p10", "p20"), names(directory, query, -1), "expired lease not in a query");
+        Check.equal(6, directory.search(template("construction"), -1).size(), "expired lease not in a search");
+
+        List<DFAgentDescription> expired = directory.expire(System.currentTimeMillis());
+        Check.equal(Arrays.asList("p15"), names(expired), "expire() removes the expired lease only");
+        Check.equal(7, directory.size(), "other registrations kept");
+    }
+
+    private static void searchIds(IndexedDirectory directory) throws Exception {
+        ServiceQuery query = new ServiceQuery("construction").range("prix", 25, 55).orderBy("prix", true);
+        ServiceQuery decoded = ServiceQuery.of(query.constraints());
+        Check.equal(Arrays.asList("p50", "p40", "p30"),
+                    names(directory.query(query.template(), decoded, -1)), "search-id round trip");
+
+        String[] malformed = { "range=prix", "range=prix,1", "range=prix,a,2", "range=,1,2",
+                               "range=prix,1,2,3", "order=", "order=prix,desc,x" };
+        for (String part : malformed) {
+            SearchConstraints constraints = new SearchConstraints();
+            constraints.setSearchId(ServiceQuery.QUERY_PREFIX + part);
+            try {
+                ServiceQuery.of(constraints);
+                Check.that(false, "malformed search-id refused: " + part);
+            } catch (UnrecognisedParameterValue e) {
+                Check.that(true, "malformed search-id refused: " + part);
+            }
+        }
+
+        for (String name : new String[] { "prix,ht", "prix;ht" }) {
+            try {
+                new ServiceQuery("construction").orderBy(name);
+                Check.that(false, "separator refused in a property name: " + name);
+            } catch (IllegalArgumentException e) {
+                Check.that(true, "separator refused in a property name: " + name);
+            }
+        }
+    }
+
+    // ==================== Utilitaires ====================
+
+    private static DFAgentDescription other(String name, long price) {
+        DFAgentDescription dfd = DirectoryJournalCheck.provider(name, price);
+        ((ServiceDescription) dfd.getAllServices().next()).setType("blanchissement");
+        return dfd;
+    }
+
+    private static DFAgentDescription template(String type) {
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        DFAgentDescription template = new DFAgentDescription();
+        template.addServices(sd);
+        return template;
+    }
+
+    private static List<String> names(IndexedDirectory directory, ServiceQuery query, int max) {
+        return names(directory.query(query.template(), query, max));
+    }
+
+    private static List<String> names(List<DFAgentDescription> results) {
+        List<String> names = new ArrayList<String>();
+        for (DFAgentDescription dfd : results) {
+            names.add(dfd.getName().getLocalName());
+        }
+        return names;
+    }
+}
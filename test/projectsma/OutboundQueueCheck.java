@@ -0,0 +1,221 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * OutboundQueueCheck - Enveloppes de l'OutboundQueue: emballage et déballage
+ *
+ * La fenêtre est longue (les lots ne partent qu'au flush() demandé):
+ * - plusieurs messages vers un même agent partent dans une seule
+ *   enveloppe (isBatch()), que unpack() rend dans l'ordre, avec leur
+ *   émetteur et leur destinataire; les copies identiques sont fusionnées
+ *   (DUPLICATES, copies())
+ * - sans fusion, chaque copie est rendue
+ * - un lot d'un seul message part tel quel
+ * - un message à plusieurs destinataires part après le lot retenu
+ * - une enveloppe vide, forgée ou tronquée donne une IOException
+ */
+public class OutboundQueueCheck {
+
+    /** Fenêtre plus longue que la vérification: seul flush() envoie */
+    private static final long WINDOW = 60000;
+
+    private static Agent client;
+    private static Agent sink;
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() throws Exception {
+        client = CheckPlatform.agent("oq-client");
+        sink = CheckPlatform.agent("oq-sink");
+
+        packAndUnpack();
+        noMerge();
+        singleMessageIsNotWrapped();
+        bypassSendKeepsOrder();
+        unreadableEnvelope();
+        forgedEnvelope();
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void packAndUnpack() throws Exception {
+        final OutboundQueue outbound = queue(true);
+        send(outbound, new String[] { "a", "b", "a" });
+        Check.equal(2, pending(outbound), "identical copies held once");
+        flush(outbound);
+
+        ACLMessage envelope = next();
+        Check.that(envelope != null && OutboundQueue.isBatch(envelope), "one envelope for the batch");
+        Check.that(envelope != null && envelope.getPerformative() != ACLMessage.INFORM,
+                   "envelope is not an INFORM");
+        Check.that(next() == null, "nothing else sent to the receiver");
+
+        List<ACLMessage> messages = OutboundQueue.unpack(envelope, sink.getAID());
+        Check.equal(2, messages.size(), "distinct messages in the envelope");
+        Check.equal("a", messages.get(0).getContent(), "first message first");
+        Check.equal("b", messages.get(1).getContent(), "second message second");
+        Check.equal(2, OutboundQueue.copies(messages.get(0)), "merged copies counted");
+        Check.equal(1, OutboundQueue.copies(messages.get(1)), "single message has one copy");
+        Check.equal(ACLMessage.INFORM, messages.get(0).getPerformative(), "performative kept");
+        Check.equal("ping", messages.get(0).getConversationId(), "conversation kept");
+        Check.equal(client.getAID(), messages.get(0).getSender(), "sender restored");
+        Check.equal(sink.getAID(), messages.get(0).getAllReceiver().next(), "receiver restored");
+    }
+
+    private static void noMerge() throws Exception {
+        OutboundQueue outbound = queue(false);
+        send(outbound, new String[] { "a", "a", "a" });
+        flush(outbound);
+
+        List<ACLMessage> messages = OutboundQueue.unpack(next(), sink.getAID());
+        Check.equal(3, messages.size(), "every copy kept without merging");
+        Check.equal(1, OutboundQueue.copies(messages.get(2)), "unmerged copy has one copy");
+    }
+
+    private static void singleMessageIsNotWrapped() throws Exception {
+        OutboundQueue outbound = queue(true);
+        send(outbound, new String[] { "solo", "solo" });
+        flush(outbound);
+
+        ACLMessage msg = next();
+        Check.that(msg != null && !OutboundQueue.isBatch(msg), "single message sent as is");
+        Check.equal("solo", msg == null ? null : msg.getContent(), "single message content");
+        Check.equal(2, msg == null ? 0 : OutboundQueue.copies(msg), "single message carries its copies");
+    }
+
+    private static void bypassSendKeepsOrder() throws Exception {
+        final OutboundQueue outbound = queue(true);
+        send(outbound, new String[] { "held" });
+        CheckPlatform.call(client, new Callable<Void>() {
+            public Void call() {
+                ACLMessage both = message("both");
+                both.addReceiver(client.getAID());
+                outbound.send(both);
+                return null;
+            }
+        });
+        Check.equal(0, pending(outbound), "held batch flushed by the bypass send");
+
+        ACLMessage first = next();
+        ACLMessage second = next();
+        Check.equal("held", first == null ? null : first.getContent(), "held message arrives first");
+        Check.equal("both", second == null ? null : second.getContent(), "bypass message arrives second");
+        flush(outbound);
+        CheckPlatform.call(client, new Callable<ACLMessage>() {
+            public ACLMessage call() {
+                return client.receive();
+            }
+        });
+    }
+
+    private static void unreadableEnvelope() {
+        ACLMessage empty = new ACLMessage(ACLMessage.PROPAGATE);
+        try {
+            OutboundQueue.unpack(empty, sink.getAID());
+            Check.that(false, "envelope without content rejected");
+        } catch (IOException e) {
+            Check.that(true, "envelope without content rejected");
+        }
+    }
+
+    private static void forgedEnvelope() {
+        // Integer.MAX_VALUE messages annoncés
+        rejected("huge message count", 0xff, 0xff, 0xff, 0xff, 0x07, 1, 1);
+        // Taille sur plus de 5 octets
+        rejected("malformed size", 0x80, 0x80, 0x80, 0x80, 0x80, 0x01);
+        // Un message sans copie
+        rejected("zero copies", 1, 0, 1);
+        // Un message dont l'encodage est tronqué ou incohérent
+        rejected("garbage message", 1, 1, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff);
+    }
+
+    // ==================== Utilitaires ====================
+
+    /**
+     * rejected() - unpack() refuse une enveloppe de ce contenu par une IOException
+     */
+    private static void rejected(String what, int... bytes) {
+        byte[] content = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            content[i] = (byte) bytes[i];
+        }
+        ACLMessage envelope = new ACLMessage(ACLMessage.PROPAGATE);
+        envelope.setByteSequenceContent(content);
+        try {
+            OutboundQueue.unpack(envelope, sink.getAID());
+            Check.that(false, what + " rejected");
+        } catch (IOException e) {
+            Check.that(true, what + " rejected");
+        } catch (RuntimeException e) {
+            Check.fail(what + " rejected", e);
+        }
+    }
+
+    private static OutboundQueue queue(final boolean merge) throws Exception {
+        return CheckPlatform.call(client, new Callable<OutboundQueue>() {
+            public OutboundQueue call() {
+                OutboundQueue outbound = new OutboundQueue(client, WINDOW);
+                outbound.setMergeDuplicates(merge);
+                client.addBehaviour(outbound);
+                return outbound;
+            }
+        });
+    }
+
+    private static ACLMessage message(String content) {
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(sink.getAID());
+        msg.setConversationId("ping");
+        msg.setContent(content);
+        return msg;
+    }
+
+    private static void send(final OutboundQueue outbound, final String[] contents) throws Exception {
+        CheckPlatform.call(client, new Callable<Void>() {
+            public Void call() {
+                for (String content : contents) {
+                    outbound.send(message(content));
+                }
+                return null;
+            }
+        });
+    }
+
+    private static int pending(final OutboundQueue outbound) throws Exception {
+        return CheckPlatform.call(client, new Callable<Integer>() {
+            public Integer call() {
+                return outbound.pending();
+            }
+        });
+    }
+
+    private static void flush(final OutboundQueue outbound) throws Exception {
+        CheckPlatform.call(client, new Callable<Void>() {
+            public Void call() {
+                outbound.flush();
+                client.removeBehaviour(outbound);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * next() - Prochain message reçu par le destinataire (null après 500 ms)
+     */
+    private static ACLMessage next() throws Exception {
+        return CheckPlatform.call(sink, new Callable<ACLMessage>() {
+            public ACLMessage call() {
+                return sink.blockingReceive(500);
+            }
+        });
+    }
+}
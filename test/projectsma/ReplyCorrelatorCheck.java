@@ -0,0 +1,172 @@
+package projectsma;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReplyCorrelatorCheck - Réponses, échéances et annulations du ReplyCorrelator
+ *
+ * Les requêtes partent vers un agent muet; les réponses sont déposées
+ * directement dans la file du client (postMessage()), au moment choisi:
+ * - avant l'échéance: onReply(), la requête n'est plus en cours
+ * - après l'échéance: onTimeout(), puis la réponse tardive est retirée
+ *   de la file et ignorée (reply.discarded)
+ * - après cancel(): ni onReply() ni onTimeout(), réponse ignorée
+ * - après le délai de grâce: la réponse n'est plus retirée de la file
+ */
+public class ReplyCorrelatorCheck {
+
+    /**
+     * Recorder - Compte les appels d'un ReplyHandler
+     */
+    private static class Recorder implements ReplyCorrelator.ReplyHandler {
+        volatile int replies = 0;
+        volatile int timeouts = 0;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        public void onReply(ACLMessage reply) {
+            replies++;
+            done.countDown();
+        }
+
+        public void onTimeout(ACLMessage request) {
+            timeouts++;
+            done.countDown();
+        }
+
+        boolean await(long millis) throws InterruptedException {
+            return done.await(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Agent client;
+    private static AID sink;
+    private static ReplyCorrelator correlator;
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() throws Exception {
+        client = CheckPlatform.agent("rc-client");
+        sink = CheckPlatform.agent("rc-sink").getAID();
+        correlator = CheckPlatform.call(client, new Callable<ReplyCorrelator>() {
+            public ReplyCorrelator call() {
+                ReplyCorrelator c = new ReplyCorrelator(client);
+                client.addBehaviour(c);
+                return c;
+            }
+        });
+
+        replyBeforeDeadline();
+        lateReplyIsDiscarded();
+        cancelledReplyIsDiscarded();
+        replyAfterGraceStaysQueued();
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void replyBeforeDeadline() throws Exception {
+        Recorder recorder = new Recorder();
+        String id = request(5000, recorder);
+        Check.equal(1, inFlight(), "request in flight after request()");
+
+        client.postMessage(reply(id));
+        Check.that(recorder.await(2000), "reply delivered before the deadline");
+        Check.equal(1, recorder.replies, "onReply() called once");
+        Check.equal(0, recorder.timeouts, "no onTimeout() for an answered request");
+        Check.equal(0, inFlight(), "answered request no longer in flight");
+    }
+
+    private static void lateReplyIsDiscarded() throws Exception {
+        long discarded = discarded();
+        Recorder recorder = new Recorder();
+        String id = request(50, recorder);
+        Check.that(recorder.await(2000), "timeout reported");
+        Check.equal(1, recorder.timeouts, "onTimeout() called once");
+        Check.equal(0, inFlight(), "expired request no longer in flight");
+
+        client.postMessage(reply(id));
+        Check.that(CheckPlatform.settle(client, 2000), "late reply taken out of the mailbox");
+        Check.equal(0, recorder.replies, "late reply not delivered to the handler");
+        Check.equal(discarded + 1, discarded(), "late reply counted as discarded");
+    }
+
+    private static void cancelledReplyIsDiscarded() throws Exception {
+        long discarded = discarded();
+        Recorder recorder = new Recorder();
+        final String id = request(100, recorder);
+        Check.equal(Boolean.TRUE, cancel(id), "cancel() of a request in flight");
+        Check.equal(Boolean.FALSE, cancel(id), "second cancel() of the same request");
+        Check.equal(0, inFlight(), "cancelled request no longer in flight");
+
+        client.postMessage(reply(id));
+        Check.that(CheckPlatform.settle(client, 2000), "reply to a cancelled request taken out of the mailbox");
+        // Passé l'échéance d'origine: toujours pas de onTimeout()
+        Check.that(!recorder.await(300), "no handler call for a cancelled request");
+        Check.equal(discarded + 1, discarded(), "reply to a cancelled request counted as discarded");
+    }
+
+    private static void replyAfterGraceStaysQueued() throws Exception {
+        Recorder recorder = new Recorder();
+        String id = request(20, recorder);
+        Check.that(recorder.await(2000), "timeout reported");
+
+        // Délai de grâce: max(MIN_GRACE, délai de la requête) après l'échéance
+        Thread.sleep(ReplyCorrelator.MIN_GRACE + 300);
+        client.postMessage(reply(id));
+        Check.that(!CheckPlatform.settle(client, 300), "reply after the grace period left in the mailbox");
+        CheckPlatform.call(client, new Callable<ACLMessage>() {
+            public ACLMessage call() {
+                return client.receive();
+            }
+        });
+    }
+
+    // ==================== Utilitaires ====================
+
+    private static String request(final long timeout, final Recorder recorder) throws Exception {
+        return CheckPlatform.call(client, new Callable<String>() {
+            public String call() {
+                ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+                msg.addReceiver(sink);
+                msg.setContent("ping");
+                return correlator.request(msg, timeout, recorder);
+            }
+        });
+    }
+
+    private static Boolean cancel(final String id) throws Exception {
+        return CheckPlatform.call(client, new Callable<Boolean>() {
+            public Boolean call() {
+                return correlator.cancel(id);
+            }
+        });
+    }
+
+    private static int inFlight() throws Exception {
+        return CheckPlatform.call(client, new Callable<Integer>() {
+            public Integer call() {
+                return correlator.inFlight();
+            }
+        });
+    }
+
+    private static long discarded() {
+        return Metrics.of(client).counter("reply.discarded").sum();
+    }
+
+    private static ACLMessage reply(String id) {
+        ACLMessage reply = new ACLMessage(ACLMessage.INFORM);
+        reply.setSender(sink);
+        reply.addReceiver(client.getAID());
+        reply.setInReplyTo(id);
+        reply.setContent("pong");
+        return reply;
+    }
+}
@@ -0,0 +1,130 @@
+package projectsma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TaskAllocatorCheck - Offres groupées et ordre d'attribution du TaskAllocator
+ *
+ * Sans plateforme: le format des contenus (formatBid()/parseBid(),
+ * formatTasks()/parseTasks()) et le choix du fournisseur (assign()).
+ */
+public class TaskAllocatorCheck {
+
+    public static void main(String[] args) throws Exception {
+        run();
+        Check.exit();
+    }
+
+    public static void run() {
+        bidRoundTrip();
+        unreadableBids();
+        tasksRoundTrip();
+        cheapestProviderWins();
+        loadSpreadsTheBatch();
+        uncoveredTasksAreReturned();
+    }
+
+    // ==================== Vérifications ====================
+
+    private static void bidRoundTrip() {
+        List<TaskAllocator.Task> tasks = tasks("t1", "t2");
+        TaskAllocator.Bid bid = TaskAllocator.parseBid(TaskAllocator.formatBid(20, 3, tasks));
+        Check.that(bid != null, "formatted bid parsed");
+        if (bid == null) {
+            return;
+        }
+        Check.equal(20L, bid.cost, "bid cost");
+        Check.equal(3L, bid.load, "bid load");
+        Check.equal(2, bid.taskIds.size(), "bid task count");
+        Check.that(bid.taskIds.contains("t1") && bid.taskIds.contains("t2"), "bid task ids");
+
+        // Un coût nul deviendrait une offre gratuite: il est ramené à 1
+        TaskAllocator.Bid free = TaskAllocator.parseBid("0 0\nt1");
+        Check.equal(1L, free == null ? null : free.cost, "zero cost raised to 1");
+    }
+
+    private static void unreadableBids() {
+        Check.that(TaskAllocator.parseBid(null) == null, "null bid rejected");
+        Check.that(TaskAllocator.parseBid("") == null, "empty bid rejected");
+        Check.that(TaskAllocator.parseBid("12") == null, "bid without load rejected");
+        Check.that(TaskAllocator.parseBid("cheap 0\nt1") == null, "non-numeric cost rejected");
+    }
+
+    private static void tasksRoundTrip() {
+        List<TaskAllocator.Task> tasks = new ArrayList<TaskAllocator.Task>();
+        tasks.add(new TaskAllocator.Task("t1", "mur nord"));
+        tasks.add(new TaskAllocator.Task("t2", "a;b"));
+        List<TaskAllocator.Task> parsed = TaskAllocator.parseTasks(TaskAllocator.formatTasks(tasks));
+        Check.equal(2, parsed.size(), "task count after round trip");
+        Check.equal("mur nord", parsed.get(0).description, "first description");
+        Check.equal("t2", parsed.get(1).id, "second id");
+        Check.equal("a;b", parsed.get(1).description, "';' kept in a description");
+        Check.equal(0, TaskAllocator.parseTasks(null).size(), "no task in a null content");
+    }
+
+    private static void cheapestProviderWins() {
+        List<TaskAllocator.Task> tasks = tasks("t1");
+        TaskAllocator.Bid expensive = bid(30, 0, "t1");
+        TaskAllocator.Bid cheap = bid(10, 0, "t1");
+        TaskAllocator.assign(tasks, Arrays.asList(expensive, cheap));
+        Check.equal(1, cheap.awarded.size(), "cheapest bid wins");
+        Check.equal(0, expensive.awarded.size(), "expensive bid loses");
+
+        // À coût égal: la première offre
+        TaskAllocator.Bid first = bid(10, 0, "t1");
+        TaskAllocator.Bid second = bid(10, 0, "t1");
+        TaskAllocator.assign(tasks, Arrays.asList(first, second));
+        Check.equal(1, first.awarded.size(), "first bid wins a tie");
+    }
+
+    private static void loadSpreadsTheBatch() {
+        // Coût de la n-ième tâche: (charge + n) x coût
+        // t1: A 10, B 15 -> A; t2: A 20, B 15 -> B; t3: A 20, B 30 -> A; t4: A 30, B 30 -> A
+        List<TaskAllocator.Task> tasks = tasks("t1", "t2", "t3", "t4");
+        TaskAllocator.Bid a = bid(10, 0, "t1", "t2", "t3", "t4");
+        TaskAllocator.Bid b = bid(15, 0, "t1", "t2", "t3", "t4");
+        TaskAllocator.assign(tasks, Arrays.asList(a, b));
+        Check.equal(Arrays.asList("t1", "t3", "t4"), ids(a.awarded), "fast provider tasks");
+        Check.equal(Arrays.asList("t2"), ids(b.awarded), "slow provider tasks");
+
+        // Déjà chargé: le fournisseur rapide cède la première tâche
+        TaskAllocator.Bid busy = bid(10, 2, "t1");
+        TaskAllocator.Bid idle = bid(15, 0, "t1");
+        TaskAllocator.assign(tasks("t1"), Arrays.asList(busy, idle));
+        Check.equal(1, idle.awarded.size(), "load counted in the cost");
+    }
+
+    private static void uncoveredTasksAreReturned() {
+        TaskAllocator.Bid bid = bid(10, 0, "t2");
+        List<TaskAllocator.Task> left = TaskAllocator.assign(tasks("t1", "t2", "t3"), Arrays.asList(bid));
+        Check.equal(Arrays.asList("t1", "t3"), ids(left), "tasks without a bid returned in order");
+        Check.equal(Arrays.asList("t2"), ids(bid.awarded), "covered task awarded");
+        Check.equal(2, TaskAllocator.assign(tasks("t1", "t2"),
+                                            new ArrayList<TaskAllocator.Bid>()).size(),
+                    "no bid: every task returned");
+    }
+
+    // ==================== Utilitaires ====================
+
+    private static List<TaskAllocator.Task> tasks(String... ids) {
+        List<TaskAllocator.Task> tasks = new ArrayList<TaskAllocator.Task>();
+        for (String id : ids) {
+            tasks.add(new TaskAllocator.Task(id, "task " + id));
+        }
+        return tasks;
+    }
+
+    private static TaskAllocator.Bid bid(long cost, long load, String... ids) {
+        return TaskAllocator.parseBid(TaskAllocator.formatBid(cost, load, tasks(ids)));
+    }
+
+    private static List<String> ids(List<TaskAllocator.Task> tasks) {
+        List<String> ids = new ArrayList<String>();
+        for (TaskAllocator.Task task : tasks) {
+            ids.add(task.id);
+        }
+        return ids;
+    }
+}